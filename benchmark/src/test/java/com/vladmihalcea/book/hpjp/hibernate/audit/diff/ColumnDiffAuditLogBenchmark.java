@@ -0,0 +1,256 @@
+package com.vladmihalcea.book.hpjp.hibernate.audit.diff;
+
+import com.vladmihalcea.book.hpjp.util.AbstractBenchmark;
+import com.vladmihalcea.book.hpjp.util.providers.Database;
+import jakarta.persistence.*;
+import org.hibernate.Session;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.integrator.spi.Integrator;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the row-level trigger storing the {@code OLD} and {@code NEW} rows as {@code jsonb},
+ * like the one in {@code PostgreSQLTriggerBasedJsonAuditLogTest}, against the {@link ColumnDiffAuditEventListener},
+ * when every transaction changes the price of {@link #batchSize} books.
+ * <p>
+ * The books have a 1 KB description, which the trigger copies twice for every update.
+ * At the end of the trial, the size of the audit log table, indexes included, is logged,
+ * so that the storage cost of the two strategies can be compared too.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColumnDiffAuditLogBenchmark extends AbstractBenchmark {
+
+    public enum Strategy {
+        TRIGGER,
+        COLUMN_DIFF
+    }
+
+    @Param({"TRIGGER", "COLUMN_DIFF"})
+    private Strategy strategy;
+
+    @Param({"1", "10"})
+    private int batchSize;
+
+    private final AuditLogPartitionManager partitionManager = new AuditLogPartitionManager();
+
+    private long updateCount;
+
+    @Override
+    protected Database database() {
+        return Database.POSTGRESQL;
+    }
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            Book.class,
+        };
+    }
+
+    @Override
+    protected void additionalProperties(Properties properties) {
+        properties.put("hibernate.jdbc.batch_size", "50");
+        properties.put("hibernate.order_updates", "true");
+    }
+
+    @Override
+    protected Integrator integrator() {
+        return new ColumnDiffAuditIntegrator(
+            strategy == Strategy.COLUMN_DIFF ?
+                new ColumnDiffAuditEventListener(() -> "Vlad Mihalcea", Book.class) :
+                new ColumnDiffAuditEventListener(() -> "Vlad Mihalcea")
+        );
+    }
+
+    @Override
+    protected void afterInit() {
+        executeStatement("DROP TABLE IF EXISTS audit_log CASCADE");
+        executeStatement("DROP TABLE IF EXISTS book_audit_log CASCADE");
+        executeStatement("DROP FUNCTION IF EXISTS book_audit_trigger_func CASCADE");
+
+        if (strategy == Strategy.TRIGGER) {
+            executeStatement("""
+                CREATE TABLE book_audit_log (
+                    book_id bigint NOT NULL,
+                    old_row_data jsonb,
+                    new_row_data jsonb,
+                    dml_type varchar(6) NOT NULL,
+                    dml_timestamp timestamp NOT NULL,
+                    dml_created_by varchar(255) NOT NULL,
+                    trx_timestamp timestamp NOT NULL
+                )
+                """
+            );
+            executeStatement("CREATE INDEX idx_book_audit_log_book_id ON book_audit_log (book_id, dml_timestamp)");
+            executeStatement("""
+                CREATE OR REPLACE FUNCTION book_audit_trigger_func()
+                RETURNS trigger AS $body$
+                BEGIN
+                   INSERT INTO book_audit_log (
+                       book_id,
+                       old_row_data,
+                       new_row_data,
+                       dml_type,
+                       dml_timestamp,
+                       dml_created_by,
+                       trx_timestamp
+                   )
+                   VALUES(
+                       NEW.id,
+                       CASE WHEN TG_OP = 'UPDATE' THEN to_jsonb(OLD) END,
+                       to_jsonb(NEW),
+                       TG_OP,
+                       statement_timestamp(),
+                       current_setting('var.logged_user'),
+                       transaction_timestamp()
+                   );
+                   RETURN NEW;
+                END;
+                $body$
+                LANGUAGE plpgsql
+                """
+            );
+            executeStatement("""
+                CREATE TRIGGER book_audit_trigger
+                AFTER INSERT OR UPDATE ON book
+                FOR EACH ROW EXECUTE FUNCTION book_audit_trigger_func()
+                """
+            );
+        } else {
+            doInJDBC(connection -> {
+                partitionManager.createTable(connection);
+                partitionManager.createPartitions(connection, YearMonth.now(), 2);
+            });
+        }
+
+        doInJPA(entityManager -> {
+            setLoggedUser(entityManager);
+            for (long id = 1; id <= batchSize; id++) {
+                entityManager.persist(
+                    new Book()
+                        .setId(id)
+                        .setTitle(String.format("High-Performance Java Persistence, volume %d", id))
+                        .setAuthor("Vlad Mihalcea")
+                        .setPublisher("Amazon")
+                        .setDescription("x".repeat(1024))
+                        .setPriceInCents(3990)
+                );
+            }
+        });
+    }
+
+    @Override
+    public void tearDown() {
+        String sizeQuery = strategy == Strategy.TRIGGER ?
+            "SELECT count(*), pg_total_relation_size('book_audit_log') FROM book_audit_log" :
+            """
+            SELECT
+                (SELECT count(*) FROM audit_log),
+                (SELECT sum(pg_total_relation_size(inhrelid)) FROM pg_inherits WHERE inhparent = 'audit_log'::regclass)
+            """;
+        doInJDBC(connection -> {
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(sizeQuery)) {
+                resultSet.next();
+                long entryCount = resultSet.getLong(1);
+                long size = resultSet.getLong(2);
+                LOGGER.info(
+                    "Strategy {} stored {} audit log entries in {} KB, {} bytes per entry",
+                    strategy,
+                    entryCount,
+                    size / 1024,
+                    entryCount > 0 ? size / entryCount : 0
+                );
+            }
+        });
+        super.tearDown();
+    }
+
+    @Benchmark
+    public void updatePrice() {
+        int priceInCents = (updateCount++ % 2 == 0) ? 4499 : 3990;
+        doInJPA(entityManager -> {
+            setLoggedUser(entityManager);
+            List<Book> books = entityManager.createQuery("""
+                select b
+                from Book b
+                """, Book.class)
+            .getResultList();
+            for (Book book : books) {
+                book.setPriceInCents(priceInCents);
+            }
+        });
+    }
+
+    private void setLoggedUser(EntityManager entityManager) {
+        if (strategy == Strategy.TRIGGER) {
+            entityManager.unwrap(Session.class).doWork(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("SET LOCAL var.logged_user = 'Vlad Mihalcea'");
+                }
+            });
+        }
+    }
+
+    @Entity(name = "Book")
+    @Table(name = "book")
+    @DynamicUpdate
+    public static class Book {
+
+        @Id
+        private Long id;
+
+        private String title;
+
+        private String author;
+
+        private String publisher;
+
+        @Column(length = 2048)
+        private String description;
+
+        @Column(name = "price_in_cents")
+        private int priceInCents;
+
+        public Book setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public Book setTitle(String title) {
+            this.title = title;
+            return this;
+        }
+
+        public Book setAuthor(String author) {
+            this.author = author;
+            return this;
+        }
+
+        public Book setPublisher(String publisher) {
+            this.publisher = publisher;
+            return this;
+        }
+
+        public Book setDescription(String description) {
+            this.description = description;
+            return this;
+        }
+
+        public Book setPriceInCents(int priceInCents) {
+            this.priceInCents = priceInCents;
+            return this;
+        }
+    }
+}
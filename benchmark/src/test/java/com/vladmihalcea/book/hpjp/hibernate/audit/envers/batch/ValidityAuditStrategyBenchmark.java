@@ -0,0 +1,105 @@
+package com.vladmihalcea.book.hpjp.hibernate.audit.envers.batch;
+
+import com.vladmihalcea.book.hpjp.hibernate.audit.envers.batch.BatchValidityAuditStrategyTest.Post;
+import com.vladmihalcea.book.hpjp.util.AbstractBenchmark;
+import org.hibernate.Session;
+import org.hibernate.envers.configuration.EnversSettings;
+import org.hibernate.envers.strategy.internal.ValidityAuditStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares changing the title of {@link #entityCount} audited posts in a single transaction when the previous
+ * revisions are ended by the {@link ValidityAuditStrategy}, one {@code UPDATE} per entity, by the
+ * {@link BatchValidityAuditStrategy}, one set-based statement per audit table, and when the posts are changed
+ * by a bulk update audited by the {@link BulkValidityAuditor}.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ValidityAuditStrategyBenchmark extends AbstractBenchmark {
+
+    public enum Strategy {
+        VALIDITY,
+        BATCH_VALIDITY,
+        BULK
+    }
+
+    @Param({"VALIDITY", "BATCH_VALIDITY", "BULK"})
+    private Strategy strategy;
+
+    @Param({"10000"})
+    private int entityCount;
+
+    private long updateCount;
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            Post.class,
+        };
+    }
+
+    @Override
+    protected void additionalProperties(Properties properties) {
+        properties.setProperty(
+            EnversSettings.AUDIT_STRATEGY,
+            strategy == Strategy.VALIDITY ?
+                ValidityAuditStrategy.class.getName() :
+                BatchValidityAuditStrategy.class.getName()
+        );
+        properties.put("hibernate.jdbc.batch_size", "100");
+        properties.put("hibernate.order_inserts", "true");
+        properties.put("hibernate.order_updates", "true");
+    }
+
+    @Override
+    protected void afterInit() {
+        doInJPA(entityManager -> {
+            for (long id = 1; id <= entityCount; id++) {
+                entityManager.persist(
+                    new Post()
+                        .setId(id)
+                        .setTitle(String.format("High-Performance Java Persistence, part %d", id))
+                );
+                if (id % 100 == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+            }
+        });
+    }
+
+    @Benchmark
+    public void updateTitles() {
+        String suffix = " - revision " + (++updateCount);
+        doInJPA(entityManager -> {
+            if (strategy == Strategy.BULK) {
+                entityManager.createQuery("""
+                    update Post
+                    set title = concat('High-Performance Java Persistence', :suffix)
+                    """)
+                .setParameter("suffix", suffix)
+                .executeUpdate();
+
+                new BulkValidityAuditor(entityManager.unwrap(Session.class))
+                    .auditUpdate(Post.class, "1 = 1");
+            } else {
+                List<Post> posts = entityManager.createQuery("""
+                    select p
+                    from Post p
+                    """, Post.class)
+                .getResultList();
+
+                for (Post post : posts) {
+                    post.setTitle("High-Performance Java Persistence" + suffix);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,61 @@
+package com.vladmihalcea.book.hpjp.hibernate.cache;
+
+import com.vladmihalcea.book.hpjp.hibernate.cache.LoadedStateBenchmarkTest.Post;
+import com.vladmihalcea.book.hpjp.hibernate.cache.LoadedStateBenchmarkTest.PostDetails;
+import com.vladmihalcea.book.hpjp.util.AbstractBenchmark;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Properties;
+
+/**
+ * JMH version of {@link LoadedStateBenchmarkTest}.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+public class LoadedStateBenchmark extends AbstractBenchmark {
+
+    @Param({"100", "500", "1000", "5000", "10000"})
+    private int insertCount;
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[] {
+            Post.class,
+            PostDetails.class
+        };
+    }
+
+    @Override
+    protected Properties properties() {
+        Properties properties = super.properties();
+        properties.put("hibernate.cache.use_second_level_cache", Boolean.TRUE.toString());
+        properties.put("hibernate.cache.region.factory_class", "jcache");
+
+        properties.put("hibernate.jdbc.batch_size", "100");
+        properties.put("hibernate.order_inserts", "true");
+        return properties;
+    }
+
+    @Override
+    protected void afterInit() {
+        doInJPA(entityManager -> {
+            for (long i = 0; i < insertCount; i++) {
+                Post post = new Post();
+                post.setId(i);
+                post.setTitle("High-Performance Java Persistence");
+                entityManager.persist(post);
+            }
+        });
+    }
+
+    @Benchmark
+    public void readOnlyFetch(Blackhole blackhole) {
+        doInJPA(entityManager -> {
+            for (long i = 0; i < insertCount; i++) {
+                blackhole.consume(entityManager.find(Post.class, i));
+            }
+        });
+    }
+}
@@ -0,0 +1,116 @@
+package com.vladmihalcea.book.hpjp.hibernate.concurrency.queue;
+
+import com.vladmihalcea.book.hpjp.util.AbstractBenchmark;
+import com.vladmihalcea.book.hpjp.util.providers.Database;
+import com.zaxxer.hikari.HikariConfig;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures how many jobs per second the {@link JobQueueConsumer} workers can claim and acknowledge.
+ * <p>
+ * Every invocation enqueues a batch of jobs and waits until the workers acknowledge all of them.
+ * The database is given by {@code -p database=POSTGRESQL}, and HSQLDB is used for local runs.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JobQueueBenchmark extends AbstractBenchmark {
+
+    private static final int JOB_COUNT = 1000;
+
+    @Param({"HSQLDB"})
+    private Database database;
+
+    @Param({"1", "4", "16", "64"})
+    private int workers;
+
+    @Param({"20"})
+    private int batchSize;
+
+    private JobQueue jobQueue;
+
+    private JobQueueConsumer consumer;
+
+    private List<String> payloads;
+
+    private long expectedAckCount;
+
+    @Override
+    protected Database database() {
+        return database;
+    }
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            Job.class
+        };
+    }
+
+    @Override
+    protected Properties properties() {
+        Properties properties = super.properties();
+        properties.put("hibernate.jdbc.batch_size", "50");
+        return properties;
+    }
+
+    @Override
+    protected boolean connectionPooling() {
+        return true;
+    }
+
+    @Override
+    protected HikariConfig hikariConfig(DataSource dataSource) {
+        HikariConfig hikariConfig = super.hikariConfig(dataSource);
+        hikariConfig.setMaximumPoolSize(workers + 1);
+        return hikariConfig;
+    }
+
+    @Override
+    protected void afterInit() {
+        jobQueue = new JobQueue(entityManagerFactory());
+        payloads = new ArrayList<>(JOB_COUNT);
+        for (int i = 0; i < JOB_COUNT; i++) {
+            payloads.add(String.format("{\"postId\": %d}", i));
+        }
+        consumer = new JobQueueConsumer(jobQueue, job -> {})
+            .setWorkerCount(workers)
+            .setBatchSize(batchSize)
+            .setPollInterval(Duration.ofMillis(1), Duration.ofMillis(10))
+            .start();
+    }
+
+    @Override
+    public void tearDown() {
+        consumer.close();
+        LOGGER.info(
+            "{} workers acknowledged {} jobs, and {}% of the claims were empty",
+            workers,
+            consumer.getAckCount(),
+            Math.round(consumer.getEmptyClaimRatio() * 100)
+        );
+        super.tearDown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(JOB_COUNT)
+    public long process() {
+        jobQueue.enqueue(payloads);
+        expectedAckCount += JOB_COUNT;
+        long ackCount;
+        while ((ackCount = consumer.getAckCount()) < expectedAckCount) {
+            LockSupport.parkNanos(100_000);
+        }
+        return ackCount;
+    }
+}
@@ -0,0 +1,125 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching;
+
+import com.vladmihalcea.book.hpjp.hibernate.fetching.PlanCacheSizePerformanceTest.Post;
+import com.vladmihalcea.book.hpjp.hibernate.fetching.PlanCacheSizePerformanceTest.PostComment;
+import com.vladmihalcea.book.hpjp.util.AbstractBenchmark;
+import jakarta.persistence.EntityManager;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.query.NativeQuery;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Properties;
+import java.util.stream.LongStream;
+
+/**
+ * JMH version of {@link PlanCacheSizePerformanceTest}.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+public class PlanCacheSizeBenchmark extends AbstractBenchmark {
+
+    @Param({"1", "100"})
+    private int planCacheMaxSize;
+
+    private EntityManager entityManager;
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            Post.class,
+            PostComment.class,
+        };
+    }
+
+    @Override
+    protected void additionalProperties(Properties properties) {
+        properties.put(
+            "hibernate.query.plan_cache_max_size",
+            planCacheMaxSize
+        );
+
+        properties.put(
+            "hibernate.query.plan_parameter_metadata_max_size",
+            planCacheMaxSize
+        );
+    }
+
+    @Override
+    protected void afterInit() {
+        int commentsSize = 5;
+        doInJPA(entityManager -> {
+            LongStream.range(0, 50).forEach(i -> {
+                Post post = new Post();
+                post.setId(i);
+                post.setTitle(String.format("Post nr. %d", i));
+
+                LongStream.range(0, commentsSize).forEach(j -> {
+                    PostComment comment = new PostComment();
+                    comment.setId((i * commentsSize) + j);
+                    comment.setReview(String.format("Good review nr. %d", comment.getId()));
+                    post.addComment(comment);
+
+                });
+                entityManager.persist(post);
+            });
+        });
+    }
+
+    @Setup(Level.Iteration)
+    public void openEntityManager() {
+        entityManager = entityManagerFactory().createEntityManager();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeEntityManager() {
+        entityManager.close();
+    }
+
+    @Benchmark
+    public void entityQueries(Blackhole blackhole) {
+        blackhole.consume(
+            entityManager.createQuery(
+                "select new " +
+                "   com.vladmihalcea.book.hpjp.hibernate.fetching.PostCommentSummary( " +
+                "       p.id, p.title, c.review ) " +
+                "from PostComment c " +
+                "join c.post p")
+            .setFirstResult(10)
+            .setMaxResults(20)
+            .setHint(QueryHints.HINT_FETCH_SIZE, 20)
+        );
+        blackhole.consume(
+            entityManager.createQuery(
+                "select c " +
+                "from PostComment c " +
+                "join fetch c.post p " +
+                "where p.title like :title"
+            )
+        );
+    }
+
+    @Benchmark
+    public void nativeQueries(Blackhole blackhole) {
+        blackhole.consume(
+            entityManager.createNativeQuery(
+                "select p.id, p.title, c.review " +
+                "from post_comment c " +
+                "join post p on p.id = c.post_id ")
+            .setFirstResult(10)
+            .setMaxResults(20)
+            .setHint(QueryHints.HINT_FETCH_SIZE, 20)
+        );
+        blackhole.consume(
+            entityManager.createNativeQuery(
+                "select c.*, p.* " +
+                "from post_comment c " +
+                "join post p on p.id = c.post_id " +
+                "where p.title like :title")
+            .unwrap(NativeQuery.class)
+            .addEntity(PostComment.class)
+            .addEntity(Post.class)
+        );
+    }
+}
@@ -0,0 +1,131 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset;
+
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.Post;
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.PostComment;
+import com.vladmihalcea.book.hpjp.util.AbstractBenchmark;
+import com.vladmihalcea.book.hpjp.util.providers.Database;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.KeysetSort.desc;
+
+/**
+ * Compares fetching the page at the given depth with {@code OFFSET} against the {@link KeysetPaginator}
+ * seek predicate. The offset query has to walk and discard all the preceding index entries, while the
+ * keyset query starts the index range scan right after the last row of the previous page.
+ * <p>
+ * The benchmark requires PostgreSQL, as it generates more than one million rows
+ * with {@code generate_series}.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KeysetPaginationBenchmark extends AbstractBenchmark {
+
+    public enum Strategy {
+        OFFSET,
+        KEYSET
+    }
+
+    public static final int PAGE_SIZE = 10;
+
+    public static final KeysetSort SORT = KeysetSort.of(desc("p.createdOn"), desc("p.id"));
+
+    @Param({"OFFSET", "KEYSET"})
+    private Strategy strategy;
+
+    @Param({"10", "1000", "100000"})
+    private int pageNumber;
+
+    private final KeysetPaginator paginator = new KeysetPaginator();
+
+    private final KeysetCursorCodec codec = new KeysetCursorCodec();
+
+    private EntityManager entityManager;
+
+    private JpaKeysetQuery<Post> keysetQuery;
+
+    private String cursor;
+
+    @Override
+    protected Database database() {
+        return Database.POSTGRESQL;
+    }
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            Post.class,
+            PostComment.class,
+        };
+    }
+
+    @Override
+    protected void afterInit() {
+        int postCount = (pageNumber + 1) * PAGE_SIZE;
+
+        doInJPA(entityManager -> {
+            entityManager.createNativeQuery("""
+                INSERT INTO post (id, title, created_on)
+                SELECT
+                    id,
+                    'High-Performance Java Persistence - Chapter ' || id,
+                    TIMESTAMP '2023-03-22 12:00:00' + (id / 10) * INTERVAL '1 second'
+                FROM generate_series(1, :postCount) AS id
+                """)
+            .setParameter("postCount", postCount)
+            .executeUpdate();
+
+            entityManager.createNativeQuery("""
+                CREATE INDEX idx_post_created_on_id ON post (created_on DESC, id DESC)
+                """)
+            .executeUpdate();
+
+            entityManager.createNativeQuery("ANALYZE post")
+            .executeUpdate();
+        });
+
+        keysetQuery = new JpaKeysetQuery<>(Post.class, "select p from Post p", SORT)
+            .setKeyExtractor(post -> new Object[] {post.getCreatedOn(), post.getId()})
+            .setTransactionRunner(work -> work.apply(entityManager));
+
+        //The cursor the client got along with the previous page
+        Tuple lastRow = doInJPA(entityManager -> {
+            return entityManager.createQuery(
+                "select p.createdOn as createdOn, p.id as id from Post p order by " + SORT.orderBy(), Tuple.class)
+            .setFirstResult(pageNumber * PAGE_SIZE - 1)
+            .setMaxResults(1)
+            .getSingleResult();
+        });
+        cursor = codec.encode(SORT, new Object[] {lastRow.get("createdOn"), lastRow.get("id")});
+    }
+
+    @Setup(Level.Iteration)
+    public void openEntityManager() {
+        entityManager = entityManagerFactory().createEntityManager();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeEntityManager() {
+        entityManager.close();
+    }
+
+    @Benchmark
+    public List<Post> fetchPage() {
+        entityManager.clear();
+        return switch (strategy) {
+            case OFFSET -> entityManager.createQuery(
+                    "select p from Post p order by " + SORT.orderBy(), Post.class)
+                .setFirstResult(pageNumber * PAGE_SIZE)
+                .setMaxResults(PAGE_SIZE)
+                .getResultList();
+            case KEYSET -> paginator.getPage(keysetQuery, cursor, PAGE_SIZE).getContent();
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package com.vladmihalcea.book.hpjp.hibernate.flushing;
+
+import com.vladmihalcea.book.hpjp.util.AbstractBenchmark;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Measures the flush time of a Persistence Context holding {@code entityCount}
+ * {@code Post} aggregates. The entities are loaded once per iteration,
+ * and every invocation modifies and flushes them.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+public abstract class AbstractDirtyCheckingBenchmark<P> extends AbstractBenchmark {
+
+    @Param({"5", "10", "20", "50", "100"})
+    protected int entityCount;
+
+    protected final List<Long> postIds = new ArrayList<>();
+
+    private EntityManager entityManager;
+
+    private List<P> posts;
+
+    private int invocation;
+
+    @Override
+    protected Properties properties() {
+        Properties properties = super.properties();
+        properties.put("hibernate.order_inserts", "true");
+        properties.put("hibernate.order_updates", "true");
+        properties.put("hibernate.jdbc.batch_size", String.valueOf(50));
+        return properties;
+    }
+
+    @Setup(Level.Iteration)
+    public void loadPosts() {
+        entityManager = entityManagerFactory().createEntityManager();
+        entityManager.getTransaction().begin();
+        posts = posts(entityManager);
+    }
+
+    @TearDown(Level.Iteration)
+    public void rollback() {
+        entityManager.getTransaction().rollback();
+        entityManager.close();
+    }
+
+    @Benchmark
+    public void flush() {
+        int i = invocation++;
+        for (P post : posts) {
+            modifyEntities(post, i);
+        }
+        entityManager.flush();
+    }
+
+    protected abstract List<P> posts(EntityManager entityManager);
+
+    protected abstract void modifyEntities(P post, int i);
+}
@@ -0,0 +1,105 @@
+package com.vladmihalcea.book.hpjp.hibernate.flushing;
+
+import com.vladmihalcea.book.hpjp.hibernate.forum.Post;
+import com.vladmihalcea.book.hpjp.hibernate.forum.PostComment;
+import com.vladmihalcea.book.hpjp.hibernate.forum.PostDetails;
+import com.vladmihalcea.book.hpjp.hibernate.forum.Tag;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * JMH version of {@link BytecodeEnhancementDirtyCheckingPerformanceTest}.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+public class BytecodeEnhancementDirtyCheckingBenchmark extends AbstractDirtyCheckingBenchmark<Post> {
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[] {
+            Post.class,
+            PostDetails.class,
+            PostComment.class,
+            Tag.class
+        };
+    }
+
+    @Override
+    protected void afterInit() {
+        doInJPA(entityManager -> {
+            for (int i = 0; i < entityCount; i++) {
+                Post post = new Post()
+                    .setId(i * 10L)
+                    .setTitle("JPA with Hibernate")
+                    .setDetails(
+                        new PostDetails()
+                            .setCreatedOn(new Date())
+                            .setCreatedBy("Vlad Mihalcea")
+                    )
+                    .addComment(
+                        new PostComment()
+                            .setId(i * 10L)
+                            .setReview("Good")
+                    )
+                    .addComment(
+                        new PostComment()
+                            .setId(i * 10L + 1)
+                            .setReview("Excellent")
+                    );
+
+                Tag tag1 = new Tag()
+                    .setId(i * 10L)
+                    .setName("Java");
+
+                Tag tag2 = new Tag()
+                    .setId(i * 10L + 1)
+                    .setName("Hibernate");
+
+                entityManager.persist(post);
+
+                entityManager.persist(tag1);
+                entityManager.persist(tag2);
+
+                post.getTags().add(tag1);
+                post.getTags().add(tag2);
+
+                entityManager.flush();
+                postIds.add(post.getId());
+            }
+        });
+    }
+
+    @Override
+    protected List<Post> posts(EntityManager entityManager) {
+        return entityManager.createQuery(
+            "select pc " +
+            "from PostComment pc " +
+            "join fetch pc.post p " +
+            "join fetch p.tags " +
+            "join fetch p.details " +
+            "where p.id in :ids", PostComment.class)
+        .setParameter("ids", postIds)
+        .getResultList()
+        .stream()
+        .map(PostComment::getPost)
+        .distinct()
+        .collect(Collectors.toList());
+    }
+
+    @Override
+    protected void modifyEntities(Post post, int i) {
+        String value = String.valueOf(i);
+        post.setTitle(value);
+        post.getTags().get(0).setName(value);
+        post.getTags().get(1).setName(value);
+        post.getDetails().setCreatedBy(value);
+        post.getDetails().setCreatedOn(new Date(i));
+        post.getComments().get(0).setReview(value);
+    }
+}
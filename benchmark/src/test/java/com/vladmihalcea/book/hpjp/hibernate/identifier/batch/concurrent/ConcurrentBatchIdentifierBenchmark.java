@@ -0,0 +1,107 @@
+package com.vladmihalcea.book.hpjp.hibernate.identifier.batch.concurrent;
+
+import com.vladmihalcea.book.hpjp.hibernate.identifier.batch.concurrent.providers.IdentityPostEntityProvider;
+import com.vladmihalcea.book.hpjp.hibernate.identifier.batch.concurrent.providers.PostEntityProvider;
+import com.vladmihalcea.book.hpjp.hibernate.identifier.batch.concurrent.providers.SequencePostEntityProvider;
+import com.vladmihalcea.book.hpjp.hibernate.identifier.batch.concurrent.providers.TablePostEntityProvider;
+import com.vladmihalcea.book.hpjp.util.AbstractBenchmark;
+import com.vladmihalcea.book.hpjp.util.providers.Database;
+import com.zaxxer.hikari.HikariConfig;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.util.Properties;
+
+/**
+ * JMH version of {@link ConcurrentBatchIdentifierTest}.
+ * <p>
+ * The thread count is given by {@code -t}, and the database by {@code -p database=POSTGRESQL}.
+ * The {@code SEQUENCE} strategy uses a sequence named {@code table}, which HSQLDB rejects,
+ * so it must be enabled explicitly via {@code -p strategy=SEQUENCE} on PostgreSQL.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+public class ConcurrentBatchIdentifierBenchmark extends AbstractBenchmark {
+
+    public enum Strategy {
+        IDENTITY {
+            @Override
+            PostEntityProvider entityProvider() {
+                return new IdentityPostEntityProvider();
+            }
+        },
+        SEQUENCE {
+            @Override
+            PostEntityProvider entityProvider() {
+                return new SequencePostEntityProvider();
+            }
+        },
+        TABLE {
+            @Override
+            PostEntityProvider entityProvider() {
+                return new TablePostEntityProvider();
+            }
+        };
+
+        abstract PostEntityProvider entityProvider();
+    }
+
+    @Param({"HSQLDB"})
+    private Database database;
+
+    @Param({"IDENTITY", "TABLE"})
+    private Strategy strategy;
+
+    private int insertCount = 100;
+
+    private PostEntityProvider entityProvider;
+
+    @Override
+    protected Database database() {
+        return database;
+    }
+
+    @Override
+    protected Class<?>[] entities() {
+        entityProvider = strategy.entityProvider();
+        return entityProvider.entities();
+    }
+
+    @Override
+    protected Properties properties() {
+        Properties properties = super.properties();
+        properties.put("hibernate.order_inserts", "true");
+        properties.put("hibernate.order_updates", "true");
+        properties.put("hibernate.jdbc.batch_size", String.valueOf(insertCount));
+        return properties;
+    }
+
+    @Override
+    protected boolean connectionPooling() {
+        return true;
+    }
+
+    /**
+     * The {@code TABLE} strategy needs an extra connection for the isolated
+     * identifier transaction, so every benchmark thread may hold two connections.
+     */
+    @Override
+    protected HikariConfig hikariConfig(DataSource dataSource) {
+        HikariConfig hikariConfig = super.hikariConfig(dataSource);
+        hikariConfig.setMaximumPoolSize(
+            Math.max(hikariConfig.getMaximumPoolSize(), 2 * benchmarkParams.getThreads())
+        );
+        return hikariConfig;
+    }
+
+    @Benchmark
+    public void persist() {
+        doInJPA(entityManager -> {
+            for (int j = 0; j < insertCount; j++) {
+                entityManager.persist(entityProvider.newPost());
+            }
+        });
+    }
+}
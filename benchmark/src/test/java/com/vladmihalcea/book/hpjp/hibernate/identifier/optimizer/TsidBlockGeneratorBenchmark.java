@@ -0,0 +1,95 @@
+package com.vladmihalcea.book.hpjp.hibernate.identifier.optimizer;
+
+import com.vladmihalcea.book.hpjp.hibernate.identifier.optimizer.providers.PooledLo50PostEntityProvider;
+import com.vladmihalcea.book.hpjp.hibernate.identifier.optimizer.providers.PostEntityProvider;
+import com.vladmihalcea.book.hpjp.hibernate.identifier.optimizer.providers.Sequence50PostEntityProvider;
+import com.vladmihalcea.book.hpjp.hibernate.identifier.optimizer.providers.TsidBlockPostEntityProvider;
+import com.vladmihalcea.book.hpjp.hibernate.identifier.tsid.TsidBlockGenerator;
+import com.vladmihalcea.book.hpjp.util.AbstractBenchmark;
+import com.vladmihalcea.book.hpjp.util.providers.Database;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link TsidBlockGenerator} with the {@code pooled} and {@code pooled-lo}
+ * sequence optimizers when multiple threads persist entities concurrently.
+ * <p>
+ * The thread count is given by {@code -t}, and the database by {@code -p database=POSTGRESQL}.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TsidBlockGeneratorBenchmark extends AbstractBenchmark {
+
+    public enum Strategy {
+        POOLED {
+            @Override
+            PostEntityProvider<?> entityProvider() {
+                return new Sequence50PostEntityProvider();
+            }
+        },
+        POOLED_LO {
+            @Override
+            PostEntityProvider<?> entityProvider() {
+                return new PooledLo50PostEntityProvider();
+            }
+        },
+        TSID_BLOCK {
+            @Override
+            PostEntityProvider<?> entityProvider() {
+                return new TsidBlockPostEntityProvider();
+            }
+        };
+
+        abstract PostEntityProvider<?> entityProvider();
+    }
+
+    @Param({"HSQLDB"})
+    private Database database;
+
+    @Param({"POOLED", "POOLED_LO", "TSID_BLOCK"})
+    private Strategy strategy;
+
+    private int insertCount = 50;
+
+    private PostEntityProvider<?> entityProvider;
+
+    @Override
+    protected Database database() {
+        return database;
+    }
+
+    @Override
+    protected Class<?>[] entities() {
+        entityProvider = strategy.entityProvider();
+        return entityProvider.entities();
+    }
+
+    @Override
+    protected Properties properties() {
+        Properties properties = super.properties();
+        properties.put("hibernate.order_inserts", "true");
+        properties.put("hibernate.jdbc.batch_size", String.valueOf(insertCount));
+        return properties;
+    }
+
+    @Override
+    protected boolean connectionPooling() {
+        return true;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(50)
+    public void persist() {
+        doInJPA(entityManager -> {
+            for (int j = 0; j < insertCount; j++) {
+                entityManager.persist(entityProvider.newPost());
+            }
+        });
+    }
+}
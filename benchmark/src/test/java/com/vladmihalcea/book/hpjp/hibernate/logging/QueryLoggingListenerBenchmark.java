@@ -0,0 +1,193 @@
+package com.vladmihalcea.book.hpjp.hibernate.logging;
+
+import com.vladmihalcea.book.hpjp.util.AbstractBenchmark;
+import com.vladmihalcea.book.hpjp.util.logging.AsyncQueryLoggingListener;
+import com.vladmihalcea.book.hpjp.util.logging.InlineQueryLogEntryCreator;
+import com.vladmihalcea.book.hpjp.util.providers.Database;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.listener.logging.SLF4JQueryLoggingListener;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the synchronous {@link SLF4JQueryLoggingListener} and {@link InlineQueryLogEntryCreator}
+ * combination used by {@link com.vladmihalcea.book.hpjp.util.DataSourceProxyType#DATA_SOURCE_PROXY}
+ * with the {@link AsyncQueryLoggingListener}, while multiple threads execute prepared statements.
+ * <p>
+ * Both listeners log at the {@code DEBUG} level into the {@code target/benchmark-sql.log} file,
+ * as configured by {@code logback-test.xml}.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class QueryLoggingListenerBenchmark extends AbstractBenchmark {
+
+    public enum Listener {
+        NONE {
+            @Override
+            QueryExecutionListener newListener() {
+                return null;
+            }
+        },
+        SLF4J_INLINE {
+            @Override
+            QueryExecutionListener newListener() {
+                SLF4JQueryLoggingListener loggingListener = new SLF4JQueryLoggingListener();
+                loggingListener.setQueryLogEntryCreator(new InlineQueryLogEntryCreator());
+                return loggingListener;
+            }
+        },
+        ASYNC {
+            @Override
+            QueryExecutionListener newListener() {
+                return new AsyncQueryLoggingListener();
+            }
+        };
+
+        abstract QueryExecutionListener newListener();
+    }
+
+    private static final int POST_COUNT = 100;
+
+    @Param({"HSQLDB"})
+    private Database database;
+
+    @Param({"NONE", "SLF4J_INLINE", "ASYNC"})
+    private Listener listener;
+
+    private QueryExecutionListener queryExecutionListener;
+
+    private HikariDataSource poolingDataSource;
+
+    @Override
+    protected Database database() {
+        return database;
+    }
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            Post.class
+        };
+    }
+
+    @Override
+    protected DataSource newDataSource() {
+        queryExecutionListener = listener.newListener();
+        DataSource dataSource = dataSourceProvider().dataSource();
+        if (queryExecutionListener != null) {
+            dataSource = ProxyDataSourceBuilder
+                .create(dataSource)
+                .name(listener.name())
+                .listener(queryExecutionListener)
+                .build();
+        }
+        poolingDataSource = connectionPoolDataSource(dataSource);
+        return poolingDataSource;
+    }
+
+    @Override
+    protected void afterInit() {
+        doInJPA(entityManager -> {
+            for (long id = 1; id <= POST_COUNT; id++) {
+                entityManager.persist(
+                    new Post()
+                        .setId(id)
+                        .setTitle(String.format("High-Performance Java Persistence, part %d", id))
+                        .setScore((int) (id % 10))
+                );
+            }
+        });
+    }
+
+    @Override
+    public void tearDown() {
+        if (queryExecutionListener instanceof AsyncQueryLoggingListener asyncListener) {
+            asyncListener.close();
+            LOGGER.info("The async listener dropped {} entries", asyncListener.getDroppedCount());
+        }
+        super.tearDown();
+        poolingDataSource.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public int executeStatements() throws SQLException {
+        int rowCount = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try (Connection connection = dataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement("""
+                SELECT id, title
+                FROM post
+                WHERE id BETWEEN ? AND ? AND score >= ? AND title LIKE ?
+                """)) {
+            for (int i = 0; i < 10; i++) {
+                long minId = random.nextLong(1, POST_COUNT);
+                statement.setLong(1, minId);
+                statement.setLong(2, minId + 5);
+                statement.setInt(3, random.nextInt(10));
+                statement.setString(4, "High-Performance%");
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        rowCount++;
+                    }
+                }
+            }
+        }
+        return rowCount;
+    }
+
+    @Entity(name = "Post")
+    @Table(name = "post")
+    public static class Post {
+
+        @Id
+        private Long id;
+
+        private String title;
+
+        private int score;
+
+        public Long getId() {
+            return id;
+        }
+
+        public Post setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public Post setTitle(String title) {
+            this.title = title;
+            return this;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public Post setScore(int score) {
+            this.score = score;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.vladmihalcea.book.hpjp.hibernate.mapping.encrypt;
+
+import com.vladmihalcea.book.hpjp.util.CryptoUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decrypting a page of encrypted column values with {@link CryptoUtils},
+ * which derives the key and looks up the cipher on every call, and with the {@link ColumnEncryptor},
+ * both value by value and with the parallel {@link ColumnEncryptor#decryptAll(List)} batch API.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1024m", "-Xmx1024m"})
+public class ColumnEncryptorBenchmark {
+
+    @Param({"100", "10000"})
+    private int rowCount;
+
+    private final ColumnEncryptor columnEncryptor = ColumnEncryptor.getInstance();
+
+    private List<String> cryptoUtilsValues;
+
+    private List<String> columnEncryptorValues;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cryptoUtilsValues = new ArrayList<>(rowCount);
+        columnEncryptorValues = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            String emailAddress = "user-" + i + "@vladmihalcea.com";
+            cryptoUtilsValues.add(CryptoUtils.encrypt(emailAddress));
+            columnEncryptorValues.add(columnEncryptor.encrypt(emailAddress));
+        }
+    }
+
+    @Benchmark
+    public List<String> cryptoUtilsDecrypt() {
+        List<String> values = new ArrayList<>(rowCount);
+        for (String value : cryptoUtilsValues) {
+            values.add(CryptoUtils.decrypt(value));
+        }
+        return values;
+    }
+
+    @Benchmark
+    public List<String> columnEncryptorDecrypt() {
+        List<String> values = new ArrayList<>(rowCount);
+        for (String value : columnEncryptorValues) {
+            values.add(columnEncryptor.decrypt(value));
+        }
+        return values;
+    }
+
+    @Benchmark
+    public List<String> columnEncryptorDecryptAll() {
+        return columnEncryptor.decryptAll(columnEncryptorValues);
+    }
+
+    @Benchmark
+    public String cryptoUtilsEncrypt() {
+        return CryptoUtils.encrypt("vlad@vladmihalcea.com");
+    }
+
+    @Benchmark
+    public String columnEncryptorEncrypt() {
+        return columnEncryptor.encrypt("vlad@vladmihalcea.com");
+    }
+}
@@ -0,0 +1,77 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.dto.projection.mapper;
+
+import com.vladmihalcea.book.hpjp.hibernate.query.dto.projection.transformer.DistinctListTransformer;
+import com.vladmihalcea.book.hpjp.hibernate.query.dto.projection.transformer.PostCommentDTO;
+import com.vladmihalcea.book.hpjp.hibernate.query.dto.projection.transformer.PostDTO;
+import com.vladmihalcea.book.hpjp.hibernate.query.dto.projection.transformer.PostDTOTupleTransformer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link PostDTOTupleTransformer}, which builds an alias map for every row and relies on
+ * the {@link DistinctListTransformer} to remove the duplicate parents, with the {@link ParentChildTupleTransformer},
+ * which uses the row mappers compiled once per alias layout.
+ * <p>
+ * The tuples are built upfront, as Hibernate would pass them to the transformer, so only the
+ * transformation cost is measured. Run it with {@code -prof gc} to see the allocation rate.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class DTOMapperBenchmark {
+
+    public static final int COMMENTS_PER_POST = 10;
+
+    @Param({"10000", "100000"})
+    private int rowCount;
+
+    private final String[] aliases = {"p_id", "p_title", "pc_id", "pc_review"};
+
+    private Object[][] tuples;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tuples = new Object[rowCount][];
+        for (int i = 0; i < rowCount; i++) {
+            long postId = i / COMMENTS_PER_POST + 1;
+            tuples[i] = new Object[] {
+                postId,
+                "High-Performance Java Persistence, part " + postId,
+                (long) i + 1,
+                "Review " + (i + 1)
+            };
+        }
+    }
+
+    @Benchmark
+    public List<PostDTO> aliasMapTransformer() {
+        PostDTOTupleTransformer transformer = new PostDTOTupleTransformer();
+        List<PostDTO> rows = new ArrayList<>(rowCount);
+        for (Object[] tuple : tuples) {
+            rows.add(transformer.transformTuple(tuple, aliases));
+        }
+        return DistinctListTransformer.INSTANCE.transformList(rows);
+    }
+
+    @Benchmark
+    public List<PostDTO> compiledMapperTransformer() {
+        ParentChildTupleTransformer<PostDTO, PostCommentDTO> transformer = new ParentChildTupleTransformer<>(
+            PostDTO.class, "p_",
+            PostCommentDTO.class, "pc_",
+            (post, comment) -> post.getComments().add(comment)
+        );
+        List<PostDTO> rows = new ArrayList<>(rowCount);
+        for (Object[] tuple : tuples) {
+            rows.add(transformer.transformTuple(tuple, aliases));
+        }
+        return transformer.transformList(rows);
+    }
+}
@@ -0,0 +1,103 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.join.algorithm;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link JoinAlgorithm} strategies when joining {@code post} and {@code post_comment} rows,
+ * with the {@code post_comment} relation ten times larger than the {@code post} one.
+ * <p>
+ * The {@link JoinAlgorithm#NESTED_LOOPS} strategy is quadratic, so it's measured separately
+ * by {@link NestedLoopsJoinBenchmark}.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class JoinAlgorithmBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    private int postCommentCount;
+
+    @Param({"MERGE", "HASH", "PARTITIONED_HASH"})
+    private JoinAlgorithm joinAlgorithm;
+
+    private long[] postIds;
+
+    private String[] postTitles;
+
+    private long[] postCommentPostIds;
+
+    private String[] postCommentReviews;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        JoinInput joinInput = new JoinInput(postCommentCount);
+        postIds = joinInput.postIds;
+        postTitles = joinInput.postTitles;
+        postCommentPostIds = joinInput.postCommentPostIds;
+        postCommentReviews = joinInput.postCommentReviews;
+    }
+
+    @Benchmark
+    public JoinPairs join() {
+        return joinAlgorithm.join(postIds, postCommentPostIds);
+    }
+
+    @Benchmark
+    public void joinAndProject(Blackhole blackhole) {
+        JoinPairs joinPairs = joinAlgorithm.join(postIds, postCommentPostIds);
+        blackhole.consume(
+            TupleTable.of(joinPairs)
+                .addLongColumn("post_id", i -> postCommentPostIds[joinPairs.rightRow(i)])
+                .addColumn("post_title", i -> postTitles[joinPairs.leftRow(i)])
+                .addColumn("review", i -> postCommentReviews[joinPairs.rightRow(i)])
+        );
+    }
+
+    /**
+     * The {@code post} ids are shuffled, and every {@code post_comment} references a random {@code post}.
+     */
+    static class JoinInput {
+
+        final long[] postIds;
+
+        final String[] postTitles;
+
+        final long[] postCommentPostIds;
+
+        final String[] postCommentReviews;
+
+        JoinInput(int postCommentCount) {
+            Random random = new Random(postCommentCount);
+            int postCount = Math.max(postCommentCount / 10, 1);
+
+            postIds = new long[postCount];
+            postTitles = new String[postCount];
+            for (int i = 0; i < postCount; i++) {
+                postIds[i] = i + 1;
+                postTitles[i] = String.format("Post no. %d", i + 1);
+            }
+            for (int i = postCount - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                long postId = postIds[i];
+                postIds[i] = postIds[j];
+                postIds[j] = postId;
+            }
+
+            postCommentPostIds = new long[postCommentCount];
+            postCommentReviews = new String[postCommentCount];
+            for (int i = 0; i < postCommentCount; i++) {
+                postCommentPostIds[i] = 1 + random.nextInt(postCount);
+                postCommentReviews[i] = "Comment";
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.join.algorithm;
+
+import com.vladmihalcea.book.hpjp.hibernate.query.join.algorithm.JoinAlgorithmBenchmark.JoinInput;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link JoinAlgorithm#NESTED_LOOPS} on the same input as {@link JoinAlgorithmBenchmark},
+ * but only up to {@code 10^5} rows since the algorithm is quadratic.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1024m", "-Xmx1024m"})
+public class NestedLoopsJoinBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int postCommentCount;
+
+    private JoinInput joinInput;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        joinInput = new JoinInput(postCommentCount);
+    }
+
+    @Benchmark
+    public JoinPairs join() {
+        return JoinAlgorithm.NESTED_LOOPS.join(joinInput.postIds, joinInput.postCommentPostIds);
+    }
+}
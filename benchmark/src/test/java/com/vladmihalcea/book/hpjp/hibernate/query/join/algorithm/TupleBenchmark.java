@@ -0,0 +1,60 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.join.algorithm;
+
+import com.vladmihalcea.book.hpjp.hibernate.query.join.algorithm.JoinAlgorithmBenchmark.JoinInput;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of projecting the same {@link JoinPairs} as a list of map-based {@link Tuple} objects
+ * versus a columnar {@link TupleTable}. Run it with {@code -prof gc} to see the allocation rate.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class TupleBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int postCommentCount;
+
+    private JoinInput joinInput;
+
+    private JoinPairs joinPairs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        joinInput = new JoinInput(postCommentCount);
+        joinPairs = JoinAlgorithm.HASH.join(joinInput.postIds, joinInput.postCommentPostIds);
+    }
+
+    @Benchmark
+    public List<Tuple> mapTuples() {
+        List<Tuple> tuples = new ArrayList<>(joinPairs.size());
+        for (int i = 0; i < joinPairs.size(); i++) {
+            int postRow = joinPairs.leftRow(i);
+            int postCommentRow = joinPairs.rightRow(i);
+            tuples.add(
+                new Tuple()
+                    .add("post_id", joinInput.postCommentPostIds[postCommentRow])
+                    .add("post_title", joinInput.postTitles[postRow])
+                    .add("review", joinInput.postCommentReviews[postCommentRow])
+            );
+        }
+        return tuples;
+    }
+
+    @Benchmark
+    public TupleTable columnarTuples() {
+        return TupleTable.of(joinPairs)
+            .addLongColumn("post_id", i -> joinInput.postCommentPostIds[joinPairs.rightRow(i)])
+            .addColumn("post_title", i -> joinInput.postTitles[joinPairs.leftRow(i)])
+            .addColumn("review", i -> joinInput.postCommentReviews[joinPairs.rightRow(i)]);
+    }
+}
@@ -0,0 +1,93 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.recursive;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the in-memory part of the {@code PostCommentScoreFetchProjectionPerformanceTest}, which groups the rows
+ * by identifier and sorts all roots, with the {@link PostCommentScoreTreeBuilder} top roots selection.
+ * <p>
+ * The tree rows are mutated by {@link PostCommentScore#addChild(PostCommentScore)},
+ * so they are recreated before every invocation.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class PostCommentScoreTreeBuilderBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int commentCount;
+
+    private int rank = 10;
+
+    private long[] parentIds;
+
+    private long[] scores;
+
+    private List<PostCommentScore> comments;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        Random random = new Random(42);
+        parentIds = new long[commentCount];
+        scores = new long[commentCount];
+        for (int i = 0; i < commentCount; i++) {
+            parentIds[i] = i == 0 || random.nextInt(10) == 0 ? 0 : 1 + random.nextInt(i);
+            scores[i] = random.nextInt(21) - 10;
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        comments = new ArrayList<>(commentCount);
+        for (int i = 0; i < commentCount; i++) {
+            comments.add(
+                new PostCommentScore(i + 1, parentIds[i] > 0 ? parentIds[i] : null, null, null, scores[i])
+            );
+        }
+    }
+
+    @Benchmark
+    public List<PostCommentScore> sortAllRoots() {
+        Map<Long, List<PostCommentScore>> postCommentScoreMap = comments.stream()
+            .collect(Collectors.groupingBy(PostCommentScore::getId));
+
+        List<PostCommentScore> roots = new ArrayList<>();
+        for (PostCommentScore postCommentScore : comments) {
+            Long parentId = postCommentScore.getParentId();
+            if (parentId == null) {
+                roots.add(postCommentScore);
+            } else {
+                postCommentScoreMap.get(parentId).get(0).addChild(postCommentScore);
+            }
+        }
+        roots.sort(Comparator.comparing(PostCommentScore::getTotalScore).reversed());
+        return roots.size() > rank ? roots.subList(0, rank) : roots;
+    }
+
+    @Benchmark
+    public List<PostCommentScore> topRoots() {
+        return topRoots(false);
+    }
+
+    @Benchmark
+    public List<PostCommentScore> parallelTopRoots() {
+        return topRoots(true);
+    }
+
+    private List<PostCommentScore> topRoots(boolean parallel) {
+        PostCommentScoreTreeBuilder builder = new PostCommentScoreTreeBuilder(commentCount).setParallel(parallel);
+        for (PostCommentScore comment : comments) {
+            builder.add(comment);
+        }
+        return builder.topRoots(rank);
+    }
+}
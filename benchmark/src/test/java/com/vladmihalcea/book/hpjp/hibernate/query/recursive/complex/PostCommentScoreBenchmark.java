@@ -0,0 +1,88 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.recursive.complex;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH version of the {@link AbstractPostCommentScorePerformanceTest} family.
+ * <p>
+ * The benchmark delegates to the existing test classes, so it requires PostgreSQL,
+ * and every {@code postCommentScores} call runs in its own transaction.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1024m", "-Xmx1024m"})
+public class PostCommentScoreBenchmark {
+
+    public enum Strategy {
+        FETCH_ALL {
+            @Override
+            AbstractPostCommentScorePerformanceTest newTest(int postCount, int commentCount) {
+                return new PostCommentScoreFetchAllPerformanceTest(postCount, commentCount);
+            }
+        },
+        FETCH_PROJECTION {
+            @Override
+            AbstractPostCommentScorePerformanceTest newTest(int postCount, int commentCount) {
+                return new PostCommentScoreFetchProjectionPerformanceTest(postCount, commentCount);
+            }
+        },
+        RECURSIVE_CTE {
+            @Override
+            AbstractPostCommentScorePerformanceTest newTest(int postCount, int commentCount) {
+                return new PostCommentScoreRecursiveCTEPerformanceTest(postCount, commentCount);
+            }
+        },
+        RECURSIVE_CTE_SELECT {
+            @Override
+            AbstractPostCommentScorePerformanceTest newTest(int postCount, int commentCount) {
+                return new PostCommentScoreRecursiveCTESelectPerformanceTest(postCount, commentCount);
+            }
+        },
+        STREAMING_TOP_K {
+            @Override
+            AbstractPostCommentScorePerformanceTest newTest(int postCount, int commentCount) {
+                return new PostCommentScoreStreamingTopKPerformanceTest(postCount, commentCount);
+            }
+        };
+
+        abstract AbstractPostCommentScorePerformanceTest newTest(int postCount, int commentCount);
+    }
+
+    @Param({"FETCH_ALL", "FETCH_PROJECTION", "RECURSIVE_CTE", "RECURSIVE_CTE_SELECT", "STREAMING_TOP_K"})
+    private Strategy strategy;
+
+    @Param({"4", "16", "64"})
+    private int commentCount;
+
+    private int postCount = 10;
+
+    private int rank = 3;
+
+    private AbstractPostCommentScorePerformanceTest test;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        test = strategy.newTest(postCount, commentCount);
+        test.init();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        test.destroy();
+    }
+
+    @Benchmark
+    public void postCommentScores(Blackhole blackhole) {
+        for (long postId = 0; postId < postCount; postId++) {
+            blackhole.consume(test.postCommentScores(postId, rank));
+        }
+    }
+}
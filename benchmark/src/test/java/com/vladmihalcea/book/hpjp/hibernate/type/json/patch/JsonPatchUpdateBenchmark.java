@@ -0,0 +1,111 @@
+package com.vladmihalcea.book.hpjp.hibernate.type.json.patch;
+
+import com.vladmihalcea.book.hpjp.hibernate.type.json.model.BaseEntity;
+import com.vladmihalcea.book.hpjp.hibernate.type.json.model.Event;
+import com.vladmihalcea.book.hpjp.hibernate.type.json.model.Location;
+import com.vladmihalcea.book.hpjp.util.AbstractBenchmark;
+import com.vladmihalcea.book.hpjp.util.providers.Database;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Type;
+import org.hibernate.integrator.spi.Integrator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares updating the {@code country} of an {@link Event} {@link Location} by writing the whole
+ * {@code jsonb} document, as the {@code JsonBinaryType} does, against the {@code jsonb_set} patch
+ * written for a {@link JsonPatchType} attribute.
+ * <p>
+ * The document size is given by the length of the {@code city} property, so that the 100 KB
+ * and the 1 MB documents are stored out of line, in the TOAST table, while the 1 KB one is not.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonPatchUpdateBenchmark extends AbstractBenchmark {
+
+    public enum Strategy {
+        FULL_WRITE,
+        PATCH
+    }
+
+    @Param({"FULL_WRITE", "PATCH"})
+    private Strategy strategy;
+
+    @Param({"1024", "102400", "1048576"})
+    private int documentSize;
+
+    private long updateCount;
+
+    @Override
+    protected Database database() {
+        return Database.POSTGRESQL;
+    }
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            Event.class,
+            PatchedEvent.class,
+        };
+    }
+
+    @Override
+    protected Integrator integrator() {
+        return JsonPatchIntegrator.INSTANCE;
+    }
+
+    @Override
+    protected void afterInit() {
+        doInJPA(entityManager -> {
+            Location location = new Location();
+            location.setCountry("Romania");
+            location.setCity("Cluj-Napoca " + "x".repeat(Math.max(0, documentSize - 50)));
+
+            Event event = new Event();
+            event.setId(1L);
+            event.setLocation(location);
+            entityManager.persist(event);
+
+            PatchedEvent patchedEvent = new PatchedEvent();
+            patchedEvent.setId(1L);
+            patchedEvent.setLocation(location);
+            entityManager.persist(patchedEvent);
+        });
+    }
+
+    @Benchmark
+    public void updateCountry() {
+        String country = (updateCount++ % 2 == 0) ? "Moldova" : "Romania";
+        doInJPA(entityManager -> {
+            Location location = strategy == Strategy.FULL_WRITE ?
+                entityManager.find(Event.class, 1L).getLocation() :
+                entityManager.find(PatchedEvent.class, 1L).getLocation();
+            location.setCountry(country);
+        });
+    }
+
+    @Entity(name = "PatchedEvent")
+    @Table(name = "patched_event")
+    @DynamicUpdate
+    public static class PatchedEvent extends BaseEntity {
+
+        @Type(JsonPatchType.class)
+        @Column(columnDefinition = "jsonb")
+        private Location location;
+
+        public Location getLocation() {
+            return location;
+        }
+
+        public void setLocation(Location location) {
+            this.location = location;
+        }
+    }
+}
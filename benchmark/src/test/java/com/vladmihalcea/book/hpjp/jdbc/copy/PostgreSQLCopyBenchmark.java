@@ -0,0 +1,137 @@
+package com.vladmihalcea.book.hpjp.jdbc.copy;
+
+import com.vladmihalcea.book.hpjp.jdbc.copy.CopyRowCodecTest.PostRow;
+import com.vladmihalcea.book.hpjp.util.AbstractBenchmark;
+import com.vladmihalcea.book.hpjp.util.providers.DataSourceProvider;
+import com.vladmihalcea.book.hpjp.util.providers.Database;
+import com.vladmihalcea.book.hpjp.util.providers.PostgreSQLDataSourceProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.vladmihalcea.book.hpjp.jdbc.copy.CopyRowCodecTest.POST_ROW_ENCODER;
+
+/**
+ * Compares loading the same rows with the JDBC batch inserts of the {@code PostgreSQLRewriteBatchInsertsTest},
+ * with and without {@code reWriteBatchedInserts}, against the {@link PostgreSQLBulkCopy} {@code COPY} formats.
+ * <p>
+ * The benchmark requires PostgreSQL, and the table is truncated before every invocation.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PostgreSQLCopyBenchmark extends AbstractBenchmark {
+
+    public enum Strategy {
+        BATCH_INSERT,
+        BATCH_INSERT_REWRITE,
+        COPY_TEXT,
+        COPY_BINARY,
+        PARALLEL_COPY_BINARY
+    }
+
+    @Param({"BATCH_INSERT", "BATCH_INSERT_REWRITE", "COPY_TEXT", "COPY_BINARY", "PARALLEL_COPY_BINARY"})
+    private Strategy strategy;
+
+    @Param({"10000", "100000"})
+    private int rowCount;
+
+    private int batchSize = 1000;
+
+    private int partitionCount = 4;
+
+    private List<PostRow> posts;
+
+    private List<List<PostRow>> partitions;
+
+    @Override
+    protected Database database() {
+        return Database.POSTGRESQL;
+    }
+
+    @Override
+    protected DataSourceProvider dataSourceProvider() {
+        return ((PostgreSQLDataSourceProvider) super.dataSourceProvider())
+            .setReWriteBatchedInserts(strategy == Strategy.BATCH_INSERT_REWRITE);
+    }
+
+    @Override
+    protected boolean connectionPooling() {
+        return true;
+    }
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            PostgreSQLBulkCopyTest.Post.class
+        };
+    }
+
+    @Override
+    protected void afterInit() {
+        posts = PostgreSQLBulkCopyTest.posts(1, rowCount);
+        partitions = new ArrayList<>();
+        int partitionSize = (rowCount + partitionCount - 1) / partitionCount;
+        for (int i = 0; i < rowCount; i += partitionSize) {
+            partitions.add(posts.subList(i, Math.min(rowCount, i + partitionSize)));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void truncate() {
+        doInJDBC(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("TRUNCATE TABLE post");
+            }
+        });
+    }
+
+    @Benchmark
+    public long load() throws SQLException {
+        if (strategy == Strategy.PARALLEL_COPY_BINARY) {
+            return new PostgreSQLBulkCopy()
+                .parallelCopyIn(dataSource(), "post", PostgreSQLBulkCopyTest.COLUMNS, partitions, POST_ROW_ENCODER, partitionCount);
+        }
+        return doInJDBC(connection -> {
+            return switch (strategy) {
+                case COPY_TEXT -> new PostgreSQLBulkCopy()
+                    .setFormat(CopyFormat.TEXT)
+                    .copyIn(connection, "post", PostgreSQLBulkCopyTest.COLUMNS, posts, POST_ROW_ENCODER);
+                case COPY_BINARY -> new PostgreSQLBulkCopy()
+                    .copyIn(connection, "post", PostgreSQLBulkCopyTest.COLUMNS, posts, POST_ROW_ENCODER);
+                default -> batchInsert(connection);
+            };
+        });
+    }
+
+    private long batchInsert(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+            "insert into post (id, title, created_on, published, score, version) values (?, ?, ?, ?, ?, ?)")) {
+            int count = 0;
+            for (PostRow post : posts) {
+                int index = 0;
+                statement.setLong(++index, post.id());
+                statement.setString(++index, post.title());
+                statement.setTimestamp(++index, Timestamp.valueOf(post.createdOn()));
+                statement.setBoolean(++index, post.published());
+                statement.setInt(++index, post.score());
+                statement.setShort(++index, post.version());
+                statement.addBatch();
+                if (++count % batchSize == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+            return count;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.vladmihalcea.book.hpjp.jdbc.fetching.stream;
+
+import com.vladmihalcea.book.hpjp.jdbc.fetching.stream.FraudDetectionEngineTest.PostCommentDetails;
+import com.vladmihalcea.book.hpjp.jdbc.fetching.stream.FraudDetectionEngineTest.StreamCheckpoint;
+import com.vladmihalcea.book.hpjp.util.AbstractBenchmark;
+import com.vladmihalcea.book.hpjp.util.providers.Database;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how long the {@link FraudDetectionEngine} takes to scan 10 million {@code post_comment_details} rows.
+ * <p>
+ * Every invocation deletes the checkpoint, so the whole table is scanned again. The rows are spread
+ * over 100,000 posts, and every 1,000th row reuses the IP address and fingerprint of the user
+ * that commented on the same post 100,000 rows before, so the windows have both hits and misses.
+ * <p>
+ * The benchmark requires PostgreSQL, as it generates the rows with {@code generate_series}.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2048m", "-Xmx2048m"})
+public class FraudDetectionEngineBenchmark extends AbstractBenchmark {
+
+    public static final int ROW_COUNT = 10_000_000;
+
+    @Param({"1", "2", "4"})
+    private int workerCount;
+
+    @Param({"1000", "10000"})
+    private int fetchSize;
+
+    private final LongAdder alertCount = new LongAdder();
+
+    private FraudDetectionEngine engine;
+
+    @Override
+    protected Database database() {
+        return Database.POSTGRESQL;
+    }
+
+    @Override
+    protected boolean connectionPooling() {
+        return true;
+    }
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            PostCommentDetails.class,
+            StreamCheckpoint.class,
+        };
+    }
+
+    @Override
+    protected void afterInit() {
+        doInJPA(entityManager -> {
+            entityManager.createNativeQuery("""
+                INSERT INTO post_comment_details (id, post_id, user_id, ip, fingerprint)
+                SELECT
+                    id,
+                    id % 100000,
+                    id,
+                    '10.' || (device / 65536 % 256) || '.' || (device / 256 % 256) || '.' || (device % 256),
+                    md5(device::text)
+                FROM (
+                    SELECT
+                        id,
+                        CASE WHEN id % 1000 = 0 THEN id - 100000 ELSE id END AS device
+                    FROM generate_series(1, :rowCount) AS id
+                ) AS d
+                """)
+            .setParameter("rowCount", ROW_COUNT)
+            .executeUpdate();
+        });
+
+        engine = new FraudDetectionEngine(
+            dataSource(),
+            new JdbcCheckpointStore(dataSource()),
+            "multi-account",
+            (postId, ip, fingerprint, userIds) -> alertCount.increment()
+        )
+        .setWorkerCount(workerCount)
+        .setFetchSize(fetchSize);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetCheckpoint() {
+        doInJPA(entityManager -> {
+            entityManager.createNativeQuery("DELETE FROM stream_checkpoint")
+            .executeUpdate();
+        });
+    }
+
+    @Override
+    public void tearDown() {
+        LOGGER.info("Alert count: {}", alertCount.sum());
+        super.tearDown();
+    }
+
+    @Benchmark
+    public long scan() {
+        return engine.run();
+    }
+}
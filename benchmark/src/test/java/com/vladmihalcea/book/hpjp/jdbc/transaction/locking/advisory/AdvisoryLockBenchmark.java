@@ -0,0 +1,143 @@
+package com.vladmihalcea.book.hpjp.jdbc.transaction.locking.advisory;
+
+import com.vladmihalcea.book.hpjp.util.AbstractBenchmark;
+import com.vladmihalcea.book.hpjp.util.providers.Database;
+import com.zaxxer.hikari.HikariConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the raw session advisory locks used by {@link PostgreSQLSessionAdvisoryLocksTest}
+ * and {@link PostgreSQLSessionTryAdvisoryLocksTest} with the {@link AdvisoryLockManager},
+ * while {@link #THREAD_COUNT} threads lock a random key out of the given number of keys.
+ * <p>
+ * The raw strategies pin a pooled connection for as long as they hold the lock,
+ * while the lock manager only uses its two dedicated connections. The benchmark requires PostgreSQL.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AdvisoryLockBenchmark extends AbstractBenchmark {
+
+	private static final int THREAD_COUNT = 16;
+
+	public enum Strategy {
+		SESSION_LOCK,
+		SESSION_TRY_LOCK,
+		LOCK_MANAGER
+	}
+
+	@Param({"SESSION_LOCK", "SESSION_TRY_LOCK", "LOCK_MANAGER"})
+	private Strategy strategy;
+
+	@Param({"1", "6", "64"})
+	private int keyCount;
+
+	@Param({"1000"})
+	private long workTokens;
+
+	private AdvisoryLockManager lockManager;
+
+	@Override
+	protected Database database() {
+		return Database.POSTGRESQL;
+	}
+
+	@Override
+	protected Class<?>[] entities() {
+		return new Class<?>[] {
+		};
+	}
+
+	@Override
+	protected boolean connectionPooling() {
+		return true;
+	}
+
+	@Override
+	protected HikariConfig hikariConfig(DataSource dataSource) {
+		HikariConfig hikariConfig = super.hikariConfig( dataSource );
+		hikariConfig.setMaximumPoolSize( THREAD_COUNT + 2 );
+		return hikariConfig;
+	}
+
+	@Override
+	protected void afterInit() {
+		if ( strategy == Strategy.LOCK_MANAGER ) {
+			lockManager = new AdvisoryLockManager( dataSource() ).setConnectionCount( 2 ).start();
+		}
+	}
+
+	@Override
+	public void tearDown() {
+		if ( lockManager != null ) {
+			LOGGER.info(
+				"The lock manager asked the database {} times, and granted {} locks locally",
+				lockManager.getDatabaseAttemptCount(),
+				lockManager.getLocalGrantCount()
+			);
+			lockManager.close();
+		}
+		super.tearDown();
+	}
+
+	@Benchmark
+	@Threads(THREAD_COUNT)
+	public void lock(Blackhole blackhole) throws SQLException {
+		int key = ThreadLocalRandom.current().nextInt( keyCount );
+		switch ( strategy ) {
+			case SESSION_LOCK:
+				try (Connection connection = dataSource().getConnection()) {
+					try (PreparedStatement statement = connection.prepareStatement( "select pg_advisory_lock(?)" )) {
+						statement.setLong( 1, AdvisoryLockManager.lockId( "log-" + key ) );
+						statement.executeQuery().close();
+					}
+					try {
+						Blackhole.consumeCPU( workTokens );
+					}
+					finally {
+						execute( connection, "select pg_advisory_unlock(?)", key );
+					}
+				}
+				break;
+			case SESSION_TRY_LOCK:
+				try (Connection connection = dataSource().getConnection()) {
+					while ( !execute( connection, "select pg_try_advisory_lock(?)", key ) ) {
+						Thread.onSpinWait();
+					}
+					try {
+						Blackhole.consumeCPU( workTokens );
+					}
+					finally {
+						execute( connection, "select pg_advisory_unlock(?)", key );
+					}
+				}
+				break;
+			case LOCK_MANAGER:
+				try (AdvisoryLock lock = lockManager.lock( "log-" + key )) {
+					Blackhole.consumeCPU( workTokens );
+					blackhole.consume( lock );
+				}
+				break;
+		}
+	}
+
+	private boolean execute(Connection connection, String sql, int key) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement( sql )) {
+			statement.setLong( 1, AdvisoryLockManager.lockId( "log-" + key ) );
+			try (ResultSet resultSet = statement.executeQuery()) {
+				return resultSet.next() && resultSet.getBoolean( 1 );
+			}
+		}
+	}
+}
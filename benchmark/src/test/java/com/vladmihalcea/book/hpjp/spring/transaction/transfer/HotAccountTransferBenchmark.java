@@ -0,0 +1,112 @@
+package com.vladmihalcea.book.hpjp.spring.transaction.transfer;
+
+import com.vladmihalcea.book.hpjp.spring.transaction.transfer.config.ACIDRaceConditionTransferConfiguration;
+import com.vladmihalcea.book.hpjp.spring.transaction.transfer.domain.Account;
+import com.vladmihalcea.book.hpjp.spring.transaction.transfer.repository.AccountRepository;
+import com.vladmihalcea.book.hpjp.spring.transaction.transfer.service.StripedTransferService;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Measures how many transfers per second can debit the same hot account, with and without striping it.
+ * <p>
+ * Every invocation runs {@link #TRANSFER_COUNT} transfers split across the given number of concurrent threads,
+ * and every thread credits its own account, so the hot account is the only contended row.
+ * The benchmark requires PostgreSQL, and since the connection pool is limited to 64 connections,
+ * higher concurrency levels also wait for a pooled connection.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HotAccountTransferBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HotAccountTransferBenchmark.class);
+
+    private static final int TRANSFER_COUNT = 1280;
+
+    private static final String HOT_IBAN = "Hot-0";
+
+    @Param({"0", "16"})
+    private int stripeCount;
+
+    @Param({"1", "2", "4", "8", "16", "32", "64", "128"})
+    private int concurrency;
+
+    private AnnotationConfigApplicationContext applicationContext;
+
+    private StripedTransferService transferService;
+
+    private ExecutorService executorService;
+
+    private List<Callable<Integer>> tasks;
+
+    @Setup
+    public void setUp() {
+        applicationContext = new AnnotationConfigApplicationContext(ACIDRaceConditionTransferConfiguration.class);
+        transferService = applicationContext.getBean(StripedTransferService.class);
+
+        List<Account> accounts = new ArrayList<>();
+        accounts.add(
+            new Account()
+                .setIban(HOT_IBAN)
+                .setOwner("Hot")
+                .setBalance(Long.MAX_VALUE / 2)
+        );
+        for (int i = 1; i <= concurrency; i++) {
+            accounts.add(
+                new Account()
+                    .setIban("Account-" + i)
+                    .setOwner("Owner " + i)
+                    .setBalance(0)
+            );
+        }
+        applicationContext.getBean(AccountRepository.class).saveAll(accounts);
+        if (stripeCount > 0) {
+            transferService.stripe(HOT_IBAN, stripeCount);
+        }
+
+        executorService = Executors.newFixedThreadPool(concurrency);
+        tasks = new ArrayList<>(concurrency);
+        for (int i = 1; i <= concurrency; i++) {
+            String toIban = "Account-" + i;
+            int transferCount = TRANSFER_COUNT / concurrency;
+            tasks.add(() -> {
+                int successCount = 0;
+                for (int j = 0; j < transferCount; j++) {
+                    if (transferService.transfer(HOT_IBAN, toIban, 1)) {
+                        successCount++;
+                    }
+                }
+                return successCount;
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+        LOGGER.info("The hot account balance is {}", transferService.consolidate(HOT_IBAN));
+        applicationContext.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSFER_COUNT)
+    public int transfer() throws Exception {
+        int successCount = 0;
+        for (Future<Integer> future : executorService.invokeAll(tasks)) {
+            successCount += future.get();
+        }
+        return successCount;
+    }
+}
@@ -0,0 +1,48 @@
+package com.vladmihalcea.book.hpjp.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base class for the JMH benchmarks that reuses the {@link AbstractTest} bootstrap logic,
+ * so that a benchmark declares its entities, properties and {@link com.vladmihalcea.book.hpjp.util.providers.Database}
+ * just like an integration test does.
+ * <p>
+ * The {@code EntityManagerFactory} is built once per trial, and the data is inserted
+ * via the {@link #afterInit()} callback.
+ *
+ * @author Vlad Mihalcea
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1024m", "-Xmx1024m"})
+public abstract class AbstractBenchmark extends AbstractTest {
+
+    protected BenchmarkParams benchmarkParams;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams benchmarkParams) {
+        this.benchmarkParams = benchmarkParams;
+        init();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        destroy();
+        executorService.shutdownNow();
+    }
+
+    /**
+     * The statement logging done by datasource-proxy would dominate the measured time,
+     * so the benchmarks use the actual JDBC {@link javax.sql.DataSource}.
+     */
+    @Override
+    protected boolean proxyDataSource() {
+        return false;
+    }
+}
@@ -0,0 +1,100 @@
+package com.vladmihalcea.book.hpjp.hibernate.audit.diff;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the {@link AuditLogEntry} objects of a transaction and writes them with a single JDBC batch.
+ *
+ * @author Vlad Mihalcea
+ */
+public class AuditLogBatch {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final String insertSql;
+
+    private final String createdBy;
+
+    private final LocalDateTime trxTimestamp = LocalDateTime.now();
+
+    private final List<AuditLogEntry> entries = new ArrayList<>();
+
+    /**
+     * @param insertSql the statement inserting the table name, row id, DML type, old values, new values,
+     * DML timestamp, created by, and transaction timestamp columns, in this order
+     * @param createdBy the user that changed the rows
+     */
+    public AuditLogBatch(String insertSql, String createdBy) {
+        this.insertSql = insertSql;
+        this.createdBy = createdBy;
+    }
+
+    public void add(AuditLogEntry entry) {
+        entries.add(entry);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public List<AuditLogEntry> entries() {
+        return entries;
+    }
+
+    /**
+     * Write the entries using the given connection, without committing.
+     */
+    public void write(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+            Timestamp trxTimestamp = Timestamp.valueOf(this.trxTimestamp);
+            for (AuditLogEntry entry : entries) {
+                int index = 1;
+                statement.setString(index++, entry.tableName());
+                statement.setString(index++, entry.rowId());
+                statement.setString(index++, entry.dmlType().name());
+                statement.setString(index++, toJson(entry.oldValues()));
+                statement.setString(index++, toJson(entry.newValues()));
+                statement.setTimestamp(index++, Timestamp.valueOf(entry.dmlTimestamp()));
+                statement.setString(index++, createdBy);
+                statement.setTimestamp(index, trxTimestamp);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private String toJson(Map<String, Object> values) {
+        if (values == null) {
+            return null;
+        }
+        ObjectNode node = OBJECT_MAPPER.createObjectNode();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) {
+                node.putNull(entry.getKey());
+            } else if (value instanceof Integer || value instanceof Long || value instanceof Short) {
+                node.put(entry.getKey(), ((Number) value).longValue());
+            } else if (value instanceof BigDecimal number) {
+                node.put(entry.getKey(), number);
+            } else if (value instanceof Number number) {
+                node.put(entry.getKey(), number.doubleValue());
+            } else if (value instanceof Boolean bool) {
+                node.put(entry.getKey(), bool);
+            } else {
+                node.put(entry.getKey(), value.toString());
+            }
+        }
+        return node.toString();
+    }
+}
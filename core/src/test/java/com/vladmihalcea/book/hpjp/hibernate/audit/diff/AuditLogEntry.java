@@ -0,0 +1,21 @@
+package com.vladmihalcea.book.hpjp.hibernate.audit.diff;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * The columns changed by a DML statement: the new values for an {@code INSERT}, the old and the new values
+ * of the modified columns for an {@code UPDATE}, and no values for a {@code DELETE}, since the deleted row can be
+ * rebuilt by replaying its previous entries.
+ *
+ * @author Vlad Mihalcea
+ */
+public record AuditLogEntry(
+    String tableName,
+    String rowId,
+    DmlType dmlType,
+    Map<String, Object> oldValues,
+    Map<String, Object> newValues,
+    LocalDateTime dmlTimestamp
+) {
+}
@@ -0,0 +1,178 @@
+package com.vladmihalcea.book.hpjp.hibernate.audit.diff;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Manages the monthly partitions of the PostgreSQL {@code audit_log} table, which is range-partitioned by
+ * the {@code dml_timestamp} column.
+ * <p>
+ * Since the audit log is append-only, the inserts only touch the partition of the current month,
+ * and the expired entries are removed by dropping whole partitions, which, unlike a {@code DELETE},
+ * generates no dead tuples to vacuum.
+ * <p>
+ * The entries that match no monthly partition go to the {@code DEFAULT} partition, so that the
+ * audit log inserts never fail, and roll back the business transaction, if the partitions are not
+ * created ahead of time. Those entries are moved to their monthly partition once it's created.
+ *
+ * @author Vlad Mihalcea
+ */
+public class AuditLogPartitionManager {
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final String auditLogTable;
+
+    public AuditLogPartitionManager() {
+        this(ColumnDiffAuditEventListener.AUDIT_LOG_TABLE);
+    }
+
+    public AuditLogPartitionManager(String auditLogTable) {
+        this.auditLogTable = auditLogTable;
+    }
+
+    /**
+     * Create the partitioned table and its {@code DEFAULT} partition. A partitioned table can only have
+     * a primary key that includes the partition key, so the entries are only indexed by the audited row.
+     */
+    public void createTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(String.format("""
+                CREATE TABLE IF NOT EXISTS %1$s (
+                    table_name varchar(255) NOT NULL,
+                    row_id varchar(255) NOT NULL,
+                    dml_type varchar(6) NOT NULL,
+                    old_values jsonb,
+                    new_values jsonb,
+                    dml_timestamp timestamp NOT NULL,
+                    dml_created_by varchar(255) NOT NULL,
+                    trx_timestamp timestamp NOT NULL
+                ) PARTITION BY RANGE (dml_timestamp)
+                """,
+                auditLogTable
+            ));
+            statement.executeUpdate(String.format(
+                "CREATE INDEX IF NOT EXISTS idx_%1$s_row ON %1$s (table_name, row_id, dml_timestamp)",
+                auditLogTable
+            ));
+            statement.executeUpdate(String.format(
+                "CREATE TABLE IF NOT EXISTS %s PARTITION OF %s DEFAULT",
+                defaultPartitionName(),
+                auditLogTable
+            ));
+        }
+    }
+
+    /**
+     * Create the partitions of the given month and of the following ones, if they don't exist already.
+     * <p>
+     * A partition cannot be added while the {@code DEFAULT} partition holds entries of its range, so every
+     * partition is created as a standalone table, filled with the entries moved out of the {@code DEFAULT}
+     * partition, and then attached. Run it in a transaction, so that the moved entries are never lost.
+     */
+    public void createPartitions(Connection connection, YearMonth from, int months) throws SQLException {
+        for (int i = 0; i < months; i++) {
+            YearMonth month = from.plusMonths(i);
+            String partition = partitionName(month);
+            if (partitionExists(connection, partition)) {
+                continue;
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(String.format(
+                    "CREATE TABLE %s (LIKE %s INCLUDING DEFAULTS INCLUDING CONSTRAINTS)",
+                    partition,
+                    auditLogTable
+                ));
+            }
+            try (PreparedStatement statement = connection.prepareStatement(String.format("""
+                    WITH moved AS (
+                        DELETE FROM %s
+                        WHERE dml_timestamp >= ? AND dml_timestamp < ?
+                        RETURNING *
+                    )
+                    INSERT INTO %s
+                    SELECT * FROM moved
+                    """,
+                    defaultPartitionName(),
+                    partition
+                ))) {
+                statement.setObject(1, month.atDay(1).atStartOfDay());
+                statement.setObject(2, month.plusMonths(1).atDay(1).atStartOfDay());
+                statement.executeUpdate();
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(String.format("""
+                    ALTER TABLE %s ATTACH PARTITION %s
+                    FOR VALUES FROM ('%s') TO ('%s')
+                    """,
+                    auditLogTable,
+                    partition,
+                    month.atDay(1),
+                    month.plusMonths(1).atDay(1)
+                ));
+            }
+        }
+    }
+
+    /**
+     * Drop the partitions of the months preceding the given one.
+     *
+     * @return the names of the dropped partitions
+     */
+    public List<String> dropPartitionsBefore(Connection connection, YearMonth month) throws SQLException {
+        String oldestPartition = partitionName(month);
+        List<String> partitions = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("""
+                SELECT c.relname
+                FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                JOIN pg_class p ON p.oid = i.inhparent
+                WHERE p.relname = ?
+                ORDER BY c.relname
+                """)) {
+            statement.setString(1, auditLogTable);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String partition = resultSet.getString(1);
+                    //The yyyy_MM suffix sorts chronologically
+                    if (!partition.equals(defaultPartitionName()) &&
+                        partition.length() == oldestPartition.length() &&
+                        partition.compareTo(oldestPartition) < 0) {
+                        partitions.add(partition);
+                    }
+                }
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            for (String partition : partitions) {
+                statement.executeUpdate("DROP TABLE " + partition);
+            }
+        }
+        return partitions;
+    }
+
+    public String partitionName(YearMonth month) {
+        return auditLogTable + "_" + PARTITION_SUFFIX.format(month);
+    }
+
+    public String defaultPartitionName() {
+        return auditLogTable + "_default";
+    }
+
+    private boolean partitionExists(Connection connection, String partition) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+            statement.setString(1, partition);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getBoolean(1);
+            }
+        }
+    }
+}
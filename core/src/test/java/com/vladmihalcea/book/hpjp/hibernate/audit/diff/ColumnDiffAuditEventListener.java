@@ -0,0 +1,183 @@
+package com.vladmihalcea.book.hpjp.hibernate.audit.diff;
+
+import com.vladmihalcea.book.hpjp.util.transaction.TransactionBuffer;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.internal.ForeignKeys;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Writes the audit log from the Hibernate flush events instead of using row-level database triggers.
+ * <p>
+ * A trigger storing the whole {@code OLD} and {@code NEW} rows as JSON runs once per modified row and
+ * serializes every column, even if the {@code UPDATE} changed a single one. This listener uses the
+ * dirty properties Hibernate already computed against the loaded state, so an {@code UPDATE} entry
+ * contains only the old and new values of the modified columns.
+ * <p>
+ * The entries are buffered per transaction in a {@link TransactionBuffer},
+ * and written with a single JDBC batch right before the transaction commits, so the audit log is still
+ * atomic with the audited changes. Only the changes done through Hibernate are audited, so bulk
+ * and native statements bypass the audit log.
+ *
+ * @author Vlad Mihalcea
+ */
+public class ColumnDiffAuditEventListener implements
+        PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    public static final String AUDIT_LOG_TABLE = "audit_log";
+
+    private final Set<Class<?>> auditedEntityClasses;
+
+    private final Supplier<String> loggedUser;
+
+    private final String auditLogTable;
+
+    private final TransactionBuffer<AuditLogBatch> batches;
+
+    private volatile String insertSql;
+
+    public ColumnDiffAuditEventListener(Supplier<String> loggedUser, Class<?>... auditedEntityClasses) {
+        this(AUDIT_LOG_TABLE, loggedUser, auditedEntityClasses);
+    }
+
+    public ColumnDiffAuditEventListener(String auditLogTable, Supplier<String> loggedUser, Class<?>... auditedEntityClasses) {
+        this.auditLogTable = auditLogTable;
+        this.loggedUser = loggedUser;
+        this.auditedEntityClasses = Set.of(auditedEntityClasses);
+        this.batches = new TransactionBuffer<>(
+            session -> new AuditLogBatch(insertSql(session), loggedUser.get()),
+            (session, batch) -> {
+                if (!batch.isEmpty()) {
+                    session.doWork(batch::write);
+                }
+            },
+            null
+        );
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (isAudited(event.getEntity())) {
+            EntityPersister persister = event.getPersister();
+            Object[] state = event.getState();
+            Map<String, Object> newValues = new LinkedHashMap<>();
+            for (int i = 0; i < state.length; i++) {
+                if (state[i] != null) {
+                    put(newValues, persister, i, state[i], event.getSession());
+                }
+            }
+            append(event.getSession(), persister, event.getId(), DmlType.INSERT, null, newValues);
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (isAudited(event.getEntity())) {
+            EntityPersister persister = event.getPersister();
+            Object[] state = event.getState();
+            Object[] oldState = event.getOldState();
+            int[] dirtyProperties = event.getDirtyProperties();
+            if (dirtyProperties == null && oldState != null) {
+                dirtyProperties = persister.findDirty(state, oldState, event.getEntity(), event.getSession());
+            }
+            Map<String, Object> oldValues = new LinkedHashMap<>();
+            Map<String, Object> newValues = new LinkedHashMap<>();
+            if (dirtyProperties != null) {
+                for (int i : dirtyProperties) {
+                    put(oldValues, persister, i, oldState != null ? oldState[i] : null, event.getSession());
+                    put(newValues, persister, i, state[i], event.getSession());
+                }
+            } else {
+                //Without the loaded state, the modified columns are unknown
+                for (int i = 0; i < state.length; i++) {
+                    put(newValues, persister, i, state[i], event.getSession());
+                }
+                oldValues = null;
+            }
+            if (newValues.isEmpty()) {
+                return;
+            }
+            append(event.getSession(), persister, event.getId(), DmlType.UPDATE, oldValues, newValues);
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (isAudited(event.getEntity())) {
+            append(event.getSession(), event.getPersister(), event.getId(), DmlType.DELETE, null, null);
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    private boolean isAudited(Object entity) {
+        return auditedEntityClasses.contains(entity.getClass());
+    }
+
+    /**
+     * Add the column value of the given property. Collections are skipped, since they are audited by
+     * their own table, and associations are stored as the identifier of the referenced entity.
+     */
+    private void put(Map<String, Object> values, EntityPersister persister, int property, Object value,
+            EventSource session) {
+        Type type = persister.getPropertyTypes()[property];
+        if (type.isCollectionType()) {
+            return;
+        }
+        if (type.isEntityType() && value != null) {
+            value = ForeignKeys.getEntityIdentifierIfNotUnsaved(
+                ((EntityType) type).getAssociatedEntityName(), value, session
+            );
+        }
+        String[] columns = ((AbstractEntityPersister) persister).getPropertyColumnNames(property);
+        String key = columns.length == 1 ? columns[0] : persister.getPropertyNames()[property];
+        values.put(key, value);
+    }
+
+    private void append(EventSource session, EntityPersister persister, Object id, DmlType dmlType,
+            Map<String, Object> oldValues, Map<String, Object> newValues) {
+        AuditLogEntry entry = new AuditLogEntry(
+            ((AbstractEntityPersister) persister).getRootTableName(),
+            String.valueOf(id),
+            dmlType,
+            oldValues,
+            newValues,
+            LocalDateTime.now()
+        );
+        batches.get(session).add(entry);
+    }
+
+    private String insertSql(EventSource session) {
+        String sql = insertSql;
+        if (sql == null) {
+            String jsonParameter = session.getJdbcServices().getDialect() instanceof PostgreSQLDialect ?
+                "CAST(? AS jsonb)" :
+                "?";
+            sql = String.format("""
+                INSERT INTO %s (
+                    table_name, row_id, dml_type, old_values, new_values,
+                    dml_timestamp, dml_created_by, trx_timestamp
+                )
+                VALUES (?, ?, ?, %s, %s, ?, ?, ?)
+                """,
+                auditLogTable,
+                jsonParameter,
+                jsonParameter
+            );
+            insertSql = sql;
+        }
+        return sql;
+    }
+}
@@ -0,0 +1,41 @@
+package com.vladmihalcea.book.hpjp.hibernate.audit.diff;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class ColumnDiffAuditIntegrator implements Integrator {
+
+    private final ColumnDiffAuditEventListener listener;
+
+    public ColumnDiffAuditIntegrator(ColumnDiffAuditEventListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void integrate(
+        Metadata metadata,
+        SessionFactoryImplementor sessionFactory,
+        SessionFactoryServiceRegistry serviceRegistry) {
+
+        final EventListenerRegistry eventListenerRegistry =
+            serviceRegistry.getService(EventListenerRegistry.class);
+
+        eventListenerRegistry.appendListeners(EventType.POST_INSERT, listener);
+        eventListenerRegistry.appendListeners(EventType.POST_UPDATE, listener);
+        eventListenerRegistry.appendListeners(EventType.POST_DELETE, listener);
+    }
+
+    @Override
+    public void disintegrate(
+        SessionFactoryImplementor sessionFactory,
+        SessionFactoryServiceRegistry serviceRegistry) {
+
+    }
+}
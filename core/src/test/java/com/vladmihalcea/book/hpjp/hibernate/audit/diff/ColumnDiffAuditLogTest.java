@@ -0,0 +1,225 @@
+package com.vladmihalcea.book.hpjp.hibernate.audit.diff;
+
+import com.vladmihalcea.book.hpjp.hibernate.logging.validator.sql.SQLStatementCountValidator;
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.integrator.spi.Integrator;
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class ColumnDiffAuditLogTest extends AbstractTest {
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[] {
+            Book.class
+        };
+    }
+
+    @Override
+    protected void additionalProperties(Properties properties) {
+        properties.put("hibernate.jdbc.batch_size", "50");
+        properties.put("hibernate.order_inserts", "true");
+        properties.put("hibernate.order_updates", "true");
+    }
+
+    @Override
+    protected Integrator integrator() {
+        return new ColumnDiffAuditIntegrator(
+            new ColumnDiffAuditEventListener(() -> "Vlad Mihalcea", Book.class)
+        );
+    }
+
+    @Override
+    protected void afterInit() {
+        executeStatement("DROP TABLE audit_log IF EXISTS");
+        executeStatement("""
+            CREATE TABLE audit_log (
+                table_name varchar(255) NOT NULL,
+                row_id varchar(255) NOT NULL,
+                dml_type varchar(6) NOT NULL,
+                old_values varchar(4000),
+                new_values varchar(4000),
+                dml_timestamp timestamp NOT NULL,
+                dml_created_by varchar(255) NOT NULL,
+                trx_timestamp timestamp NOT NULL
+            )
+            """
+        );
+    }
+
+    @Test
+    public void test() {
+        SQLStatementCountValidator.reset();
+        doInJPA(entityManager -> {
+            for (long id = 1; id <= 3; id++) {
+                entityManager.persist(
+                    new Book()
+                        .setId(id)
+                        .setTitle(String.format("High-Performance Java Persistence, volume %d", id))
+                        .setAuthor("Vlad Mihalcea")
+                        .setPriceInCents(3990)
+                );
+            }
+        });
+        LOGGER.info("The 3 audit log entries are inserted by a single batch");
+        SQLStatementCountValidator.assertInsertCount(2);
+
+        SQLStatementCountValidator.reset();
+        doInJPA(entityManager -> {
+            entityManager.find(Book.class, 1L).setPriceInCents(4499);
+            entityManager.find(Book.class, 2L).setPublisher("Amazon");
+            entityManager.remove(entityManager.getReference(Book.class, 3L));
+        });
+        SQLStatementCountValidator.assertUpdateCount(2);
+        SQLStatementCountValidator.assertDeleteCount(1);
+        SQLStatementCountValidator.assertInsertCount(1);
+
+        List<String[]> entries = getAuditLogEntries();
+        assertEquals(6, entries.size());
+
+        assertEntry(entries.get(0), "1", "INSERT", null,
+            "{\"author\":\"Vlad Mihalcea\",\"price_in_cents\":3990,\"title\":\"High-Performance Java Persistence, volume 1\"}");
+        assertEntry(entries.get(3), "1", "UPDATE", "{\"price_in_cents\":3990}", "{\"price_in_cents\":4499}");
+        assertEntry(entries.get(4), "2", "UPDATE", "{\"publisher\":null}", "{\"publisher\":\"Amazon\"}");
+        assertEntry(entries.get(5), "3", "DELETE", null, null);
+        for (String[] entry : entries) {
+            assertEquals("book", entry[0]);
+            assertEquals("Vlad Mihalcea", entry[5]);
+        }
+    }
+
+    @Test
+    public void testRollback() {
+        try {
+            doInJPA(entityManager -> {
+                entityManager.persist(
+                    new Book()
+                        .setId(1L)
+                        .setTitle("High-Performance Java Persistence")
+                );
+                entityManager.flush();
+                if (entityManager.contains(entityManager.getReference(Book.class, 1L))) {
+                    throw new IllegalStateException("Rollback");
+                }
+            });
+        } catch (IllegalStateException expected) {
+        }
+
+        doInJPA(entityManager -> {
+            entityManager.persist(
+                new Book()
+                    .setId(2L)
+                    .setTitle("High-Performance SQL")
+            );
+        });
+
+        List<String[]> entries = getAuditLogEntries();
+        assertEquals(1, entries.size());
+        assertEquals("2", entries.get(0)[1]);
+    }
+
+    private void assertEntry(String[] entry, String rowId, String dmlType, String oldValues, String newValues) {
+        assertEquals(rowId, entry[1]);
+        assertEquals(dmlType, entry[2]);
+        assertEquals(oldValues, entry[3]);
+        assertEquals(newValues, entry[4]);
+    }
+
+    private List<String[]> getAuditLogEntries() {
+        return doInJDBC(connection -> {
+            List<String[]> entries = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement("""
+                    SELECT table_name, row_id, dml_type, old_values, new_values, dml_created_by
+                    FROM audit_log
+                    ORDER BY dml_timestamp, row_id
+                    """);
+                 ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String[] entry = new String[6];
+                    for (int i = 0; i < entry.length; i++) {
+                        entry[i] = resultSet.getString(i + 1);
+                    }
+                    entries.add(entry);
+                }
+            }
+            return entries;
+        });
+    }
+
+    @Entity(name = "Book")
+    @Table(name = "book")
+    @DynamicUpdate
+    public static class Book {
+
+        @Id
+        private Long id;
+
+        private String title;
+
+        private String author;
+
+        @Column(name = "price_in_cents")
+        private int priceInCents;
+
+        private String publisher;
+
+        public Long getId() {
+            return id;
+        }
+
+        public Book setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public Book setTitle(String title) {
+            this.title = title;
+            return this;
+        }
+
+        public String getAuthor() {
+            return author;
+        }
+
+        public Book setAuthor(String author) {
+            this.author = author;
+            return this;
+        }
+
+        public int getPriceInCents() {
+            return priceInCents;
+        }
+
+        public Book setPriceInCents(int priceInCents) {
+            this.priceInCents = priceInCents;
+            return this;
+        }
+
+        public String getPublisher() {
+            return publisher;
+        }
+
+        public Book setPublisher(String publisher) {
+            this.publisher = publisher;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.vladmihalcea.book.hpjp.hibernate.audit.diff;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public enum DmlType {
+    INSERT,
+    UPDATE,
+    DELETE
+}
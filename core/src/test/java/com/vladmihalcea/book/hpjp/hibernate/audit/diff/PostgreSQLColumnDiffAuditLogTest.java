@@ -0,0 +1,137 @@
+package com.vladmihalcea.book.hpjp.hibernate.audit.diff;
+
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import com.vladmihalcea.book.hpjp.util.providers.Database;
+import jakarta.persistence.Tuple;
+import org.hibernate.integrator.spi.Integrator;
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class PostgreSQLColumnDiffAuditLogTest extends AbstractTest {
+
+    private final AuditLogPartitionManager partitionManager = new AuditLogPartitionManager();
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[] {
+            ColumnDiffAuditLogTest.Book.class
+        };
+    }
+
+    @Override
+    protected Database database() {
+        return Database.POSTGRESQL;
+    }
+
+    @Override
+    protected void additionalProperties(Properties properties) {
+        properties.put("hibernate.jdbc.batch_size", "50");
+    }
+
+    @Override
+    protected Integrator integrator() {
+        return new ColumnDiffAuditIntegrator(
+            new ColumnDiffAuditEventListener(() -> "Vlad Mihalcea", ColumnDiffAuditLogTest.Book.class)
+        );
+    }
+
+    @Override
+    protected void afterInit() {
+        executeStatement("DROP TABLE IF EXISTS audit_log CASCADE");
+        doInJDBC(connection -> {
+            partitionManager.createTable(connection);
+            partitionManager.createPartitions(connection, YearMonth.now().minusMonths(2), 4);
+        });
+    }
+
+    @Test
+    public void test() {
+        doInJPA(entityManager -> {
+            entityManager.persist(
+                new ColumnDiffAuditLogTest.Book()
+                    .setId(1L)
+                    .setTitle("High-Performance Java Persistence 1st edition")
+                    .setPublisher("Amazon")
+                    .setPriceInCents(3990)
+                    .setAuthor("Vlad Mihalcea")
+            );
+        });
+
+        doInJPA(entityManager -> {
+            entityManager.find(ColumnDiffAuditLogTest.Book.class, 1L)
+                .setPriceInCents(4499);
+        });
+
+        doInJPA(entityManager -> {
+            List<Tuple> revisions = entityManager.createNativeQuery("""
+                SELECT
+                    dml_type,
+                    cast(old_values ->> 'price_in_cents' as int) as old_price_in_cents,
+                    cast(new_values ->> 'price_in_cents' as int) as new_price_in_cents,
+                    jsonb_exists(new_values, 'title') as has_title
+                FROM audit_log
+                WHERE
+                    table_name = 'book' AND
+                    row_id = :rowId
+                ORDER BY dml_timestamp
+                """, Tuple.class)
+            .setParameter("rowId", "1")
+            .getResultList();
+
+            assertEquals(2, revisions.size());
+            assertEquals("UPDATE", revisions.get(1).get("dml_type"));
+            assertEquals(3990, ((Number) revisions.get(1).get("old_price_in_cents")).intValue());
+            assertEquals(4499, ((Number) revisions.get(1).get("new_price_in_cents")).intValue());
+            assertEquals(Boolean.FALSE, revisions.get(1).get("has_title"));
+        });
+
+        doInJDBC(connection -> {
+            YearMonth currentMonth = YearMonth.now();
+            List<String> droppedPartitions = partitionManager.dropPartitionsBefore(connection, currentMonth.minusMonths(1));
+            assertEquals(List.of(partitionManager.partitionName(currentMonth.minusMonths(2))), droppedPartitions);
+        });
+    }
+
+    @Test
+    public void testDefaultPartition() {
+        YearMonth futureMonth = YearMonth.now().plusMonths(6);
+
+        doInJDBC(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("""
+                INSERT INTO audit_log (
+                    table_name, row_id, dml_type, dml_timestamp, dml_created_by, trx_timestamp
+                )
+                VALUES ('book', '1', 'INSERT', ?, 'Vlad Mihalcea', ?)
+                """)) {
+                statement.setObject(1, futureMonth.atDay(1).atStartOfDay());
+                statement.setObject(2, futureMonth.atDay(1).atStartOfDay());
+                statement.executeUpdate();
+            }
+        });
+        assertEquals(1, countEntries(partitionManager.defaultPartitionName()));
+
+        doInJDBC(connection -> {
+            partitionManager.createPartitions(connection, futureMonth, 1);
+        });
+        assertEquals(0, countEntries(partitionManager.defaultPartitionName()));
+        assertEquals(1, countEntries(partitionManager.partitionName(futureMonth)));
+    }
+
+    private int countEntries(String partition) {
+        return doInJPA(entityManager -> {
+            return ((Number) entityManager
+                .createNativeQuery("SELECT COUNT(*) FROM " + partition)
+                .getSingleResult()
+            ).intValue();
+        });
+    }
+}
@@ -0,0 +1,141 @@
+package com.vladmihalcea.book.hpjp.hibernate.audit.envers.batch;
+
+import com.vladmihalcea.book.hpjp.util.transaction.TransactionBuffer;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.envers.RevisionType;
+import org.hibernate.envers.configuration.Configuration;
+import org.hibernate.envers.exception.AuditException;
+import org.hibernate.envers.internal.synchronization.SessionCacheCleaner;
+import org.hibernate.envers.strategy.internal.ValidityAuditStrategy;
+import org.hibernate.envers.strategy.spi.AuditStrategyContext;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.property.access.spi.Getter;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link ValidityAuditStrategy} that ends the previous revisions with set-based statements.
+ * <p>
+ * For every modified or deleted entity, the {@link ValidityAuditStrategy} registers a transaction completion
+ * process that executes an {@code UPDATE} setting the {@code REVEND} column of the previous revision row.
+ * So, changing 10k entities executes 10k {@code UPDATE} statements, one at a time, even if the entity
+ * and the audit table changes are batched.
+ * <p>
+ * This strategy inserts the audit rows just like the {@link ValidityAuditStrategy}, but it collects the
+ * identifiers of the entities whose previous revision must be ended per audit table, and, after Envers flushed
+ * the audit rows, it executes one {@link RevisionEndUpdate} per audit table.
+ * <p>
+ * The entities of a {@code JOINED} or {@code TABLE_PER_CLASS} subclass, or having a composite identifier,
+ * are delegated to the {@link ValidityAuditStrategy}.
+ *
+ * @author Vlad Mihalcea
+ */
+public class BatchValidityAuditStrategy extends ValidityAuditStrategy {
+
+    private final SessionCacheCleaner sessionCacheCleaner = new SessionCacheCleaner();
+
+    /**
+     * Taken from the Envers configuration, which is shared by all sessions of the {@code SessionFactory}.
+     */
+    private volatile boolean allowIdentifierReuse;
+
+    private final TransactionBuffer<Map<String, RevisionEndUpdate>> pendingUpdates = new TransactionBuffer<>(
+        session -> new LinkedHashMap<>(),
+        (session, updates) -> session.doWork(connection -> {
+            for (RevisionEndUpdate update : updates.values()) {
+                int updateCount = update.execute(connection);
+                if (updateCount >= 0 && updateCount != update.size() && !allowIdentifierReuse) {
+                    throw new AuditException(
+                        String.format(
+                            "Cannot update previous revisions for entity %s, expected %d rows, but updated %d",
+                            update.getEntityName(),
+                            update.size(),
+                            updateCount
+                        )
+                    );
+                }
+            }
+        }),
+        null
+    );
+
+    private Getter revisionTimestampGetter;
+
+    @Override
+    public void postInitialize(AuditStrategyContext context) {
+        super.postInitialize(context);
+        revisionTimestampGetter = context.getRevisionInfoTimestampAccessor();
+    }
+
+    @Override
+    public void perform(Session session, String entityName, Configuration configuration, Object id, Object data,
+            Object revision) {
+        SessionImplementor sessionImplementor = (SessionImplementor) session;
+        EntityPersister persister = sessionImplementor.getFactory()
+            .getMappingMetamodel()
+            .getEntityDescriptor(entityName);
+        if (getRevisionType(configuration, data) == RevisionType.ADD || !isSetBasedUpdateSupported(persister)) {
+            super.perform(session, entityName, configuration, id, data, revision);
+            return;
+        }
+
+        String auditedEntityName = configuration.getAuditEntityName(entityName);
+        session.persist(auditedEntityName, data);
+        sessionCacheCleaner.scheduleAuditDataRemoval(session, data);
+
+        AbstractEntityPersister auditPersister = (AbstractEntityPersister) sessionImplementor.getFactory()
+            .getMappingMetamodel()
+            .getEntityDescriptor(auditedEntityName);
+        allowIdentifierReuse = configuration.isAllowIdentifierReuse();
+        //Registered after the Envers audit process, so the audit rows are already flushed
+        pendingUpdates.get((EventSource) sessionImplementor)
+            .computeIfAbsent(
+                auditPersister.getTableName(),
+                table -> new RevisionEndUpdate(
+                    entityName,
+                    table,
+                    ((AbstractEntityPersister) persister).getIdentifierColumnNames()[0],
+                    configuration.getRevisionFieldName(),
+                    auditPersister.getPropertyColumnNames(configuration.getRevisionEndFieldName())[0],
+                    configuration.isRevisionEndTimestampEnabled() ?
+                        auditPersister.getPropertyColumnNames(configuration.getRevisionEndTimestampFieldName())[0] :
+                        null,
+                    getRevisionNumber(sessionImplementor, revision),
+                    configuration.isRevisionEndTimestampEnabled() ?
+                        getRevisionEndTimestamp(configuration, revision) :
+                        null
+                )
+            )
+            .add(id);
+    }
+
+    private boolean isSetBasedUpdateSupported(EntityPersister persister) {
+        return persister instanceof AbstractEntityPersister entityPersister &&
+            entityPersister.getIdentifierColumnNames().length == 1 &&
+            (entityPersister.getEntityName().equals(entityPersister.getRootEntityName()) ||
+                entityPersister.getTableName().equals(entityPersister.getRootTableName()));
+    }
+
+    private RevisionType getRevisionType(Configuration configuration, Object data) {
+        return (RevisionType) ((Map<?, ?>) data).get(configuration.getRevisionTypePropertyName());
+    }
+
+    Object getRevisionNumber(SessionImplementor session, Object revision) {
+        return session.getFactory()
+            .getMappingMetamodel()
+            .getEntityDescriptor(revision.getClass())
+            .getIdentifier(revision, session);
+    }
+
+    Object getRevisionEndTimestamp(Configuration configuration, Object revision) {
+        Object timestamp = revisionTimestampGetter.get(revision);
+        long epochMillis = timestamp instanceof Date date ? date.getTime() : ((Number) timestamp).longValue();
+        return configuration.isRevisionEndTimestampNumeric() ? epochMillis : new Timestamp(epochMillis);
+    }
+}
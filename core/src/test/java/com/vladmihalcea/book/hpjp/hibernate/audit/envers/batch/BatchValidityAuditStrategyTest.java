@@ -0,0 +1,197 @@
+package com.vladmihalcea.book.hpjp.hibernate.audit.envers.batch;
+
+import com.vladmihalcea.book.hpjp.hibernate.logging.validator.sql.SQLStatementCountValidator;
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import org.hibernate.Session;
+import org.hibernate.envers.AuditReader;
+import org.hibernate.envers.AuditReaderFactory;
+import org.hibernate.envers.Audited;
+import org.hibernate.envers.configuration.EnversSettings;
+import org.hibernate.envers.query.AuditEntity;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class BatchValidityAuditStrategyTest extends AbstractTest {
+
+    public static final int POST_COUNT = 150;
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[] {
+            Post.class
+        };
+    }
+
+    @Override
+    protected void additionalProperties(Properties properties) {
+        properties.setProperty(
+            EnversSettings.AUDIT_STRATEGY,
+            BatchValidityAuditStrategy.class.getName()
+        );
+        properties.setProperty(EnversSettings.AUDIT_STRATEGY_VALIDITY_STORE_REVEND_TIMESTAMP, "true");
+        properties.put("hibernate.jdbc.batch_size", "50");
+        properties.put("hibernate.order_inserts", "true");
+        properties.put("hibernate.order_updates", "true");
+    }
+
+    @Override
+    protected void afterInit() {
+        doInJPA(entityManager -> {
+            for (long id = 1; id <= POST_COUNT; id++) {
+                entityManager.persist(
+                    new Post()
+                        .setId(id)
+                        .setTitle(String.format("High-Performance Java Persistence, part %d", id))
+                );
+            }
+        });
+    }
+
+    @Test
+    public void testSetBasedRevisionEnd() {
+        SQLStatementCountValidator.reset();
+        doInJPA(entityManager -> {
+            List<Post> posts = entityManager.createQuery("""
+                select p
+                from Post p
+                """, Post.class)
+            .getResultList();
+
+            for (Post post : posts) {
+                post.setTitle(post.getTitle().replace("part", "chapter"));
+            }
+        });
+        LOGGER.info("The 150 previous revisions are ended by a single batch, instead of 150 statements");
+        SQLStatementCountValidator.assertUpdateCount(4);
+
+        doInJPA(entityManager -> {
+            AuditReader auditReader = AuditReaderFactory.get(entityManager);
+
+            List<Post> posts = postsAtRevision(auditReader, 1);
+            assertEquals(POST_COUNT, posts.size());
+            assertEquals("High-Performance Java Persistence, part 1", posts.get(0).getTitle());
+
+            posts = postsAtRevision(auditReader, 2);
+            assertEquals(POST_COUNT, posts.size());
+            assertEquals("High-Performance Java Persistence, chapter 1", posts.get(0).getTitle());
+
+            assertEquals(POST_COUNT, countOpenRevisions(entityManager.unwrap(Session.class)));
+        });
+
+        doInJPA(entityManager -> {
+            entityManager.remove(entityManager.find(Post.class, 1L));
+        });
+
+        doInJPA(entityManager -> {
+            assertEquals(
+                3,
+                AuditReaderFactory.get(entityManager).createQuery()
+                    .forRevisionsOfEntity(Post.class, true, true)
+                    .add(AuditEntity.id().eq(1L))
+                    .getResultList()
+                    .size()
+            );
+            assertEquals(POST_COUNT, countOpenRevisions(entityManager.unwrap(Session.class)));
+        });
+    }
+
+    @Test
+    public void testBulkAudit() {
+        doInJPA(entityManager -> {
+            Session session = entityManager.unwrap(Session.class);
+
+            int updateCount = entityManager.createQuery("""
+                update Post
+                set title = concat(title, ' (2nd edition)')
+                where id <= :id
+                """)
+            .setParameter("id", 5L)
+            .executeUpdate();
+
+            BulkValidityAuditor auditor = new BulkValidityAuditor(session);
+            assertEquals(updateCount, auditor.auditUpdate(Post.class, "id <= ?", 5L));
+
+            assertEquals(10, auditor.auditDelete(Post.class, "id > ?", POST_COUNT - 10L));
+            entityManager.createQuery("""
+                delete from Post
+                where id > :id
+                """)
+            .setParameter("id", POST_COUNT - 10L)
+            .executeUpdate();
+        });
+
+        doInJPA(entityManager -> {
+            AuditReader auditReader = AuditReaderFactory.get(entityManager);
+
+            List<Post> posts = postsAtRevision(auditReader, 2);
+            assertEquals(POST_COUNT - 10, posts.size());
+            assertEquals("High-Performance Java Persistence, part 1 (2nd edition)", posts.get(0).getTitle());
+            assertEquals("High-Performance Java Persistence, part 6", posts.get(5).getTitle());
+
+            assertEquals(
+                POST_COUNT,
+                auditReader.createQuery()
+                    .forEntitiesAtRevision(Post.class, 1)
+                    .getResultList()
+                    .size()
+            );
+            assertEquals(POST_COUNT, countOpenRevisions(entityManager.unwrap(Session.class)));
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Post> postsAtRevision(AuditReader auditReader, int revision) {
+        return auditReader.createQuery()
+            .forEntitiesAtRevision(Post.class, revision)
+            .addOrder(AuditEntity.id().asc())
+            .getResultList();
+    }
+
+    private int countOpenRevisions(Session session) {
+        return session.createNativeQuery("""
+            SELECT count(*)
+            FROM Post_AUD
+            WHERE REVEND IS NULL
+            """, Long.class)
+        .getSingleResult().intValue();
+    }
+
+    @Entity(name = "Post")
+    @Table(name = "post")
+    @Audited
+    public static class Post {
+
+        @Id
+        private Long id;
+
+        private String title;
+
+        public Long getId() {
+            return id;
+        }
+
+        public Post setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public Post setTitle(String title) {
+            this.title = title;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.vladmihalcea.book.hpjp.hibernate.audit.envers.batch;
+
+import org.hibernate.Session;
+import org.hibernate.envers.RevisionType;
+import org.hibernate.envers.boot.internal.EnversService;
+import org.hibernate.envers.configuration.Configuration;
+import org.hibernate.envers.internal.synchronization.AuditProcessManager;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Audits the rows changed by a bulk statement, which Envers ignores, with two set-based statements
+ * per audit table: an {@code UPDATE} ending the previous revisions of the matched rows and an
+ * {@code INSERT ... SELECT} copying the matched rows into the audit table.
+ * <p>
+ * The rows are matched by an SQL predicate on the entity table, which is evaluated after the bulk update,
+ * so it must match the updated rows, or before the bulk delete. The audit rows get the revision of
+ * the current transaction, so the bulk changes and the entity changes audited by Envers in the same
+ * transaction share the same revision, and an entity must not be changed by both in the same transaction.
+ * <p>
+ * It requires the {@link BatchValidityAuditStrategy} and supports the single-table entities having
+ * a simple identifier. The modified flags are not set.
+ *
+ * @author Vlad Mihalcea
+ */
+public class BulkValidityAuditor {
+
+    private final EventSource session;
+
+    private final Configuration configuration;
+
+    private final AuditProcessManager auditProcessManager;
+
+    private final BatchValidityAuditStrategy auditStrategy;
+
+    public BulkValidityAuditor(Session session) {
+        this.session = (EventSource) session;
+        EnversService enversService = this.session.getFactory()
+            .getServiceRegistry()
+            .getService(EnversService.class);
+        this.configuration = enversService.getConfig();
+        this.auditProcessManager = enversService.getAuditProcessManager();
+        if (!(enversService.getAuditStrategy() instanceof BatchValidityAuditStrategy auditStrategy)) {
+            throw new IllegalStateException(
+                "The bulk audit requires the " + BatchValidityAuditStrategy.class.getName() + " audit strategy"
+            );
+        }
+        this.auditStrategy = auditStrategy;
+    }
+
+    /**
+     * Audit the rows modified by a bulk update.
+     *
+     * @param predicate the SQL predicate matching the modified rows of the entity table
+     * @param parameters the predicate parameters
+     * @return the number of audited rows
+     */
+    public int auditUpdate(Class<?> entityClass, String predicate, Object... parameters) {
+        return audit(entityClass, RevisionType.MOD, predicate, parameters);
+    }
+
+    /**
+     * Audit the rows about to be removed by a bulk delete, so it must be called before executing it.
+     *
+     * @param predicate the SQL predicate matching the rows of the entity table to be removed
+     * @param parameters the predicate parameters
+     * @return the number of audited rows
+     */
+    public int auditDelete(Class<?> entityClass, String predicate, Object... parameters) {
+        return audit(entityClass, RevisionType.DEL, predicate, parameters);
+    }
+
+    private int audit(Class<?> entityClass, RevisionType revisionType, String predicate, Object[] parameters) {
+        AbstractEntityPersister persister = (AbstractEntityPersister) session.getFactory()
+            .getMappingMetamodel()
+            .getEntityDescriptor(entityClass);
+        if (persister.getIdentifierColumnNames().length != 1 ||
+            !persister.getTableName().equals(persister.getRootTableName())) {
+            throw new UnsupportedOperationException(
+                "The bulk audit does not support the " + persister.getEntityName() + " entity mapping"
+            );
+        }
+        AbstractEntityPersister auditPersister = (AbstractEntityPersister) session.getFactory()
+            .getMappingMetamodel()
+            .getEntityDescriptor(configuration.getAuditEntityName(persister.getEntityName()));
+
+        session.checkTransactionNeededForUpdateOperation("The bulk audit requires an active transaction");
+        //The same revision Envers assigns to the entity changes of the current transaction
+        Object revision = auditProcessManager.get(session).getCurrentRevisionData(session, true);
+        //The revision row must exist before the audit rows referencing it
+        session.flush();
+        Object revisionNumber = auditStrategy.getRevisionNumber(session, revision);
+        Object revisionEndTimestamp = configuration.isRevisionEndTimestampEnabled() ?
+            auditStrategy.getRevisionEndTimestamp(configuration, revision) :
+            null;
+
+        String table = persister.getTableName();
+        String idColumn = persister.getIdentifierColumnNames()[0];
+        String revisionColumn = configuration.getRevisionFieldName();
+        String revisionEndColumn = column(auditPersister, configuration.getRevisionEndFieldName());
+        String revisionEndTimestampColumn = revisionEndTimestamp != null ?
+            column(auditPersister, configuration.getRevisionEndTimestampFieldName()) :
+            null;
+
+        String endRevisionsSql = String.format(
+            "UPDATE %s SET %s = ?%s WHERE %s IS NULL AND %s <> ? AND %s IN (SELECT %s FROM %s WHERE %s)",
+            auditPersister.getTableName(),
+            revisionEndColumn,
+            revisionEndTimestampColumn != null ? ", " + revisionEndTimestampColumn + " = ?" : "",
+            revisionEndColumn,
+            revisionColumn,
+            idColumn,
+            idColumn,
+            table,
+            predicate
+        );
+
+        List<String> auditColumns = new ArrayList<>(
+            List.of(idColumn, revisionColumn, column(auditPersister, configuration.getRevisionTypePropertyName()))
+        );
+        List<String> selectColumns = new ArrayList<>(List.of(idColumn, "?", "?"));
+        if (revisionType != RevisionType.DEL || configuration.isStoreDataAtDelete()) {
+            addAuditedColumns(persister, auditPersister, auditColumns, selectColumns);
+        }
+        String insertAuditRowsSql = String.format(
+            "INSERT INTO %s (%s) SELECT %s FROM %s WHERE %s",
+            auditPersister.getTableName(),
+            String.join(", ", auditColumns),
+            String.join(", ", selectColumns),
+            table,
+            predicate
+        );
+
+        return session.doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(endRevisionsSql)) {
+                int index = 1;
+                statement.setObject(index++, revisionNumber);
+                if (revisionEndTimestamp != null) {
+                    statement.setObject(index++, revisionEndTimestamp);
+                }
+                statement.setObject(index++, revisionNumber);
+                bind(statement, index, parameters);
+                statement.executeUpdate();
+            }
+            try (PreparedStatement statement = connection.prepareStatement(insertAuditRowsSql)) {
+                statement.setObject(1, revisionNumber);
+                statement.setObject(2, revisionType.getRepresentation());
+                bind(statement, 3, parameters);
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Add the columns of the audited properties, which have the same name in the entity and the audit table.
+     */
+    private void addAuditedColumns(AbstractEntityPersister persister, AbstractEntityPersister auditPersister,
+            List<String> auditColumns, List<String> selectColumns) {
+        Set<String> entityProperties = Set.of(persister.getPropertyNames());
+        for (String property : auditPersister.getPropertyNames()) {
+            if (!entityProperties.contains(property)) {
+                continue;
+            }
+            String[] auditPropertyColumns = auditPersister.getPropertyColumnNames(property);
+            String[] entityPropertyColumns = persister.getPropertyColumnNames(property);
+            if (auditPropertyColumns.length == entityPropertyColumns.length) {
+                auditColumns.addAll(List.of(auditPropertyColumns));
+                selectColumns.addAll(List.of(entityPropertyColumns));
+            }
+        }
+    }
+
+    private String column(AbstractEntityPersister auditPersister, String property) {
+        return auditPersister.getPropertyColumnNames(property)[0];
+    }
+
+    private void bind(PreparedStatement statement, int index, Object[] parameters) throws SQLException {
+        for (Object parameter : parameters) {
+            statement.setObject(index++, parameter);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.vladmihalcea.book.hpjp.hibernate.audit.envers.batch;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The previous revisions of an audit table that a transaction has to end.
+ * <p>
+ * All entities changed by a transaction share the same revision, so, instead of one {@code UPDATE} per entity,
+ * the previous revisions are ended by a single set-based statement:
+ *
+ * <pre>
+ * UPDATE Post_AUD SET REVEND = ? WHERE REVEND IS NULL AND REV &lt;&gt; ? AND id IN (?, ?, ..., ?)
+ * </pre>
+ * <p>
+ * The {@code IN} list has a fixed size, so that the statement is prepared once and, when there are more
+ * identifiers than the list size, the chunks are sent as a JDBC batch. The last chunk is padded by
+ * repeating its last identifier, which does not change the matched rows.
+ *
+ * @author Vlad Mihalcea
+ */
+public class RevisionEndUpdate {
+
+    public static final int IN_LIST_SIZE = 100;
+
+    private final String entityName;
+
+    private final String sql;
+
+    private final Object revisionNumber;
+
+    private final Object revisionEndTimestamp;
+
+    private final Set<Object> ids = new LinkedHashSet<>();
+
+    /**
+     * @param revisionEndTimestampColumn the {@code REVEND_TSTMP} column, or {@code null} if it's not enabled
+     */
+    public RevisionEndUpdate(String entityName, String table, String idColumn, String revisionColumn,
+            String revisionEndColumn, String revisionEndTimestampColumn, Object revisionNumber,
+            Object revisionEndTimestamp) {
+        this.entityName = entityName;
+        this.revisionNumber = revisionNumber;
+        this.revisionEndTimestamp = revisionEndTimestamp;
+        this.sql = String.format(
+            "UPDATE %s SET %s = ?%s WHERE %s IS NULL AND %s <> ? AND %s IN (%s)",
+            table,
+            revisionEndColumn,
+            revisionEndTimestampColumn != null ? ", " + revisionEndTimestampColumn + " = ?" : "",
+            revisionEndColumn,
+            revisionColumn,
+            idColumn,
+            String.join(", ", Collections.nCopies(IN_LIST_SIZE, "?"))
+        );
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public void add(Object id) {
+        ids.add(id);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * @return the number of ended revisions, or {@code -1} if the driver doesn't report the batch update counts
+     */
+    public int execute(Connection connection) throws SQLException {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<Object> ids = new ArrayList<>(this.ids);
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            if (ids.size() <= IN_LIST_SIZE) {
+                bind(statement, ids, 0);
+                return statement.executeUpdate();
+            }
+            for (int offset = 0; offset < ids.size(); offset += IN_LIST_SIZE) {
+                bind(statement, ids, offset);
+                statement.addBatch();
+            }
+            int updateCount = 0;
+            for (int count : statement.executeBatch()) {
+                if (count == Statement.SUCCESS_NO_INFO) {
+                    return -1;
+                }
+                updateCount += count;
+            }
+            return updateCount;
+        }
+    }
+
+    private void bind(PreparedStatement statement, List<Object> ids, int offset) throws SQLException {
+        int index = 1;
+        statement.setObject(index++, revisionNumber);
+        if (revisionEndTimestamp != null) {
+            statement.setObject(index++, revisionEndTimestamp);
+        }
+        statement.setObject(index++, revisionNumber);
+        int last = Math.min(offset + IN_LIST_SIZE, ids.size()) - 1;
+        for (int i = offset; i < offset + IN_LIST_SIZE; i++) {
+            statement.setObject(index++, ids.get(Math.min(i, last)));
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.vladmihalcea.book.hpjp.hibernate.concurrency.queue;
+
+import java.time.Instant;
+
+/**
+ * A job leased by a worker.
+ *
+ * @param id the job identifier
+ * @param payload the job payload
+ * @param attempt the claim count, including this one
+ * @param leaseToken the token that must be provided to acknowledge or release the job
+ * @param leaseExpiresAt the moment the job becomes visible to the other workers
+ *
+ * @author Vlad Mihalcea
+ */
+public record ClaimedJob(
+    Long id,
+    String payload,
+    int attempt,
+    String leaseToken,
+    Instant leaseExpiresAt) {
+}
@@ -0,0 +1,99 @@
+package com.vladmihalcea.book.hpjp.hibernate.concurrency.queue;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * A job queue entry.
+ * <p>
+ * A {@link JobStatus#PENDING} job can be claimed once its {@code visibleAt} timestamp has passed.
+ * Claiming a job moves its {@code visibleAt} timestamp to the end of the lease, so if the worker
+ * doesn't acknowledge it until then, the job becomes visible again and another worker can claim it.
+ *
+ * @author Vlad Mihalcea
+ */
+@Entity(name = "Job")
+@Table(
+    name = "job_queue",
+    indexes = @Index(name = "idx_job_queue_status_visible_at", columnList = "status, visible_at")
+)
+public class Job {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @Column(length = 1000)
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 10)
+    private JobStatus status = JobStatus.PENDING;
+
+    @Column(name = "visible_at")
+    private Instant visibleAt;
+
+    /**
+     * Identifies the claim that leased the job, so that a worker whose lease
+     * expired cannot acknowledge a job that was claimed by another worker.
+     */
+    @Column(name = "lease_token", length = 36)
+    private String leaseToken;
+
+    private int attempts;
+
+    public Long getId() {
+        return id;
+    }
+
+    public Job setId(Long id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public Job setPayload(String payload) {
+        this.payload = payload;
+        return this;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public Job setStatus(JobStatus status) {
+        this.status = status;
+        return this;
+    }
+
+    public Instant getVisibleAt() {
+        return visibleAt;
+    }
+
+    public Job setVisibleAt(Instant visibleAt) {
+        this.visibleAt = visibleAt;
+        return this;
+    }
+
+    public String getLeaseToken() {
+        return leaseToken;
+    }
+
+    public Job setLeaseToken(String leaseToken) {
+        this.leaseToken = leaseToken;
+        return this;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Job setAttempts(int attempts) {
+        this.attempts = attempts;
+        return this;
+    }
+}
@@ -0,0 +1,13 @@
+package com.vladmihalcea.book.hpjp.hibernate.concurrency.queue;
+
+/**
+ * Processes a claimed job outside of any database transaction.
+ * If it throws an exception, the job is released so that it can be retried.
+ *
+ * @author Vlad Mihalcea
+ */
+@FunctionalInterface
+public interface JobHandler {
+
+    void handle(ClaimedJob job) throws Exception;
+}
@@ -0,0 +1,302 @@
+package com.vladmihalcea.book.hpjp.hibernate.concurrency.queue;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.LockModeType;
+import org.hibernate.LockOptions;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A database-backed job queue that holds row locks only while claiming a batch of jobs.
+ * <p>
+ * Instead of locking the jobs for the whole processing time, a worker leases a batch of jobs
+ * in a short transaction that skips the rows locked by the other claiming workers
+ * and moves the {@code visibleAt} timestamp of the claimed jobs to the end of the lease.
+ * The jobs are then processed outside of any transaction and acknowledged in batches.
+ * If a worker crashes or its lease expires, the jobs become visible again and are claimed by another worker.
+ * <p>
+ * The claim update is conditional, and the claimed jobs are identified by the lease token,
+ * so a job is never leased twice, even on databases that don't support {@code SKIP LOCKED}.
+ * <p>
+ * The timestamps are taken from the given {@link Clock}, so the clocks of the worker nodes must be synchronized.
+ *
+ * @author Vlad Mihalcea
+ */
+public class JobQueue {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final Clock clock;
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    public JobQueue(EntityManagerFactory entityManagerFactory) {
+        this(entityManagerFactory, Clock.systemUTC());
+    }
+
+    public JobQueue(EntityManagerFactory entityManagerFactory, Clock clock) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.clock = clock;
+    }
+
+    /**
+     * @param maxAttempts the number of claims after which a job is no longer retried
+     */
+    public JobQueue setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Add the given payloads to the queue. The inserts are batched if JDBC batching is enabled.
+     *
+     * @return the job identifiers
+     */
+    public List<Long> enqueue(List<String> payloads) {
+        Instant now = clock.instant();
+        return doInTransaction(entityManager -> {
+            List<Job> jobs = new ArrayList<>(payloads.size());
+            for (String payload : payloads) {
+                Job job = new Job()
+                    .setPayload(payload)
+                    .setVisibleAt(now);
+                entityManager.persist(job);
+                jobs.add(job);
+            }
+            entityManager.flush();
+            List<Long> ids = new ArrayList<>(jobs.size());
+            for (Job job : jobs) {
+                ids.add(job.getId());
+            }
+            return ids;
+        });
+    }
+
+    /**
+     * Lease up to {@code batchSize} visible jobs for the given duration.
+     *
+     * @return the claimed jobs, or an empty list if there are no visible jobs
+     */
+    public List<ClaimedJob> claim(int batchSize, Duration lease) {
+        Instant now = clock.instant();
+        Instant leaseExpiresAt = now.plus(lease);
+        String leaseToken = UUID.randomUUID().toString();
+
+        return doInTransaction(entityManager -> {
+            List<Job> candidates = entityManager.createQuery("""
+                select j
+                from Job j
+                where
+                    j.status = :status and
+                    j.visibleAt <= :now and
+                    j.attempts < :maxAttempts
+                order by j.visibleAt, j.id
+                """, Job.class)
+            .setParameter("status", JobStatus.PENDING)
+            .setParameter("now", now)
+            .setParameter("maxAttempts", maxAttempts)
+            .setMaxResults(batchSize)
+            .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+            .setHint("jakarta.persistence.lock.timeout", LockOptions.SKIP_LOCKED)
+            .getResultList();
+
+            if (candidates.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            Map<Long, Job> candidatesById = new LinkedHashMap<>();
+            for (Job job : candidates) {
+                candidatesById.put(job.getId(), job);
+            }
+
+            int claimedCount = entityManager.createQuery("""
+                update Job
+                set
+                    visibleAt = :leaseExpiresAt,
+                    leaseToken = :leaseToken,
+                    attempts = attempts + 1
+                where
+                    id in :ids and
+                    status = :status and
+                    visibleAt <= :now
+                """)
+            .setParameter("leaseExpiresAt", leaseExpiresAt)
+            .setParameter("leaseToken", leaseToken)
+            .setParameter("ids", candidatesById.keySet())
+            .setParameter("status", JobStatus.PENDING)
+            .setParameter("now", now)
+            .executeUpdate();
+
+            Collection<Long> claimedIds = claimedCount == candidates.size() ?
+                candidatesById.keySet() :
+                entityManager.createQuery("""
+                    select j.id
+                    from Job j
+                    where j.leaseToken = :leaseToken
+                    """, Long.class)
+                .setParameter("leaseToken", leaseToken)
+                .getResultList();
+
+            List<ClaimedJob> claimedJobs = new ArrayList<>(claimedIds.size());
+            for (Long id : claimedIds) {
+                Job job = candidatesById.get(id);
+                claimedJobs.add(
+                    new ClaimedJob(
+                        id,
+                        job.getPayload(),
+                        job.getAttempts() + 1,
+                        leaseToken,
+                        leaseExpiresAt
+                    )
+                );
+            }
+            return claimedJobs;
+        });
+    }
+
+    /**
+     * Mark the given jobs as done, unless their lease was taken over by another claim.
+     *
+     * @return the number of acknowledged jobs
+     */
+    public int ack(Collection<ClaimedJob> jobs) {
+        if (jobs.isEmpty()) {
+            return 0;
+        }
+        return doInTransaction(entityManager -> {
+            int ackCount = 0;
+            for (Map.Entry<String, List<Long>> entry : idsByLeaseToken(jobs).entrySet()) {
+                ackCount += entityManager.createQuery("""
+                    update Job
+                    set
+                        status = :status,
+                        leaseToken = null
+                    where
+                        id in :ids and
+                        leaseToken = :leaseToken
+                    """)
+                .setParameter("status", JobStatus.DONE)
+                .setParameter("ids", entry.getValue())
+                .setParameter("leaseToken", entry.getKey())
+                .executeUpdate();
+            }
+            return ackCount;
+        });
+    }
+
+    /**
+     * Make the given jobs visible again after the given delay, unless their lease was taken over by another claim.
+     *
+     * @return the number of released jobs
+     */
+    public int release(Collection<ClaimedJob> jobs, Duration delay) {
+        if (jobs.isEmpty()) {
+            return 0;
+        }
+        Instant visibleAt = clock.instant().plus(delay);
+        return doInTransaction(entityManager -> {
+            int releaseCount = 0;
+            for (Map.Entry<String, List<Long>> entry : idsByLeaseToken(jobs).entrySet()) {
+                releaseCount += entityManager.createQuery("""
+                    update Job
+                    set
+                        visibleAt = :visibleAt,
+                        leaseToken = null
+                    where
+                        id in :ids and
+                        leaseToken = :leaseToken
+                    """)
+                .setParameter("visibleAt", visibleAt)
+                .setParameter("ids", entry.getValue())
+                .setParameter("leaseToken", entry.getKey())
+                .executeUpdate();
+            }
+            return releaseCount;
+        });
+    }
+
+    /**
+     * Recover the jobs whose lease expired. The jobs that can still be retried are already visible,
+     * so only their lease token is cleared, while the jobs that exhausted their attempts are marked as failed.
+     *
+     * @return the number of recovered jobs
+     */
+    public int recoverExpiredLeases() {
+        Instant now = clock.instant();
+        return doInTransaction(entityManager -> {
+            int failedCount = entityManager.createQuery("""
+                update Job
+                set
+                    status = :failedStatus,
+                    leaseToken = null
+                where
+                    status = :pendingStatus and
+                    visibleAt <= :now and
+                    attempts >= :maxAttempts
+                """)
+            .setParameter("failedStatus", JobStatus.FAILED)
+            .setParameter("pendingStatus", JobStatus.PENDING)
+            .setParameter("now", now)
+            .setParameter("maxAttempts", maxAttempts)
+            .executeUpdate();
+
+            int expiredCount = entityManager.createQuery("""
+                update Job
+                set leaseToken = null
+                where
+                    status = :status and
+                    visibleAt <= :now and
+                    leaseToken is not null
+                """)
+            .setParameter("status", JobStatus.PENDING)
+            .setParameter("now", now)
+            .executeUpdate();
+
+            return failedCount + expiredCount;
+        });
+    }
+
+    public long count(JobStatus status) {
+        return doInTransaction(entityManager -> entityManager.createQuery("""
+            select count(j)
+            from Job j
+            where j.status = :status
+            """, Long.class)
+        .setParameter("status", status)
+        .getSingleResult());
+    }
+
+    private Map<String, List<Long>> idsByLeaseToken(Collection<ClaimedJob> jobs) {
+        Map<String, List<Long>> idsByLeaseToken = new HashMap<>();
+        for (ClaimedJob job : jobs) {
+            idsByLeaseToken.computeIfAbsent(job.leaseToken(), token -> new ArrayList<>()).add(job.id());
+        }
+        return idsByLeaseToken;
+    }
+
+    private <T> T doInTransaction(Function<EntityManager, T> function) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        EntityTransaction transaction = entityManager.getTransaction();
+        try {
+            transaction.begin();
+            T result = function.apply(entityManager);
+            transaction.commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            throw e;
+        } finally {
+            entityManager.close();
+        }
+    }
+}
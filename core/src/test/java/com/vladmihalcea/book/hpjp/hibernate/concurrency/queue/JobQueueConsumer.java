@@ -0,0 +1,266 @@
+package com.vladmihalcea.book.hpjp.hibernate.concurrency.queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a pool of workers that claim, process and acknowledge the {@link JobQueue} jobs.
+ * <p>
+ * Every worker claims a batch of jobs, processes them outside of any transaction, acknowledges
+ * the successful ones in a single statement, and releases the failed ones with an exponential retry delay.
+ * When the queue is empty, the worker doubles its polling interval, with jitter, up to the maximum interval,
+ * and resets it as soon as it claims a job again. One of the workers also recovers the expired leases
+ * every {@link #setRecoveryInterval(Duration) recovery interval}.
+ * <p>
+ * The workers block on JDBC calls, so, by default, every worker runs on its own platform thread.
+ * On a JDK that supports virtual threads, provide a virtual thread factory via {@link #setThreadFactory(ThreadFactory)},
+ * as the number of concurrent claims is then limited only by the connection pool.
+ *
+ * @author Vlad Mihalcea
+ */
+public class JobQueueConsumer implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobQueueConsumer.class);
+
+    private final JobQueue jobQueue;
+
+    private final JobHandler jobHandler;
+
+    private int workerCount = Runtime.getRuntime().availableProcessors();
+
+    private int batchSize = 10;
+
+    private Duration lease = Duration.ofSeconds(30);
+
+    private Duration minPollInterval = Duration.ofMillis(1);
+
+    private Duration maxPollInterval = Duration.ofMillis(500);
+
+    private Duration retryDelay = Duration.ofSeconds(1);
+
+    private Duration recoveryInterval = Duration.ofSeconds(10);
+
+    private ThreadFactory threadFactory;
+
+    private ExecutorService executorService;
+
+    private volatile boolean running;
+
+    private volatile long nextRecoveryNanos;
+
+    private final LongAdder ackCount = new LongAdder();
+
+    private final LongAdder failureCount = new LongAdder();
+
+    private final LongAdder claimCount = new LongAdder();
+
+    private final LongAdder emptyClaimCount = new LongAdder();
+
+    public JobQueueConsumer(JobQueue jobQueue, JobHandler jobHandler) {
+        this.jobQueue = jobQueue;
+        this.jobHandler = jobHandler;
+    }
+
+    public JobQueueConsumer setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+        return this;
+    }
+
+    public JobQueueConsumer setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param lease the time a worker has to process a claimed batch before the jobs become visible again
+     */
+    public JobQueueConsumer setLease(Duration lease) {
+        this.lease = lease;
+        return this;
+    }
+
+    public JobQueueConsumer setPollInterval(Duration minPollInterval, Duration maxPollInterval) {
+        this.minPollInterval = minPollInterval;
+        this.maxPollInterval = maxPollInterval;
+        return this;
+    }
+
+    /**
+     * @param retryDelay the delay after which a failed job is visible again, which doubles with every attempt
+     */
+    public JobQueueConsumer setRetryDelay(Duration retryDelay) {
+        this.retryDelay = retryDelay;
+        return this;
+    }
+
+    public JobQueueConsumer setRecoveryInterval(Duration recoveryInterval) {
+        this.recoveryInterval = recoveryInterval;
+        return this;
+    }
+
+    public JobQueueConsumer setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+        return this;
+    }
+
+    public synchronized JobQueueConsumer start() {
+        if (running) {
+            throw new IllegalStateException("The consumer is already running");
+        }
+        ThreadFactory factory = threadFactory;
+        if (factory == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            factory = r -> {
+                Thread thread = new Thread(r, "job-queue-worker-" + threadCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+        running = true;
+        nextRecoveryNanos = System.nanoTime() + recoveryInterval.toNanos();
+        executorService = Executors.newFixedThreadPool(workerCount, factory);
+        for (int i = 0; i < workerCount; i++) {
+            executorService.submit(new Worker());
+        }
+        return this;
+    }
+
+    /**
+     * Stop claiming jobs, and wait for the workers to finish their current batch.
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(lease.toMillis(), TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("The workers did not finish their batches within the lease time");
+                executorService.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the number of acknowledged jobs
+     */
+    public long getAckCount() {
+        return ackCount.sum();
+    }
+
+    /**
+     * @return the number of failed job executions, which were released for a retry
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    /**
+     * @return the share of the claims that found no visible job
+     */
+    public double getEmptyClaimRatio() {
+        long claims = claimCount.sum();
+        return claims > 0 ? (double) emptyClaimCount.sum() / claims : 0;
+    }
+
+    private void recoverExpiredLeases() {
+        long now = System.nanoTime();
+        long nextRecovery = nextRecoveryNanos;
+        if (now - nextRecovery < 0) {
+            return;
+        }
+        synchronized (this) {
+            if (nextRecoveryNanos != nextRecovery) {
+                return;
+            }
+            nextRecoveryNanos = now + recoveryInterval.toNanos();
+        }
+        int recoveredCount = jobQueue.recoverExpiredLeases();
+        if (recoveredCount > 0) {
+            LOGGER.info("Recovered {} jobs with an expired lease", recoveredCount);
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        private long pollIntervalNanos = minPollInterval.toNanos();
+
+        @Override
+        public void run() {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                try {
+                    recoverExpiredLeases();
+                    List<ClaimedJob> jobs = jobQueue.claim(batchSize, lease);
+                    claimCount.increment();
+                    if (jobs.isEmpty()) {
+                        emptyClaimCount.increment();
+                        backOff();
+                    } else {
+                        pollIntervalNanos = minPollInterval.toNanos();
+                        process(jobs);
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.error("The job queue worker failed", e);
+                    backOff();
+                }
+            }
+        }
+
+        private void process(List<ClaimedJob> jobs) {
+            List<ClaimedJob> processedJobs = new ArrayList<>(jobs.size());
+            List<ClaimedJob> failedJobs = new ArrayList<>();
+            for (ClaimedJob job : jobs) {
+                try {
+                    jobHandler.handle(job);
+                    processedJobs.add(job);
+                } catch (Exception e) {
+                    LOGGER.warn("Job [{}] failed on attempt [{}]", job.id(), job.attempt(), e);
+                    failedJobs.add(job);
+                }
+            }
+            int acknowledged = jobQueue.ack(processedJobs);
+            ackCount.add(acknowledged);
+            if (acknowledged < processedJobs.size()) {
+                LOGGER.warn(
+                    "{} jobs could not be acknowledged since their lease expired",
+                    processedJobs.size() - acknowledged
+                );
+            }
+            if (!failedJobs.isEmpty()) {
+                failureCount.add(failedJobs.size());
+                Map<Integer, List<ClaimedJob>> failedJobsByAttempt = new TreeMap<>();
+                for (ClaimedJob failedJob : failedJobs) {
+                    failedJobsByAttempt.computeIfAbsent(failedJob.attempt(), attempt -> new ArrayList<>()).add(failedJob);
+                }
+                for (Map.Entry<Integer, List<ClaimedJob>> entry : failedJobsByAttempt.entrySet()) {
+                    jobQueue.release(
+                        entry.getValue(),
+                        retryDelay.multipliedBy(1L << Math.min(entry.getKey() - 1, 16))
+                    );
+                }
+            }
+        }
+
+        private void backOff() {
+            long jitterNanos = ThreadLocalRandom.current().nextLong(pollIntervalNanos / 2 + 1);
+            try {
+                TimeUnit.NANOSECONDS.sleep(pollIntervalNanos / 2 + jitterNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            pollIntervalNanos = Math.min(pollIntervalNanos << 1, maxPollInterval.toNanos());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.vladmihalcea.book.hpjp.hibernate.concurrency.queue;
+
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class JobQueueTest extends AbstractTest {
+
+    private final MutableClock clock = new MutableClock();
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            Job.class
+        };
+    }
+
+    @Override
+    protected void additionalProperties(Properties properties) {
+        properties.put("hibernate.jdbc.batch_size", "50");
+    }
+
+    @Test
+    public void testClaimAndAck() {
+        JobQueue jobQueue = new JobQueue(entityManagerFactory(), clock);
+        jobQueue.enqueue(payloads(10));
+
+        List<ClaimedJob> aliceJobs = jobQueue.claim(4, Duration.ofSeconds(30));
+        List<ClaimedJob> bobJobs = jobQueue.claim(4, Duration.ofSeconds(30));
+
+        assertEquals(4, aliceJobs.size());
+        assertEquals(4, bobJobs.size());
+        assertTrue(Collections.disjoint(ids(aliceJobs), ids(bobJobs)));
+        assertEquals(1, aliceJobs.get(0).attempt());
+
+        assertEquals(4, jobQueue.ack(aliceJobs));
+        assertEquals(4, jobQueue.count(JobStatus.DONE));
+        assertEquals(6, jobQueue.count(JobStatus.PENDING));
+
+        assertEquals(2, jobQueue.claim(4, Duration.ofSeconds(30)).size());
+        assertTrue(jobQueue.claim(4, Duration.ofSeconds(30)).isEmpty());
+    }
+
+    @Test
+    public void testLeaseExpiry() {
+        JobQueue jobQueue = new JobQueue(entityManagerFactory(), clock);
+        jobQueue.enqueue(payloads(5));
+
+        List<ClaimedJob> aliceJobs = jobQueue.claim(5, Duration.ofSeconds(30));
+        assertEquals(5, aliceJobs.size());
+        assertTrue(jobQueue.claim(5, Duration.ofSeconds(30)).isEmpty());
+
+        clock.advance(Duration.ofSeconds(31));
+
+        List<ClaimedJob> bobJobs = jobQueue.claim(5, Duration.ofSeconds(30));
+        assertEquals(ids(aliceJobs), ids(bobJobs));
+        assertEquals(2, bobJobs.get(0).attempt());
+
+        LOGGER.info("Alice cannot acknowledge the jobs that Bob claimed after her lease expired");
+        assertEquals(0, jobQueue.ack(aliceJobs));
+        assertEquals(5, jobQueue.ack(bobJobs));
+        assertEquals(5, jobQueue.count(JobStatus.DONE));
+    }
+
+    @Test
+    public void testRelease() {
+        JobQueue jobQueue = new JobQueue(entityManagerFactory(), clock);
+        jobQueue.enqueue(payloads(1));
+
+        List<ClaimedJob> jobs = jobQueue.claim(1, Duration.ofSeconds(30));
+        assertEquals(1, jobQueue.release(jobs, Duration.ofSeconds(5)));
+        assertTrue(jobQueue.claim(1, Duration.ofSeconds(30)).isEmpty());
+
+        clock.advance(Duration.ofSeconds(5));
+        assertEquals(ids(jobs), ids(jobQueue.claim(1, Duration.ofSeconds(30))));
+    }
+
+    @Test
+    public void testRecoverExpiredLeases() {
+        JobQueue jobQueue = new JobQueue(entityManagerFactory(), clock).setMaxAttempts(2);
+        jobQueue.enqueue(payloads(3));
+
+        assertEquals(3, jobQueue.claim(3, Duration.ofSeconds(10)).size());
+        clock.advance(Duration.ofSeconds(11));
+        assertEquals(3, jobQueue.recoverExpiredLeases());
+
+        assertEquals(2, jobQueue.claim(2, Duration.ofSeconds(10)).size());
+        clock.advance(Duration.ofSeconds(11));
+
+        LOGGER.info("The jobs that exhausted their attempts are marked as failed");
+        assertEquals(2, jobQueue.recoverExpiredLeases());
+        assertEquals(2, jobQueue.count(JobStatus.FAILED));
+        assertEquals(1, jobQueue.count(JobStatus.PENDING));
+        assertEquals(1, jobQueue.claim(3, Duration.ofSeconds(10)).size());
+    }
+
+    @Test
+    public void testConsumer() throws InterruptedException {
+        int jobCount = 500;
+        JobQueue jobQueue = new JobQueue(entityManagerFactory());
+        jobQueue.enqueue(payloads(jobCount));
+
+        Map<Long, AtomicInteger> executions = new ConcurrentHashMap<>();
+        AtomicInteger failures = new AtomicInteger();
+
+        try (JobQueueConsumer consumer = new JobQueueConsumer(jobQueue, job -> {
+                executions.computeIfAbsent(job.id(), id -> new AtomicInteger()).incrementAndGet();
+                if (job.payload().equals("job-13") && failures.getAndIncrement() == 0) {
+                    throw new IllegalStateException("Transient failure");
+                }
+            })
+            .setWorkerCount(4)
+            .setBatchSize(20)
+            .setRetryDelay(Duration.ofMillis(10))
+            .start()) {
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (consumer.getAckCount() < jobCount && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(jobCount, consumer.getAckCount());
+            assertEquals(1, consumer.getFailureCount());
+            LOGGER.info("Empty claim ratio: {}", consumer.getEmptyClaimRatio());
+        }
+
+        assertEquals(jobCount, executions.size());
+        assertEquals(jobCount + 1, executions.values().stream().mapToInt(AtomicInteger::get).sum());
+        assertEquals(jobCount, jobQueue.count(JobStatus.DONE));
+    }
+
+    private List<String> payloads(int count) {
+        return IntStream.rangeClosed(1, count)
+            .mapToObj(i -> "job-" + i)
+            .collect(Collectors.toList());
+    }
+
+    private Set<Long> ids(List<ClaimedJob> jobs) {
+        return jobs.stream().map(ClaimedJob::id).collect(Collectors.toSet());
+    }
+
+    private static class MutableClock extends Clock {
+
+        private volatile Instant instant = Instant.parse("2026-01-01T12:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
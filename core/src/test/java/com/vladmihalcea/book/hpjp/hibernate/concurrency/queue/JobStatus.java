@@ -0,0 +1,19 @@
+package com.vladmihalcea.book.hpjp.hibernate.concurrency.queue;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public enum JobStatus {
+    /**
+     * The job is visible to the workers, unless it's leased.
+     */
+    PENDING,
+    /**
+     * The job was acknowledged by the worker that processed it.
+     */
+    DONE,
+    /**
+     * The job exhausted its attempts, so it's no longer claimed by any worker.
+     */
+    FAILED
+}
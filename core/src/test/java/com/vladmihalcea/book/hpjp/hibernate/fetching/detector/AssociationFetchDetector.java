@@ -0,0 +1,240 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching.detector;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Always-on N+1 query detector.
+ * <p>
+ * Unlike the {@link AssociationFetch.Context}, which records every loaded entity so that a test can assert it,
+ * this detector records only the secondary fetches, which are the lazy proxy and collection initializations
+ * and the eager associations that could not be fetched by the parent query. Every fetch is attributed
+ * to its call site, which is the first stack frame outside of the detector, Hibernate, the JDK
+ * and the other ignored packages, and the fetches of all sessions are aggregated by an {@link AssociationFetchSketch}.
+ * <p>
+ * Walking the stack is what makes the detector expensive, so only a {@link #setSampleRate(double) sample}
+ * of the sessions is tracked. The sampling decision is taken per session, so the per-session counts of a
+ * sampled session are exact, while the non-sampled sessions pay for a single {@link ThreadLocal} lookup per fetch.
+ * <p>
+ * The detector is registered with the {@link AssociationFetchDetectorIntegrator}, and the
+ * top offenders are exposed via {@link #topOffenders(int)} and JMX.
+ *
+ * @author Vlad Mihalcea
+ */
+public class AssociationFetchDetector implements AssociationFetchDetectorMXBean, AutoCloseable {
+
+    public static final double DEFAULT_SAMPLE_RATE = 0.01;
+
+    public static final int DEFAULT_TOP_OFFENDERS = 10;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AssociationFetchDetector.class);
+
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+    private final AssociationFetchSketch sketch;
+
+    private final List<String> ignoredPackages = new CopyOnWriteArrayList<>(
+        List.of(
+            "java.",
+            "jdk.",
+            "sun.",
+            "com.sun.",
+            "jakarta.",
+            "org.hibernate.",
+            "net.bytebuddy.",
+            "org.springframework."
+        )
+    );
+
+    private final Set<String> ignoredClasses = Set.of(
+        AssociationFetchDetector.class.getName(),
+        AssociationFetchDetectorEventListener.class.getName()
+    );
+
+    private final ThreadLocal<SessionFetches> currentSessionFetches = ThreadLocal.withInitial(SessionFetches::new);
+
+    private final LongAdder sampledSessionCount = new LongAdder();
+
+    private volatile double sampleRate = DEFAULT_SAMPLE_RATE;
+
+    private volatile int sessionFetchThreshold = 10;
+
+    private ObjectName objectName;
+
+    public AssociationFetchDetector() {
+        this(1 << 12, 100);
+    }
+
+    /**
+     * @param sketchWidth the number of Count-Min sketch counters per row
+     * @param capacity the number of fetch sites tracked exactly
+     */
+    public AssociationFetchDetector(int sketchWidth, int capacity) {
+        this.sketch = new AssociationFetchSketch(sketchWidth, capacity);
+    }
+
+    /**
+     * @param sampleRate the share of the sessions whose fetches are tracked, between 0 and 1
+     */
+    @Override
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Log a warning when a sampled session reaches the given number of fetches from the same call site.
+     */
+    public AssociationFetchDetector setSessionFetchThreshold(int sessionFetchThreshold) {
+        this.sessionFetchThreshold = sessionFetchThreshold;
+        return this;
+    }
+
+    /**
+     * Skip the frames of the given package when resolving the call site, e.g., a data access framework.
+     */
+    public AssociationFetchDetector addIgnoredPackage(String packageName) {
+        ignoredPackages.add(packageName.endsWith(".") ? packageName : packageName + ".");
+        return this;
+    }
+
+    /**
+     * @return {@code true} if the fetches of the given session are tracked
+     */
+    public boolean isSampled(SharedSessionContractImplementor session) {
+        SessionFetches sessionFetches = currentSessionFetches.get();
+        if (sessionFetches.session() != session) {
+            sessionFetches.reset(session, ThreadLocalRandom.current().nextDouble() < sampleRate);
+            if (sessionFetches.sampled) {
+                sampledSessionCount.increment();
+            }
+        }
+        return sessionFetches.sampled;
+    }
+
+    /**
+     * Record a secondary fetch of the current sampled session.
+     */
+    public void record(String entity, String association) {
+        SessionFetches sessionFetches = currentSessionFetches.get();
+        String callSite = callSite();
+        int sessionFetchCount = sessionFetches.increment(entity, association, callSite);
+        sketch.add(entity, association, callSite, sessionFetchCount);
+        if (sessionFetchCount == sessionFetchThreshold) {
+            LOGGER.warn(
+                "N+1 query issue: {}.{} was fetched {} times in the same session at {}",
+                entity,
+                association,
+                sessionFetchCount,
+                callSite
+            );
+        }
+    }
+
+    public List<AssociationFetchSite> topOffenders(int limit) {
+        return sketch.top(limit);
+    }
+
+    @Override
+    public List<AssociationFetchSite> getTopOffenders() {
+        return topOffenders(DEFAULT_TOP_OFFENDERS);
+    }
+
+    @Override
+    public long getSampledSessionCount() {
+        return sampledSessionCount.sum();
+    }
+
+    @Override
+    public void reset() {
+        sketch.clear();
+        sampledSessionCount.reset();
+    }
+
+    public AssociationFetchDetector registerMBean(String name) {
+        try {
+            objectName = new ObjectName(
+                String.format("%s:type=AssociationFetchDetector,name=%s", getClass().getPackageName(), ObjectName.quote(name))
+            );
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            LOGGER.error("Could not register the AssociationFetchDetector MBean", e);
+            objectName = null;
+        }
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                LOGGER.error("Could not unregister the AssociationFetchDetector MBean", e);
+            }
+            objectName = null;
+        }
+    }
+
+    private String callSite() {
+        return STACK_WALKER.walk(frames -> frames
+            .filter(frame -> !isIgnored(frame.getClassName()))
+            .findFirst()
+            .map(frame -> frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber())
+            .orElse("unknown")
+        );
+    }
+
+    private boolean isIgnored(String className) {
+        if (ignoredClasses.contains(className) || className.contains("$HibernateProxy$")) {
+            return true;
+        }
+        for (String ignoredPackage : ignoredPackages) {
+            if (className.startsWith(ignoredPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The per-session fetch counts of the session that the current thread executed most recently.
+     * The session is weakly referenced, so that a closed session can be garbage collected.
+     */
+    private static class SessionFetches {
+
+        private WeakReference<SharedSessionContractImplementor> sessionReference = new WeakReference<>(null);
+
+        private boolean sampled;
+
+        private final Map<String, int[]> fetchCounts = new HashMap<>();
+
+        SharedSessionContractImplementor session() {
+            return sessionReference.get();
+        }
+
+        void reset(SharedSessionContractImplementor session, boolean sampled) {
+            this.sessionReference = new WeakReference<>(session);
+            this.sampled = sampled;
+            fetchCounts.clear();
+        }
+
+        int increment(String entity, String association, String callSite) {
+            String key = entity + '.' + association + '@' + callSite;
+            return ++fetchCounts.computeIfAbsent(key, k -> new int[1])[0];
+        }
+    }
+}
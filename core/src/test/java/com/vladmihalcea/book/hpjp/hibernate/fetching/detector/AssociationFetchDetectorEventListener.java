@@ -0,0 +1,142 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching.detector;
+
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reports the secondary fetches to the {@link AssociationFetchDetector}.
+ * <p>
+ * It must run before the default listeners, so that it can tell whether
+ * the entity or the collection is already loaded.
+ * <p>
+ * A to-one fetch is reported with the owner entity and the association attribute, just like a collection.
+ * Since the load event does not tell which association triggered it, the association is resolved from the
+ * mapping when a single to-one association targets the fetched entity. Otherwise, the proxy is looked up
+ * in the loaded state of the managed entities. If the association cannot be resolved, the fetch is reported
+ * with the fetched entity and either {@code proxy} or {@code eager}.
+ *
+ * @author Vlad Mihalcea
+ */
+public class AssociationFetchDetectorEventListener implements LoadEventListener, InitializeCollectionEventListener {
+
+    private final AssociationFetchDetector detector;
+
+    private final Map<String, List<ToOneAssociation>> toOneAssociations = new ConcurrentHashMap<>();
+
+    public AssociationFetchDetectorEventListener(AssociationFetchDetector detector) {
+        this.detector = detector;
+    }
+
+    @Override
+    public void onLoad(LoadEvent event, LoadType loadType) {
+        boolean proxyInitialization = loadType == IMMEDIATE_LOAD;
+        if (!proxyInitialization && !(event.isAssociationFetch() && !loadType.isAllowProxyCreation())) {
+            return;
+        }
+        EventSource session = event.getSession();
+        if (!detector.isSampled(session)) {
+            return;
+        }
+        EntityPersister persister = session.getFactory()
+            .getMappingMetamodel()
+            .getEntityDescriptor(event.getEntityClassName());
+        EntityKey entityKey = session.generateEntityKey(event.getEntityId(), persister);
+        if (session.getPersistenceContextInternal().getEntity(entityKey) != null) {
+            return;
+        }
+        ToOneAssociation association = owningAssociation(session, persister, entityKey, proxyInitialization);
+        if (association != null) {
+            detector.record(
+                association.owner().getMappedClass().getSimpleName(),
+                association.owner().getPropertyNames()[association.propertyIndex()]
+            );
+        } else {
+            detector.record(
+                persister.getMappedClass().getSimpleName(),
+                proxyInitialization ? "proxy" : "eager"
+            );
+        }
+    }
+
+    @Override
+    public void onInitializeCollection(InitializeCollectionEvent event) {
+        PersistentCollection<?> collection = event.getCollection();
+        if (collection.wasInitialized() || !detector.isSampled(event.getSession())) {
+            return;
+        }
+        String ownerEntityName = event.getAffectedOwnerEntityName();
+        String role = collection.getRole();
+        detector.record(
+            event.getSession().getFactory()
+                .getMappingMetamodel()
+                .getEntityDescriptor(ownerEntityName)
+                .getMappedClass()
+                .getSimpleName(),
+            role.startsWith(ownerEntityName + ".") ? role.substring(ownerEntityName.length() + 1) : role
+        );
+    }
+
+    /**
+     * @return the to-one association that triggered the fetch, or {@code null} if it cannot be resolved
+     */
+    private ToOneAssociation owningAssociation(EventSource session, EntityPersister persister,
+            EntityKey entityKey, boolean proxyInitialization) {
+        List<ToOneAssociation> associations = toOneAssociations.computeIfAbsent(
+            persister.getEntityName(),
+            entityName -> toOneAssociations(session.getFactory(), entityName)
+        );
+        if (associations.size() == 1) {
+            return associations.get(0);
+        }
+        if (associations.isEmpty() || !proxyInitialization) {
+            return null;
+        }
+        PersistenceContext persistenceContext = session.getPersistenceContextInternal();
+        Object proxy = persistenceContext.getProxy(entityKey);
+        if (proxy == null) {
+            return null;
+        }
+        for (Map.Entry<Object, EntityEntry> entityEntry : persistenceContext.reentrantSafeEntityEntries()) {
+            Object[] loadedState = entityEntry.getValue().getLoadedState();
+            if (loadedState == null) {
+                continue;
+            }
+            for (ToOneAssociation association : associations) {
+                if (association.owner() == entityEntry.getValue().getPersister() &&
+                    loadedState[association.propertyIndex()] == proxy) {
+                    return association;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<ToOneAssociation> toOneAssociations(SessionFactoryImplementor factory, String entityName) {
+        List<ToOneAssociation> associations = new ArrayList<>();
+        factory.getMappingMetamodel().forEachEntityDescriptor(owner -> {
+            Type[] propertyTypes = owner.getPropertyTypes();
+            for (int i = 0; i < propertyTypes.length; i++) {
+                if (propertyTypes[i] instanceof EntityType entityType &&
+                    entityName.equals(entityType.getAssociatedEntityName())) {
+                    associations.add(new ToOneAssociation(owner, i));
+                }
+            }
+        });
+        return associations;
+    }
+
+    private record ToOneAssociation(EntityPersister owner, int propertyIndex) {
+    }
+}
@@ -0,0 +1,49 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching.detector;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class AssociationFetchDetectorIntegrator implements Integrator {
+
+    private final AssociationFetchDetector detector;
+
+    public AssociationFetchDetectorIntegrator(AssociationFetchDetector detector) {
+        this.detector = detector;
+    }
+
+    @Override
+    public void integrate(
+        Metadata metadata,
+        SessionFactoryImplementor sessionFactory,
+        SessionFactoryServiceRegistry serviceRegistry) {
+
+        final EventListenerRegistry eventListenerRegistry =
+            serviceRegistry.getService(EventListenerRegistry.class);
+
+        AssociationFetchDetectorEventListener listener = new AssociationFetchDetectorEventListener(detector);
+
+        eventListenerRegistry.prependListeners(
+            EventType.LOAD,
+            listener
+        );
+
+        eventListenerRegistry.prependListeners(
+            EventType.INIT_COLLECTION,
+            listener
+        );
+    }
+
+    @Override
+    public void disintegrate(
+        SessionFactoryImplementor sessionFactory,
+        SessionFactoryServiceRegistry serviceRegistry) {
+
+    }
+}
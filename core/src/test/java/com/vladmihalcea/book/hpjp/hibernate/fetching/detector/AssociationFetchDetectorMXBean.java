@@ -0,0 +1,21 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching.detector;
+
+import java.util.List;
+
+/**
+ * JMX view of the {@link AssociationFetchDetector} top offenders.
+ *
+ * @author Vlad Mihalcea
+ */
+public interface AssociationFetchDetectorMXBean {
+
+    List<AssociationFetchSite> getTopOffenders();
+
+    long getSampledSessionCount();
+
+    double getSampleRate();
+
+    void setSampleRate(double sampleRate);
+
+    void reset();
+}
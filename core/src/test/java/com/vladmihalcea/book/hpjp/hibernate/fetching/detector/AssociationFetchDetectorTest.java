@@ -0,0 +1,317 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching.detector;
+
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import jakarta.persistence.*;
+import org.hibernate.integrator.spi.Integrator;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class AssociationFetchDetectorTest extends AbstractTest {
+
+    public static final int POST_COUNT = 5;
+
+    private final AssociationFetchDetector detector = new AssociationFetchDetector();
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            Post.class,
+            PostComment.class,
+            PostDetails.class,
+        };
+    }
+
+    @Override
+    protected Integrator integrator() {
+        return new AssociationFetchDetectorIntegrator(detector);
+    }
+
+    @Override
+    protected void afterInit() {
+        doInJPA(entityManager -> {
+            for (long i = 1; i <= POST_COUNT; i++) {
+                Post post = new Post()
+                    .setId(i)
+                    .setTitle(String.format("High-Performance Java Persistence, part %d", i));
+                entityManager.persist(post);
+
+                for (long j = 1; j <= 2; j++) {
+                    entityManager.persist(
+                        new PostComment()
+                            .setId(i * 10 + j)
+                            .setPost(post)
+                            .setReview(String.format("Review %d", j))
+                    );
+                }
+            }
+        });
+        detector.setSampleRate(1);
+        detector.reset();
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        detector.close();
+    }
+
+    @Test
+    public void testProxyInitialization() {
+        for (int i = 0; i < 2; i++) {
+            doInJPA(entityManager -> {
+                List<PostComment> comments = entityManager.createQuery("""
+                    select pc
+                    from PostComment pc
+                    order by pc.id
+                    """, PostComment.class)
+                .getResultList();
+
+                for (PostComment comment : comments) {
+                    assertNotNull(comment.getPost().getTitle());
+                }
+            });
+        }
+
+        List<AssociationFetchSite> topOffenders = detector.getTopOffenders();
+        LOGGER.info("Top offenders: {}", topOffenders);
+        assertEquals(1, topOffenders.size());
+
+        AssociationFetchSite site = topOffenders.get(0);
+        assertEquals("PostComment", site.getEntity());
+        assertEquals("post", site.getAssociation());
+        assertTrue(site.getCallSite().startsWith(AssociationFetchDetectorTest.class.getName()));
+        assertEquals(2L * POST_COUNT, site.getFetchCount());
+        assertEquals(2, site.getSessionCount());
+        assertEquals(POST_COUNT, site.getFetchesPerSession(), 0);
+        assertEquals(POST_COUNT, site.getMaxFetchesPerSession());
+        assertEquals(2, detector.getSampledSessionCount());
+    }
+
+    @Test
+    public void testCollectionInitialization() {
+        doInJPA(entityManager -> {
+            List<Post> posts = entityManager.createQuery("""
+                select p
+                from Post p
+                order by p.id
+                """, Post.class)
+            .getResultList();
+
+            for (Post post : posts) {
+                assertEquals(2, post.getComments().size());
+            }
+        });
+
+        List<AssociationFetchSite> topOffenders = detector.getTopOffenders();
+        LOGGER.info("Top offenders: {}", topOffenders);
+        assertEquals(1, topOffenders.size());
+
+        AssociationFetchSite site = topOffenders.get(0);
+        assertEquals("Post", site.getEntity());
+        assertEquals("comments", site.getAssociation());
+        assertEquals(POST_COUNT, site.getFetchCount());
+    }
+
+    @Test
+    public void testJoinFetch() {
+        doInJPA(entityManager -> {
+            List<PostComment> comments = entityManager.createQuery("""
+                select pc
+                from PostComment pc
+                join fetch pc.post
+                order by pc.id
+                """, PostComment.class)
+            .getResultList();
+
+            for (PostComment comment : comments) {
+                assertNotNull(comment.getPost().getTitle());
+            }
+        });
+
+        assertTrue(detector.getTopOffenders().isEmpty());
+    }
+
+    @Test
+    public void testSampling() {
+        detector.setSampleRate(0);
+
+        doInJPA(entityManager -> {
+            List<PostComment> comments = entityManager.createQuery("""
+                select pc
+                from PostComment pc
+                order by pc.id
+                """, PostComment.class)
+            .getResultList();
+
+            for (PostComment comment : comments) {
+                assertNotNull(comment.getPost().getTitle());
+            }
+        });
+
+        assertTrue(detector.getTopOffenders().isEmpty());
+        assertEquals(0, detector.getSampledSessionCount());
+    }
+
+    @Test
+    public void testTopOffendersEviction() {
+        AssociationFetchSketch sketch = new AssociationFetchSketch(1 << 10, 2);
+        for (int i = 1; i <= 100; i++) {
+            sketch.add("Post", "comments", "PostService.findAll:10", i);
+        }
+        for (int i = 1; i <= 50; i++) {
+            sketch.add("Post", "proxy", "PostCommentService.findAll:20", i);
+        }
+        for (int i = 1; i <= 200; i++) {
+            sketch.add("Tag", "posts", "TagService.findAll:30", 1);
+        }
+
+        List<AssociationFetchSite> sites = sketch.top(10);
+        assertEquals(2, sites.size());
+        assertEquals("TagService.findAll:30", sites.get(0).getCallSite());
+        assertTrue(sites.get(0).getFetchCount() >= 200);
+        assertEquals("PostService.findAll:10", sites.get(1).getCallSite());
+        assertEquals(100, sites.get(1).getFetchCount());
+        assertEquals(1, sites.get(1).getSessionCount());
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        detector.registerMBean(getClass().getSimpleName());
+
+        doInJPA(entityManager -> {
+            for (PostComment comment : entityManager.createQuery("""
+                select pc
+                from PostComment pc
+                order by pc.id
+                """, PostComment.class)
+            .getResultList()) {
+                assertNotNull(comment.getPost().getTitle());
+            }
+        });
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(
+            String.format(
+                "%s:type=AssociationFetchDetector,name=%s",
+                AssociationFetchDetector.class.getPackageName(),
+                ObjectName.quote(getClass().getSimpleName())
+            )
+        );
+        CompositeData[] topOffenders = (CompositeData[]) mBeanServer.getAttribute(objectName, "TopOffenders");
+        assertEquals(1, topOffenders.length);
+        assertEquals("PostComment", topOffenders[0].get("entity"));
+        assertEquals("post", topOffenders[0].get("association"));
+        assertEquals((long) POST_COUNT, topOffenders[0].get("fetchCount"));
+        assertEquals((double) POST_COUNT, topOffenders[0].get("fetchesPerSession"));
+    }
+
+    @Entity(name = "Post")
+    @Table(name = "post")
+    public static class Post {
+
+        @Id
+        private Long id;
+
+        private String title;
+
+        @OneToMany(mappedBy = "post")
+        private List<PostComment> comments = new ArrayList<>();
+
+        public Long getId() {
+            return id;
+        }
+
+        public Post setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public Post setTitle(String title) {
+            this.title = title;
+            return this;
+        }
+
+        public List<PostComment> getComments() {
+            return comments;
+        }
+    }
+
+    @Entity(name = "PostComment")
+    @Table(name = "post_comment")
+    public static class PostComment {
+
+        @Id
+        private Long id;
+
+        @ManyToOne(fetch = FetchType.LAZY)
+        private Post post;
+
+        private String review;
+
+        public Long getId() {
+            return id;
+        }
+
+        public PostComment setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public Post getPost() {
+            return post;
+        }
+
+        public PostComment setPost(Post post) {
+            this.post = post;
+            return this;
+        }
+
+        public String getReview() {
+            return review;
+        }
+
+        public PostComment setReview(String review) {
+            this.review = review;
+            return this;
+        }
+    }
+
+    /**
+     * Another to-one association targeting the {@link Post} entity, so the fetching association
+     * cannot be resolved from the mapping alone.
+     */
+    @Entity(name = "PostDetails")
+    @Table(name = "post_details")
+    public static class PostDetails {
+
+        @Id
+        private Long id;
+
+        @OneToOne(fetch = FetchType.LAZY)
+        @MapsId
+        private Post post;
+
+        public Long getId() {
+            return id;
+        }
+
+        public Post getPost() {
+            return post;
+        }
+    }
+}
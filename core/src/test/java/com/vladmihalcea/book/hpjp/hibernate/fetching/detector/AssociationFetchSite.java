@@ -0,0 +1,101 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching.detector;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The secondary fetches of an association that were triggered from the same call site.
+ * <p>
+ * The getters map this class to a JMX {@code CompositeData}, so it's exposed as-is
+ * by the {@link AssociationFetchDetectorMXBean}.
+ *
+ * @author Vlad Mihalcea
+ */
+public class AssociationFetchSite {
+
+    private final String entity;
+
+    private final String association;
+
+    private final String callSite;
+
+    private final long fetchCount;
+
+    private final long sessionCount;
+
+    private final long maxFetchesPerSession;
+
+    @ConstructorProperties({"entity", "association", "callSite", "fetchCount", "sessionCount", "maxFetchesPerSession"})
+    public AssociationFetchSite(
+            String entity,
+            String association,
+            String callSite,
+            long fetchCount,
+            long sessionCount,
+            long maxFetchesPerSession) {
+        this.entity = entity;
+        this.association = association;
+        this.callSite = callSite;
+        this.fetchCount = fetchCount;
+        this.sessionCount = sessionCount;
+        this.maxFetchesPerSession = maxFetchesPerSession;
+    }
+
+    /**
+     * @return the association owner entity name, or the fetched entity name if the to-one association is unknown
+     */
+    public String getEntity() {
+        return entity;
+    }
+
+    /**
+     * @return the association attribute name, or how an unknown to-one association was fetched,
+     * which is either {@code proxy} or {@code eager}
+     */
+    public String getAssociation() {
+        return association;
+    }
+
+    /**
+     * @return the first application stack frame, as {@code class.method:line}
+     */
+    public String getCallSite() {
+        return callSite;
+    }
+
+    /**
+     * @return the estimated number of sampled fetches, which can be overestimated
+     * if the call site was admitted to the top offenders after other call sites were evicted
+     */
+    public long getFetchCount() {
+        return fetchCount;
+    }
+
+    /**
+     * @return the number of sampled sessions that executed this call site
+     */
+    public long getSessionCount() {
+        return sessionCount;
+    }
+
+    public double getFetchesPerSession() {
+        return sessionCount > 0 ? (double) fetchCount / sessionCount : fetchCount;
+    }
+
+    public long getMaxFetchesPerSession() {
+        return maxFetchesPerSession;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "%s.%s at %s: %d fetches in %d sessions, %.1f per session, max %d",
+            entity,
+            association,
+            callSite,
+            fetchCount,
+            sessionCount,
+            getFetchesPerSession(),
+            maxFetchesPerSession
+        );
+    }
+}
@@ -0,0 +1,160 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching.detector;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded-memory aggregation of the association fetches of all sessions.
+ * <p>
+ * Every fetch increments a Count-Min sketch, whose counters are spread over
+ * {@code DEPTH} independently hashed rows, so concurrent sessions rarely update the same cell.
+ * Only the {@code capacity} fetch sites with the highest estimated counts are tracked exactly.
+ * A new fetch site replaces the least fetched tracked site once its estimated count exceeds it,
+ * and it inherits the estimate as its initial fetch count, like the Space-Saving algorithm does.
+ *
+ * @author Vlad Mihalcea
+ */
+class AssociationFetchSketch {
+
+    private static final int DEPTH = 4;
+
+    private static final long[] SEEDS = {
+        0x9E3779B97F4A7C15L,
+        0xC2B2AE3D27D4EB4FL,
+        0x165667B19E3779F9L,
+        0xD6E8FEB86659FD93L
+    };
+
+    private final AtomicLongArray counters;
+
+    private final int widthBits;
+
+    private final int capacity;
+
+    private final Map<Key, Counter> topSites = new ConcurrentHashMap<>();
+
+    AssociationFetchSketch(int width, int capacity) {
+        this.widthBits = Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(2, width) - 1);
+        this.counters = new AtomicLongArray(DEPTH << widthBits);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Record a fetch.
+     *
+     * @param sessionFetchCount the number of fetches of this site in the current session, including this one
+     */
+    void add(String entity, String association, String callSite, int sessionFetchCount) {
+        Key key = new Key(entity, association, callSite);
+        long estimate = increment(key.hashCode());
+        Counter counter = topSites.get(key);
+        if (counter == null) {
+            counter = admit(key, estimate);
+            if (counter == null) {
+                return;
+            }
+        }
+        counter.fetchCount.increment();
+        if (sessionFetchCount == 1) {
+            counter.sessionCount.increment();
+        }
+        counter.maxFetchesPerSession.accumulate(sessionFetchCount);
+    }
+
+    /**
+     * @return the tracked fetch sites, ordered by fetch count, in descending order
+     */
+    List<AssociationFetchSite> top(int limit) {
+        List<AssociationFetchSite> sites = new ArrayList<>(topSites.size());
+        for (Map.Entry<Key, Counter> entry : topSites.entrySet()) {
+            Key key = entry.getKey();
+            Counter counter = entry.getValue();
+            sites.add(
+                new AssociationFetchSite(
+                    key.entity,
+                    key.association,
+                    key.callSite,
+                    counter.fetchCount(),
+                    counter.sessionCount.sum(),
+                    counter.maxFetchesPerSession.get()
+                )
+            );
+        }
+        sites.sort(Comparator.comparingLong(AssociationFetchSite::getFetchCount).reversed());
+        return sites.size() > limit ? sites.subList(0, limit) : sites;
+    }
+
+    synchronized void clear() {
+        topSites.clear();
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    /**
+     * Increment the Count-Min sketch cells of the given hash.
+     *
+     * @return the estimated count, which is the minimum of the row counters
+     */
+    private long increment(int hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int cell = (row << widthBits) | (int) ((hash * SEEDS[row]) >>> (Long.SIZE - widthBits));
+            estimate = Math.min(estimate, counters.incrementAndGet(cell));
+        }
+        return estimate;
+    }
+
+    private synchronized Counter admit(Key key, long estimate) {
+        Counter counter = topSites.get(key);
+        if (counter != null) {
+            return counter;
+        }
+        if (topSites.size() >= capacity) {
+            Key minKey = null;
+            long minCount = Long.MAX_VALUE;
+            for (Map.Entry<Key, Counter> entry : topSites.entrySet()) {
+                long fetchCount = entry.getValue().fetchCount();
+                if (fetchCount < minCount) {
+                    minCount = fetchCount;
+                    minKey = entry.getKey();
+                }
+            }
+            if (estimate <= minCount) {
+                return null;
+            }
+            topSites.remove(minKey);
+        }
+        counter = new Counter(estimate - 1);
+        topSites.put(key, counter);
+        return counter;
+    }
+
+    private record Key(String entity, String association, String callSite) {
+    }
+
+    private static class Counter {
+
+        /**
+         * The fetches that were estimated to have happened before this site was admitted.
+         */
+        final long error;
+
+        final LongAdder fetchCount = new LongAdder();
+
+        final LongAdder sessionCount = new LongAdder();
+
+        final LongAccumulator maxFetchesPerSession = new LongAccumulator(Math::max, 0);
+
+        Counter(long error) {
+            this.error = error;
+        }
+
+        long fetchCount() {
+            return error + fetchCount.sum();
+        }
+    }
+}
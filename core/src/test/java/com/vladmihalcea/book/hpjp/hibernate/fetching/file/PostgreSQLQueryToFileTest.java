@@ -1,15 +1,25 @@
 package com.vladmihalcea.book.hpjp.hibernate.fetching.file;
 
+import com.vladmihalcea.book.hpjp.jdbc.copy.CopyFormat;
+import com.vladmihalcea.book.hpjp.jdbc.copy.PostgreSQLBulkCopy;
 import com.vladmihalcea.book.hpjp.util.AbstractPostgreSQLIntegrationTest;
 import org.junit.Test;
 
 import jakarta.persistence.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
+import static org.junit.Assert.assertEquals;
+
 /**
  * @author Vlad Mihalcea
  */
@@ -67,6 +77,32 @@ public class PostgreSQLQueryToFileTest extends AbstractPostgreSQLIntegrationTest
         });
     }
 
+    @Test
+    public void testCopyToClient() throws IOException {
+        Path file = Files.createTempFile("post_and_comments", ".tsv");
+        try {
+            doInJDBC(connection -> {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    long byteCount = new PostgreSQLBulkCopy()
+                        .setFormat(CopyFormat.TEXT)
+                        .copyOut(
+                            connection,
+                            "   select * " +
+                            "   from post p " +
+                            "   inner join post_comment pc on pc.post_id = p.id ",
+                            channel
+                        );
+                    LOGGER.info("Exported {} bytes to {}", byteCount, file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            assertEquals(200, Files.readAllLines(file).size());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
     @Entity(name = "Post")
     @Table(name = "post")
     public static class Post {
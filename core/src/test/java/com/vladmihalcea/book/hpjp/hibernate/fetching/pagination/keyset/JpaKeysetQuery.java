@@ -0,0 +1,160 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A {@link KeysetQuery} built from a JPQL (or native SQL) query and a {@link KeysetSort}.
+ * <p>
+ * The seek predicate and the {@code ORDER BY} clause are appended to the query, so the
+ * {@code select} and {@code where} parts must not contain them:
+ *
+ * <pre>
+ * new JpaKeysetQuery&lt;&gt;(Post.class, "select p from Post p", KeysetSort.of(desc("p.createdOn"), desc("p.id")))
+ *     .where("p.title like :titlePattern")
+ *     .setParameter("titlePattern", "High-Performance%")
+ *     .setKeyExtractor(post -&gt; new Object[] {post.getCreatedOn(), post.getId()})
+ *     .setTransactionRunner(work -&gt; transactionTemplate.execute(status -&gt; work.apply(entityManager)));
+ * </pre>
+ *
+ * Two queries with the same text and parameter values are equal, so a query rebuilt
+ * on every request can still find the page that was prefetched for the previous request.
+ *
+ * @author Vlad Mihalcea
+ */
+public class JpaKeysetQuery<T> implements KeysetQuery<T> {
+
+    public static final String KEY_PARAMETER_PREFIX = "keyset_";
+
+    private final Class<T> resultClass;
+
+    private final String select;
+
+    private final KeysetSort sort;
+
+    private final Map<String, Object> parameters = new LinkedHashMap<>();
+
+    private String where;
+
+    private boolean nativeQuery;
+
+    private Function<T, Object[]> keyExtractor;
+
+    private Function<Function<EntityManager, List<T>>, List<T>> transactionRunner;
+
+    public JpaKeysetQuery(Class<T> resultClass, String select, KeysetSort sort) {
+        this.resultClass = resultClass;
+        this.select = select;
+        this.sort = sort;
+    }
+
+    public JpaKeysetQuery<T> where(String where) {
+        this.where = where;
+        return this;
+    }
+
+    public JpaKeysetQuery<T> setParameter(String name, Object value) {
+        parameters.put(name, value);
+        return this;
+    }
+
+    public JpaKeysetQuery<T> setNativeQuery(boolean nativeQuery) {
+        this.nativeQuery = nativeQuery;
+        return this;
+    }
+
+    public JpaKeysetQuery<T> setKeyExtractor(Function<T, Object[]> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+        return this;
+    }
+
+    /**
+     * Set how {@link #fetch(Object[], int)} obtains its {@link EntityManager},
+     * typically by running the given function in a new read-only transaction.
+     */
+    public JpaKeysetQuery<T> setTransactionRunner(Function<Function<EntityManager, List<T>>, List<T>> transactionRunner) {
+        this.transactionRunner = transactionRunner;
+        return this;
+    }
+
+    @Override
+    public KeysetSort getSort() {
+        return sort;
+    }
+
+    @Override
+    public Object[] getKeyValues(T row) {
+        return keyExtractor.apply(row);
+    }
+
+    @Override
+    public List<T> fetch(Object[] keyValues, int limit) {
+        if (transactionRunner == null) {
+            throw new IllegalStateException("No transaction runner was set, so use fetch(EntityManager, Object[], int)");
+        }
+        return transactionRunner.apply(entityManager -> fetch(entityManager, keyValues, limit));
+    }
+
+    /**
+     * Fetch the rows following the given sort key values using the current {@link EntityManager}.
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> fetch(EntityManager entityManager, Object[] keyValues, int limit) {
+        String queryString = getQueryString(keyValues != null);
+        Query query = nativeQuery ?
+            entityManager.createNativeQuery(queryString, resultClass) :
+            entityManager.createQuery(queryString, resultClass);
+        parameters.forEach(query::setParameter);
+        if (keyValues != null) {
+            for (int i = 0; i < keyValues.length; i++) {
+                query.setParameter(KEY_PARAMETER_PREFIX + i, keyValues[i]);
+            }
+        }
+        return query
+            .setMaxResults(limit)
+            .getResultList();
+    }
+
+    public String getQueryString(boolean seek) {
+        StringBuilder queryString = new StringBuilder(select);
+        if (where != null || seek) {
+            queryString.append(" where ");
+            if (where != null) {
+                queryString.append("(").append(where).append(")");
+                if (seek) {
+                    queryString.append(" and ");
+                }
+            }
+            if (seek) {
+                queryString.append(sort.seekPredicate(KEY_PARAMETER_PREFIX));
+            }
+        }
+        return queryString
+            .append(" order by ")
+            .append(sort.orderBy())
+            .toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof JpaKeysetQuery<?> that)) return false;
+        return nativeQuery == that.nativeQuery &&
+            resultClass.equals(that.resultClass) &&
+            select.equals(that.select) &&
+            Objects.equals(where, that.where) &&
+            sort.getKeys().equals(that.sort.getKeys()) &&
+            parameters.equals(that.parameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(resultClass, select, where, sort.getKeys(), parameters, nativeQuery);
+    }
+}
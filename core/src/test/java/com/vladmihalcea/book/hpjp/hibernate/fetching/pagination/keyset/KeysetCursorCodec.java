@@ -0,0 +1,234 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Encodes the sort key values of the last row of a page as an opaque, URL-safe cursor.
+ * <p>
+ * The values are written in a compact binary form (variable-length integers, type tags instead of
+ * type names) prefixed by the {@link KeysetSort#getFingerprint() sort fingerprint}, so a cursor
+ * of a {@code (created_on, id)} page is usually shorter than 30 characters, and a cursor issued
+ * for a different sort is rejected instead of silently producing a wrong page.
+ * <p>
+ * The cursor is not signed. It hides the sort key values from casual inspection, but, since the
+ * values end up as bind parameters of the seek predicate, a forged cursor can only move the page
+ * start, not change the query.
+ *
+ * @author Vlad Mihalcea
+ */
+public class KeysetCursorCodec {
+
+    private static final byte VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte INTEGER = 2;
+    private static final byte SHORT = 3;
+    private static final byte STRING = 4;
+    private static final byte FALSE = 5;
+    private static final byte TRUE = 6;
+    private static final byte LOCAL_DATE_TIME = 7;
+    private static final byte LOCAL_DATE = 8;
+    private static final byte TIMESTAMP = 9;
+    private static final byte DATE = 10;
+    private static final byte INSTANT = 11;
+    private static final byte BIG_DECIMAL = 12;
+    private static final byte UUID_VALUE = 13;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    public String encode(KeysetSort sort, Object[] values) {
+        if (values.length != sort.size()) {
+            throw new IllegalArgumentException(
+                String.format("Expected %d sort key values but got %d!", sort.size(), values.length)
+            );
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32);
+        out.write(VERSION);
+        int fingerprint = sort.getFingerprint();
+        out.write(fingerprint >>> 24);
+        out.write(fingerprint >>> 16);
+        out.write(fingerprint >>> 8);
+        out.write(fingerprint);
+        for (Object value : values) {
+            writeValue(out, value);
+        }
+        return ENCODER.encodeToString(out.toByteArray());
+    }
+
+    public Object[] decode(KeysetSort sort, String cursor) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(DECODER.decode(cursor));
+            if (in.get() != VERSION || in.getInt() != sort.getFingerprint()) {
+                throw new IllegalArgumentException(
+                    String.format("The [%s] cursor was not issued for the [%s] sort!", cursor, sort)
+                );
+            }
+            Object[] values = new Object[sort.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readValue(in);
+            }
+            if (in.hasRemaining()) {
+                throw new IllegalArgumentException(String.format("The [%s] cursor is malformed!", cursor));
+            }
+            return values;
+        } catch (BufferUnderflowException | IllegalStateException | ArithmeticException | DateTimeException e) {
+            throw new IllegalArgumentException(String.format("The [%s] cursor is malformed!", cursor), e);
+        }
+    }
+
+    private void writeValue(ByteArrayOutputStream out, Object value) {
+        if (value == null) {
+            out.write(NULL);
+        } else if (value instanceof Long longValue) {
+            out.write(LONG);
+            writeSignedVarLong(out, longValue);
+        } else if (value instanceof Integer intValue) {
+            out.write(INTEGER);
+            writeSignedVarLong(out, intValue);
+        } else if (value instanceof Short shortValue) {
+            out.write(SHORT);
+            writeSignedVarLong(out, shortValue);
+        } else if (value instanceof String stringValue) {
+            out.write(STRING);
+            writeBytes(out, stringValue.getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof Boolean booleanValue) {
+            out.write(booleanValue ? TRUE : FALSE);
+        } else if (value instanceof LocalDateTime localDateTime) {
+            out.write(LOCAL_DATE_TIME);
+            writeSignedVarLong(out, localDateTime.toEpochSecond(ZoneOffset.UTC));
+            writeVarLong(out, localDateTime.getNano());
+        } else if (value instanceof LocalDate localDate) {
+            out.write(LOCAL_DATE);
+            writeSignedVarLong(out, localDate.toEpochDay());
+        } else if (value instanceof Timestamp timestamp) {
+            out.write(TIMESTAMP);
+            writeSignedVarLong(out, Math.floorDiv(timestamp.getTime(), 1000));
+            writeVarLong(out, timestamp.getNanos());
+        } else if (value instanceof Date date) {
+            out.write(DATE);
+            writeSignedVarLong(out, date.getTime());
+        } else if (value instanceof Instant instant) {
+            out.write(INSTANT);
+            writeSignedVarLong(out, instant.getEpochSecond());
+            writeVarLong(out, instant.getNano());
+        } else if (value instanceof BigDecimal bigDecimal) {
+            out.write(BIG_DECIMAL);
+            writeSignedVarLong(out, bigDecimal.scale());
+            writeBytes(out, bigDecimal.unscaledValue().toByteArray());
+        } else if (value instanceof UUID uuid) {
+            out.write(UUID_VALUE);
+            writeFixedLong(out, uuid.getMostSignificantBits());
+            writeFixedLong(out, uuid.getLeastSignificantBits());
+        } else {
+            throw new IllegalArgumentException(
+                String.format("The [%s] sort key type is not supported!", value.getClass().getName())
+            );
+        }
+    }
+
+    private Object readValue(ByteBuffer in) {
+        byte type = in.get();
+        switch (type) {
+            case NULL:
+                return null;
+            case LONG:
+                return readSignedVarLong(in);
+            case INTEGER:
+                return Math.toIntExact(readSignedVarLong(in));
+            case SHORT:
+                return (short) readSignedVarLong(in);
+            case STRING:
+                return new String(readBytes(in), StandardCharsets.UTF_8);
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case LOCAL_DATE_TIME:
+                return LocalDateTime.ofEpochSecond(readSignedVarLong(in), (int) readVarLong(in), ZoneOffset.UTC);
+            case LOCAL_DATE:
+                return LocalDate.ofEpochDay(readSignedVarLong(in));
+            case TIMESTAMP:
+                Timestamp timestamp = new Timestamp(readSignedVarLong(in) * 1000);
+                timestamp.setNanos((int) readVarLong(in));
+                return timestamp;
+            case DATE:
+                return new Date(readSignedVarLong(in));
+            case INSTANT:
+                return Instant.ofEpochSecond(readSignedVarLong(in), readVarLong(in));
+            case BIG_DECIMAL:
+                int scale = Math.toIntExact(readSignedVarLong(in));
+                return new BigDecimal(new BigInteger(readBytes(in)), scale);
+            case UUID_VALUE:
+                return new UUID(in.getLong(), in.getLong());
+            default:
+                throw new IllegalStateException("Unknown sort key type: " + type);
+        }
+    }
+
+    private void writeSignedVarLong(ByteArrayOutputStream out, long value) {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    private void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private void writeFixedLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    private void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+        writeVarLong(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private long readSignedVarLong(ByteBuffer in) {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Variable-length integer is too long");
+    }
+
+    private byte[] readBytes(ByteBuffer in) {
+        int length = Math.toIntExact(readVarLong(in));
+        if (length > in.remaining()) {
+            throw new IllegalStateException("Value length exceeds the cursor length");
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+}
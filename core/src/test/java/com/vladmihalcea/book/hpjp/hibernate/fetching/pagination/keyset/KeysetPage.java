@@ -0,0 +1,45 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset;
+
+import java.util.List;
+
+/**
+ * A page of a {@link KeysetQuery}, along with the cursor of the following page.
+ *
+ * @author Vlad Mihalcea
+ */
+public class KeysetPage<T> {
+
+    private final List<T> content;
+
+    private final String nextCursor;
+
+    private final boolean prefetched;
+
+    KeysetPage(List<T> content, String nextCursor, boolean prefetched) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+        this.prefetched = prefetched;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    /**
+     * @return the opaque cursor of the next page, or {@code null} if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    /**
+     * @return {@code true} if the page was fetched in the background while the previous page was being rendered
+     */
+    public boolean isPrefetched() {
+        return prefetched;
+    }
+}
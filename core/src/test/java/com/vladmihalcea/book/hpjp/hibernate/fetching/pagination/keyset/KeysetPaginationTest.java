@@ -0,0 +1,175 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset;
+
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.Post;
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.PostComment;
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.LongStream;
+
+import static com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.KeysetSort.asc;
+import static com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.KeysetSort.desc;
+import static org.junit.Assert.*;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class KeysetPaginationTest extends AbstractTest {
+
+    public static final int POST_COUNT = 50;
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            Post.class,
+            PostComment.class,
+        };
+    }
+
+    @Override
+    public void afterInit() {
+        doInJPA(entityManager -> {
+            LocalDateTime timestamp = LocalDateTime.of(
+                2018, 10, 9, 12, 0, 0, 0
+            );
+
+            LongStream.rangeClosed(1, POST_COUNT)
+            .forEach(postId -> {
+                entityManager.persist(
+                    new Post()
+                    .setId(postId)
+                    .setTitle(
+                        String.format("High-Performance Java Persistence - Chapter %d",
+                        postId)
+                    )
+                    //Every three posts share the same creation timestamp
+                    .setCreatedOn(
+                        Timestamp.valueOf(timestamp.plusMinutes(postId / 3))
+                    )
+                );
+            });
+        });
+    }
+
+    @Test
+    public void testKeysetMatchesOffsetPagination() {
+        KeysetSort sort = KeysetSort.of(desc("p.createdOn"), desc("p.id"));
+        assertTrue(sort.seekPredicate("k").startsWith("(p.createdOn, p.id) < "));
+
+        assertEquals(offsetPostIds(sort), keysetPostIds(new KeysetPaginator(), postQuery(sort), 7));
+    }
+
+    @Test
+    public void testMixedSortDirections() {
+        KeysetSort sort = KeysetSort.of(asc("p.createdOn"), desc("p.id"));
+        assertFalse(sort.isUniform());
+
+        assertEquals(offsetPostIds(sort), keysetPostIds(new KeysetPaginator(), postQuery(sort), 4));
+    }
+
+    @Test
+    public void testPrefetchNextPage() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            KeysetPaginator paginator = new KeysetPaginator(executor, 16, Duration.ofMinutes(1));
+            KeysetSort sort = KeysetSort.of(desc("p.createdOn"), desc("p.id"));
+
+            KeysetPage<Post> page = paginator.firstPage(postQuery(sort), 10);
+            assertFalse(page.isPrefetched());
+
+            int pageCount = 1;
+            while (page.hasNext()) {
+                //Every request builds its own query, as a web controller would do
+                page = paginator.getPage(postQuery(sort), page.getNextCursor(), 10);
+                assertTrue(page.isPrefetched());
+                pageCount++;
+            }
+            assertEquals(5, pageCount);
+            assertEquals(4, paginator.getPrefetchHitCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCursor() {
+        KeysetCursorCodec codec = new KeysetCursorCodec();
+        KeysetSort sort = KeysetSort.of(
+            asc("a"), asc("b"), asc("c"), asc("d"), asc("e"), asc("f"), asc("g"), asc("h"), asc("i")
+        );
+
+        Object[] values = {
+            -1L,
+            Integer.MAX_VALUE,
+            "Ünïcödé",
+            null,
+            true,
+            LocalDateTime.of(2018, 10, 9, 12, 0, 0, 123456000),
+            LocalDate.of(1970, 1, 1),
+            new BigDecimal("-12345.6789"),
+            UUID.randomUUID(),
+        };
+        String cursor = codec.encode(sort, values);
+        assertTrue(cursor.matches("[A-Za-z0-9_-]+"));
+        assertArrayEquals(values, codec.decode(sort, cursor));
+
+        KeysetSort postSort = KeysetSort.of(desc("p.createdOn"), desc("p.id"));
+        Timestamp createdOn = Timestamp.valueOf(LocalDateTime.of(2018, 10, 9, 12, 0, 0, 123456789));
+        String postCursor = codec.encode(postSort, new Object[] {createdOn, 12345L});
+        LOGGER.info("Post cursor: {}", postCursor);
+        assertTrue(postCursor.length() <= 32);
+        assertArrayEquals(new Object[] {createdOn, 12345L}, codec.decode(postSort, postCursor));
+
+        try {
+            codec.decode(KeysetSort.of(asc("p.createdOn"), desc("p.id")), postCursor);
+            fail("Should reject a cursor issued for a different sort");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            codec.decode(postSort, postCursor.substring(0, postCursor.length() - 2));
+            fail("Should reject a truncated cursor");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private JpaKeysetQuery<Post> postQuery(KeysetSort sort) {
+        return new JpaKeysetQuery<>(Post.class, "select p from Post p", sort)
+            .where("p.title like :titlePattern")
+            .setParameter("titlePattern", "High-Performance Java Persistence%")
+            .setKeyExtractor(post -> new Object[] {post.getCreatedOn(), post.getId()})
+            .setTransactionRunner(work -> doInJPA(entityManager -> {
+                return work.apply(entityManager);
+            }));
+    }
+
+    private List<Long> keysetPostIds(KeysetPaginator paginator, KeysetQuery<Post> query, int pageSize) {
+        List<Long> postIds = new ArrayList<>();
+        String cursor = null;
+        do {
+            KeysetPage<Post> page = paginator.getPage(query, cursor, pageSize);
+            assertTrue(page.getContent().size() <= pageSize);
+            page.getContent().forEach(post -> postIds.add(post.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return postIds;
+    }
+
+    private List<Long> offsetPostIds(KeysetSort sort) {
+        return doInJPA(entityManager -> {
+            return entityManager.createQuery(
+                "select p.id from Post p order by " + sort.orderBy(), Long.class)
+            .getResultList();
+        });
+    }
+}
@@ -0,0 +1,138 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pages through a {@link KeysetQuery} using seek predicates instead of {@code OFFSET}, so fetching
+ * the 100,000th page costs the same index range scan as fetching the first one.
+ * <p>
+ * The client only gets an opaque cursor, which is decoded back into the sort key values of the
+ * last row of the previous page. Fetching one row more than the page size tells whether there is
+ * a next page without issuing a {@code count} query.
+ * <p>
+ * When an {@link Executor} is provided, the next page is fetched in the background right after
+ * the current page is returned, so it's ready by the time the client asks for it. The prefetched
+ * pages are kept for a limited time only, as they don't see rows inserted after they were fetched.
+ *
+ * @author Vlad Mihalcea
+ */
+public class KeysetPaginator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeysetPaginator.class);
+
+    private record PrefetchKey(KeysetQuery<?> query, String cursor, int pageSize) {
+    }
+
+    private record Prefetch(CompletableFuture<? extends List<?>> rows, long fetchedAtNanos) {
+    }
+
+    private final KeysetCursorCodec codec = new KeysetCursorCodec();
+
+    private final Executor executor;
+
+    private final long timeToLiveNanos;
+
+    private final Map<PrefetchKey, Prefetch> prefetches;
+
+    private final AtomicLong prefetchHitCount = new AtomicLong();
+
+    public KeysetPaginator() {
+        this(null, 0, Duration.ZERO);
+    }
+
+    public KeysetPaginator(Executor executor, int maxPrefetchedPages, Duration timeToLive) {
+        this.executor = executor;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.prefetches = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PrefetchKey, Prefetch> eldest) {
+                return size() > maxPrefetchedPages;
+            }
+        };
+    }
+
+    public <T> KeysetPage<T> firstPage(KeysetQuery<T> query, int pageSize) {
+        return getPage(query, null, pageSize);
+    }
+
+    /**
+     * Get the page following the given cursor.
+     *
+     * @param cursor   the {@link KeysetPage#getNextCursor()} of the previous page, or {@code null} for the first page
+     * @param pageSize the maximum number of rows of the page
+     * @throws IllegalArgumentException if the cursor is malformed or was issued for a different sort
+     */
+    public <T> KeysetPage<T> getPage(KeysetQuery<T> query, String cursor, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be positive!");
+        }
+        Object[] keyValues = cursor != null ? codec.decode(query.getSort(), cursor) : null;
+
+        List<T> rows = takePrefetched(query, cursor, pageSize);
+        boolean prefetched = rows != null;
+        if (!prefetched) {
+            rows = query.fetch(keyValues, pageSize + 1);
+        }
+
+        if (rows.size() <= pageSize) {
+            return new KeysetPage<>(rows, null, prefetched);
+        }
+        List<T> content = rows.subList(0, pageSize);
+        String nextCursor = codec.encode(query.getSort(), query.getKeyValues(content.get(pageSize - 1)));
+        if (executor != null) {
+            prefetch(query, nextCursor, pageSize);
+        }
+        return new KeysetPage<>(content, nextCursor, prefetched);
+    }
+
+    public long getPrefetchHitCount() {
+        return prefetchHitCount.get();
+    }
+
+    private <T> void prefetch(KeysetQuery<T> query, String cursor, int pageSize) {
+        PrefetchKey key = new PrefetchKey(query, cursor, pageSize);
+        synchronized (prefetches) {
+            if (prefetches.containsKey(key)) {
+                return;
+            }
+            Object[] keyValues = codec.decode(query.getSort(), cursor);
+            CompletableFuture<List<T>> rows = CompletableFuture.supplyAsync(
+                () -> query.fetch(keyValues, pageSize + 1),
+                executor
+            );
+            prefetches.put(key, new Prefetch(rows, System.nanoTime()));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> takePrefetched(KeysetQuery<T> query, String cursor, int pageSize) {
+        if (executor == null || cursor == null) {
+            return null;
+        }
+        Prefetch prefetch;
+        synchronized (prefetches) {
+            prefetch = prefetches.remove(new PrefetchKey(query, cursor, pageSize));
+        }
+        if (prefetch == null || System.nanoTime() - prefetch.fetchedAtNanos() > timeToLiveNanos) {
+            return null;
+        }
+        try {
+            List<T> rows = (List<T>) prefetch.rows().join();
+            prefetchHitCount.incrementAndGet();
+            return rows;
+        } catch (CompletionException e) {
+            LOGGER.warn("Prefetching the [{}] page failed, so it's fetched again", cursor, e.getCause());
+            return null;
+        }
+    }
+}
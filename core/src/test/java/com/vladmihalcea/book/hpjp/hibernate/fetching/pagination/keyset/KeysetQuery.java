@@ -0,0 +1,32 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset;
+
+import java.util.List;
+
+/**
+ * A query that the {@link KeysetPaginator} can page through, regardless of whether it's executed
+ * with JPA, jOOQ or a Spring Data repository.
+ * <p>
+ * Since the next page can be prefetched in a background thread, {@link #fetch(Object[], int)}
+ * must run in its own unit of work, and not rely on a thread-bound {@code EntityManager}
+ * or JDBC {@code Connection}.
+ *
+ * @author Vlad Mihalcea
+ */
+public interface KeysetQuery<T> {
+
+    KeysetSort getSort();
+
+    /**
+     * Extract the sort key values of the given row, in the {@link #getSort()} key order.
+     */
+    Object[] getKeyValues(T row);
+
+    /**
+     * Fetch the rows following the given sort key values.
+     *
+     * @param keyValues the sort key values of the last row of the previous page,
+     *                  or {@code null} for the first page
+     * @param limit     the maximum number of rows to fetch
+     */
+    List<T> fetch(Object[] keyValues, int limit);
+}
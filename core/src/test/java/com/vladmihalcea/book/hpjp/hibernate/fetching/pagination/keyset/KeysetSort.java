@@ -0,0 +1,135 @@
+package com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset;
+
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * The composite sort key of a keyset query, e.g. {@code created_on DESC, id DESC}.
+ * <p>
+ * The last key must be unique (typically the identifier), as otherwise rows sharing the same
+ * sort key values could be skipped when moving from one page to the next. The sort key columns
+ * are expected to be {@code NOT NULL}.
+ *
+ * @author Vlad Mihalcea
+ */
+public class KeysetSort {
+
+    public record Key(String expression, boolean descending) {
+    }
+
+    private final List<Key> keys;
+
+    private final int fingerprint;
+
+    private KeysetSort(List<Key> keys) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("At least one sort key is required!");
+        }
+        this.keys = keys;
+        this.fingerprint = keys.hashCode();
+    }
+
+    public static KeysetSort of(Key... keys) {
+        return new KeysetSort(List.of(keys));
+    }
+
+    public static Key asc(String expression) {
+        return new Key(expression, false);
+    }
+
+    public static Key desc(String expression) {
+        return new Key(expression, true);
+    }
+
+    public List<Key> getKeys() {
+        return keys;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Identifies the sort, so that a cursor created for a different sort can be rejected.
+     */
+    public int getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return {@code true} if all keys are sorted in the same direction
+     */
+    public boolean isUniform() {
+        boolean descending = keys.get(0).descending();
+        for (Key key : keys) {
+            if (key.descending() != descending) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String orderBy() {
+        StringJoiner orderBy = new StringJoiner(", ");
+        for (Key key : keys) {
+            orderBy.add(key.expression() + (key.descending() ? " desc" : " asc"));
+        }
+        return orderBy.toString();
+    }
+
+    /**
+     * Generate the predicate matching the rows that follow the row whose sort key values
+     * are bound to the {@code parameterPrefix0}, ..., {@code parameterPrefixN} named parameters.
+     * <p>
+     * When all keys use the same direction, the predicate is a row value comparison, like
+     * {@code (created_on, id) < (:k0, :k1)}, which the database can match against a composite index
+     * with a single range scan. Otherwise, the row value comparison is expanded to
+     * {@code created_on > :k0 or (created_on = :k0 and id < :k1)}.
+     */
+    public String seekPredicate(String parameterPrefix) {
+        if (isUniform()) {
+            if (keys.size() == 1) {
+                Key key = keys.get(0);
+                return key.expression() + operator(key) + ":" + parameterPrefix + 0;
+            }
+            StringJoiner columns = new StringJoiner(", ", "(", ")");
+            StringJoiner parameters = new StringJoiner(", ", "(", ")");
+            for (int i = 0; i < keys.size(); i++) {
+                columns.add(keys.get(i).expression());
+                parameters.add(":" + parameterPrefix + i);
+            }
+            return columns + operator(keys.get(0)) + parameters;
+        }
+        StringJoiner disjunction = new StringJoiner(" or ", "(", ")");
+        for (int i = 0; i < keys.size(); i++) {
+            StringBuilder conjunction = new StringBuilder("(");
+            for (int j = 0; j < i; j++) {
+                conjunction
+                    .append(keys.get(j).expression())
+                    .append(" = :")
+                    .append(parameterPrefix)
+                    .append(j)
+                    .append(" and ");
+            }
+            Key key = keys.get(i);
+            conjunction
+                .append(key.expression())
+                .append(operator(key))
+                .append(":")
+                .append(parameterPrefix)
+                .append(i)
+                .append(")");
+            disjunction.add(conjunction);
+        }
+        return disjunction.toString();
+    }
+
+    private String operator(Key key) {
+        return key.descending() ? " < " : " > ";
+    }
+
+    @Override
+    public String toString() {
+        return orderBy();
+    }
+}
@@ -0,0 +1,32 @@
+package com.vladmihalcea.book.hpjp.hibernate.identifier.optimizer.providers;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import jakarta.persistence.*;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class TsidBlockPostEntityProvider extends PostEntityProvider<TsidBlockPostEntityProvider.Post> {
+
+    public TsidBlockPostEntityProvider() {
+        super(Post.class);
+    }
+
+    @Override
+    public Post newPost() {
+        return new Post();
+    }
+
+    @Entity(name = "Post")
+    @Table(name = "post")
+    public static class Post {
+
+        @Id
+        @GenericGenerator(name = "tsid", strategy = "com.vladmihalcea.book.hpjp.hibernate.identifier.tsid.TsidBlockGenerator", parameters = {
+                @org.hibernate.annotations.Parameter(name = "block_size", value = "50"),
+        })
+        @GeneratedValue(generator = "tsid")
+        private Long id;
+    }
+}
@@ -0,0 +1,171 @@
+package com.vladmihalcea.book.hpjp.hibernate.identifier.tsid;
+
+import io.hypersistence.tsid.TSID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Allocates TSID values in contiguous blocks, so that every thread generates identifiers
+ * from its own block without touching any shared state.
+ * <p>
+ * A TSID is made of 42 bits of milliseconds since the {@link TSID#TSID_EPOCH} followed by
+ * the node bits and the counter bits. The allocator treats the time and the counter as a single
+ * logical clock, and a block reservation advances this clock by the block size with a single CAS.
+ * If the counter space of the current millisecond is exhausted, the logical clock borrows
+ * from the following milliseconds, so the identifiers stay unique and monotonic.
+ * <p>
+ * If the system clock moves backwards, the allocator keeps issuing identifiers
+ * from the last reserved logical time instead of waiting for the clock to catch up,
+ * and the regression is counted by {@link #getClockRegressionCount()}.
+ *
+ * @author Vlad Mihalcea
+ */
+public class TsidBlockAllocator {
+
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+
+    public static final int TIME_BITS = 42;
+
+    public static final int RANDOM_BITS = 22;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TsidBlockAllocator.class);
+
+    private final int counterBits;
+
+    private final long counterMask;
+
+    private final long nodeBits;
+
+    private final int blockSize;
+
+    private final LongSupplier clock;
+
+    /**
+     * The last reserved logical clock value, made of the TSID time followed by the counter bits.
+     */
+    private final AtomicLong logicalClock = new AtomicLong();
+
+    private final AtomicLong clockRegressionCount = new AtomicLong();
+
+    private final ThreadLocal<Block> currentBlock = ThreadLocal.withInitial(Block::new);
+
+    public TsidBlockAllocator(int nodeBits, int node) {
+        this(nodeBits, node, DEFAULT_BLOCK_SIZE, System::currentTimeMillis);
+    }
+
+    /**
+     * @param nodeBits the number of bits used by the node identifier
+     * @param node the node identifier
+     * @param blockSize the number of identifiers a thread reserves at once
+     * @param clock the wall clock, in milliseconds since the Unix epoch
+     */
+    public TsidBlockAllocator(int nodeBits, int node, int blockSize, LongSupplier clock) {
+        if (nodeBits < 0 || nodeBits > 20) {
+            throw new IllegalArgumentException("The node bits must be between 0 and 20: " + nodeBits);
+        }
+        if (node < 0 || node >= (1 << nodeBits)) {
+            throw new IllegalArgumentException(
+                String.format("The node [%d] does not fit in [%d] bits", node, nodeBits)
+            );
+        }
+        this.counterBits = RANDOM_BITS - nodeBits;
+        this.counterMask = (1L << counterBits) - 1;
+        if (blockSize < 1 || blockSize > counterMask + 1) {
+            throw new IllegalArgumentException(
+                String.format("The block size must be between 1 and %d: %d", counterMask + 1, blockSize)
+            );
+        }
+        this.nodeBits = ((long) node) << counterBits;
+        this.blockSize = blockSize;
+        this.clock = clock;
+    }
+
+    /**
+     * Generate the next identifier from the block of the current thread.
+     * Only the block reservation, once every {@code blockSize} calls, touches shared state.
+     */
+    public long next() {
+        Block block = currentBlock.get();
+        if (block.next == block.end) {
+            long start = reserve(block, blockSize);
+            block.next = start;
+            block.end = start + blockSize;
+        }
+        return toTsid(block.next++);
+    }
+
+    /**
+     * Generate a contiguous range of identifiers, which is useful for JDBC batch inserts
+     * since the batch size is known in advance. The identifiers are reserved with a single CAS.
+     */
+    public long[] nextBatch(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The batch size must not be negative: " + size);
+        }
+        long[] identifiers = new long[size];
+        if (size == 0) {
+            return identifiers;
+        }
+        long start = reserve(currentBlock.get(), size);
+        for (int i = 0; i < size; i++) {
+            identifiers[i] = toTsid(start + i);
+        }
+        return identifiers;
+    }
+
+    public long getClockRegressionCount() {
+        return clockRegressionCount.get();
+    }
+
+    /**
+     * @return how many milliseconds the logical clock is ahead of the wall clock,
+     * either because of a clock regression or because the counter space was exhausted
+     */
+    public long getDriftMillis() {
+        long logicalTime = logicalClock.get() >>> counterBits;
+        return Math.max(0, logicalTime - (clock.getAsLong() - TSID.TSID_EPOCH));
+    }
+
+    /**
+     * The clock regression is checked against the wall time last seen by the current thread,
+     * since another thread could have read the clock later but reserved its block earlier.
+     */
+    private long reserve(Block block, int size) {
+        long wallTime = clock.getAsLong() - TSID.TSID_EPOCH;
+        if (wallTime < block.wallTime) {
+            if (clockRegressionCount.getAndIncrement() == 0) {
+                LOGGER.warn(
+                    "The system clock moved backwards by {} ms, so the TSID time is kept monotonic",
+                    block.wallTime - wallTime
+                );
+            }
+        } else {
+            block.wallTime = wallTime;
+        }
+        long wallClock = wallTime << counterBits;
+        long previous, start;
+        do {
+            previous = logicalClock.get();
+            start = Math.max(previous, wallClock);
+        } while (!logicalClock.compareAndSet(previous, start + size));
+        if ((start + size) >>> counterBits >= (1L << TIME_BITS)) {
+            throw new IllegalStateException("The TSID time overflowed the 42 bits");
+        }
+        return start;
+    }
+
+    private long toTsid(long logicalClockValue) {
+        long time = logicalClockValue >>> counterBits;
+        long counter = logicalClockValue & counterMask;
+        return (time << RANDOM_BITS) | nodeBits | counter;
+    }
+
+    private static class Block {
+        long next;
+        long end;
+        long wallTime;
+    }
+}
@@ -0,0 +1,69 @@
+package com.vladmihalcea.book.hpjp.hibernate.identifier.tsid;
+
+import com.vladmihalcea.book.hpjp.util.TsidUtils;
+import org.hibernate.MappingException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hibernate {@link IdentifierGenerator} that generates TSID values using a {@link TsidBlockAllocator}.
+ * <p>
+ * Unlike the pooled sequence optimizers, no database roundtrip is needed, and unlike the
+ * shared {@link TsidUtils#TSID_FACTORY}, the threads don't contend on the same random generator.
+ * The generators that use the same node settings share the same allocator,
+ * so the identifiers are unique across all entities.
+ *
+ * @author Vlad Mihalcea
+ */
+public class TsidBlockGenerator implements IdentifierGenerator {
+
+    public static final String NODE_COUNT_PARAM = "node_count";
+
+    public static final String NODE_PARAM = "node";
+
+    public static final String BLOCK_SIZE_PARAM = "block_size";
+
+    private static final Map<String, TsidBlockAllocator> ALLOCATORS = new ConcurrentHashMap<>();
+
+    private TsidBlockAllocator allocator;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        int nodeCount = ConfigurationHelper.getInt(NODE_COUNT_PARAM, params, TsidUtils.NODE_COUNT);
+        int nodeBits = TsidUtils.getNodeBits(nodeCount);
+        int blockSize = ConfigurationHelper.getInt(BLOCK_SIZE_PARAM, params, TsidBlockAllocator.DEFAULT_BLOCK_SIZE);
+        Integer node = ConfigurationHelper.getInteger(NODE_PARAM, params);
+        if (node == null) {
+            node = nodeCount == TsidUtils.NODE_COUNT ? TsidUtils.NODE : TsidUtils.getNode(nodeCount);
+        }
+        int nodeId = node;
+
+        allocator = ALLOCATORS.computeIfAbsent(
+            String.format("%d:%d:%d", nodeBits, nodeId, blockSize),
+            key -> new TsidBlockAllocator(nodeBits, nodeId, blockSize, System::currentTimeMillis)
+        );
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        return allocator.next();
+    }
+
+    /**
+     * Reserve the identifiers of a JDBC batch insert at once.
+     */
+    public long[] nextBatch(int size) {
+        return allocator.nextBatch(size);
+    }
+
+    public TsidBlockAllocator getAllocator() {
+        return allocator;
+    }
+}
@@ -0,0 +1,193 @@
+package com.vladmihalcea.book.hpjp.hibernate.identifier.tsid;
+
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import io.hypersistence.tsid.TSID;
+import jakarta.persistence.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class TsidBlockGeneratorTest extends AbstractTest {
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            Post.class
+        };
+    }
+
+    @Override
+    protected Properties properties() {
+        Properties properties = super.properties();
+        properties.put("hibernate.jdbc.batch_size", "50");
+        properties.put("hibernate.order_inserts", "true");
+        return properties;
+    }
+
+    @Test
+    public void testPersist() throws Exception {
+        int threadCount = 4;
+        int postCount = 500;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            futures.add(executor.submit(() -> {
+                startLatch.await();
+                doInJPA(entityManager -> {
+                    for (int j = 0; j < postCount; j++) {
+                        entityManager.persist(new Post().setTitle("High-Performance Java Persistence"));
+                    }
+                });
+                return null;
+            }));
+        }
+        startLatch.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        doInJPA(entityManager -> {
+            List<Long> ids = entityManager.createQuery("select p.id from Post p", Long.class).getResultList();
+
+            assertEquals(threadCount * postCount, ids.size());
+            assertEquals(ids.size(), new HashSet<>(ids).size());
+            for (Long id : ids) {
+                assertEquals(3, randomBits(id) >>> 20);
+            }
+        });
+    }
+
+    @Test
+    public void testConcurrency() throws Exception {
+        TsidBlockAllocator allocator = new TsidBlockAllocator(8, 42);
+
+        int threadCount = 8;
+        int iterationCount = 100_000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            futures.add(executor.submit(() -> {
+                long[] ids = new long[iterationCount];
+                for (int j = 0; j < iterationCount; j++) {
+                    ids[j] = allocator.next();
+                }
+                return ids;
+            }));
+        }
+
+        Set<Long> uniqueIds = new HashSet<>();
+        for (Future<long[]> future : futures) {
+            long[] ids = future.get();
+            for (int j = 0; j < ids.length; j++) {
+                if (j > 0) {
+                    assertTrue(ids[j] > ids[j - 1]);
+                }
+                assertEquals(42, randomBits(ids[j]) >>> 14);
+                uniqueIds.add(ids[j]);
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(threadCount * iterationCount, uniqueIds.size());
+    }
+
+    @Test
+    public void testNextBatch() {
+        AtomicLong clock = new AtomicLong(TSID.TSID_EPOCH + 1000);
+        TsidBlockAllocator allocator = new TsidBlockAllocator(10, 1, 16, clock::get);
+
+        long[] ids = allocator.nextBatch(5000);
+        assertEquals(5000, ids.length);
+        for (int i = 1; i < ids.length; i++) {
+            assertTrue(ids[i] > ids[i - 1]);
+        }
+
+        TSID first = TSID.from(ids[0]);
+        assertEquals(TSID.TSID_EPOCH + 1000, first.getUnixMilliseconds());
+        assertEquals(1 << 12, randomBits(ids[0]));
+
+        TSID last = TSID.from(ids[ids.length - 1]);
+        assertEquals(TSID.TSID_EPOCH + 1001, last.getUnixMilliseconds());
+        assertEquals(1, allocator.getDriftMillis());
+
+        assertTrue(allocator.next() > ids[ids.length - 1]);
+        assertEquals(0, allocator.nextBatch(0).length);
+    }
+
+    @Test
+    public void testClockRegression() {
+        AtomicLong clock = new AtomicLong(TSID.TSID_EPOCH + 10_000);
+        TsidBlockAllocator allocator = new TsidBlockAllocator(0, 0, 1, clock::get);
+
+        long beforeRegression = allocator.next();
+
+        clock.addAndGet(-5_000);
+        long afterRegression = allocator.next();
+
+        assertTrue(afterRegression > beforeRegression);
+        assertEquals(1, allocator.getClockRegressionCount());
+        assertEquals(5_000, allocator.getDriftMillis());
+
+        clock.addAndGet(6_000);
+        long afterRecovery = allocator.next();
+
+        assertEquals(TSID.TSID_EPOCH + 11_000, TSID.from(afterRecovery).getUnixMilliseconds());
+        assertEquals(1, allocator.getClockRegressionCount());
+        assertEquals(0, allocator.getDriftMillis());
+    }
+
+    private static long randomBits(long tsid) {
+        return tsid & ((1L << TsidBlockAllocator.RANDOM_BITS) - 1);
+    }
+
+    @Entity(name = "Post")
+    @Table(name = "post")
+    public static class Post {
+
+        @Id
+        @GeneratedValue(generator = "tsid")
+        @GenericGenerator(
+            name = "tsid",
+            strategy = "com.vladmihalcea.book.hpjp.hibernate.identifier.tsid.TsidBlockGenerator",
+            parameters = {
+                @Parameter(name = TsidBlockGenerator.NODE_COUNT_PARAM, value = "4"),
+                @Parameter(name = TsidBlockGenerator.NODE_PARAM, value = "3"),
+                @Parameter(name = TsidBlockGenerator.BLOCK_SIZE_PARAM, value = "50"),
+            }
+        )
+        private Long id;
+
+        private String title;
+
+        public Long getId() {
+            return id;
+        }
+
+        public Post setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public Post setTitle(String title) {
+            this.title = title;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.vladmihalcea.book.hpjp.hibernate.listener.replication;
+
+import com.vladmihalcea.book.hpjp.hibernate.listener.replication.OutboxReplicationTest.Post;
+import com.vladmihalcea.book.hpjp.hibernate.listener.replication.OutboxReplicationTest.PostReplica;
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import jakarta.persistence.LockModeType;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class AsyncOutboxReplicationTest extends AbstractTest {
+
+    private AsyncReplicationApplier applier;
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[] {
+            Post.class,
+            PostReplica.class,
+        };
+    }
+
+    @Override
+    protected Integrator integrator() {
+        applier = new AsyncReplicationApplier(dataSource(), 4);
+        return new OutboxReplicationIntegrator(
+            new OutboxReplicationEventListener(applier, OutboxReplicationTest.POST_REPLICA_MAPPING)
+        );
+    }
+
+    @Override
+    public void destroy() {
+        applier.close();
+        super.destroy();
+    }
+
+    @Test
+    public void test() throws Exception {
+        int postCount = 20;
+        int updateCount = 50;
+
+        doInJPA(entityManager -> {
+            for (long id = 1; id <= postCount; id++) {
+                entityManager.persist(
+                    new Post()
+                        .setId(id)
+                        .setTitle("High-Performance Java Persistence")
+                );
+            }
+        });
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int worker = i;
+            futures.add(executorService.submit(() -> {
+                long commitNanos = 0;
+                for (int update = 1; update <= updateCount; update++) {
+                    int revision = update;
+                    long startNanos = System.nanoTime();
+                    doInJPA(entityManager -> {
+                        for (long id = worker + 1; id <= postCount; id += 4) {
+                            entityManager.find(Post.class, id)
+                                .setTitle(String.format("High-Performance Java Persistence, revision %d", revision));
+                        }
+                    });
+                    commitNanos += System.nanoTime() - startNanos;
+                }
+                return commitNanos / updateCount;
+            }));
+        }
+        for (Future<Long> future : futures) {
+            LOGGER.info(
+                "Average transaction time: {} μs",
+                TimeUnit.NANOSECONDS.toMicros(future.get(30, TimeUnit.SECONDS))
+            );
+        }
+        executorService.shutdown();
+
+        assertTrue(applier.awaitIdle(Duration.ofSeconds(30)));
+        assertEquals(0, applier.getDroppedCount());
+        LOGGER.info(
+            "Applied {} records in {} replica transactions",
+            applier.getAppliedCount(),
+            applier.getBatchCount()
+        );
+
+        doInJPA(entityManager -> {
+            for (long id = 1; id <= postCount; id++) {
+                Post post = entityManager.find(Post.class, id);
+                PostReplica replica = entityManager.find(PostReplica.class, id);
+                assertEquals(updateCount, post.getVersion());
+                assertEquals(post.getVersion(), replica.getVersion());
+                assertEquals(post.getTitle(), replica.getTitle());
+            }
+        });
+    }
+
+    @Test
+    public void testSameRowUpdates() throws Exception {
+        int threadCount = 4;
+        int updateCount = 50;
+
+        doInJPA(entityManager -> {
+            entityManager.persist(
+                new Post()
+                    .setId(1L)
+                    .setTitle("High-Performance Java Persistence")
+            );
+        });
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            int worker = i;
+            futures.add(executorService.submit(() -> {
+                startLatch.await();
+                for (int update = 1; update <= updateCount; update++) {
+                    int revision = update;
+                    doInJPA(entityManager -> {
+                        entityManager.find(Post.class, 1L, LockModeType.PESSIMISTIC_WRITE)
+                            .setTitle(String.format("High-Performance Java Persistence, worker %d, revision %d", worker, revision));
+                    });
+                }
+                return null;
+            }));
+        }
+        startLatch.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+
+        assertTrue(applier.awaitIdle(Duration.ofSeconds(30)));
+        assertEquals(0, applier.getDroppedCount());
+
+        //The replica must end with the last committed value, even if the transactions completed out of order
+        doInJPA(entityManager -> {
+            Post post = entityManager.find(Post.class, 1L);
+            PostReplica replica = entityManager.find(PostReplica.class, 1L);
+            assertEquals(threadCount * updateCount, post.getVersion());
+            assertEquals(post.getVersion(), replica.getVersion());
+            assertEquals(post.getTitle(), replica.getTitle());
+        });
+    }
+
+    @Test
+    public void testOutOfOrderCompletion() throws Exception {
+        doInJPA(entityManager -> {
+            entityManager.persist(
+                new Post()
+                    .setId(1L)
+                    .setTitle("High-Performance Java Persistence")
+            );
+        });
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        CountDownLatch firstLocked = new CountDownLatch(1);
+        CountDownLatch secondCompleted = new CountDownLatch(1);
+
+        Future<?> first = executorService.submit(() -> {
+            doInJPA(entityManager -> {
+                //Delays the outbox after completion process until the second transaction has completed
+                entityManager.unwrap(SessionImplementor.class).getActionQueue().registerProcess(
+                    (AfterTransactionCompletionProcess) (success, session) -> awaitLatch(secondCompleted)
+                );
+                entityManager.find(Post.class, 1L, LockModeType.PESSIMISTIC_WRITE)
+                    .setTitle("High-Performance Java Persistence, 1st edition");
+                entityManager.flush();
+                firstLocked.countDown();
+            });
+        });
+        Future<?> second = executorService.submit(() -> {
+            awaitLatch(firstLocked);
+            doInJPA(entityManager -> {
+                entityManager.find(Post.class, 1L, LockModeType.PESSIMISTIC_WRITE)
+                    .setTitle("High-Performance Java Persistence, 2nd edition");
+            });
+            secondCompleted.countDown();
+        });
+        second.get(30, TimeUnit.SECONDS);
+        first.get(30, TimeUnit.SECONDS);
+        executorService.shutdown();
+
+        assertTrue(applier.awaitIdle(Duration.ofSeconds(30)));
+
+        doInJPA(entityManager -> {
+            PostReplica replica = entityManager.find(PostReplica.class, 1L);
+            assertEquals("High-Performance Java Persistence, 2nd edition", replica.getTitle());
+            assertEquals(2, replica.getVersion());
+        });
+    }
+
+    private void awaitLatch(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
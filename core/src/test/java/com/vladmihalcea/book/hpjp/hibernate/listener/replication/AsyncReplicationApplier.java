@@ -0,0 +1,243 @@
+package com.vladmihalcea.book.hpjp.hibernate.listener.replication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies the committed {@link ChangeRecord} entries asynchronously, so the source transaction
+ * does not wait for the replica writes.
+ * <p>
+ * Every source transaction {@link #reserve() reserves} a sequence number right before it commits, while it
+ * still holds the locks of the rows it changed. So, if two transactions change the same row, the one
+ * that commits first gets the lower sequence number. The records are handed to the lanes in sequence
+ * order, no matter which transaction completes first, and a transaction that did not commit only
+ * {@link #cancel(long) cancels} its sequence number.
+ * <p>
+ * Every row is assigned to one of the lanes by hashing its table and identifier, and every lane
+ * is drained by a single thread, so the changes of the same row are applied in commit order,
+ * while the changes of different rows are applied concurrently. A lane drains all the pending records,
+ * coalesces them with a {@link ReplicationOutbox}, and writes them in a single transaction.
+ * <p>
+ * Unlike the synchronous outbox, the replica is only eventually consistent, and the changes of
+ * a source transaction may be applied by several replica transactions. A failed batch is retried
+ * up to {@link #setMaxAttempts(int) max attempts} times, and then it's dropped and logged.
+ *
+ * @author Vlad Mihalcea
+ */
+public class AsyncReplicationApplier implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncReplicationApplier.class);
+
+    private final DataSource dataSource;
+
+    private final Lane[] lanes;
+
+    private final AtomicLong pendingCount = new AtomicLong();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * The records of the transactions that completed before the ones with a lower sequence number.
+     */
+    private final Map<Long, List<ChangeRecord>> completedRecords = new HashMap<>();
+
+    private long nextDispatchSequence;
+
+    private final LongAdder appliedCount = new LongAdder();
+
+    private final LongAdder droppedCount = new LongAdder();
+
+    private final LongAdder batchCount = new LongAdder();
+
+    private int maxAttempts = 3;
+
+    private int maxBatchSize = 1000;
+
+    private volatile boolean running = true;
+
+    public AsyncReplicationApplier(DataSource dataSource, int laneCount) {
+        this.dataSource = dataSource;
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(i);
+            lanes[i].start();
+        }
+    }
+
+    public AsyncReplicationApplier setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public AsyncReplicationApplier setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * Reserve the sequence number of a transaction, which must still hold the locks of the rows it changed.
+     * The sequence number must be either {@link #submit(long, List) submitted} or {@link #cancel(long) cancelled}.
+     */
+    public long reserve() {
+        if (!running) {
+            throw new IllegalStateException("The replication applier is closed");
+        }
+        return sequence.getAndIncrement();
+    }
+
+    /**
+     * Enqueue the records of a committed transaction, once all the transactions with a lower
+     * sequence number were submitted or cancelled.
+     */
+    public void submit(long sequence, List<ChangeRecord> records) {
+        pendingCount.addAndGet(records.size());
+        synchronized (completedRecords) {
+            completedRecords.put(sequence, records);
+            List<ChangeRecord> nextRecords;
+            while ((nextRecords = completedRecords.remove(nextDispatchSequence)) != null) {
+                for (ChangeRecord record : nextRecords) {
+                    lanes[Math.floorMod(record.rowKey().hashCode(), lanes.length)].queue.add(record);
+                }
+                nextDispatchSequence++;
+            }
+        }
+    }
+
+    /**
+     * Release the sequence number of a transaction that was rolled back.
+     */
+    public void cancel(long sequence) {
+        submit(sequence, List.of());
+    }
+
+    /**
+     * Wait until all the submitted records are applied or dropped.
+     *
+     * @return {@code true} if all the submitted records were processed before the timeout
+     */
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (pendingCount) {
+            while (pendingCount.get() > 0) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    return false;
+                }
+                pendingCount.wait(remainingMillis);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of applied records, after coalescing
+     */
+    public long getAppliedCount() {
+        return appliedCount.sum();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * @return the number of replica transactions
+     */
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    /**
+     * Stop the lanes once they have applied the pending records.
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (Lane lane : lanes) {
+            try {
+                lane.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private class Lane extends Thread {
+
+        private final BlockingQueue<ChangeRecord> queue = new LinkedBlockingQueue<>();
+
+        Lane(int index) {
+            super("replication-lane-" + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<ChangeRecord> records = new ArrayList<>();
+            while (running || !queue.isEmpty()) {
+                try {
+                    ChangeRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    records.add(first);
+                    queue.drainTo(records, maxBatchSize - 1);
+                    apply(records);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    if (!records.isEmpty()) {
+                        synchronized (pendingCount) {
+                            pendingCount.addAndGet(-records.size());
+                            pendingCount.notifyAll();
+                        }
+                        records.clear();
+                    }
+                }
+            }
+        }
+
+        private void apply(List<ChangeRecord> records) {
+            ReplicationOutbox outbox = new ReplicationOutbox();
+            outbox.addAll(records);
+            for (int attempt = 1; ; attempt++) {
+                try (Connection connection = dataSource.getConnection()) {
+                    connection.setAutoCommit(false);
+                    try {
+                        outbox.write(connection);
+                        connection.commit();
+                    } catch (SQLException | RuntimeException e) {
+                        connection.rollback();
+                        throw e;
+                    }
+                    appliedCount.add(outbox.records().size());
+                    batchCount.increment();
+                    return;
+                } catch (SQLException | RuntimeException e) {
+                    if (attempt >= maxAttempts) {
+                        droppedCount.add(records.size());
+                        LOGGER.error("Dropping {} replication records after {} attempts", records.size(), attempt, e);
+                        return;
+                    }
+                    LOGGER.warn("Replication attempt {} failed, retrying", attempt, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.vladmihalcea.book.hpjp.hibernate.listener.replication;
+
+/**
+ * A replicated entity change, which holds a copy of the replicated column values,
+ * in the {@link ReplicationMapping} column order, or no values for a {@link ChangeType#DELETE}.
+ *
+ * @author Vlad Mihalcea
+ */
+public record ChangeRecord(ReplicationMapping mapping, ChangeType type, Object id, Object[] values) {
+
+    /**
+     * @return the key that identifies the replicated row
+     */
+    public RowKey rowKey() {
+        return new RowKey(mapping.getTable(), id);
+    }
+
+    public record RowKey(String table, Object id) {
+    }
+}
@@ -0,0 +1,10 @@
+package com.vladmihalcea.book.hpjp.hibernate.listener.replication;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public enum ChangeType {
+    INSERT,
+    UPDATE,
+    DELETE
+}
@@ -0,0 +1,101 @@
+package com.vladmihalcea.book.hpjp.hibernate.listener.replication;
+
+import com.vladmihalcea.book.hpjp.util.transaction.TransactionBuffer;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Replaces the synchronous per-entity replication statements with a {@link ReplicationOutbox} per transaction.
+ * <p>
+ * The first change of a transaction creates the outbox in a {@link TransactionBuffer}.
+ * If no {@link AsyncReplicationApplier} is given, the outbox is written right before the transaction commits, after the session was flushed,
+ * so the replica is updated atomically with the source tables, using one batch per table and change type.
+ * Otherwise, the transaction reserves its applier sequence number right before it commits, while it still holds
+ * the row locks, and the coalesced records are handed to the applier only after the transaction was committed.
+ *
+ * @author Vlad Mihalcea
+ */
+public class OutboxReplicationEventListener implements
+        PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private final Map<Class<?>, ReplicationMapping> mappings = new ConcurrentHashMap<>();
+
+    private final TransactionBuffer<ReplicationOutbox> outboxes;
+
+    public OutboxReplicationEventListener(AsyncReplicationApplier applier, ReplicationMapping... mappings) {
+        this.outboxes = applier == null ?
+            new TransactionBuffer<>(
+                session -> new ReplicationOutbox(),
+                (session, outbox) -> {
+                    if (!outbox.isEmpty()) {
+                        session.doWork(outbox::write);
+                    }
+                },
+                null
+            ) :
+            new TransactionBuffer<>(
+                session -> new ReplicationOutbox(),
+                (session, outbox) -> {
+                    if (!outbox.isEmpty()) {
+                        outbox.setSequence(applier.reserve());
+                    }
+                },
+                (success, outbox) -> {
+                    if (outbox.getSequence() < 0) {
+                        return;
+                    }
+                    if (success) {
+                        applier.submit(outbox.getSequence(), outbox.records());
+                    } else {
+                        applier.cancel(outbox.getSequence());
+                    }
+                }
+            );
+        for (ReplicationMapping mapping : mappings) {
+            this.mappings.put(mapping.getEntityClass(), mapping);
+        }
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        append(event.getSession(), event.getEntity(), ChangeType.INSERT, event.getId(), event.getPersister(), event.getState());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        append(event.getSession(), event.getEntity(), ChangeType.UPDATE, event.getId(), event.getPersister(), event.getState());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        append(event.getSession(), event.getEntity(), ChangeType.DELETE, event.getId(), event.getPersister(), null);
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    private void append(
+            EventSource session,
+            Object entity,
+            ChangeType type,
+            Object id,
+            EntityPersister persister,
+            Object[] state) {
+        ReplicationMapping mapping = mappings.get(entity.getClass());
+        if (mapping == null) {
+            return;
+        }
+        ChangeRecord record = new ChangeRecord(
+            mapping,
+            type,
+            id,
+            state != null ? mapping.values(persister, state) : null
+        );
+        outboxes.get(session).add(record);
+    }
+}
@@ -0,0 +1,41 @@
+package com.vladmihalcea.book.hpjp.hibernate.listener.replication;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class OutboxReplicationIntegrator implements Integrator {
+
+    private final OutboxReplicationEventListener listener;
+
+    public OutboxReplicationIntegrator(OutboxReplicationEventListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void integrate(
+        Metadata metadata,
+        SessionFactoryImplementor sessionFactory,
+        SessionFactoryServiceRegistry serviceRegistry) {
+
+        final EventListenerRegistry eventListenerRegistry =
+            serviceRegistry.getService(EventListenerRegistry.class);
+
+        eventListenerRegistry.appendListeners(EventType.POST_INSERT, listener);
+        eventListenerRegistry.appendListeners(EventType.POST_UPDATE, listener);
+        eventListenerRegistry.appendListeners(EventType.POST_DELETE, listener);
+    }
+
+    @Override
+    public void disintegrate(
+        SessionFactoryImplementor sessionFactory,
+        SessionFactoryServiceRegistry serviceRegistry) {
+
+    }
+}
@@ -0,0 +1,218 @@
+package com.vladmihalcea.book.hpjp.hibernate.listener.replication;
+
+import com.vladmihalcea.book.hpjp.hibernate.logging.validator.sql.SQLStatementCountValidator;
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import jakarta.persistence.*;
+import org.hibernate.integrator.spi.Integrator;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class OutboxReplicationTest extends AbstractTest {
+
+    protected static final ReplicationMapping POST_REPLICA_MAPPING = new ReplicationMapping(Post.class, "post_replica")
+        .addColumn("title", "title")
+        .addColumn("version", "version");
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[] {
+            Post.class,
+            PostReplica.class,
+        };
+    }
+
+    @Override
+    protected void additionalProperties(Properties properties) {
+        properties.put("hibernate.jdbc.batch_size", "50");
+        properties.put("hibernate.order_inserts", "true");
+        properties.put("hibernate.order_updates", "true");
+    }
+
+    @Override
+    protected Integrator integrator() {
+        return new OutboxReplicationIntegrator(new OutboxReplicationEventListener(null, POST_REPLICA_MAPPING));
+    }
+
+    @Test
+    public void test() {
+        SQLStatementCountValidator.reset();
+        doInJPA(entityManager -> {
+            for (long id = 1; id <= 10; id++) {
+                entityManager.persist(
+                    new Post()
+                        .setId(id)
+                        .setTitle(String.format("High-Performance Java Persistence, part %d", id))
+                );
+            }
+        });
+        LOGGER.info("The 10 replica rows are inserted by a single batch");
+        SQLStatementCountValidator.assertInsertCount(2);
+
+        SQLStatementCountValidator.reset();
+        doInJPA(entityManager -> {
+            List<Post> posts = entityManager.createQuery("""
+                select p
+                from Post p
+                where p.id <= 5
+                """, Post.class)
+            .getResultList();
+
+            for (Post post : posts) {
+                post.setTitle(post.getTitle().replace("part", "chapter"));
+            }
+
+            entityManager.remove(entityManager.getReference(Post.class, 10L));
+
+            Post post = new Post()
+                .setId(11L)
+                .setTitle("Transient title");
+            entityManager.persist(post);
+            entityManager.flush();
+            post.setTitle("High-Performance Java Persistence, part 11");
+        });
+        LOGGER.info("The updates, the delete and the insert are replicated with one batch per change type");
+        SQLStatementCountValidator.assertInsertCount(2);
+        SQLStatementCountValidator.assertUpdateCount(3);
+        SQLStatementCountValidator.assertDeleteCount(2);
+
+        assertReplicated();
+    }
+
+    @Test
+    public void testRollback() {
+        try {
+            doInJPA(entityManager -> {
+                entityManager.persist(
+                    new Post()
+                        .setId(1L)
+                        .setTitle("High-Performance Java Persistence")
+                );
+                entityManager.flush();
+                if (entityManager.contains(entityManager.getReference(Post.class, 1L))) {
+                    throw new IllegalStateException("Rollback");
+                }
+            });
+        } catch (IllegalStateException expected) {
+        }
+
+        doInJPA(entityManager -> {
+            assertTrue(entityManager.createQuery("select r from PostReplica r", PostReplica.class).getResultList().isEmpty());
+        });
+    }
+
+    @Test
+    public void testCoalescing() {
+        ReplicationOutbox outbox = new ReplicationOutbox();
+        outbox.add(new ChangeRecord(POST_REPLICA_MAPPING, ChangeType.INSERT, 1L, new Object[] {"A", 0}));
+        outbox.add(new ChangeRecord(POST_REPLICA_MAPPING, ChangeType.UPDATE, 1L, new Object[] {"B", 1}));
+        outbox.add(new ChangeRecord(POST_REPLICA_MAPPING, ChangeType.INSERT, 2L, new Object[] {"C", 0}));
+        outbox.add(new ChangeRecord(POST_REPLICA_MAPPING, ChangeType.DELETE, 2L, null));
+        outbox.add(new ChangeRecord(POST_REPLICA_MAPPING, ChangeType.UPDATE, 3L, new Object[] {"D", 1}));
+        outbox.add(new ChangeRecord(POST_REPLICA_MAPPING, ChangeType.UPDATE, 3L, new Object[] {"E", 2}));
+        outbox.add(new ChangeRecord(POST_REPLICA_MAPPING, ChangeType.DELETE, 4L, null));
+        outbox.add(new ChangeRecord(POST_REPLICA_MAPPING, ChangeType.INSERT, 4L, new Object[] {"F", 0}));
+
+        assertEquals(8, outbox.getRecordCount());
+        List<ChangeRecord> records = outbox.records();
+        assertEquals(3, records.size());
+
+        assertEquals(ChangeType.INSERT, records.get(0).type());
+        assertEquals("B", records.get(0).values()[0]);
+        assertEquals(ChangeType.UPDATE, records.get(1).type());
+        assertEquals("E", records.get(1).values()[0]);
+        assertEquals(ChangeType.INSERT, records.get(2).type());
+        assertEquals(4L, records.get(2).id());
+    }
+
+    protected void assertReplicated() {
+        doInJPA(entityManager -> {
+            List<Post> posts = entityManager.createQuery("""
+                select p
+                from Post p
+                order by p.id
+                """, Post.class)
+            .getResultList();
+
+            List<PostReplica> replicas = entityManager.createQuery("""
+                select r
+                from PostReplica r
+                order by r.id
+                """, PostReplica.class)
+            .getResultList();
+
+            assertEquals(posts.size(), replicas.size());
+            for (int i = 0; i < posts.size(); i++) {
+                assertEquals(posts.get(i).getId(), replicas.get(i).getId());
+                assertEquals(posts.get(i).getTitle(), replicas.get(i).getTitle());
+                assertEquals(posts.get(i).getVersion(), replicas.get(i).getVersion());
+            }
+        });
+    }
+
+    @Entity(name = "Post")
+    @Table(name = "post")
+    public static class Post {
+
+        @Id
+        private Long id;
+
+        private String title;
+
+        @Version
+        private short version;
+
+        public Long getId() {
+            return id;
+        }
+
+        public Post setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public Post setTitle(String title) {
+            this.title = title;
+            return this;
+        }
+
+        public short getVersion() {
+            return version;
+        }
+    }
+
+    @Entity(name = "PostReplica")
+    @Table(name = "post_replica")
+    public static class PostReplica {
+
+        @Id
+        private Long id;
+
+        private String title;
+
+        private short version;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public short getVersion() {
+            return version;
+        }
+    }
+}
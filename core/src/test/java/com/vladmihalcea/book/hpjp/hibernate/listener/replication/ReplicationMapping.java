@@ -0,0 +1,101 @@
+package com.vladmihalcea.book.hpjp.hibernate.listener.replication;
+
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps the properties of a source entity to the columns of the table it is replicated to.
+ *
+ * @author Vlad Mihalcea
+ */
+public class ReplicationMapping {
+
+    private final Class<?> entityClass;
+
+    private final String table;
+
+    private final String idColumn;
+
+    private final List<String> properties = new ArrayList<>();
+
+    private final List<String> columns = new ArrayList<>();
+
+    private volatile int[] propertyIndexes;
+
+    private volatile String insertSql;
+
+    private String updateSql;
+
+    private String deleteSql;
+
+    public ReplicationMapping(Class<?> entityClass, String table) {
+        this(entityClass, table, "id");
+    }
+
+    public ReplicationMapping(Class<?> entityClass, String table, String idColumn) {
+        this.entityClass = entityClass;
+        this.table = table;
+        this.idColumn = idColumn;
+    }
+
+    public ReplicationMapping addColumn(String property, String column) {
+        properties.add(property);
+        columns.add(column);
+        insertSql = null;
+        return this;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * Copy the replicated values from the given entity state.
+     */
+    Object[] values(EntityPersister persister, Object[] state) {
+        int[] indexes = propertyIndexes;
+        if (indexes == null) {
+            indexes = new int[properties.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = persister.getEntityMetamodel().getPropertyIndex(properties.get(i));
+            }
+            propertyIndexes = indexes;
+        }
+        Object[] values = new Object[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            values[i] = state[indexes[i]];
+        }
+        return values;
+    }
+
+    String sql(ChangeType type) {
+        if (insertSql == null) {
+            initSql();
+        }
+        return switch (type) {
+            case INSERT -> insertSql;
+            case UPDATE -> updateSql;
+            case DELETE -> deleteSql;
+        };
+    }
+
+    private synchronized void initSql() {
+        StringBuilder insert = new StringBuilder("INSERT INTO ").append(table).append(" (").append(idColumn);
+        StringBuilder parameters = new StringBuilder("?");
+        StringBuilder update = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        for (int i = 0; i < columns.size(); i++) {
+            insert.append(", ").append(columns.get(i));
+            parameters.append(", ?");
+            update.append(i > 0 ? ", " : "").append(columns.get(i)).append(" = ?");
+        }
+        updateSql = update.append(" WHERE ").append(idColumn).append(" = ?").toString();
+        deleteSql = "DELETE FROM " + table + " WHERE " + idColumn + " = ?";
+        insertSql = insert.append(") VALUES (").append(parameters).append(")").toString();
+    }
+}
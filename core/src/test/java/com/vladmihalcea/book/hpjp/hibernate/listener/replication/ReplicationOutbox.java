@@ -0,0 +1,165 @@
+package com.vladmihalcea.book.hpjp.hibernate.listener.replication;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Collects the {@link ChangeRecord} entries of a unit of work, and writes them as JDBC batches.
+ * <p>
+ * The changes of the same row are coalesced as they are added, so a row inserted and then updated
+ * is replicated by a single insert with the latest values, a row inserted and then deleted is not replicated at all,
+ * and only the last update of a row is written. The remaining changes are then grouped by table and change type,
+ * and every group is written as one batch: the deletes first, then the inserts, and, finally, the updates,
+ * so a row that was deleted and inserted again ends up with the latest values.
+ *
+ * @author Vlad Mihalcea
+ */
+public class ReplicationOutbox {
+
+    private final Map<ChangeRecord.RowKey, RowChange> rowChanges = new LinkedHashMap<>();
+
+    private int recordCount;
+
+    private long sequence = -1;
+
+    public void add(ChangeRecord record) {
+        recordCount++;
+        ChangeRecord.RowKey rowKey = record.rowKey();
+        RowChange rowChange = rowChanges.get(rowKey);
+        if (rowChange == null) {
+            rowChanges.put(rowKey, new RowChange(record, false));
+            return;
+        }
+        ChangeRecord previous = rowChange.record;
+        switch (record.type()) {
+            case INSERT -> {
+                rowChange.record = record;
+                rowChange.deleteFirst = previous.type() == ChangeType.DELETE;
+            }
+            case UPDATE -> {
+                if (previous.type() == ChangeType.INSERT) {
+                    rowChange.record = new ChangeRecord(record.mapping(), ChangeType.INSERT, record.id(), record.values());
+                } else {
+                    rowChange.record = record;
+                }
+            }
+            case DELETE -> {
+                if (previous.type() == ChangeType.INSERT && !rowChange.deleteFirst) {
+                    rowChanges.remove(rowKey);
+                } else {
+                    rowChange.record = record;
+                    rowChange.deleteFirst = false;
+                }
+            }
+        }
+    }
+
+    public void addAll(Collection<ChangeRecord> records) {
+        for (ChangeRecord record : records) {
+            add(record);
+        }
+    }
+
+    public boolean isEmpty() {
+        return rowChanges.isEmpty();
+    }
+
+    /**
+     * @return the number of added records, before coalescing
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return the {@link AsyncReplicationApplier} sequence number of the unit of work, or {@code -1} if none was reserved
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return the coalesced records, at most one per row, in the order their rows were first changed
+     */
+    public List<ChangeRecord> records() {
+        List<ChangeRecord> records = new ArrayList<>(rowChanges.size());
+        for (RowChange rowChange : rowChanges.values()) {
+            records.add(rowChange.record);
+        }
+        return records;
+    }
+
+    /**
+     * Write the coalesced records using the given connection, without committing.
+     *
+     * @return the number of executed batches
+     */
+    public int write(Connection connection) throws SQLException {
+        Map<ReplicationMapping, List<ChangeRecord>> deletes = new LinkedHashMap<>();
+        Map<ReplicationMapping, List<ChangeRecord>> inserts = new LinkedHashMap<>();
+        Map<ReplicationMapping, List<ChangeRecord>> updates = new LinkedHashMap<>();
+        for (RowChange rowChange : rowChanges.values()) {
+            ChangeRecord record = rowChange.record;
+            if (rowChange.deleteFirst) {
+                deletes.computeIfAbsent(record.mapping(), mapping -> new ArrayList<>()).add(record);
+            }
+            Map<ReplicationMapping, List<ChangeRecord>> group = switch (record.type()) {
+                case INSERT -> inserts;
+                case UPDATE -> updates;
+                case DELETE -> deletes;
+            };
+            group.computeIfAbsent(record.mapping(), mapping -> new ArrayList<>()).add(record);
+        }
+        return write(connection, deletes, ChangeType.DELETE) +
+            write(connection, inserts, ChangeType.INSERT) +
+            write(connection, updates, ChangeType.UPDATE);
+    }
+
+    private int write(
+            Connection connection,
+            Map<ReplicationMapping, List<ChangeRecord>> recordsByMapping,
+            ChangeType type) throws SQLException {
+        for (Map.Entry<ReplicationMapping, List<ChangeRecord>> entry : recordsByMapping.entrySet()) {
+            try (PreparedStatement statement = connection.prepareStatement(entry.getKey().sql(type))) {
+                for (ChangeRecord record : entry.getValue()) {
+                    int index = 1;
+                    if (type == ChangeType.INSERT) {
+                        statement.setObject(index++, record.id());
+                    }
+                    if (type != ChangeType.DELETE) {
+                        for (Object value : record.values()) {
+                            statement.setObject(index++, value);
+                        }
+                    }
+                    if (type != ChangeType.INSERT) {
+                        statement.setObject(index, record.id());
+                    }
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+        return recordsByMapping.size();
+    }
+
+    private static class RowChange {
+
+        private ChangeRecord record;
+
+        /**
+         * The row was deleted before being inserted again, so the insert must be preceded by a delete.
+         */
+        private boolean deleteFirst;
+
+        RowChange(ChangeRecord record, boolean deleteFirst) {
+            this.record = record;
+            this.deleteFirst = deleteFirst;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.vladmihalcea.book.hpjp.hibernate.logging;
+
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import com.vladmihalcea.book.hpjp.util.logging.AsyncQueryLoggingListener;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class AsyncQueryLoggingListenerTest extends AbstractTest {
+
+    private CapturingQueryLoggingListener listener;
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            Post.class
+        };
+    }
+
+    @Override
+    protected void additionalProperties(Properties properties) {
+        properties.put("hibernate.jdbc.batch_size", "5");
+    }
+
+    @Override
+    protected DataSource newDataSource() {
+        listener = new CapturingQueryLoggingListener(AsyncQueryLoggingListener.DEFAULT_CAPACITY);
+        return proxy(listener);
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        listener.close();
+    }
+
+    @Test
+    public void testBatch() {
+        listener.entries.clear();
+
+        doInJPA(entityManager -> {
+            for (long i = 1; i <= 3; i++) {
+                entityManager.persist(
+                    new Post()
+                        .setId(i)
+                        .setTitle(String.format("Post no. %d", i))
+                );
+            }
+        });
+
+        listener.flush();
+        String batchEntry = listener.entries.stream()
+            .filter(entry -> entry.contains("Batch:True"))
+            .findFirst()
+            .orElseThrow();
+        assertTrue(batchEntry.contains("BatchSize:3"));
+        assertTrue(batchEntry.contains("Params:[(Post no. 1, 1), (Post no. 2, 2), (Post no. 3, 3)]"));
+    }
+
+    @Test
+    public void testParametersAreSortedByIndex() {
+        listener.entries.clear();
+
+        doInJDBC(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "insert into post (title, id) values (?, ?)")) {
+                statement.setLong(2, 1L);
+                statement.setString(1, "High-Performance Java Persistence");
+                statement.executeUpdate();
+            }
+        });
+
+        listener.flush();
+        assertEquals(1, listener.entries.size());
+        String entry = listener.entries.get(0);
+        assertTrue(entry.contains("Query:[\"insert into post (title, id) values (?, ?)\"]"));
+        assertTrue(entry.endsWith("Params:[(High-Performance Java Persistence, 1)]"));
+    }
+
+    @Test
+    public void testSlowQueryThreshold() {
+        listener.setSlowQueryThreshold(Duration.ofHours(1));
+        listener.entries.clear();
+
+        doInJDBC(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("insert into post (title, id) values ('JPA', 1)");
+                try {
+                    statement.executeUpdate("insert into post (title, id) values ('JPA', 1)");
+                    fail("Should have thrown a constraint violation");
+                } catch (SQLException expected) {
+                }
+            }
+        });
+
+        listener.flush();
+        assertEquals(1, listener.entries.size());
+        assertTrue(listener.entries.get(0).contains("Success:False"));
+    }
+
+    @Test
+    public void testSampleRate() {
+        listener.setSampleRate(0);
+        listener.entries.clear();
+
+        doInJDBC(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                for (int i = 1; i <= 10; i++) {
+                    statement.executeUpdate(String.format("insert into post (title, id) values ('JPA', %d)", i));
+                }
+            }
+        });
+
+        listener.flush();
+        assertTrue(listener.entries.isEmpty());
+    }
+
+    @Test
+    public void testFullRingBufferDropsEntries() throws InterruptedException {
+        CountDownLatch writeLatch = new CountDownLatch(1);
+        CapturingQueryLoggingListener blockedListener = new CapturingQueryLoggingListener(2) {
+            @Override
+            protected void write(CharSequence entry) {
+                try {
+                    writeLatch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.write(entry);
+            }
+        };
+        try {
+            DataSource dataSource = proxy(blockedListener);
+            int statementCount = 10;
+            try (var connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                for (int i = 0; i < statementCount; i++) {
+                    statement.execute("select count(*) from post");
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+
+            long droppedCount = blockedListener.getDroppedCount();
+            LOGGER.info("Dropped {} entries", droppedCount);
+            assertTrue(droppedCount >= statementCount - 3);
+
+            writeLatch.countDown();
+            blockedListener.flush();
+            assertEquals(statementCount - droppedCount, blockedListener.entries.size());
+        } finally {
+            writeLatch.countDown();
+            blockedListener.close();
+        }
+    }
+
+    private DataSource proxy(AsyncQueryLoggingListener listener) {
+        return ProxyDataSourceBuilder
+            .create(dataSourceProvider().dataSource())
+            .name(getClass().getSimpleName())
+            .listener(listener)
+            .build();
+    }
+
+    private static class CapturingQueryLoggingListener extends AsyncQueryLoggingListener {
+
+        private final List<String> entries = new CopyOnWriteArrayList<>();
+
+        CapturingQueryLoggingListener(int capacity) {
+            super(AsyncQueryLoggingListenerTest.class.getName(), capacity);
+        }
+
+        @Override
+        protected void write(CharSequence entry) {
+            entries.add(entry.toString());
+        }
+    }
+
+    @Entity(name = "Post")
+    @Table(name = "post")
+    public static class Post {
+
+        @Id
+        private Long id;
+
+        private String title;
+
+        public Long getId() {
+            return id;
+        }
+
+        public Post setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public Post setTitle(String title) {
+            this.title = title;
+            return this;
+        }
+    }
+}
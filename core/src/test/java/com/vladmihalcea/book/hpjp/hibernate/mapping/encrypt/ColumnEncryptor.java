@@ -0,0 +1,131 @@
+package com.vladmihalcea.book.hpjp.hibernate.mapping.encrypt;
+
+import com.vladmihalcea.book.hpjp.util.CryptoUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Encrypts the column values with AES-GCM.
+ * <p>
+ * Unlike {@link CryptoUtils}, which derives the key and looks up the {@link Cipher} provider on every call,
+ * the key is provided once and every thread reuses its own {@link Cipher} and {@link SecureRandom} instances.
+ * Every value is encrypted with a random 96-bit nonce, which is stored in front of the ciphertext,
+ * so the same plaintext yields a different column value every time, and a tampered value fails to decrypt.
+ * <p>
+ * The encrypted values are Base64-encoded, so they can be stored in a {@code VARCHAR} column
+ * whose length is at least {@link #encryptedLength(int)}.
+ *
+ * @author Vlad Mihalcea
+ */
+public class ColumnEncryptor {
+
+    public static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    public static final int NONCE_LENGTH = 12;
+
+    public static final int TAG_LENGTH = 16;
+
+    /**
+     * The minimum number of values that {@link #decryptAll(List)} decrypts in parallel.
+     */
+    public static final int PARALLEL_THRESHOLD = 1 << 10;
+
+    private static final ColumnEncryptor DEFAULT_INSTANCE = new ColumnEncryptor(CryptoUtils.getEncryptionKey());
+
+    private final SecretKey key;
+
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(ColumnEncryptor::newCipher);
+
+    private final ThreadLocal<SecureRandom> secureRandoms = ThreadLocal.withInitial(SecureRandom::new);
+
+    public ColumnEncryptor(SecretKey key) {
+        this.key = key;
+    }
+
+    /**
+     * @return the encryptor that uses the {@link CryptoUtils#getEncryptionKey()} key
+     */
+    public static ColumnEncryptor getInstance() {
+        return DEFAULT_INSTANCE;
+    }
+
+    /**
+     * @return the length of the encrypted value of a plaintext with the given number of UTF-8 bytes
+     */
+    public static int encryptedLength(int plaintextLength) {
+        return (NONCE_LENGTH + plaintextLength + TAG_LENGTH + 2) / 3 * 4;
+    }
+
+    public String encrypt(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] nonce = new byte[NONCE_LENGTH];
+        secureRandoms.get().nextBytes(nonce);
+        byte[] plaintext = value.getBytes(StandardCharsets.UTF_8);
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            ByteBuffer output = ByteBuffer.allocate(NONCE_LENGTH + cipher.getOutputSize(plaintext.length));
+            output.put(nonce);
+            cipher.doFinal(ByteBuffer.wrap(plaintext), output);
+            return Base64.getEncoder().encodeToString(
+                output.position() == output.capacity() ? output.array() : Arrays.copyOf(output.array(), output.position())
+            );
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not encrypt value", e);
+        }
+    }
+
+    public String decrypt(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] input = Base64.getDecoder().decode(value);
+        if (input.length < NONCE_LENGTH + TAG_LENGTH) {
+            throw new IllegalArgumentException("The value is too short to be encrypted with AES-GCM");
+        }
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, input, 0, NONCE_LENGTH));
+            byte[] plaintext = cipher.doFinal(input, NONCE_LENGTH, input.length - NONCE_LENGTH);
+            return new String(plaintext, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not decrypt value", e);
+        }
+    }
+
+    /**
+     * Decrypt the values of a result set column. Large columns are decrypted in parallel
+     * on the common {@link java.util.concurrent.ForkJoinPool}.
+     *
+     * @return the decrypted values, in the same order
+     */
+    public List<String> decryptAll(List<String> values) {
+        String[] decryptedValues = new String[values.size()];
+        IntStream indexes = IntStream.range(0, decryptedValues.length);
+        if (decryptedValues.length >= PARALLEL_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> decryptedValues[i] = decrypt(values.get(i)));
+        return Arrays.asList(decryptedValues);
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
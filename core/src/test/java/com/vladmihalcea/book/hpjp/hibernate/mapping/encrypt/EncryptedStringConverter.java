@@ -0,0 +1,37 @@
+package com.vladmihalcea.book.hpjp.hibernate.mapping.encrypt;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Encrypts a {@link String} attribute with the default {@link ColumnEncryptor}.
+ * <p>
+ * The converter is applied with {@code @Convert(converter = EncryptedStringConverter.class)},
+ * and the column must be large enough to hold the {@link ColumnEncryptor#encryptedLength(int) encrypted value}.
+ * Since every write uses a new nonce, an encrypted attribute cannot be used in an equality predicate.
+ *
+ * @author Vlad Mihalcea
+ */
+@Converter
+public class EncryptedStringConverter implements AttributeConverter<String, String> {
+
+    private final ColumnEncryptor columnEncryptor;
+
+    public EncryptedStringConverter() {
+        this(ColumnEncryptor.getInstance());
+    }
+
+    public EncryptedStringConverter(ColumnEncryptor columnEncryptor) {
+        this.columnEncryptor = columnEncryptor;
+    }
+
+    @Override
+    public String convertToDatabaseColumn(String attribute) {
+        return columnEncryptor.encrypt(attribute);
+    }
+
+    @Override
+    public String convertToEntityAttribute(String dbData) {
+        return columnEncryptor.decrypt(dbData);
+    }
+}
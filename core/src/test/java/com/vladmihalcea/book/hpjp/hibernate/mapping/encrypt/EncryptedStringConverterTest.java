@@ -0,0 +1,135 @@
+package com.vladmihalcea.book.hpjp.hibernate.mapping.encrypt;
+
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import jakarta.persistence.*;
+import org.junit.Test;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class EncryptedStringConverterTest extends AbstractTest {
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[] {
+            UserDetails.class,
+        };
+    }
+
+    @Test
+    public void test() {
+        doInJPA(entityManager -> {
+            entityManager.persist(
+                new UserDetails()
+                    .setId(1L)
+                    .setFirstName("Vlad")
+                    .setEmailAddress("vlad@vladmihalcea.com")
+            );
+            entityManager.persist(
+                new UserDetails()
+                    .setId(2L)
+                    .setFirstName("Vlad")
+            );
+        });
+
+        doInJPA(entityManager -> {
+            List<String> firstNames = entityManager.createNativeQuery("""
+                SELECT first_name
+                FROM user_details
+                ORDER BY id
+                """, String.class)
+            .getResultList();
+
+            LOGGER.info("The same first name is stored as {}", firstNames);
+            assertNotEquals("Vlad", firstNames.get(0));
+            assertNotEquals(firstNames.get(0), firstNames.get(1));
+            assertEquals(List.of("Vlad", "Vlad"), ColumnEncryptor.getInstance().decryptAll(firstNames));
+
+            UserDetails userDetails = entityManager.find(UserDetails.class, 1L);
+            assertEquals("Vlad", userDetails.getFirstName());
+            assertEquals("vlad@vladmihalcea.com", userDetails.getEmailAddress());
+            assertNull(entityManager.find(UserDetails.class, 2L).getEmailAddress());
+        });
+    }
+
+    @Test
+    public void testTamperedValue() {
+        ColumnEncryptor columnEncryptor = ColumnEncryptor.getInstance();
+        byte[] encryptedValue = Base64.getDecoder().decode(columnEncryptor.encrypt("Vlad"));
+        encryptedValue[ColumnEncryptor.NONCE_LENGTH] ^= 1;
+
+        try {
+            columnEncryptor.decrypt(Base64.getEncoder().encodeToString(encryptedValue));
+            fail("The tampered value should not be decrypted");
+        } catch (IllegalStateException expected) {
+            LOGGER.info("Tampered value rejected", expected);
+        }
+    }
+
+    @Test
+    public void testDecryptAll() {
+        ColumnEncryptor columnEncryptor = ColumnEncryptor.getInstance();
+        List<String> values = IntStream.range(0, ColumnEncryptor.PARALLEL_THRESHOLD * 4)
+            .mapToObj(i -> i % 10 == 0 ? null : "user-" + i + "@vladmihalcea.com")
+            .collect(Collectors.toList());
+        List<String> encryptedValues = values.stream()
+            .map(columnEncryptor::encrypt)
+            .collect(Collectors.toList());
+
+        assertEquals(values, columnEncryptor.decryptAll(encryptedValues));
+        assertEquals(
+            ColumnEncryptor.encryptedLength("user-1@vladmihalcea.com".length()),
+            encryptedValues.get(1).length()
+        );
+    }
+
+    @Entity(name = "UserDetails")
+    @Table(name = "user_details")
+    public static class UserDetails {
+
+        @Id
+        private Long id;
+
+        @Convert(converter = EncryptedStringConverter.class)
+        @Column(name = "first_name", length = 100)
+        private String firstName;
+
+        @Convert(converter = EncryptedStringConverter.class)
+        @Column(name = "email_address", length = 200)
+        private String emailAddress;
+
+        public Long getId() {
+            return id;
+        }
+
+        public UserDetails setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public String getFirstName() {
+            return firstName;
+        }
+
+        public UserDetails setFirstName(String firstName) {
+            this.firstName = firstName;
+            return this;
+        }
+
+        public String getEmailAddress() {
+            return emailAddress;
+        }
+
+        public UserDetails setEmailAddress(String emailAddress) {
+            this.emailAddress = emailAddress;
+            return this;
+        }
+    }
+}
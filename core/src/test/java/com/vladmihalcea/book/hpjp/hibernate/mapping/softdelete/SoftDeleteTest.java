@@ -213,7 +213,7 @@ public class SoftDeleteTest extends AbstractTest {
 	@SQLDelete(sql =
 		"UPDATE post " +
 		"SET deleted = true " +
-		"WHERE id = ?1")
+		"WHERE id = ?")
 	@Loader(namedQuery = "findPostById")
 	@NamedQuery(name = "findPostById", query =
 		"select p " +
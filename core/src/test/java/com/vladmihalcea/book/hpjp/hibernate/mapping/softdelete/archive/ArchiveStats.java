@@ -0,0 +1,76 @@
+package com.vladmihalcea.book.hpjp.hibernate.mapping.softdelete.archive;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The number of rows moved to the archive tables by a {@link SoftDeleteArchiver} run.
+ *
+ * @author Vlad Mihalcea
+ */
+public class ArchiveStats {
+
+    private final Map<String, Long> archivedRows = new LinkedHashMap<>();
+
+    private int batchCount;
+
+    private Duration batchDuration = Duration.ZERO;
+
+    private Duration elapsedTime = Duration.ZERO;
+
+    void addRows(String table, long rowCount) {
+        archivedRows.merge(table, rowCount, Long::sum);
+    }
+
+    void addBatch(Duration duration) {
+        batchCount++;
+        batchDuration = batchDuration.plus(duration);
+    }
+
+    void setElapsedTime(Duration elapsedTime) {
+        this.elapsedTime = elapsedTime;
+    }
+
+    public long getArchivedRows(String table) {
+        return archivedRows.getOrDefault(table, 0L);
+    }
+
+    public long getArchivedRows() {
+        return archivedRows.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * @return the time spent running batches, without the throttling pauses
+     */
+    public Duration getBatchDuration() {
+        return batchDuration;
+    }
+
+    public Duration getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * @return the archived rows per second of batch time
+     */
+    public double getRowsPerSecond() {
+        long nanos = batchDuration.toNanos();
+        return nanos > 0 ? getArchivedRows() * 1_000_000_000d / nanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "Archived %s rows in %d batches, %.0f rows/sec, elapsed time %d ms",
+            archivedRows,
+            batchCount,
+            getRowsPerSecond(),
+            elapsedTime.toMillis()
+        );
+    }
+}
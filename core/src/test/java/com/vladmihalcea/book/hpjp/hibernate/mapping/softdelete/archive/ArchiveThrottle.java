@@ -0,0 +1,108 @@
+package com.vladmihalcea.book.hpjp.hibernate.mapping.softdelete.archive;
+
+import java.time.Duration;
+
+/**
+ * Adapts the size of the archiving batches and the pause between them to the measured cost of the batches.
+ * <p>
+ * A batch taking longer than the target duration holds its row locks and delays the other transactions
+ * for too long, so the batch size is halved, while a faster batch increases the batch size by a constant step.
+ * Between batches, the archiver sleeps so that it uses the database for at most the duty cycle fraction
+ * of the time. If the replication lag exceeds the maximum lag, the batch size is halved too, and
+ * the archiver waits for the replicas to catch up.
+ *
+ * @author Vlad Mihalcea
+ */
+public class ArchiveThrottle {
+
+    private int minBatchSize = 10;
+
+    private int maxBatchSize = 10_000;
+
+    private int batchSizeStep = 100;
+
+    private Duration targetBatchDuration = Duration.ofMillis(200);
+
+    private double dutyCycle = 0.5;
+
+    private Duration maxReplicationLag = Duration.ofSeconds(1);
+
+    private Duration lagCheckInterval = Duration.ofMillis(500);
+
+    public ArchiveThrottle setMinBatchSize(int minBatchSize) {
+        this.minBatchSize = minBatchSize;
+        return this;
+    }
+
+    public ArchiveThrottle setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    public ArchiveThrottle setBatchSizeStep(int batchSizeStep) {
+        this.batchSizeStep = batchSizeStep;
+        return this;
+    }
+
+    public ArchiveThrottle setTargetBatchDuration(Duration targetBatchDuration) {
+        this.targetBatchDuration = targetBatchDuration;
+        return this;
+    }
+
+    /**
+     * @param dutyCycle the fraction of time, between 0 exclusive and 1 inclusive, the archiver runs batches
+     */
+    public ArchiveThrottle setDutyCycle(double dutyCycle) {
+        if (dutyCycle <= 0 || dutyCycle > 1) {
+            throw new IllegalArgumentException("The duty cycle must be in the (0, 1] range");
+        }
+        this.dutyCycle = dutyCycle;
+        return this;
+    }
+
+    public ArchiveThrottle setMaxReplicationLag(Duration maxReplicationLag) {
+        this.maxReplicationLag = maxReplicationLag;
+        return this;
+    }
+
+    public ArchiveThrottle setLagCheckInterval(Duration lagCheckInterval) {
+        this.lagCheckInterval = lagCheckInterval;
+        return this;
+    }
+
+    public Duration getLagCheckInterval() {
+        return lagCheckInterval;
+    }
+
+    /**
+     * @return the size of the next batch, given the duration of the last one
+     */
+    public int nextBatchSize(int batchSize, Duration batchDuration) {
+        int nextBatchSize = batchDuration.compareTo(targetBatchDuration) > 0 ?
+            batchSize / 2 :
+            batchSize + batchSizeStep;
+        return Math.max(minBatchSize, Math.min(maxBatchSize, nextBatchSize));
+    }
+
+    /**
+     * @return the batch size to use while the replicas are catching up
+     */
+    public int laggingBatchSize(int batchSize) {
+        return Math.max(minBatchSize, batchSize / 2);
+    }
+
+    /**
+     * @return how long to wait before the next batch, given the duration of the last one
+     */
+    public Duration pause(Duration batchDuration) {
+        return Duration.ofNanos((long) (batchDuration.toNanos() * (1 - dutyCycle) / dutyCycle));
+    }
+
+    public boolean isLagging(Duration replicationLag) {
+        return replicationLag.compareTo(maxReplicationLag) > 0;
+    }
+
+    public int getInitialBatchSize() {
+        return Math.max(minBatchSize, Math.min(maxBatchSize, 1_000));
+    }
+}
@@ -0,0 +1,126 @@
+package com.vladmihalcea.book.hpjp.hibernate.mapping.softdelete.archive;
+
+import com.vladmihalcea.book.hpjp.hibernate.mapping.softdelete.SoftDeleteTest.Post;
+import com.vladmihalcea.book.hpjp.hibernate.mapping.softdelete.SoftDeleteTest.PostComment;
+import com.vladmihalcea.book.hpjp.hibernate.mapping.softdelete.SoftDeleteTest.PostDetails;
+import com.vladmihalcea.book.hpjp.hibernate.mapping.softdelete.SoftDeleteTest.Tag;
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import com.vladmihalcea.book.hpjp.util.providers.Database;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Archives half of {@link #POST_COUNT} posts and reports the archiving throughput
+ * and the hot table index sizes before and after archiving.
+ * <p>
+ * The deleted index entries are only reclaimed once the indexes are rebuilt, or, gradually,
+ * as {@code VACUUM} makes their pages reusable for the new entries.
+ *
+ * @author Vlad Mihalcea
+ */
+public class PostgreSQLSoftDeleteArchiverTest extends AbstractTest {
+
+    public static final int POST_COUNT = 100_000;
+
+    public static final String[] TABLES = {"post", "post_details", "post_comment", "post_tag"};
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[] {
+            Post.class,
+            PostDetails.class,
+            PostComment.class,
+            Tag.class,
+        };
+    }
+
+    @Override
+    protected Database database() {
+        return Database.POSTGRESQL;
+    }
+
+    @Override
+    protected void afterInit() {
+        for (String table : TABLES) {
+            executeStatement(String.format("DROP TABLE IF EXISTS %s_archive", table));
+            executeStatement(String.format("CREATE TABLE %1$s_archive (LIKE %1$s)", table));
+        }
+        executeStatement("CREATE INDEX IF NOT EXISTS idx_post_comment_post_id ON post_comment (post_id)");
+
+        executeStatement("INSERT INTO tag (id, deleted) VALUES ('Java', false), ('JPA', false)");
+        executeStatement(String.format("""
+            INSERT INTO post (id, title, deleted)
+            SELECT id, 'High-Performance Java Persistence, part ' || id, id %% 2 = 0
+            FROM generate_series(1, %d) AS id
+            """, POST_COUNT));
+        executeStatement("""
+            INSERT INTO post_details (id, created_on, created_by, deleted)
+            SELECT id, now(), 'Vlad Mihalcea', deleted
+            FROM post
+            """);
+        executeStatement("""
+            INSERT INTO post_comment (id, post_id, review, deleted)
+            SELECT 2 * id - c, id, 'Comment ' || (2 * id - c), deleted
+            FROM post, generate_series(0, 1) AS c
+            """);
+        executeStatement("""
+            INSERT INTO post_tag (post_id, tag_id)
+            SELECT id, t.id
+            FROM post, tag t
+            """);
+        executeStatement("ANALYZE");
+    }
+
+    @Test
+    public void test() {
+        logIndexSizes("before archiving");
+
+        ArchiveStats stats = new SoftDeleteArchiver(dataSource(), "post", "id")
+            .addSoftDeletedChildTable("post_details", "id", "id")
+            .addSoftDeletedChildTable("post_comment", "post_id", "id")
+            .addChildTable("post_tag", "post_id")
+            .setThrottle(
+                new ArchiveThrottle()
+                    .setTargetBatchDuration(Duration.ofMillis(200))
+                    .setMaxBatchSize(5_000)
+                    .setDutyCycle(1)
+            )
+            .setReplicationLagProbe(ReplicationLagProbe.POSTGRESQL)
+            .archive();
+
+        LOGGER.info("{}", stats);
+        assertEquals(POST_COUNT / 2, stats.getArchivedRows("post"));
+
+        logIndexSizes("after archiving");
+        for (String table : TABLES) {
+            executeStatement("REINDEX TABLE " + table);
+        }
+        logIndexSizes("after reindexing");
+    }
+
+    private void logIndexSizes(String phase) {
+        doInJDBC(connection -> {
+            for (String table : TABLES) {
+                try (var statement = connection.prepareStatement("""
+                        SELECT pg_size_pretty(pg_relation_size(?::regclass)), pg_size_pretty(pg_indexes_size(?::regclass))
+                        """)) {
+                    statement.setString(1, table);
+                    statement.setString(2, table);
+                    try (var resultSet = statement.executeQuery()) {
+                        resultSet.next();
+                        LOGGER.info(
+                            "Table {} {}: table size {}, index size {}",
+                            table,
+                            phase,
+                            resultSet.getString(1),
+                            resultSet.getString(2)
+                        );
+                    }
+                }
+            }
+        });
+    }
+}
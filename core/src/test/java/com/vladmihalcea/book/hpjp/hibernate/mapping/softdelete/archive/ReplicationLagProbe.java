@@ -0,0 +1,33 @@
+package com.vladmihalcea.book.hpjp.hibernate.mapping.softdelete.archive;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * Measures how far the replicas are behind the primary node, so that the {@link SoftDeleteArchiver}
+ * does not generate transaction log entries faster than the replicas can apply them.
+ *
+ * @author Vlad Mihalcea
+ */
+@FunctionalInterface
+public interface ReplicationLagProbe {
+
+    ReplicationLagProbe NONE = connection -> Duration.ZERO;
+
+    /**
+     * The replay lag of the slowest PostgreSQL streaming replica.
+     */
+    ReplicationLagProbe POSTGRESQL = connection -> {
+        try (var statement = connection.createStatement();
+             var resultSet = statement.executeQuery("""
+                 SELECT COALESCE(EXTRACT(EPOCH FROM max(replay_lag)) * 1000, 0)
+                 FROM pg_stat_replication
+                 """)) {
+            resultSet.next();
+            return Duration.ofMillis(resultSet.getLong(1));
+        }
+    };
+
+    Duration lag(Connection connection) throws SQLException;
+}
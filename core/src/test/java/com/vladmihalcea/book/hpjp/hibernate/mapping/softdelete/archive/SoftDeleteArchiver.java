@@ -0,0 +1,295 @@
+package com.vladmihalcea.book.hpjp.hibernate.mapping.softdelete.archive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves the soft-deleted rows from the hot tables into mirror archive tables, so that the hot table
+ * scans and indexes no longer pay for rows the application filters out with {@code deleted = false}.
+ * <p>
+ * An aggregate is archived as a whole: the soft-deleted root rows and all the rows of the child tables
+ * referencing them are copied to the {@code <table>_archive} tables, and deleted from the hot tables,
+ * children first, so that the foreign keys are never violated. The roots are processed in identifier order,
+ * and every batch covers an identifier range, so the child rows are located with a set-based subquery
+ * instead of an {@code IN} list. Afterward, the soft-deleted rows of the child tables, whose root is still active,
+ * are archived too, which requires those child tables to not be referenced by other tables.
+ * <p>
+ * Every batch runs in its own transaction, and the {@link ArchiveThrottle} adapts the batch size and
+ * the pause between batches to the measured batch duration and {@link ReplicationLagProbe replication lag}.
+ * <p>
+ * The archive tables must have the same columns, in the same order, as the hot tables, like the ones created
+ * by {@code CREATE TABLE post_archive (LIKE post)}, and they have no foreign keys, so they can be written
+ * in any order. The queries needing the archived rows can use a view or a
+ * {@link org.hibernate.annotations.Subselect} entity doing a {@code UNION ALL} of the hot and the archive tables.
+ *
+ * @author Vlad Mihalcea
+ */
+public class SoftDeleteArchiver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SoftDeleteArchiver.class);
+
+    public static final String ARCHIVE_TABLE_SUFFIX = "_archive";
+
+    private record ChildTable(String table, String parentColumn, String idColumn, boolean softDeleted) {
+    }
+
+    private final DataSource dataSource;
+
+    private final String rootTable;
+
+    private final String idColumn;
+
+    private final List<ChildTable> childTables = new ArrayList<>();
+
+    private String deletedColumn = "deleted";
+
+    private ArchiveThrottle throttle = new ArchiveThrottle();
+
+    private ReplicationLagProbe replicationLagProbe = ReplicationLagProbe.NONE;
+
+    private volatile boolean stopped;
+
+    public SoftDeleteArchiver(DataSource dataSource, String rootTable, String idColumn) {
+        this.dataSource = dataSource;
+        this.rootTable = rootTable;
+        this.idColumn = idColumn;
+    }
+
+    /**
+     * Add a child table whose rows are archived together with their root.
+     *
+     * @param parentColumn the column referencing the root table identifier
+     */
+    public SoftDeleteArchiver addChildTable(String table, String parentColumn) {
+        childTables.add(new ChildTable(table, parentColumn, null, false));
+        return this;
+    }
+
+    /**
+     * Add a child table whose rows are archived together with their root, or on their own,
+     * if they are soft-deleted while their root is still active.
+     *
+     * @param parentColumn the column referencing the root table identifier
+     * @param idColumn the child table identifier
+     */
+    public SoftDeleteArchiver addSoftDeletedChildTable(String table, String parentColumn, String idColumn) {
+        childTables.add(new ChildTable(table, parentColumn, idColumn, true));
+        return this;
+    }
+
+    public SoftDeleteArchiver setDeletedColumn(String deletedColumn) {
+        this.deletedColumn = deletedColumn;
+        return this;
+    }
+
+    public SoftDeleteArchiver setThrottle(ArchiveThrottle throttle) {
+        this.throttle = throttle;
+        return this;
+    }
+
+    public SoftDeleteArchiver setReplicationLagProbe(ReplicationLagProbe replicationLagProbe) {
+        this.replicationLagProbe = replicationLagProbe;
+        return this;
+    }
+
+    /**
+     * Stop after the current batch.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Archive all the soft-deleted aggregates, and then the soft-deleted child rows of the active aggregates.
+     */
+    public ArchiveStats archive() {
+        stopped = false;
+        ArchiveStats stats = new ArchiveStats();
+        long startNanos = System.nanoTime();
+        try {
+            archiveBatches(
+                rootTable,
+                idColumn,
+                stats,
+                (connection, fromId, toId) -> archiveAggregates(connection, fromId, toId, stats)
+            );
+            for (ChildTable childTable : childTables) {
+                if (childTable.softDeleted()) {
+                    archiveBatches(
+                        childTable.table(),
+                        childTable.idColumn(),
+                        stats,
+                        (connection, fromId, toId) -> stats.addRows(
+                            childTable.table(),
+                            move(
+                                connection,
+                                childTable.table(),
+                                rangePredicate(childTable.idColumn()),
+                                fromId,
+                                toId
+                            )
+                        )
+                    );
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        stats.setElapsedTime(Duration.ofNanos(System.nanoTime() - startNanos));
+        LOGGER.info("{}", stats);
+        return stats;
+    }
+
+    @FunctionalInterface
+    private interface BatchArchiver {
+        void archive(Connection connection, long fromId, long toId) throws SQLException;
+    }
+
+    private void archiveBatches(String table, String idColumn, ArchiveStats stats, BatchArchiver batchArchiver)
+            throws SQLException, InterruptedException {
+        long lastId = Long.MIN_VALUE;
+        int batchSize = throttle.getInitialBatchSize();
+        while (!stopped) {
+            long batchStartNanos = System.nanoTime();
+            Long toId;
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    toId = findRangeEnd(connection, table, idColumn, lastId, batchSize);
+                    if (toId != null) {
+                        batchArchiver.archive(connection, lastId, toId);
+                    }
+                    connection.commit();
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            }
+            if (toId == null) {
+                return;
+            }
+            lastId = toId;
+            Duration batchDuration = Duration.ofNanos(System.nanoTime() - batchStartNanos);
+            stats.addBatch(batchDuration);
+            batchSize = throttle.nextBatchSize(batchSize, batchDuration);
+            Thread.sleep(throttle.pause(batchDuration).toMillis());
+            batchSize = awaitReplicas(batchSize);
+        }
+    }
+
+    private int awaitReplicas(int batchSize) throws SQLException, InterruptedException {
+        if (replicationLagProbe == ReplicationLagProbe.NONE) {
+            return batchSize;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            Duration lag;
+            while (!stopped && throttle.isLagging(lag = replicationLagProbe.lag(connection))) {
+                LOGGER.debug("Replication lag is {} ms, waiting for the replicas to catch up", lag.toMillis());
+                batchSize = throttle.laggingBatchSize(batchSize);
+                Thread.sleep(throttle.getLagCheckInterval().toMillis());
+            }
+        }
+        return batchSize;
+    }
+
+    /**
+     * @return the identifier of the last soft-deleted row of the next batch, or {@code null} if there's none
+     */
+    private Long findRangeEnd(Connection connection, String table, String idColumn, long lastId, int batchSize)
+            throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(String.format(
+                "SELECT %1$s FROM %2$s WHERE %3$s = true AND %1$s > ? ORDER BY %1$s",
+                idColumn,
+                table,
+                deletedColumn
+            ))) {
+            statement.setMaxRows(batchSize);
+            statement.setFetchSize(batchSize);
+            statement.setLong(1, lastId);
+            Long toId = null;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    toId = resultSet.getLong(1);
+                }
+            }
+            return toId;
+        }
+    }
+
+    private void archiveAggregates(Connection connection, long fromId, long toId, ArchiveStats stats)
+            throws SQLException {
+        String rootPredicate = rangePredicate(idColumn);
+        String childPredicate = "%s IN (SELECT " + idColumn + " FROM " + rootTable + " WHERE " + rootPredicate + ")";
+        //The children are deleted before the root rows they reference
+        for (ChildTable childTable : childTables) {
+            stats.addRows(
+                childTable.table(),
+                move(
+                    connection,
+                    childTable.table(),
+                    String.format(childPredicate, childTable.parentColumn()),
+                    fromId,
+                    toId
+                )
+            );
+        }
+        stats.addRows(rootTable, move(connection, rootTable, rootPredicate, fromId, toId));
+    }
+
+    private String rangePredicate(String idColumn) {
+        return String.format("%s = true AND %s > ? AND %s <= ?", deletedColumn, idColumn, idColumn);
+    }
+
+    /**
+     * Copy the rows matching the predicate to the archive table, and delete them from the hot table.
+     *
+     * @return the number of moved rows
+     */
+    private int move(Connection connection, String table, String predicate, long fromId, long toId)
+            throws SQLException {
+        int copiedRows;
+        try (PreparedStatement statement = connection.prepareStatement(String.format(
+                "INSERT INTO %s%s SELECT * FROM %s WHERE %s",
+                table,
+                ARCHIVE_TABLE_SUFFIX,
+                table,
+                predicate
+            ))) {
+            statement.setLong(1, fromId);
+            statement.setLong(2, toId);
+            copiedRows = statement.executeUpdate();
+        }
+        try (PreparedStatement statement = connection.prepareStatement(String.format(
+                "DELETE FROM %s WHERE %s",
+                table,
+                predicate
+            ))) {
+            statement.setLong(1, fromId);
+            statement.setLong(2, toId);
+            int deletedRows = statement.executeUpdate();
+            if (deletedRows != copiedRows) {
+                throw new IllegalStateException(
+                    String.format(
+                        "Copied %d rows from the %s table, but deleted %d rows",
+                        copiedRows,
+                        table,
+                        deletedRows
+                    )
+                );
+            }
+        }
+        return copiedRows;
+    }
+}
@@ -0,0 +1,193 @@
+package com.vladmihalcea.book.hpjp.hibernate.mapping.softdelete.archive;
+
+import com.vladmihalcea.book.hpjp.hibernate.mapping.softdelete.SoftDeleteTest.Post;
+import com.vladmihalcea.book.hpjp.hibernate.mapping.softdelete.SoftDeleteTest.PostComment;
+import com.vladmihalcea.book.hpjp.hibernate.mapping.softdelete.SoftDeleteTest.PostDetails;
+import com.vladmihalcea.book.hpjp.hibernate.mapping.softdelete.SoftDeleteTest.Tag;
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Subselect;
+import org.hibernate.annotations.Synchronize;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class SoftDeleteArchiverTest extends AbstractTest {
+
+    public static final int POST_COUNT = 50;
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[] {
+            Post.class,
+            PostDetails.class,
+            PostComment.class,
+            Tag.class,
+            PostWithArchive.class,
+        };
+    }
+
+    @Override
+    protected void afterInit() {
+        for (String table : new String[] {"post", "post_details", "post_comment", "post_tag"}) {
+            executeStatement(String.format("DROP TABLE %s_archive IF EXISTS", table));
+            executeStatement(String.format("CREATE TABLE %1$s_archive (LIKE %1$s)", table));
+        }
+
+        doInJPA(entityManager -> {
+            for (String tagName : new String[] {"Java", "JPA"}) {
+                Tag tag = new Tag();
+                tag.setId(tagName);
+                entityManager.persist(tag);
+            }
+
+            for (long id = 1; id <= POST_COUNT; id++) {
+                Post post = new Post();
+                post.setId(id);
+                post.setTitle(String.format("High-Performance Java Persistence, part %d", id));
+                post.addDetails(new PostDetails());
+
+                for (long commentId = 2 * id - 1; commentId <= 2 * id; commentId++) {
+                    PostComment comment = new PostComment();
+                    comment.setId(commentId);
+                    comment.setReview(String.format("Comment %d", commentId));
+                    post.addComment(comment);
+                }
+
+                post.addTag(entityManager.getReference(Tag.class, "Java"));
+                post.addTag(entityManager.getReference(Tag.class, "JPA"));
+                entityManager.persist(post);
+            }
+        });
+
+        doInJPA(entityManager -> {
+            for (long id = 1; id <= 10; id++) {
+                entityManager.remove(entityManager.find(Post.class, id));
+            }
+
+            Post post = entityManager.find(Post.class, 40L);
+            post.removeComment(post.getComments().get(0));
+        });
+
+        //A bulk soft delete leaves the post_tag rows in place
+        executeStatement("UPDATE post SET deleted = true WHERE id BETWEEN 11 AND 30");
+        executeStatement("UPDATE post_details SET deleted = true WHERE id BETWEEN 11 AND 30");
+        executeStatement("UPDATE post_comment SET deleted = true WHERE post_id BETWEEN 11 AND 30");
+    }
+
+    @Test
+    public void testArchive() {
+        SoftDeleteArchiver archiver = newArchiver();
+
+        ArchiveStats stats = archiver.archive();
+        LOGGER.info("{}", stats);
+
+        assertEquals(30, stats.getArchivedRows("post"));
+        assertEquals(30, stats.getArchivedRows("post_details"));
+        assertEquals(61, stats.getArchivedRows("post_comment"));
+        assertEquals(40, stats.getArchivedRows("post_tag"));
+        assertTrue(stats.getBatchCount() > 1);
+
+        assertEquals(20, count("post"));
+        assertEquals(20, count("post_details"));
+        assertEquals(39, count("post_comment"));
+        assertEquals(40, count("post_tag"));
+        assertEquals(61, count("post_comment_archive"));
+
+        assertEquals(0, archiver.archive().getArchivedRows());
+
+        doInJPA(entityManager -> {
+            assertNull(entityManager.find(Post.class, 5L));
+            assertNull(entityManager.find(Post.class, 20L));
+
+            Post post = entityManager.find(Post.class, 40L);
+            assertEquals(1, post.getComments().size());
+            assertEquals(2, post.getTags().size());
+
+            PostWithArchive archivedPost = entityManager.find(PostWithArchive.class, 20L);
+            assertTrue(archivedPost.isArchived());
+            assertEquals("High-Performance Java Persistence, part 20", archivedPost.getTitle());
+            assertFalse(entityManager.find(PostWithArchive.class, 40L).isArchived());
+        });
+    }
+
+    @Test
+    public void testThrottle() {
+        ArchiveThrottle throttle = new ArchiveThrottle()
+            .setMinBatchSize(10)
+            .setMaxBatchSize(1000)
+            .setBatchSizeStep(100)
+            .setTargetBatchDuration(Duration.ofMillis(100))
+            .setDutyCycle(0.25)
+            .setMaxReplicationLag(Duration.ofSeconds(1));
+
+        assertEquals(600, throttle.nextBatchSize(500, Duration.ofMillis(50)));
+        assertEquals(1000, throttle.nextBatchSize(1000, Duration.ofMillis(50)));
+        assertEquals(250, throttle.nextBatchSize(500, Duration.ofMillis(150)));
+        assertEquals(10, throttle.nextBatchSize(15, Duration.ofMillis(150)));
+
+        assertEquals(Duration.ofMillis(300), throttle.pause(Duration.ofMillis(100)));
+        assertTrue(throttle.isLagging(Duration.ofSeconds(2)));
+        assertFalse(throttle.isLagging(Duration.ofMillis(500)));
+    }
+
+    private SoftDeleteArchiver newArchiver() {
+        return new SoftDeleteArchiver(dataSource(), "post", "id")
+            .addSoftDeletedChildTable("post_details", "id", "id")
+            .addSoftDeletedChildTable("post_comment", "post_id", "id")
+            .addChildTable("post_tag", "post_id")
+            .setThrottle(
+                new ArchiveThrottle()
+                    .setMinBatchSize(1)
+                    .setMaxBatchSize(7)
+                    .setDutyCycle(1)
+            );
+    }
+
+    private int count(String table) {
+        return doInJDBC(connection -> {
+            try (var statement = connection.createStatement();
+                 var resultSet = statement.executeQuery("SELECT count(*) FROM " + table)) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        });
+    }
+
+    @Entity(name = "PostWithArchive")
+    @Immutable
+    @Subselect("""
+        SELECT id, title, false AS archived FROM post
+        UNION ALL
+        SELECT id, title, true AS archived FROM post_archive
+        """)
+    @Synchronize({"post", "post_archive"})
+    public static class PostWithArchive {
+
+        @Id
+        private Long id;
+
+        private String title;
+
+        private boolean archived;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public boolean isArchived() {
+            return archived;
+        }
+    }
+}
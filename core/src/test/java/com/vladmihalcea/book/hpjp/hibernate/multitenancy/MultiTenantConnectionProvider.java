@@ -3,8 +3,8 @@ package com.vladmihalcea.book.hpjp.hibernate.multitenancy;
 import org.hibernate.engine.jdbc.connections.spi.AbstractMultiTenantConnectionProvider;
 import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Vlad Mihalcea
@@ -15,7 +15,10 @@ public class MultiTenantConnectionProvider
     public static final MultiTenantConnectionProvider INSTANCE =
             new MultiTenantConnectionProvider();
 
-    private final Map<String, ConnectionProvider> connectionProviderMap = new HashMap<>();
+    /**
+     * Concurrent, so that tenants can be registered while the sessions of other tenants are running.
+     */
+    private final Map<String, ConnectionProvider> connectionProviderMap = new ConcurrentHashMap<>();
 
     Map<String, ConnectionProvider> getConnectionProviderMap() {
         return connectionProviderMap;
@@ -0,0 +1,129 @@
+package com.vladmihalcea.book.hpjp.hibernate.multitenancy;
+
+import org.hibernate.engine.jdbc.connections.spi.AbstractMultiTenantConnectionProvider;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves all tenants from a single connection pool, instead of one pool per tenant
+ * like {@link MultiTenantConnectionProvider} does.
+ * <p>
+ * The {@link TenantConnectionScheduler} limits the connections a tenant can hold and orders the
+ * acquisitions fairly when the pool is exhausted. On checkout, the connection is switched
+ * to the tenant schema or catalog. The last applied schema of every physical connection is cached,
+ * so the {@code SET SCHEMA} roundtrip is skipped when the connection already belongs to the tenant.
+ * For this reason, the application must not change the schema or catalog of a connection directly.
+ *
+ * @author Vlad Mihalcea
+ */
+public class SharedPoolMultiTenantConnectionProvider extends AbstractMultiTenantConnectionProvider {
+
+    private final ConnectionProvider connectionProvider;
+
+    private final TenantConnectionScheduler scheduler;
+
+    private final TenantSwitchMode switchMode;
+
+    /**
+     * The tenant schema or catalog, which defaults to the tenant identifier.
+     */
+    private final Map<String, String> tenantSchemas = new ConcurrentHashMap<>();
+
+    private final Map<Connection, String> appliedSchemas = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final AtomicLong schemaSwitchCount = new AtomicLong();
+
+    public SharedPoolMultiTenantConnectionProvider(
+            ConnectionProvider connectionProvider,
+            TenantConnectionScheduler scheduler,
+            TenantSwitchMode switchMode) {
+        this.connectionProvider = connectionProvider;
+        this.scheduler = scheduler;
+        this.switchMode = switchMode;
+    }
+
+    /**
+     * Register a tenant at runtime.
+     */
+    public SharedPoolMultiTenantConnectionProvider addTenant(
+            String tenantIdentifier,
+            String schema,
+            TenantConnectionScheduler.Quota quota) {
+        tenantSchemas.put(tenantIdentifier, schema);
+        if (quota != null) {
+            scheduler.setQuota(tenantIdentifier, quota);
+        }
+        return this;
+    }
+
+    public TenantConnectionScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return the number of times a connection was switched to a different schema or catalog
+     */
+    public long getSchemaSwitchCount() {
+        return schemaSwitchCount.get();
+    }
+
+    @Override
+    protected ConnectionProvider getAnyConnectionProvider() {
+        return connectionProvider;
+    }
+
+    @Override
+    protected ConnectionProvider selectConnectionProvider(String tenantIdentifier) {
+        return connectionProvider;
+    }
+
+    @Override
+    public Connection getConnection(String tenantIdentifier) throws SQLException {
+        scheduler.acquire(tenantIdentifier);
+        Connection connection = null;
+        try {
+            connection = connectionProvider.getConnection();
+            switchSchema(connection, tenantSchemas.getOrDefault(tenantIdentifier, tenantIdentifier));
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            if (connection != null) {
+                appliedSchemas.remove(physicalConnection(connection));
+                connectionProvider.closeConnection(connection);
+            }
+            scheduler.release(tenantIdentifier);
+            throw e;
+        }
+    }
+
+    @Override
+    public void releaseConnection(String tenantIdentifier, Connection connection) throws SQLException {
+        try {
+            connectionProvider.closeConnection(connection);
+        } finally {
+            scheduler.release(tenantIdentifier);
+        }
+    }
+
+    private void switchSchema(Connection connection, String schema) throws SQLException {
+        Connection physicalConnection = physicalConnection(connection);
+        if (!schema.equals(appliedSchemas.get(physicalConnection))) {
+            switchMode.apply(connection, schema);
+            appliedSchemas.put(physicalConnection, schema);
+            schemaSwitchCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * The pools hand out a new proxy on every checkout, so the cache is keyed by the physical connection.
+     */
+    private Connection physicalConnection(Connection connection) throws SQLException {
+        return connection.isWrapperFor(Connection.class) ? connection.unwrap(Connection.class) : connection;
+    }
+}
@@ -0,0 +1,286 @@
+package com.vladmihalcea.book.hpjp.hibernate.multitenancy;
+
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.*;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.internal.DatasourceConnectionProviderImpl;
+import org.junit.Test;
+
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class SharedPoolMultitenancyTest extends AbstractTest {
+
+    private static final int POOL_SIZE = 4;
+
+    private HikariDataSource poolingDataSource;
+
+    private SharedPoolMultiTenantConnectionProvider connectionProvider;
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            User.class
+        };
+    }
+
+    @Override
+    protected void additionalProperties(Properties properties) {
+        properties.setProperty(AvailableSettings.HBM2DDL_AUTO, "none");
+        properties.setProperty(AvailableSettings.MULTI_TENANT_IDENTIFIER_RESOLVER, TenantContext.TenantIdentifierResolver.class.getName());
+        properties.put(AvailableSettings.MULTI_TENANT_CONNECTION_PROVIDER, connectionProvider(properties));
+    }
+
+    private SharedPoolMultiTenantConnectionProvider connectionProvider(Properties properties) {
+        if (connectionProvider != null) {
+            return connectionProvider;
+        }
+        poolingDataSource = connectionPoolDataSource(dataSourceProvider().dataSource());
+
+        DatasourceConnectionProviderImpl sharedConnectionProvider = new DatasourceConnectionProviderImpl();
+        sharedConnectionProvider.setDataSource(poolingDataSource);
+        sharedConnectionProvider.configure(propertiesMap(properties));
+
+        connectionProvider = new SharedPoolMultiTenantConnectionProvider(
+            sharedConnectionProvider,
+            new TenantConnectionScheduler(
+                POOL_SIZE,
+                Duration.ofSeconds(5),
+                new TenantConnectionScheduler.Quota(POOL_SIZE, 1)
+            ),
+            TenantSwitchMode.SCHEMA
+        )
+        .addTenant(TenantContext.DEFAULT_TENANT_IDENTIFIER, "PUBLIC", null)
+        .addTenant("europe", "EUROPE", new TenantConnectionScheduler.Quota(2, 3))
+        .addTenant("asia", "ASIA", new TenantConnectionScheduler.Quota(2, 1));
+        return connectionProvider;
+    }
+
+    @Override
+    protected HikariDataSource connectionPoolDataSource(javax.sql.DataSource dataSource) {
+        HikariDataSource poolingDataSource = super.connectionPoolDataSource(dataSource);
+        poolingDataSource.setMaximumPoolSize(POOL_SIZE);
+        return poolingDataSource;
+    }
+
+    private Map<String, Object> propertiesMap(Properties properties) {
+        Map<String, Object> propertiesMap = new HashMap<>();
+        properties.forEach((key, value) -> propertiesMap.put((String) key, value));
+        return propertiesMap;
+    }
+
+    @Override
+    protected void afterInit() {
+        createSchema("EUROPE");
+        createSchema("ASIA");
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        poolingDataSource.close();
+        TenantContext.reset(null);
+    }
+
+    private void createSchema(String schemaName) {
+        doInJDBC(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate(String.format("drop schema if exists %s cascade", schemaName));
+                statement.executeUpdate(String.format("create schema %s", schemaName));
+                statement.executeUpdate(String.format("create table %s.users (id bigint not null, first_name varchar(255), primary key (id))", schemaName));
+            }
+        });
+    }
+
+    @Test
+    public void testTenantIsolation() {
+        TenantContext.setTenant("europe");
+        doInJPA(entityManager -> {
+            entityManager.persist(new User().setId(1L).setFirstName("Vlad"));
+            entityManager.persist(new User().setId(2L).setFirstName("Alex"));
+        });
+
+        TenantContext.setTenant("asia");
+        doInJPA(entityManager -> {
+            entityManager.persist(new User().setId(1L).setFirstName("John"));
+        });
+
+        TenantContext.setTenant("europe");
+        doInJPA(entityManager -> {
+            assertEquals(2L, entityManager.createQuery("select count(u) from User u").getSingleResult());
+            assertEquals("Vlad", entityManager.find(User.class, 1L).getFirstName());
+        });
+
+        TenantContext.setTenant("asia");
+        doInJPA(entityManager -> {
+            assertEquals(1L, entityManager.createQuery("select count(u) from User u").getSingleResult());
+            assertEquals("John", entityManager.find(User.class, 1L).getFirstName());
+        });
+    }
+
+    @Test
+    public void testSchemaSwitchCache() {
+        TenantContext.setTenant("europe");
+        doInJPA(entityManager -> {
+            entityManager.persist(new User().setId(1L).setFirstName("Vlad"));
+        });
+
+        long schemaSwitchCount = connectionProvider.getSchemaSwitchCount();
+        for (int i = 0; i < 10; i++) {
+            doInJPA(entityManager -> {
+                assertEquals("Vlad", entityManager.find(User.class, 1L).getFirstName());
+            });
+        }
+        assertTrue(connectionProvider.getSchemaSwitchCount() - schemaSwitchCount < POOL_SIZE);
+    }
+
+    @Test
+    public void testQuota() throws Exception {
+        TenantConnectionScheduler scheduler = new TenantConnectionScheduler(
+            POOL_SIZE,
+            Duration.ofMillis(100),
+            new TenantConnectionScheduler.Quota(2, 1)
+        );
+
+        scheduler.acquire("europe");
+        scheduler.acquire("europe");
+        try {
+            scheduler.acquire("europe");
+            fail("Should have exceeded the quota");
+        } catch (SQLTransientConnectionException expected) {
+            LOGGER.info("Quota exceeded", expected);
+        }
+
+        scheduler.acquire("asia");
+        assertEquals(2, scheduler.getActiveConnections("europe"));
+        assertEquals(1, scheduler.getActiveConnections("asia"));
+
+        scheduler.release("europe");
+        scheduler.acquire("europe");
+        assertEquals(2, scheduler.getActiveConnections("europe"));
+    }
+
+    @Test
+    public void testWeightedFairQueuing() throws Exception {
+        TenantConnectionScheduler scheduler = new TenantConnectionScheduler(
+            1,
+            Duration.ofSeconds(10),
+            new TenantConnectionScheduler.Quota(1, 1)
+        );
+        scheduler.setQuota("europe", new TenantConnectionScheduler.Quota(1, 3));
+        scheduler.acquire("public");
+
+        List<String> grants = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        AtomicInteger waiterCount = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (String tenant : List.of("europe", "europe", "europe", "europe", "asia", "asia", "asia", "asia")) {
+            futures.add(executorService.submit(() -> {
+                scheduler.acquire(tenant);
+                grants.add(tenant);
+                scheduler.release(tenant);
+                return null;
+            }));
+            waiterCount.incrementAndGet();
+            while (scheduler.getWaitingCount() < waiterCount.get()) {
+                Thread.onSpinWait();
+            }
+        }
+
+        scheduler.release("public");
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+
+        LOGGER.info("Grant order: {}", grants);
+        assertEquals(
+            List.of("europe", "europe", "europe", "asia", "europe", "asia", "asia", "asia"),
+            grants
+        );
+    }
+
+    @Test
+    public void testTimedOutAcquisitionsAreNotCharged() throws Exception {
+        TenantConnectionScheduler scheduler = new TenantConnectionScheduler(
+            1,
+            Duration.ofMillis(500),
+            new TenantConnectionScheduler.Quota(1, 1)
+        );
+        scheduler.acquire("public");
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                scheduler.acquire("europe");
+                fail("Should have thrown a timeout failure");
+            } catch (SQLTransientConnectionException expected) {
+                LOGGER.info("The acquisition timed out as expected", expected);
+            }
+        }
+        assertEquals(0, scheduler.getWaitingCount());
+
+        List<String> grants = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        List<Future<?>> futures = new ArrayList<>();
+        for (String tenant : List.of("europe", "asia")) {
+            int waiterCount = futures.size() + 1;
+            futures.add(executorService.submit(() -> {
+                scheduler.acquire(tenant);
+                grants.add(tenant);
+                scheduler.release(tenant);
+                return null;
+            }));
+            while (scheduler.getWaitingCount() < waiterCount) {
+                Thread.onSpinWait();
+            }
+        }
+
+        scheduler.release("public");
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+
+        //The acquisitions that timed out must not push the europe tenant behind the asia one
+        assertEquals(List.of("europe", "asia"), grants);
+    }
+
+    @Entity(name = "User")
+    @Table(name = "users")
+    public static class User {
+
+        @Id
+        private Long id;
+
+        @Column(name = "first_name")
+        private String firstName;
+
+        public Long getId() {
+            return id;
+        }
+
+        public User setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public String getFirstName() {
+            return firstName;
+        }
+
+        public User setFirstName(String firstName) {
+            this.firstName = firstName;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.vladmihalcea.book.hpjp.hibernate.multitenancy;
+
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Grants the connections of a shared pool to tenants using per-tenant concurrency quotas
+ * and WFQ (Weighted Fair Queuing).
+ * <p>
+ * A tenant can hold at most {@link Quota#maxConnections()} connections, so a noisy tenant cannot
+ * take the whole pool. When the pool is exhausted, the waiting acquisitions are ordered by their
+ * virtual finish time, which advances by {@code 1 / weight} for every connection granted to a tenant.
+ * This way, a tenant with weight 3 is served three times as often as a tenant with weight 1,
+ * while a tenant that was idle does not get a burst of credit for the time it didn't use.
+ * <p>
+ * A tenant is charged only when it's granted a connection, whether it had to wait or not, and
+ * only the oldest waiter of every tenant competes for the pool. So, an acquisition that times out
+ * gives its share back, and the next waiter of the same tenant takes its place.
+ *
+ * @author Vlad Mihalcea
+ */
+public class TenantConnectionScheduler {
+
+    /**
+     * @param maxConnections the maximum number of connections the tenant can hold at once
+     * @param weight the share of the pool the tenant gets when several tenants are waiting
+     */
+    public record Quota(int maxConnections, double weight) {
+
+        public Quota {
+            if (maxConnections < 1 || weight <= 0) {
+                throw new IllegalArgumentException(
+                    String.format("Invalid quota: maxConnections=%d, weight=%s", maxConnections, weight)
+                );
+            }
+        }
+    }
+
+    private final int poolSize;
+
+    private final Duration acquisitionTimeout;
+
+    private final Quota defaultQuota;
+
+    private final Map<String, Quota> quotas = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<String, TenantState> tenants = new ConcurrentHashMap<>();
+
+    /**
+     * The oldest waiter of every tenant, ordered by the virtual finish time.
+     */
+    private final NavigableSet<Waiter> waiters = new TreeSet<>();
+
+    private int activeConnections;
+
+    private int waitingCount;
+
+    private double virtualTime;
+
+    private long sequence;
+
+    /**
+     * @param poolSize the number of connections of the shared pool
+     * @param acquisitionTimeout how long a tenant waits for a connection
+     * @param defaultQuota the quota of the tenants without an explicit one
+     */
+    public TenantConnectionScheduler(int poolSize, Duration acquisitionTimeout, Quota defaultQuota) {
+        this.poolSize = poolSize;
+        this.acquisitionTimeout = acquisitionTimeout;
+        this.defaultQuota = defaultQuota;
+    }
+
+    public void setQuota(String tenantIdentifier, Quota quota) {
+        quotas.put(tenantIdentifier, quota);
+    }
+
+    public Quota getQuota(String tenantIdentifier) {
+        return quotas.getOrDefault(tenantIdentifier, defaultQuota);
+    }
+
+    /**
+     * Wait until the tenant is allowed to take a connection from the shared pool.
+     *
+     * @throws SQLTransientConnectionException if the acquisition timeout expired
+     */
+    public void acquire(String tenantIdentifier) throws SQLTransientConnectionException {
+        lock.lock();
+        try {
+            TenantState tenant = tenant(tenantIdentifier);
+            if (waiters.isEmpty() && canGrant(tenant)) {
+                grant(tenant, finishTime(tenant));
+                return;
+            }
+            Waiter waiter = new Waiter(tenant, lock.newCondition());
+            enqueue(waiter);
+            dispatch();
+            long remainingNanos = acquisitionTimeout.toNanos();
+            while (!waiter.granted) {
+                if (remainingNanos <= 0) {
+                    giveUp(waiter);
+                    dispatch();
+                    throw new SQLTransientConnectionException(
+                        String.format(
+                            "Tenant [%s] could not acquire a connection in %d ms, holding %d of its %d connections",
+                            tenantIdentifier,
+                            acquisitionTimeout.toMillis(),
+                            tenant.activeConnections,
+                            getQuota(tenantIdentifier).maxConnections()
+                        )
+                    );
+                }
+                try {
+                    remainingNanos = waiter.condition.awaitNanos(remainingNanos);
+                } catch (InterruptedException e) {
+                    if (waiter.granted) {
+                        release(tenantIdentifier);
+                    } else {
+                        giveUp(waiter);
+                        dispatch();
+                    }
+                    Thread.currentThread().interrupt();
+                    throw new SQLTransientConnectionException("Interrupted while acquiring a connection", e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return the tenant connection, and hand it over to the next eligible waiter.
+     */
+    public void release(String tenantIdentifier) {
+        lock.lock();
+        try {
+            TenantState tenant = tenant(tenantIdentifier);
+            if (tenant.activeConnections == 0) {
+                throw new IllegalStateException(
+                    String.format("Tenant [%s] does not hold any connection", tenantIdentifier)
+                );
+            }
+            tenant.activeConnections--;
+            activeConnections--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getActiveConnections(String tenantIdentifier) {
+        TenantState tenant = tenants.get(tenantIdentifier);
+        return tenant != null ? tenant.activeConnections : 0;
+    }
+
+    public int getWaitingCount() {
+        lock.lock();
+        try {
+            return waitingCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TenantState tenant(String tenantIdentifier) {
+        return tenants.computeIfAbsent(tenantIdentifier, TenantState::new);
+    }
+
+    private boolean canGrant(TenantState tenant) {
+        return activeConnections < poolSize &&
+            tenant.activeConnections < getQuota(tenant.identifier).maxConnections();
+    }
+
+    /**
+     * @return the virtual finish time of the next connection granted to the tenant
+     */
+    private double finishTime(TenantState tenant) {
+        return Math.max(virtualTime, tenant.finishTime) + 1 / getQuota(tenant.identifier).weight();
+    }
+
+    /**
+     * Grant a connection and charge the tenant for it, on both the direct and the queued path.
+     */
+    private void grant(TenantState tenant, double finishTime) {
+        tenant.activeConnections++;
+        activeConnections++;
+        tenant.finishTime = finishTime;
+        virtualTime = Math.max(virtualTime, finishTime);
+    }
+
+    private void enqueue(Waiter waiter) {
+        TenantState tenant = waiter.tenant;
+        tenant.waiters.addLast(waiter);
+        waitingCount++;
+        if (tenant.waiters.size() == 1) {
+            compete(waiter);
+        }
+    }
+
+    /**
+     * Remove a waiter that was not granted a connection. The tenant was not charged for it,
+     * so the next waiter of the same tenant gets the same virtual finish time.
+     */
+    private void giveUp(Waiter waiter) {
+        TenantState tenant = waiter.tenant;
+        if (tenant.waiters.peekFirst() == waiter) {
+            waiters.remove(waiter);
+            tenant.waiters.removeFirst();
+            waitingCount--;
+            competeNext(tenant);
+        } else if (tenant.waiters.remove(waiter)) {
+            waitingCount--;
+        }
+    }
+
+    private void compete(Waiter waiter) {
+        waiter.finishTime = finishTime(waiter.tenant);
+        waiters.add(waiter);
+    }
+
+    private void competeNext(TenantState tenant) {
+        Waiter next = tenant.waiters.peekFirst();
+        if (next != null) {
+            compete(next);
+        }
+    }
+
+    /**
+     * Grant connections to the waiters with the lowest virtual finish time,
+     * skipping the tenants that are already at their quota.
+     */
+    private void dispatch() {
+        while (activeConnections < poolSize) {
+            Waiter next = null;
+            for (Waiter waiter : waiters) {
+                if (canGrant(waiter.tenant)) {
+                    next = waiter;
+                    break;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            waiters.remove(next);
+            next.tenant.waiters.removeFirst();
+            waitingCount--;
+            grant(next.tenant, next.finishTime);
+            next.granted = true;
+            next.condition.signal();
+            competeNext(next.tenant);
+        }
+    }
+
+    private static class TenantState {
+
+        final String identifier;
+
+        int activeConnections;
+
+        /**
+         * The virtual finish time of the last connection granted to this tenant.
+         */
+        double finishTime;
+
+        final Deque<Waiter> waiters = new ArrayDeque<>();
+
+        TenantState(String identifier) {
+            this.identifier = identifier;
+        }
+    }
+
+    private class Waiter implements Comparable<Waiter> {
+
+        final TenantState tenant;
+
+        final Condition condition;
+
+        final long order = sequence++;
+
+        /**
+         * Assigned when the waiter becomes the oldest one of its tenant, and fixed while it's in the waiters set.
+         */
+        double finishTime;
+
+        boolean granted;
+
+        Waiter(TenantState tenant, Condition condition) {
+            this.tenant = tenant;
+            this.condition = condition;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            int result = Double.compare(finishTime, other.finishTime);
+            return result != 0 ? result : Long.compare(order, other.order);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.vladmihalcea.book.hpjp.hibernate.multitenancy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * How a shared connection is switched to the tenant database objects.
+ *
+ * @author Vlad Mihalcea
+ */
+public enum TenantSwitchMode {
+    /**
+     * One schema per tenant, like in {@link SchemaMultitenancyTest}.
+     */
+    SCHEMA {
+        @Override
+        public void apply(Connection connection, String name) throws SQLException {
+            connection.setSchema(name);
+        }
+    },
+    /**
+     * One catalog per tenant, like in {@link CatalogMultitenancyTest}.
+     */
+    CATALOG {
+        @Override
+        public void apply(Connection connection, String name) throws SQLException {
+            connection.setCatalog(name);
+        }
+    };
+
+    public abstract void apply(Connection connection, String name) throws SQLException;
+}
@@ -0,0 +1,313 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.dto.projection.mapper;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates the {@link RowMapper} of a DTO type for a given column alias layout.
+ * <p>
+ * Resolving the aliases against the DTO properties is done once, when the mapper is created,
+ * and the result is a single method handle that reads every column from its array index,
+ * converts it to the property type, and calls the constructor or the setters of the DTO.
+ * So, mapping a row no longer builds an alias map or looks up the properties by name.
+ * <p>
+ * The aliases are matched case-insensitively and ignoring underscores, so the {@code created_on},
+ * {@code CREATEDON}, and {@code createdOn} aliases all map to the {@code createdOn} property.
+ * When a prefix is given, only the aliases starting with it are considered, and the prefix is removed
+ * before matching, which allows a {@code p_id, p_title, pc_id, pc_review} tuple to be mapped
+ * to a parent and a child DTO.
+ * <p>
+ * The DTO is instantiated as follows:
+ * <ul>
+ *     <li>a Java record is created via its canonical constructor, the components being matched by name,
+ *     nested records included, or by position if the aliases don't match all components;</li>
+ *     <li>a class having a no-arg constructor and a setter for every alias is populated via its setters;</li>
+ *     <li>otherwise, the constructor with as many parameters as there are aliases is called,
+ *     the columns being passed by position, like in a JPQL constructor expression.</li>
+ * </ul>
+ *
+ * @author Vlad Mihalcea
+ */
+public class DTOMapperFactory {
+
+    public static final DTOMapperFactory INSTANCE = new DTOMapperFactory();
+
+    private static final MethodType ROW_MAPPER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private record MapperKey(Class<?> type, String prefix, List<String> aliases) {
+    }
+
+    private final Map<MapperKey, RowMapper<?>> mappers = new ConcurrentHashMap<>();
+
+    public <T> RowMapper<T> getMapper(Class<T> type, String[] aliases) {
+        return getMapper(type, aliases, "");
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> RowMapper<T> getMapper(Class<T> type, String[] aliases, String prefix) {
+        return (RowMapper<T>) mappers.computeIfAbsent(
+            new MapperKey(type, prefix, Arrays.asList(aliases.clone())),
+            key -> new MethodHandleRowMapper<>(compile(type, new AliasLayout(aliases, prefix)))
+        );
+    }
+
+    public int getMapperCount() {
+        return mappers.size();
+    }
+
+    /**
+     * @return the index of the alias matching the given property name, or {@code -1} if there's none
+     */
+    public static int indexOf(String[] aliases, String prefix, String propertyName) {
+        return new AliasLayout(aliases, prefix).indexOf(propertyName);
+    }
+
+    private static MethodHandle compile(Class<?> type, AliasLayout layout) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            MethodHandle handle;
+            if (type.isRecord()) {
+                handle = recordHandle(type, layout, canResolveByName(type, layout), lookup);
+            } else {
+                handle = beanHandle(type, layout, lookup);
+                if (handle == null) {
+                    handle = constructorHandle(type, layout, lookup);
+                }
+            }
+            return handle.asType(ROW_MAPPER_TYPE);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot map the " + layout + " aliases to " + type, e);
+        }
+    }
+
+    private static boolean canResolveByName(Class<?> recordType, AliasLayout layout) {
+        for (RecordComponent component : recordType.getRecordComponents()) {
+            boolean resolved = component.getType().isRecord() ?
+                canResolveByName(component.getType(), layout) :
+                layout.indexOf(component.getName()) >= 0;
+            if (!resolved) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static MethodHandle recordHandle(Class<?> recordType, AliasLayout layout, boolean byName,
+            MethodHandles.Lookup lookup) throws ReflectiveOperationException {
+        RecordComponent[] components = recordType.getRecordComponents();
+        Class<?>[] parameterTypes = new Class<?>[components.length];
+        MethodHandle[] getters = new MethodHandle[components.length];
+        for (int i = 0; i < components.length; i++) {
+            Class<?> componentType = components[i].getType();
+            parameterTypes[i] = componentType;
+            if (componentType.isRecord()) {
+                getters[i] = recordHandle(componentType, layout, byName, lookup)
+                    .asType(MethodType.methodType(componentType, Object[].class));
+            } else {
+                int index = byName ? layout.indexOf(components[i].getName()) : layout.nextIndex();
+                getters[i] = columnGetter(index, componentType);
+            }
+        }
+        MethodHandle constructor = lookup.findConstructor(recordType, MethodType.methodType(void.class, parameterTypes));
+        return spreadTuple(constructor, getters);
+    }
+
+    private static MethodHandle constructorHandle(Class<?> type, AliasLayout layout,
+            MethodHandles.Lookup lookup) throws ReflectiveOperationException {
+        for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+            Class<?>[] parameterTypes = constructor.getParameterTypes();
+            if (parameterTypes.length == layout.size() && areColumnTypes(parameterTypes)) {
+                MethodHandle[] getters = new MethodHandle[parameterTypes.length];
+                for (int i = 0; i < parameterTypes.length; i++) {
+                    getters[i] = columnGetter(layout.nextIndex(), parameterTypes[i]);
+                }
+                return spreadTuple(lookup.unreflectConstructor(constructor), getters);
+            }
+        }
+        throw new NoSuchMethodException(
+            String.format("No constructor with %d parameters", layout.size())
+        );
+    }
+
+    private static MethodHandle beanHandle(Class<?> type, AliasLayout layout,
+            MethodHandles.Lookup lookup) throws ReflectiveOperationException {
+        if (Modifier.isAbstract(type.getModifiers())) {
+            return null;
+        }
+        MethodHandle constructor;
+        try {
+            constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+        Map<String, Method> setters = new HashMap<>();
+        for (Method method : type.getMethods()) {
+            String name = method.getName();
+            if (name.length() > 3 && name.startsWith("set") && method.getParameterCount() == 1 &&
+                    !Modifier.isStatic(method.getModifiers())) {
+                setters.putIfAbsent(AliasLayout.normalize(name.substring(3)), method);
+            }
+        }
+        //(bean, tuple)void, calling all setters in the alias order
+        MethodHandle populate = null;
+        for (int i = layout.size() - 1; i >= 0; i--) {
+            int index = layout.indexAt(i);
+            Method setter = setters.get(layout.propertyAt(i));
+            if (setter == null) {
+                return null;
+            }
+            Class<?> propertyType = setter.getParameterTypes()[0];
+            MethodHandle setterHandle = MethodHandles.filterArguments(
+                lookup.unreflect(setter).asType(MethodType.methodType(void.class, type, propertyType)),
+                1,
+                columnGetter(index, propertyType)
+            );
+            populate = populate == null ? setterHandle : MethodHandles.foldArguments(populate, setterHandle);
+        }
+        if (populate == null) {
+            return null;
+        }
+        //(bean, tuple)bean
+        MethodHandle populateAndReturn = MethodHandles.foldArguments(
+            MethodHandles.dropArguments(MethodHandles.identity(type), 1, Object[].class),
+            populate
+        );
+        return MethodHandles.foldArguments(populateAndReturn, constructor);
+    }
+
+    /**
+     * @return a {@code (Object[])type} handle reading and converting the column at the given index
+     */
+    private static MethodHandle columnGetter(int index, Class<?> type) {
+        MethodHandle getter = MethodHandles.insertArguments(
+            MethodHandles.arrayElementGetter(Object[].class), 1, index
+        );
+        return MethodHandles.filterReturnValue(getter, ValueConverters.forType(type))
+            .asType(MethodType.methodType(type, Object[].class));
+    }
+
+    /**
+     * Turn a {@code (P1, ..., Pn)T} constructor into a {@code (Object[])T} handle,
+     * every parameter being computed by its getter from the same tuple.
+     */
+    private static MethodHandle spreadTuple(MethodHandle constructor, MethodHandle[] getters) {
+        MethodHandle handle = MethodHandles.filterArguments(constructor, 0, getters);
+        return MethodHandles.permuteArguments(
+            handle,
+            MethodType.methodType(handle.type().returnType(), Object[].class),
+            new int[getters.length]
+        );
+    }
+
+    private static boolean areColumnTypes(Class<?>[] parameterTypes) {
+        for (Class<?> parameterType : parameterTypes) {
+            if (parameterType.isArray() ||
+                Collection.class.isAssignableFrom(parameterType) ||
+                Map.class.isAssignableFrom(parameterType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class MethodHandleRowMapper<T> implements RowMapper<T> {
+
+        private final MethodHandle handle;
+
+        private MethodHandleRowMapper(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T map(Object[] tuple) {
+            try {
+                return (T) (Object) handle.invokeExact(tuple);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * The aliases of the columns a DTO is mapped from.
+     */
+    private static class AliasLayout {
+
+        private final String[] properties;
+
+        private final int[] indexes;
+
+        private final Map<String, Integer> indexByProperty = new HashMap<>();
+
+        private final List<String> aliases = new ArrayList<>();
+
+        private int position;
+
+        AliasLayout(String[] aliases, String prefix) {
+            String lowerCasePrefix = prefix.toLowerCase(Locale.ROOT);
+            List<String> properties = new ArrayList<>();
+            List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; i < aliases.length; i++) {
+                String alias = aliases[i] != null ? aliases[i].toLowerCase(Locale.ROOT) : "";
+                if (!alias.startsWith(lowerCasePrefix)) {
+                    continue;
+                }
+                String property = normalize(alias.substring(lowerCasePrefix.length()));
+                properties.add(property);
+                indexes.add(i);
+                this.aliases.add(aliases[i]);
+                if (!property.isEmpty()) {
+                    indexByProperty.putIfAbsent(property, i);
+                }
+            }
+            this.properties = properties.toArray(String[]::new);
+            this.indexes = indexes.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        static String normalize(String name) {
+            return name.replace("_", "").toLowerCase(Locale.ROOT);
+        }
+
+        int size() {
+            return indexes.length;
+        }
+
+        int indexAt(int i) {
+            return indexes[i];
+        }
+
+        String propertyAt(int i) {
+            return properties[i];
+        }
+
+        int indexOf(String propertyName) {
+            Integer index = indexByProperty.get(normalize(propertyName));
+            return index != null ? index : -1;
+        }
+
+        /**
+         * @return the tuple index of the next column, when mapping by position
+         */
+        int nextIndex() {
+            if (position == indexes.length) {
+                throw new IllegalArgumentException("The " + this + " aliases don't cover all properties");
+            }
+            return indexes[position++];
+        }
+
+        @Override
+        public String toString() {
+            return aliases.toString();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.dto.projection.mapper;
+
+import com.vladmihalcea.book.hpjp.hibernate.query.dto.projection.Post;
+import com.vladmihalcea.book.hpjp.hibernate.query.dto.projection.PostComment;
+import com.vladmihalcea.book.hpjp.hibernate.query.dto.projection.transformer.PostCommentDTO;
+import com.vladmihalcea.book.hpjp.hibernate.query.dto.projection.transformer.PostDTO;
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Vlad Mihalcea
+ */
+@SuppressWarnings("unchecked")
+public class DTOMapperFactoryTest extends AbstractTest {
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[] {
+            Post.class,
+            PostComment.class
+        };
+    }
+
+    @Override
+    public void afterInit() {
+        doInJPA(entityManager -> {
+            entityManager.persist(
+                new Post()
+                    .setId(1L)
+                    .setTitle("High-Performance Java Persistence")
+                    .setCreatedBy("Vlad Mihalcea")
+                    .setCreatedOn(LocalDateTime.of(2016, 11, 2, 12, 0, 0))
+                    .setUpdatedBy("Vlad Mihalcea")
+                    .setUpdatedOn(LocalDateTime.of(2016, 11, 3, 12, 0, 0))
+                    .addComment(
+                        new PostComment()
+                            .setId(1L)
+                            .setReview("Best book on JPA and Hibernate!")
+                    )
+                    .addComment(
+                        new PostComment()
+                            .setId(2L)
+                            .setReview("A must-read for every Java developer!")
+                    )
+            );
+
+            entityManager.persist(
+                new Post()
+                    .setId(2L)
+                    .setTitle("Hypersistence Optimizer")
+                    .setCreatedBy("Vlad Mihalcea")
+                    .setCreatedOn(LocalDateTime.of(2019, 3, 19, 12, 0, 0))
+                    .setUpdatedBy("Vlad Mihalcea")
+                    .setUpdatedOn(LocalDateTime.of(2019, 3, 20, 12, 0, 0))
+                    .addComment(
+                        new PostComment()
+                            .setId(3L)
+                            .setReview("It's like pair programming with Vlad!")
+                    )
+            );
+
+            entityManager.persist(
+                new Post()
+                    .setId(3L)
+                    .setTitle("High-Performance SQL")
+                    .setCreatedBy("Vlad Mihalcea")
+                    .setCreatedOn(LocalDateTime.of(2020, 1, 1, 12, 0, 0))
+            );
+        });
+    }
+
+    @Test
+    public void testParentChildNativeQuery() {
+        var transformer = new ParentChildTupleTransformer<>(
+            PostDTO.class, "p_",
+            PostCommentDTO.class, "pc_",
+            (post, comment) -> post.getComments().add(comment)
+        );
+
+        doInJPA(entityManager -> {
+            List<PostDTO> postDTOs = entityManager.createNativeQuery("""
+                SELECT p.id AS p_id,
+                       p.title AS p_title,
+                       pc.id AS pc_id,
+                       pc.review AS pc_review
+                FROM post p
+                LEFT JOIN post_comment pc ON p.id = pc.post_id
+                ORDER BY p.id, pc.id
+                """)
+            .unwrap(org.hibernate.query.Query.class)
+            .setTupleTransformer(transformer)
+            .setResultListTransformer(transformer)
+            .getResultList();
+
+            assertEquals(3, postDTOs.size());
+
+            var post1DTO = postDTOs.get(0);
+            assertEquals(1L, post1DTO.getId().longValue());
+            assertEquals("High-Performance Java Persistence", post1DTO.getTitle());
+            assertEquals(2, post1DTO.getComments().size());
+            assertEquals(1L, post1DTO.getComments().get(0).getId().longValue());
+            assertEquals("Best book on JPA and Hibernate!", post1DTO.getComments().get(0).getReview());
+            assertEquals(2L, post1DTO.getComments().get(1).getId().longValue());
+
+            var post2DTO = postDTOs.get(1);
+            assertEquals(2L, post2DTO.getId().longValue());
+            assertEquals(1, post2DTO.getComments().size());
+            assertEquals(3L, post2DTO.getComments().get(0).getId().longValue());
+
+            assertTrue(postDTOs.get(2).getComments().isEmpty());
+        });
+    }
+
+    @Test
+    public void testNestedRecord() {
+        doInJPA(entityManager -> {
+            List<PostRecord> postRecords = entityManager.createQuery("""
+                select
+                    p.id as id,
+                    p.title as title,
+                    p.createdOn as created_on,
+                    p.createdBy as created_by,
+                    p.updatedOn as updated_on,
+                    p.updatedBy as updated_by
+                from Post p
+                order by p.id
+                """)
+            .unwrap(org.hibernate.query.Query.class)
+            .setTupleTransformer(new MappingTupleTransformer<>(PostRecord.class))
+            .getResultList();
+
+            assertEquals(3, postRecords.size());
+
+            PostRecord postRecord = postRecords.get(0);
+            assertEquals(1L, postRecord.id().longValue());
+            assertEquals("High-Performance Java Persistence", postRecord.title());
+            assertEquals(LocalDateTime.of(2016, 11, 2, 12, 0, 0), postRecord.audit().createdOn());
+            assertEquals("Vlad Mihalcea", postRecord.audit().createdBy());
+            assertEquals(LocalDateTime.of(2016, 11, 3, 12, 0, 0), postRecord.audit().updatedOn());
+            assertNull(postRecords.get(2).audit().updatedOn());
+        });
+    }
+
+    @Test
+    public void testCompactConstructor() {
+        doInJPA(entityManager -> {
+            List<com.vladmihalcea.book.hpjp.hibernate.forum.dto.PostDTO> postDTOs = entityManager.createNativeQuery("""
+                SELECT p.id, p.title
+                FROM post p
+                ORDER BY p.id
+                """)
+            .unwrap(org.hibernate.query.Query.class)
+            .setTupleTransformer(new MappingTupleTransformer<>(com.vladmihalcea.book.hpjp.hibernate.forum.dto.PostDTO.class))
+            .getResultList();
+
+            assertEquals(3, postDTOs.size());
+            assertEquals(2L, postDTOs.get(1).getId().longValue());
+            assertEquals("Hypersistence Optimizer", postDTOs.get(1).getTitle());
+        });
+    }
+
+    @Test
+    public void testMapperIsCompiledOncePerAliasLayout() {
+        DTOMapperFactory mapperFactory = new DTOMapperFactory();
+        String[] aliases = {"ID", "TITLE", "CREATED_ON", "CREATED_BY", "UPDATED_ON", "UPDATED_BY"};
+
+        RowMapper<PostRecord> mapper = mapperFactory.getMapper(PostRecord.class, aliases);
+        assertSame(mapper, mapperFactory.getMapper(PostRecord.class, aliases.clone()));
+        assertEquals(1, mapperFactory.getMapperCount());
+
+        PostRecord postRecord = mapper.map(
+            new Object[] {BigInteger.ONE, "High-Performance Java Persistence", null, "Vlad Mihalcea", null, null}
+        );
+        assertEquals(Long.valueOf(1), postRecord.id());
+        assertEquals("Vlad Mihalcea", postRecord.audit().createdBy());
+
+        //Without matching aliases, the record components are mapped by position
+        RowMapper<PostRecord> positionalMapper = mapperFactory.getMapper(PostRecord.class, new String[6]);
+        assertEquals(2, mapperFactory.getMapperCount());
+        assertEquals(
+            "Vlad Mihalcea",
+            positionalMapper.map(new Object[] {1, "Hypersistence Optimizer", null, null, null, "Vlad Mihalcea"})
+                .audit().updatedBy()
+        );
+
+        try {
+            mapperFactory.getMapper(PostRecord.class, new String[] {"id", "title"});
+            fail("Should reject an alias layout not covering all record components");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public record PostRecord(
+        Long id,
+        String title,
+        AuditRecord audit
+    ) {
+    }
+
+    public record AuditRecord(
+        LocalDateTime createdOn,
+        String createdBy,
+        LocalDateTime updatedOn,
+        String updatedBy
+    ) {
+    }
+}
@@ -0,0 +1,42 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.dto.projection.mapper;
+
+import org.hibernate.query.TupleTransformer;
+
+/**
+ * Maps every tuple to a DTO using the {@link RowMapper} compiled for the query aliases.
+ * <p>
+ * Hibernate passes the same aliases array for all the rows of a query,
+ * so the mapper is only looked up when the array changes.
+ *
+ * @author Vlad Mihalcea
+ */
+public class MappingTupleTransformer<T> implements TupleTransformer<T> {
+
+    private record Plan<T>(String[] aliases, RowMapper<T> mapper) {
+    }
+
+    private final DTOMapperFactory mapperFactory;
+
+    private final Class<T> type;
+
+    private Plan<T> plan;
+
+    public MappingTupleTransformer(Class<T> type) {
+        this(DTOMapperFactory.INSTANCE, type);
+    }
+
+    public MappingTupleTransformer(DTOMapperFactory mapperFactory, Class<T> type) {
+        this.mapperFactory = mapperFactory;
+        this.type = type;
+    }
+
+    @Override
+    public T transformTuple(Object[] tuple, String[] aliases) {
+        Plan<T> plan = this.plan;
+        if (plan == null || plan.aliases != aliases) {
+            plan = new Plan<>(aliases, mapperFactory.getMapper(type, aliases));
+            this.plan = plan;
+        }
+        return plan.mapper.map(tuple);
+    }
+}
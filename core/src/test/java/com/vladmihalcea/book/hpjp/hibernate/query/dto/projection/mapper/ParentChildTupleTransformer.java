@@ -0,0 +1,107 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.dto.projection.mapper;
+
+import org.hibernate.query.ResultListTransformer;
+import org.hibernate.query.TupleTransformer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Groups the rows of a parent-child join into parent DTOs holding their child DTOs, in a single pass.
+ * <p>
+ * The parent and the child columns are told apart by their alias prefix, e.g., {@code p_} and {@code pc_},
+ * and the parent identifier is the {@code id} column of the parent prefix. Unlike a tuple transformer
+ * that returns the same parent for every child row, and a {@code DISTINCT} list transformer that
+ * removes the duplicates afterward, {@link #transformList(List)} returns the parents directly,
+ * in the order they were first found, so the same instance must be set as both the tuple
+ * and the result list transformer of the query.
+ * <p>
+ * Since it keeps the parents it built, a transformer instance must be used for a single query execution.
+ *
+ * @author Vlad Mihalcea
+ */
+public class ParentChildTupleTransformer<P, C> implements TupleTransformer<P>, ResultListTransformer<P> {
+
+    private final DTOMapperFactory mapperFactory;
+
+    private final Class<P> parentType;
+
+    private final String parentPrefix;
+
+    private final Class<C> childType;
+
+    private final String childPrefix;
+
+    private final BiConsumer<P, C> childAdder;
+
+    private final Map<Object, P> parents = new LinkedHashMap<>();
+
+    private String[] aliases;
+
+    private int parentIdIndex;
+
+    private int childIdIndex;
+
+    private RowMapper<P> parentMapper;
+
+    private RowMapper<C> childMapper;
+
+    public ParentChildTupleTransformer(
+            Class<P> parentType, String parentPrefix,
+            Class<C> childType, String childPrefix,
+            BiConsumer<P, C> childAdder) {
+        this(DTOMapperFactory.INSTANCE, parentType, parentPrefix, childType, childPrefix, childAdder);
+    }
+
+    public ParentChildTupleTransformer(
+            DTOMapperFactory mapperFactory,
+            Class<P> parentType, String parentPrefix,
+            Class<C> childType, String childPrefix,
+            BiConsumer<P, C> childAdder) {
+        this.mapperFactory = mapperFactory;
+        this.parentType = parentType;
+        this.parentPrefix = parentPrefix;
+        this.childType = childType;
+        this.childPrefix = childPrefix;
+        this.childAdder = childAdder;
+    }
+
+    @Override
+    public P transformTuple(Object[] tuple, String[] aliases) {
+        if (aliases != this.aliases) {
+            resolve(aliases);
+        }
+        Object parentId = tuple[parentIdIndex];
+        P parent = parents.get(parentId);
+        if (parent == null) {
+            parent = parentMapper.map(tuple);
+            parents.put(parentId, parent);
+        }
+        //A LEFT JOIN returns a row with a null child for the parents without children
+        if (tuple[childIdIndex] != null) {
+            childAdder.accept(parent, childMapper.map(tuple));
+        }
+        return parent;
+    }
+
+    @Override
+    public List<P> transformList(List<P> resultList) {
+        return new ArrayList<>(parents.values());
+    }
+
+    private void resolve(String[] aliases) {
+        parentIdIndex = DTOMapperFactory.indexOf(aliases, parentPrefix, "id");
+        childIdIndex = DTOMapperFactory.indexOf(aliases, childPrefix, "id");
+        if (parentIdIndex < 0 || childIdIndex < 0) {
+            throw new IllegalArgumentException(
+                String.format("The [%s] and [%s] identifier aliases are required", parentPrefix + "id", childPrefix + "id")
+            );
+        }
+        parentMapper = mapperFactory.getMapper(parentType, aliases, parentPrefix);
+        childMapper = mapperFactory.getMapper(childType, aliases, childPrefix);
+        this.aliases = aliases;
+    }
+}
@@ -0,0 +1,12 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.dto.projection.mapper;
+
+/**
+ * Maps a query result tuple to a DTO.
+ *
+ * @author Vlad Mihalcea
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    T map(Object[] tuple);
+}
@@ -0,0 +1,98 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.dto.projection.mapper;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Adapts the JDBC column values to the DTO property types, e.g., a {@code BigInteger} or {@code Integer}
+ * identifier returned by a native query to the {@code Long} property of the DTO.
+ *
+ * @author Vlad Mihalcea
+ */
+final class ValueConverters {
+
+    private static final MethodType CONVERTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private ValueConverters() {
+    }
+
+    /**
+     * @return a {@code (Object)Object} method handle converting a column value to the given type
+     */
+    static MethodHandle forType(Class<?> type) {
+        Class<?> wrapperType = MethodType.methodType(type).wrap().returnType();
+        String converterName;
+        if (wrapperType == Long.class) {
+            converterName = "toLong";
+        } else if (wrapperType == Integer.class) {
+            converterName = "toInteger";
+        } else if (wrapperType == Short.class) {
+            converterName = "toShort";
+        } else if (wrapperType == Double.class) {
+            converterName = "toDouble";
+        } else if (wrapperType == Boolean.class) {
+            converterName = "toBoolean";
+        } else if (wrapperType == BigDecimal.class) {
+            converterName = "toBigDecimal";
+        } else if (wrapperType == String.class) {
+            converterName = "toText";
+        } else if (wrapperType == LocalDateTime.class) {
+            converterName = "toLocalDateTime";
+        } else {
+            return MethodHandles.identity(Object.class);
+        }
+        try {
+            return MethodHandles.lookup().findStatic(ValueConverters.class, converterName, CONVERTER_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Object toLong(Object value) {
+        if (value == null || value instanceof Long) {
+            return value;
+        }
+        if (value instanceof String text) {
+            return Long.valueOf(text);
+        }
+        return ((Number) value).longValue();
+    }
+
+    static Object toInteger(Object value) {
+        return value == null || value instanceof Integer ? value : ((Number) value).intValue();
+    }
+
+    static Object toShort(Object value) {
+        return value == null || value instanceof Short ? value : ((Number) value).shortValue();
+    }
+
+    static Object toDouble(Object value) {
+        return value == null || value instanceof Double ? value : ((Number) value).doubleValue();
+    }
+
+    static Object toBoolean(Object value) {
+        if (value == null || value instanceof Boolean) {
+            return value;
+        }
+        return ((Number) value).intValue() != 0;
+    }
+
+    static Object toBigDecimal(Object value) {
+        if (value == null || value instanceof BigDecimal) {
+            return value;
+        }
+        return new BigDecimal(value.toString());
+    }
+
+    static Object toText(Object value) {
+        return value == null || value instanceof String ? value : value.toString();
+    }
+
+    static Object toLocalDateTime(Object value) {
+        return value instanceof Timestamp timestamp ? timestamp.toLocalDateTime() : value;
+    }
+}
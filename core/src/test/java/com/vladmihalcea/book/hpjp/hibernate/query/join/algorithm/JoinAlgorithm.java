@@ -0,0 +1,252 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.join.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Inner equi-join algorithms over {@code long} join keys.
+ * <p>
+ * The left relation is the build side (e.g., the {@code post.id} column) and the right relation
+ * is the probe side (e.g., the {@code post_comment.post_id} column). Every algorithm returns
+ * the {@link JoinPairs} of matching row indexes, and the columns are then projected
+ * with {@link TupleTable}.
+ *
+ * @author Vlad Mihalcea
+ */
+public enum JoinAlgorithm {
+    /**
+     * Compares every left key with every right key, so it's {@code O(N * M)}.
+     * The pairs are ordered by the left row and then by the right row.
+     */
+    NESTED_LOOPS {
+        @Override
+        public JoinPairs join(long[] leftKeys, long[] rightKeys) {
+            JoinPairs joinPairs = new JoinPairs(rightKeys.length);
+            for (int i = 0; i < leftKeys.length; i++) {
+                long leftKey = leftKeys[i];
+                for (int j = 0; j < rightKeys.length; j++) {
+                    if (leftKey == rightKeys[j]) {
+                        joinPairs.add(i, j);
+                    }
+                }
+            }
+            return joinPairs;
+        }
+    },
+    /**
+     * Sorts both relations by the join key and then merges them, so it's {@code O(N log N + M log M)},
+     * or {@code O(N + M)} if the relations are already sorted.
+     * The pairs are ordered by the join key.
+     */
+    MERGE {
+        @Override
+        public JoinPairs join(long[] leftKeys, long[] rightKeys) {
+            long[] sortedLeftKeys = leftKeys.clone();
+            int[] leftRows = rowIndexes(leftKeys.length);
+            LongIndexSort.sort(sortedLeftKeys, leftRows);
+
+            long[] sortedRightKeys = rightKeys.clone();
+            int[] rightRows = rowIndexes(rightKeys.length);
+            LongIndexSort.sort(sortedRightKeys, rightRows);
+
+            return mergeJoin(sortedLeftKeys, leftRows, sortedRightKeys, rightRows);
+        }
+    },
+    /**
+     * Builds a {@link LongIntHashMap} from the left relation and probes it with the right relation,
+     * so it's {@code O(N + M)}. The pairs are ordered by the right row.
+     */
+    HASH {
+        @Override
+        public JoinPairs join(long[] leftKeys, long[] rightKeys) {
+            JoinPairs joinPairs = new JoinPairs(rightKeys.length);
+            hashJoin(
+                leftKeys, null, 0, leftKeys.length,
+                rightKeys, null, 0, rightKeys.length,
+                joinPairs
+            );
+            return joinPairs;
+        }
+    },
+    /**
+     * Splits both relations into partitions by the hash of the join key,
+     * so that each partition hash table fits in the CPU cache, and joins the partitions
+     * in parallel on the common {@link ForkJoinPool}.
+     * The pairs are ordered by partition, and then by the right row.
+     */
+    PARTITIONED_HASH {
+        @Override
+        public JoinPairs join(long[] leftKeys, long[] rightKeys) {
+            return partitionedHashJoin(
+                leftKeys,
+                rightKeys,
+                partitionBits(leftKeys.length),
+                ForkJoinPool.commonPool()
+            );
+        }
+    };
+
+    /**
+     * The number of build rows that a partition should hold so that its hash table fits in the L2 cache.
+     */
+    private static final int PARTITION_SIZE = 1 << 14;
+
+    private static final int MAX_PARTITION_BITS = 12;
+
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    public abstract JoinPairs join(long[] leftKeys, long[] rightKeys);
+
+    /**
+     * Merge two relations that are already sorted by the join key.
+     *
+     * @param leftKeys the sorted left keys
+     * @param leftRows the left row indexes, in the sorted key order
+     * @param rightKeys the sorted right keys
+     * @param rightRows the right row indexes, in the sorted key order
+     */
+    public static JoinPairs mergeJoin(long[] leftKeys, int[] leftRows, long[] rightKeys, int[] rightRows) {
+        JoinPairs joinPairs = new JoinPairs(rightKeys.length);
+        int i = 0, j = 0;
+        while (i < leftKeys.length && j < rightKeys.length) {
+            long leftKey = leftKeys[i];
+            long rightKey = rightKeys[j];
+            if (leftKey < rightKey) {
+                i++;
+            } else if (leftKey > rightKey) {
+                j++;
+            } else {
+                int leftEnd = i;
+                while (leftEnd < leftKeys.length && leftKeys[leftEnd] == leftKey) {
+                    leftEnd++;
+                }
+                int rightEnd = j;
+                while (rightEnd < rightKeys.length && rightKeys[rightEnd] == rightKey) {
+                    rightEnd++;
+                }
+                for (int r = j; r < rightEnd; r++) {
+                    for (int l = i; l < leftEnd; l++) {
+                        joinPairs.add(leftRows[l], rightRows[r]);
+                    }
+                }
+                i = leftEnd;
+                j = rightEnd;
+            }
+        }
+        return joinPairs;
+    }
+
+    /**
+     * Join the two relations using {@code 2^partitionBits} partitions.
+     */
+    public static JoinPairs partitionedHashJoin(long[] leftKeys, long[] rightKeys, int partitionBits, ForkJoinPool pool) {
+        if (partitionBits == 0) {
+            return HASH.join(leftKeys, rightKeys);
+        }
+        int partitionCount = 1 << partitionBits;
+
+        int[] leftOffsets = new int[partitionCount + 1];
+        long[] leftPartitionKeys = new long[leftKeys.length];
+        int[] leftPartitionRows = new int[leftKeys.length];
+        partition(leftKeys, partitionBits, leftOffsets, leftPartitionKeys, leftPartitionRows);
+
+        int[] rightOffsets = new int[partitionCount + 1];
+        long[] rightPartitionKeys = new long[rightKeys.length];
+        int[] rightPartitionRows = new int[rightKeys.length];
+        partition(rightKeys, partitionBits, rightOffsets, rightPartitionKeys, rightPartitionRows);
+
+        List<ForkJoinTask<JoinPairs>> tasks = new ArrayList<>(partitionCount);
+        for (int p = 0; p < partitionCount; p++) {
+            int partition = p;
+            tasks.add(pool.submit(() -> {
+                int rightStart = rightOffsets[partition];
+                int rightEnd = rightOffsets[partition + 1];
+                JoinPairs joinPairs = new JoinPairs(rightEnd - rightStart);
+                hashJoin(
+                    leftPartitionKeys, leftPartitionRows, leftOffsets[partition], leftOffsets[partition + 1],
+                    rightPartitionKeys, rightPartitionRows, rightStart, rightEnd,
+                    joinPairs
+                );
+                return joinPairs;
+            }));
+        }
+
+        JoinPairs joinPairs = new JoinPairs(rightKeys.length);
+        for (ForkJoinTask<JoinPairs> task : tasks) {
+            joinPairs.addAll(task.join());
+        }
+        return joinPairs;
+    }
+
+    static int partitionBits(int buildSize) {
+        int bits = 0;
+        while (bits < MAX_PARTITION_BITS && (buildSize >>> bits) > PARTITION_SIZE) {
+            bits++;
+        }
+        return bits;
+    }
+
+    /**
+     * Radix-partition the keys using a histogram pass followed by a scatter pass.
+     */
+    private static void partition(long[] keys, int partitionBits, int[] offsets, long[] partitionKeys, int[] partitionRows) {
+        int partitionMask = (1 << partitionBits) - 1;
+        for (long key : keys) {
+            offsets[partitionOf(key, partitionMask) + 1]++;
+        }
+        for (int p = 1; p < offsets.length; p++) {
+            offsets[p] += offsets[p - 1];
+        }
+        int[] positions = new int[offsets.length - 1];
+        System.arraycopy(offsets, 0, positions, 0, positions.length);
+        for (int row = 0; row < keys.length; row++) {
+            long key = keys[row];
+            int position = positions[partitionOf(key, partitionMask)]++;
+            partitionKeys[position] = key;
+            partitionRows[position] = row;
+        }
+    }
+
+    /**
+     * Uses the middle bits of the multiplicative hash since {@link LongIntHashMap} uses the high bits.
+     */
+    private static int partitionOf(long key, int partitionMask) {
+        return (int) ((key * GOLDEN_RATIO) >>> 24) & partitionMask;
+    }
+
+    /**
+     * Hash join the {@code [leftStart, leftEnd)} and {@code [rightStart, rightEnd)} ranges.
+     * Duplicate left keys are chained through the {@code next} array.
+     *
+     * @param leftRows the original left row indexes or {@code null} if the key index is the row index
+     * @param rightRows the original right row indexes or {@code null} if the key index is the row index
+     */
+    private static void hashJoin(
+            long[] leftKeys, int[] leftRows, int leftStart, int leftEnd,
+            long[] rightKeys, int[] rightRows, int rightStart, int rightEnd,
+            JoinPairs joinPairs) {
+        int buildSize = leftEnd - leftStart;
+        LongIntHashMap heads = new LongIntHashMap(buildSize);
+        int[] next = new int[buildSize];
+        for (int i = buildSize - 1; i >= 0; i--) {
+            next[i] = heads.put(leftKeys[leftStart + i], i);
+        }
+        for (int j = rightStart; j < rightEnd; j++) {
+            int rightRow = rightRows != null ? rightRows[j] : j;
+            for (int i = heads.get(rightKeys[j]); i != LongIntHashMap.NO_VALUE; i = next[i]) {
+                int leftRow = leftRows != null ? leftRows[leftStart + i] : leftStart + i;
+                joinPairs.add(leftRow, rightRow);
+            }
+        }
+    }
+
+    private static int[] rowIndexes(int size) {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        return rows;
+    }
+}
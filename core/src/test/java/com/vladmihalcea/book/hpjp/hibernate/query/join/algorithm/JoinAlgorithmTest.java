@@ -0,0 +1,110 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.join.algorithm;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Vlad Mihalcea
+ */
+@RunWith(Parameterized.class)
+public class JoinAlgorithmTest {
+
+    private final JoinAlgorithm joinAlgorithm;
+
+    public JoinAlgorithmTest(JoinAlgorithm joinAlgorithm) {
+        this.joinAlgorithm = joinAlgorithm;
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> parameters() {
+        List<Object[]> algorithms = new ArrayList<>();
+        for (JoinAlgorithm joinAlgorithm : JoinAlgorithm.values()) {
+            algorithms.add(new Object[]{joinAlgorithm});
+        }
+        return algorithms;
+    }
+
+    /**
+     * Get all posts with their associated post_comments.
+     *
+     *
+     * | post_id | post_title | review    |
+     * |---------|------------|-----------|
+     * | 1       | Java       | Good      |
+     * | 1       | Java       | Excellent |
+     * | 2       | Hibernate  | Awesome   |
+     */
+    @Test
+    public void testInnerJoin() {
+        long[] postIds = {3L, 1L, 2L};
+        String[] postTitles = {"JPA", "Java", "Hibernate"};
+
+        long[] postCommentPostIds = {1L, 1L, 2L};
+        String[] postCommentReviews = {"Good", "Excellent", "Awesome"};
+
+        JoinPairs joinPairs = joinAlgorithm.join(postIds, postCommentPostIds);
+
+        TupleTable tuples = TupleTable.of(joinPairs)
+            .addLongColumn("post_id", i -> postCommentPostIds[joinPairs.rightRow(i)])
+            .addColumn("post_title", i -> postTitles[joinPairs.leftRow(i)])
+            .addColumn("review", i -> postCommentReviews[joinPairs.rightRow(i)]);
+
+        assertEquals(3, tuples.size());
+
+        int postIdColumn = tuples.columnIndex("post_id");
+        int postTitleColumn = tuples.columnIndex("post_title");
+        int reviewColumn = tuples.columnIndex("review");
+
+        assertEquals(1L, tuples.getLong(0, postIdColumn));
+        assertEquals("Java", tuples.get(0, postTitleColumn));
+        assertEquals("Good", tuples.get(0, reviewColumn));
+
+        assertEquals(1L, tuples.getLong(1, postIdColumn));
+        assertEquals("Java", tuples.get(1, postTitleColumn));
+        assertEquals("Excellent", tuples.get(1, reviewColumn));
+
+        assertEquals(2L, tuples.getLong(2, "post_id"));
+        assertEquals("Hibernate", tuples.get(2, "post_title"));
+        assertEquals("Awesome", tuples.get(2, "review"));
+    }
+
+    @Test
+    public void testDuplicateKeysMatchNestedLoops() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] leftKeys = random.longs(2_000, -500, 500).toArray();
+        long[] rightKeys = random.longs(5_000, -500, 500).toArray();
+
+        Set<Long> expected = pairSet(JoinAlgorithm.NESTED_LOOPS.join(leftKeys, rightKeys));
+        Set<Long> actual = pairSet(joinAlgorithm.join(leftKeys, rightKeys));
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testPartitions() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] leftKeys = random.longs(10_000, 0, 20_000).toArray();
+        long[] rightKeys = random.longs(50_000, 0, 20_000).toArray();
+
+        JoinPairs expected = joinAlgorithm.join(leftKeys, rightKeys);
+        JoinPairs actual = JoinAlgorithm.partitionedHashJoin(leftKeys, rightKeys, 4, ForkJoinPool.commonPool());
+
+        assertEquals(expected.size(), actual.size());
+        assertEquals(pairSet(expected), pairSet(actual));
+    }
+
+    private Set<Long> pairSet(JoinPairs joinPairs) {
+        Set<Long> pairs = new HashSet<>();
+        for (int i = 0; i < joinPairs.size(); i++) {
+            pairs.add(((long) joinPairs.leftRow(i) << 32) | joinPairs.rightRow(i));
+        }
+        return pairs;
+    }
+}
@@ -0,0 +1,63 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.join.algorithm;
+
+import java.util.Arrays;
+
+/**
+ * The join result as two parallel arrays of row indexes, so that a match
+ * costs two {@code int} slots instead of a {@link Tuple} object.
+ *
+ * @author Vlad Mihalcea
+ */
+public class JoinPairs {
+
+    private int[] leftRows;
+
+    private int[] rightRows;
+
+    private int size;
+
+    public JoinPairs() {
+        this(16);
+    }
+
+    public JoinPairs(int initialCapacity) {
+        leftRows = new int[Math.max(initialCapacity, 1)];
+        rightRows = new int[leftRows.length];
+    }
+
+    public void add(int leftRow, int rightRow) {
+        if (size == leftRows.length) {
+            grow(size + 1);
+        }
+        leftRows[size] = leftRow;
+        rightRows[size] = rightRow;
+        size++;
+    }
+
+    public void addAll(JoinPairs other) {
+        if (size + other.size > leftRows.length) {
+            grow(size + other.size);
+        }
+        System.arraycopy(other.leftRows, 0, leftRows, size, other.size);
+        System.arraycopy(other.rightRows, 0, rightRows, size, other.size);
+        size += other.size;
+    }
+
+    public int leftRow(int index) {
+        return leftRows[index];
+    }
+
+    public int rightRow(int index) {
+        return rightRows[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, leftRows.length + (leftRows.length >> 1));
+        leftRows = Arrays.copyOf(leftRows, capacity);
+        rightRows = Arrays.copyOf(rightRows, capacity);
+    }
+}
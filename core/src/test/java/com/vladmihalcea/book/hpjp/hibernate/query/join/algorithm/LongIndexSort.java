@@ -0,0 +1,96 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.join.algorithm;
+
+/**
+ * Sorts a {@code long} key array along with its row indexes, without boxing the keys
+ * as {@code Comparator.comparing(Post::getId)} does. Equal keys are ordered by row index,
+ * so the result is the same as the one of a stable sort.
+ *
+ * @author Vlad Mihalcea
+ */
+public final class LongIndexSort {
+
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private LongIndexSort() {
+        throw new UnsupportedOperationException("LongIndexSort is not instantiable!");
+    }
+
+    public static void sort(long[] keys, int[] rows) {
+        if (keys.length != rows.length) {
+            throw new IllegalArgumentException("The keys and the rows must have the same length!");
+        }
+        sort(keys, rows, 0, keys.length - 1);
+    }
+
+    private static void sort(long[] keys, int[] rows, int low, int high) {
+        while (high - low >= INSERTION_SORT_THRESHOLD) {
+            int middle = (low + high) >>> 1;
+            if (less(keys, rows, middle, low)) {
+                swap(keys, rows, middle, low);
+            }
+            if (less(keys, rows, high, low)) {
+                swap(keys, rows, high, low);
+            }
+            if (less(keys, rows, high, middle)) {
+                swap(keys, rows, high, middle);
+            }
+            long pivotKey = keys[middle];
+            int pivotRow = rows[middle];
+
+            int i = low, j = high;
+            while (i <= j) {
+                while (compare(keys[i], rows[i], pivotKey, pivotRow) < 0) {
+                    i++;
+                }
+                while (compare(keys[j], rows[j], pivotKey, pivotRow) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, rows, i++, j--);
+                }
+            }
+            //Recurse into the smaller half to bound the stack depth
+            if (j - low < high - i) {
+                sort(keys, rows, low, j);
+                low = i;
+            } else {
+                sort(keys, rows, i, high);
+                high = j;
+            }
+        }
+        insertionSort(keys, rows, low, high);
+    }
+
+    private static void insertionSort(long[] keys, int[] rows, int low, int high) {
+        for (int i = low + 1; i <= high; i++) {
+            long key = keys[i];
+            int row = rows[i];
+            int j = i - 1;
+            while (j >= low && compare(keys[j], rows[j], key, row) > 0) {
+                keys[j + 1] = keys[j];
+                rows[j + 1] = rows[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            rows[j + 1] = row;
+        }
+    }
+
+    private static boolean less(long[] keys, int[] rows, int i, int j) {
+        return compare(keys[i], rows[i], keys[j], rows[j]) < 0;
+    }
+
+    private static int compare(long key1, int row1, long key2, int row2) {
+        int result = Long.compare(key1, key2);
+        return result != 0 ? result : Integer.compare(row1, row2);
+    }
+
+    private static void swap(long[] keys, int[] rows, int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int row = rows[i];
+        rows[i] = rows[j];
+        rows[j] = row;
+    }
+}
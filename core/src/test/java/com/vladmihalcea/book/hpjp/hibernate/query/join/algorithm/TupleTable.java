@@ -0,0 +1,90 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.join.algorithm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Columnar alternative to {@link Tuple}. Instead of a {@code HashMap} per row,
+ * every column is stored in a single array, and {@code long} columns are not boxed.
+ * <p>
+ * The alias is resolved to a column index once, via {@link #columnIndex(String)},
+ * and the index-based getters are meant to be used when iterating the rows.
+ *
+ * @author Vlad Mihalcea
+ */
+public class TupleTable {
+
+    private final int size;
+
+    private final Map<String, Integer> columnIndexes = new HashMap<>();
+
+    private final List<Object> columns = new ArrayList<>();
+
+    public TupleTable(int size) {
+        this.size = size;
+    }
+
+    public static TupleTable of(JoinPairs joinPairs) {
+        return new TupleTable(joinPairs.size());
+    }
+
+    public TupleTable addLongColumn(String alias, IntToLongFunction valueFunction) {
+        long[] values = new long[size];
+        for (int row = 0; row < size; row++) {
+            values[row] = valueFunction.applyAsLong(row);
+        }
+        return addColumn(alias, (Object) values);
+    }
+
+    public TupleTable addColumn(String alias, IntFunction<?> valueFunction) {
+        Object[] values = new Object[size];
+        for (int row = 0; row < size; row++) {
+            values[row] = valueFunction.apply(row);
+        }
+        return addColumn(alias, (Object) values);
+    }
+
+    private TupleTable addColumn(String alias, Object values) {
+        if (columnIndexes.putIfAbsent(alias, columns.size()) != null) {
+            throw new IllegalArgumentException(
+                String.format("The [%s] column is already defined!", alias)
+            );
+        }
+        columns.add(values);
+        return this;
+    }
+
+    public int columnIndex(String alias) {
+        Integer columnIndex = columnIndexes.get(alias);
+        if (columnIndex == null) {
+            throw new IllegalArgumentException(
+                String.format("The [%s] column is not defined!", alias)
+            );
+        }
+        return columnIndex;
+    }
+
+    public long getLong(int row, int column) {
+        return ((long[]) columns.get(column))[row];
+    }
+
+    public <E> E get(int row, int column) {
+        return (E) ((Object[]) columns.get(column))[row];
+    }
+
+    public long getLong(int row, String alias) {
+        return getLong(row, columnIndex(alias));
+    }
+
+    public <E> E get(int row, String alias) {
+        return get(row, columnIndex(alias));
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,285 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.recursive;
+
+import com.vladmihalcea.book.hpjp.hibernate.query.join.algorithm.LongIntHashMap;
+import org.hibernate.ScrollableResults;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Assembles the {@link PostCommentScore} trees and returns only the top-ranked roots.
+ * <p>
+ * The rows are added one by one, e.g., from a {@link ScrollableResults}, and stored in parallel arrays,
+ * while the row index of every comment identifier is kept in a {@link LongIntHashMap}, so no boxed map is built.
+ * Once all rows are added, every comment is resolved to its root, the root total scores are summed
+ * in a single pass, and the top roots are selected with a bounded heap, instead of sorting all roots.
+ * Only the subtrees of the selected roots are linked via {@link PostCommentScore#addChild(PostCommentScore)}.
+ * <p>
+ * The roots are ranked by their total score, in descending order, and the roots with the same total score
+ * keep the order in which they were added. A comment whose parent is missing, or which is part of a cycle,
+ * does not belong to any tree, so it's ignored.
+ *
+ * @author Vlad Mihalcea
+ */
+public class PostCommentScoreTreeBuilder {
+
+    private static final int NO_PARENT = -1;
+
+    private static final int MISSING_PARENT = -2;
+
+    private static final int ORPHAN = -1;
+
+    private static final int UNRESOLVED = -2;
+
+    /**
+     * The number of rows resolved by a parallel task.
+     */
+    private static final int PARALLEL_CHUNK_SIZE = 1 << 13;
+
+    private final LongIntHashMap rowIndexById;
+
+    private final BitSet rootRows = new BitSet();
+
+    private PostCommentScore[] rows;
+
+    private long[] parentIds;
+
+    private long[] scores;
+
+    private int size;
+
+    private boolean parallel;
+
+    public PostCommentScoreTreeBuilder() {
+        this(1 << 10);
+    }
+
+    public PostCommentScoreTreeBuilder(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        rowIndexById = new LongIntHashMap(capacity);
+        rows = new PostCommentScore[capacity];
+        parentIds = new long[capacity];
+        scores = new long[capacity];
+    }
+
+    /**
+     * Resolve the roots in parallel on the common {@link java.util.concurrent.ForkJoinPool},
+     * which only pays off for hundreds of thousands of comments.
+     */
+    public PostCommentScoreTreeBuilder setParallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    /**
+     * Stream the rows of the given {@link ScrollableResults}, and return the top-ranked roots.
+     */
+    public static List<PostCommentScore> topRoots(ScrollableResults<PostCommentScore> scrollableResults, int rank) {
+        PostCommentScoreTreeBuilder builder = new PostCommentScoreTreeBuilder();
+        while (scrollableResults.next()) {
+            builder.add(scrollableResults.get());
+        }
+        return builder.topRoots(rank);
+    }
+
+    /**
+     * Add a row. If a row with the same identifier was already added, the row is ignored.
+     */
+    public PostCommentScoreTreeBuilder add(PostCommentScore row) {
+        long id = row.getId();
+        if (rowIndexById.get(id) != LongIntHashMap.NO_VALUE) {
+            return this;
+        }
+        if (size == rows.length) {
+            int capacity = size << 1;
+            rows = Arrays.copyOf(rows, capacity);
+            parentIds = Arrays.copyOf(parentIds, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+        }
+        Long parentId = row.getParentId();
+        if (parentId == null) {
+            rootRows.set(size);
+        } else {
+            parentIds[size] = parentId;
+        }
+        rows[size] = row;
+        scores[size] = row.getScore();
+        rowIndexById.put(id, size);
+        size++;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return at most {@code rank} roots, ordered by their total score, in descending order
+     */
+    public List<PostCommentScore> topRoots(int rank) {
+        int[] parents = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (rootRows.get(i)) {
+                parents[i] = NO_PARENT;
+            } else {
+                int parent = rowIndexById.get(parentIds[i]);
+                parents[i] = parent != LongIntHashMap.NO_VALUE ? parent : MISSING_PARENT;
+            }
+        }
+
+        int[] rootOf = new int[size];
+        Arrays.fill(rootOf, UNRESOLVED);
+        if (parallel && size > PARALLEL_CHUNK_SIZE) {
+            int chunkCount = (size + PARALLEL_CHUNK_SIZE - 1) / PARALLEL_CHUNK_SIZE;
+            IntStream.range(0, chunkCount).parallel().forEach(chunk -> resolveRoots(
+                parents,
+                rootOf,
+                chunk * PARALLEL_CHUNK_SIZE,
+                Math.min(size, (chunk + 1) * PARALLEL_CHUNK_SIZE)
+            ));
+        } else {
+            resolveRoots(parents, rootOf, 0, size);
+        }
+
+        long[] totalScores = new long[size];
+        for (int i = 0; i < size; i++) {
+            int root = rootOf[i];
+            if (root != ORPHAN) {
+                totalScores[root] += scores[i];
+            }
+        }
+
+        int[] topRoots = selectTopRoots(parents, totalScores, rank);
+
+        int[] rankOf = new int[size];
+        for (int i = 0; i < topRoots.length; i++) {
+            rankOf[topRoots[i]] = i + 1;
+        }
+        for (int i = 0; i < size; i++) {
+            int root = rootOf[i];
+            if (root != ORPHAN && root != i && rankOf[root] > 0) {
+                rows[parents[i]].addChild(rows[i]);
+            }
+        }
+
+        List<PostCommentScore> roots = new ArrayList<>(topRoots.length);
+        for (int root : topRoots) {
+            roots.add(rows[root]);
+        }
+        return roots;
+    }
+
+    /**
+     * Resolve the root of every row in the {@code [from, to)} range, and cache it for every row on the path.
+     * The concurrent tasks may resolve the same path, but they always write the same values,
+     * so a stale {@link #UNRESOLVED} value only causes some redundant work.
+     */
+    private void resolveRoots(int[] parents, int[] rootOf, int from, int to) {
+        int[] path = new int[16];
+        for (int i = from; i < to; i++) {
+            if (rootOf[i] != UNRESOLVED) {
+                continue;
+            }
+            int pathLength = 0;
+            int current = i;
+            int root;
+            while (true) {
+                int resolved = rootOf[current];
+                if (resolved != UNRESOLVED) {
+                    root = resolved;
+                    break;
+                }
+                int parent = parents[current];
+                if (parent == NO_PARENT) {
+                    root = current;
+                    break;
+                }
+                if (parent == MISSING_PARENT || parent == current || pathLength == size) {
+                    root = ORPHAN;
+                    break;
+                }
+                if (pathLength == path.length) {
+                    path = Arrays.copyOf(path, pathLength << 1);
+                }
+                path[pathLength++] = current;
+                current = parent;
+            }
+            rootOf[current] = root;
+            for (int p = 0; p < pathLength; p++) {
+                rootOf[path[p]] = root;
+            }
+        }
+    }
+
+    /**
+     * Select the top roots using a min-heap, whose head is the lowest ranked root among the selected ones.
+     */
+    private int[] selectTopRoots(int[] parents, long[] totalScores, int rank) {
+        int[] heap = new int[Math.max(0, rank)];
+        int heapSize = 0;
+        for (int i = 0; i < size && rank > 0; i++) {
+            if (parents[i] != NO_PARENT) {
+                continue;
+            }
+            if (heapSize < rank) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++, totalScores);
+            } else if (ranksHigher(i, heap[0], totalScores)) {
+                heap[0] = i;
+                siftDown(heap, heapSize, totalScores);
+            }
+        }
+        int[] topRoots = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            topRoots[i] = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize, totalScores);
+        }
+        return topRoots;
+    }
+
+    private static boolean ranksHigher(int left, int right, long[] totalScores) {
+        long leftScore = totalScores[left];
+        long rightScore = totalScores[right];
+        return leftScore != rightScore ? leftScore > rightScore : left < right;
+    }
+
+    private static void siftUp(int[] heap, int index, long[] totalScores) {
+        int row = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksHigher(heap[parent], row, totalScores)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = row;
+    }
+
+    private static void siftDown(int[] heap, int heapSize, long[] totalScores) {
+        if (heapSize == 0) {
+            return;
+        }
+        int row = heap[0];
+        int index = 0;
+        while (true) {
+            int child = (index << 1) + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && ranksHigher(heap[child], heap[child + 1], totalScores)) {
+                child++;
+            }
+            if (!ranksHigher(row, heap[child], totalScores)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = row;
+    }
+}
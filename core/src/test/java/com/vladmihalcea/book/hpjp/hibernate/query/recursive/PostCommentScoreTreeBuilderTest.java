@@ -0,0 +1,134 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.recursive;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class PostCommentScoreTreeBuilderTest {
+
+    @Test
+    public void testTopRoots() {
+        PostCommentScoreTreeBuilder builder = new PostCommentScoreTreeBuilder()
+            .add(comment(1, null, 1))
+            .add(comment(2, 1L, 5))
+            .add(comment(3, null, 2))
+            .add(comment(4, 2L, 3))
+            .add(comment(5, null, 4))
+            .add(comment(6, 3L, -1));
+
+        List<PostCommentScore> roots = builder.topRoots(2);
+        assertEquals(List.of(1L, 5L), ids(roots));
+        assertEquals(9, roots.get(0).getTotalScore());
+        assertEquals(4, roots.get(1).getTotalScore());
+        assertEquals(List.of(2L), ids(roots.get(0).getChildren()));
+        assertEquals(List.of(4L), ids(roots.get(0).getChildren().get(0).getChildren()));
+    }
+
+    @Test
+    public void testTies() {
+        PostCommentScoreTreeBuilder builder = new PostCommentScoreTreeBuilder();
+        for (long id = 1; id <= 10; id++) {
+            builder.add(comment(id, null, id % 2));
+        }
+        assertEquals(List.of(1L, 3L, 5L, 7L), ids(builder.topRoots(4)));
+    }
+
+    @Test
+    public void testRankGreaterThanRootCount() {
+        PostCommentScoreTreeBuilder builder = new PostCommentScoreTreeBuilder()
+            .add(comment(1, null, 1))
+            .add(comment(2, null, 3));
+
+        assertEquals(List.of(2L, 1L), ids(builder.topRoots(10)));
+        assertTrue(new PostCommentScoreTreeBuilder().topRoots(10).isEmpty());
+    }
+
+    @Test
+    public void testOrphansAndCycles() {
+        PostCommentScoreTreeBuilder builder = new PostCommentScoreTreeBuilder()
+            .add(comment(1, null, 1))
+            .add(comment(2, 1L, 1))
+            .add(comment(3, 99L, 100))
+            .add(comment(4, 3L, 100))
+            .add(comment(5, 5L, 100))
+            .add(comment(6, 7L, 100))
+            .add(comment(7, 6L, 100))
+            .add(comment(8, 7L, 100))
+            .add(comment(2, null, 100));
+
+        assertEquals(8, builder.size());
+        List<PostCommentScore> roots = builder.topRoots(5);
+        assertEquals(List.of(1L), ids(roots));
+        assertEquals(2, roots.get(0).getTotalScore());
+    }
+
+    @Test
+    public void testSameResultAsSorting() {
+        Random random = new Random(42);
+        for (int commentCount : new int[] {10, 1_000, 50_000}) {
+            List<PostCommentScore> comments = randomComments(random, commentCount);
+            int rank = 10;
+
+            List<PostCommentScore> expected = sortRoots(copy(comments), rank);
+            for (boolean parallel : new boolean[] {false, true}) {
+                PostCommentScoreTreeBuilder builder = new PostCommentScoreTreeBuilder(commentCount)
+                    .setParallel(parallel);
+                copy(comments).forEach(builder::add);
+                List<PostCommentScore> roots = builder.topRoots(rank);
+
+                assertEquals(ids(expected), ids(roots));
+                assertEquals(totalScores(expected), totalScores(roots));
+            }
+        }
+    }
+
+    private List<PostCommentScore> randomComments(Random random, int commentCount) {
+        List<PostCommentScore> comments = new ArrayList<>(commentCount);
+        for (long id = 1; id <= commentCount; id++) {
+            Long parentId = id == 1 || random.nextInt(10) == 0 ? null : 1 + (long) random.nextInt((int) id - 1);
+            comments.add(comment(id, parentId, random.nextInt(21) - 10));
+        }
+        Collections.shuffle(comments, random);
+        return comments;
+    }
+
+    private List<PostCommentScore> sortRoots(List<PostCommentScore> comments, int rank) {
+        Map<Long, PostCommentScore> commentsById = comments.stream()
+            .collect(Collectors.toMap(PostCommentScore::getId, comment -> comment));
+        List<PostCommentScore> roots = new ArrayList<>();
+        for (PostCommentScore comment : comments) {
+            if (comment.getParentId() == null) {
+                roots.add(comment);
+            } else {
+                commentsById.get(comment.getParentId()).addChild(comment);
+            }
+        }
+        roots.sort(Comparator.comparing(PostCommentScore::getTotalScore).reversed());
+        return roots.size() > rank ? roots.subList(0, rank) : roots;
+    }
+
+    private List<PostCommentScore> copy(List<PostCommentScore> comments) {
+        return comments.stream()
+            .map(comment -> comment(comment.getId(), comment.getParentId(), comment.getScore()))
+            .collect(Collectors.toList());
+    }
+
+    private PostCommentScore comment(long id, Long parentId, long score) {
+        return new PostCommentScore(id, parentId, "Comment " + id, null, score);
+    }
+
+    private List<Long> ids(List<PostCommentScore> comments) {
+        return comments.stream().map(PostCommentScore::getId).collect(Collectors.toList());
+    }
+
+    private List<Long> totalScores(List<PostCommentScore> comments) {
+        return comments.stream().map(PostCommentScore::getTotalScore).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,47 @@
+package com.vladmihalcea.book.hpjp.hibernate.query.recursive.complex;
+
+import com.vladmihalcea.book.hpjp.hibernate.query.recursive.PostCommentScore;
+import com.vladmihalcea.book.hpjp.hibernate.query.recursive.PostCommentScoreTreeBuilder;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.junit.Ignore;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Vlad Mihalcea
+ */
+@Ignore
+public class PostCommentScoreStreamingTopKPerformanceTest extends AbstractPostCommentScorePerformanceTest {
+
+    public PostCommentScoreStreamingTopKPerformanceTest(int postCount, int commentCount) {
+        super(postCount, commentCount);
+    }
+
+    @Override
+    protected List<PostCommentScore> postCommentScores(Long postId, int rank) {
+        return doInJPA(entityManager -> {
+            long startNanos = System.nanoTime();
+            try (ScrollableResults<PostCommentScore> scrollableResults = entityManager
+                .unwrap(Session.class)
+                .createQuery(
+                "select new com.vladmihalcea.book.hpjp.hibernate.query.recursive.PostCommentScore(" +
+                "   pc.id, pc.parent.id, pc.review, pc.createdOn, sum( case when pcv.up is null then 0 when pcv.up = true then 1 else -1 end ) " +
+                ") " +
+                "from PostComment pc " +
+                "left join PostCommentVote pcv on pc.id = pcv.comment " +
+                "where pc.post.id = :postId " +
+                "group by pc.id, pc.parent.id, pc.review, pc.createdOn ", PostCommentScore.class)
+            .setParameter("postId", postId)
+            .setHint("org.hibernate.fetchSize", 100)
+            .scroll(ScrollMode.FORWARD_ONLY)) {
+
+                List<PostCommentScore> roots = PostCommentScoreTreeBuilder.topRoots(scrollableResults, rank);
+                timer.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                return roots;
+            }
+        });
+    }
+}
@@ -3,6 +3,7 @@ package com.vladmihalcea.book.hpjp.hibernate.statistics;
 import com.vladmihalcea.book.hpjp.util.AbstractTest;
 import com.vladmihalcea.book.hpjp.util.providers.entity.BlogEntityProvider;
 import jakarta.persistence.*;
+import org.HdrHistogram.Histogram;
 import org.hibernate.Session;
 import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
@@ -10,9 +11,15 @@ import org.hibernate.stat.Statistics;
 import org.hibernate.stat.internal.StatisticsInitiator;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -65,6 +72,57 @@ public class ConnectionStatisticsTest extends AbstractTest {
         }
     }
 
+    @Test
+    public void testMetrics() throws Exception {
+        test();
+
+        TransactionMetrics metrics = ((TransactionStatistics) sessionFactory().getStatistics()).getMetrics();
+        Map<String, Histogram> snapshot = metrics.snapshot();
+
+        Histogram connectionHistogram = snapshot.get(TransactionStatistics.TRANSACTION_CONNECTIONS);
+        assertTrue(connectionHistogram.getTotalCount() >= 5);
+        assertTrue(snapshot.get(TransactionStatistics.TRANSACTION_TIME).getTotalCount() >= 5);
+        //The untagged queries share a single metric instead of one per SQL string
+        assertEquals(
+            5,
+            snapshot.get(TransactionStatistics.QUERY_TIME_PREFIX + TransactionStatistics.UNTAGGED_QUERY).getTotalCount()
+        );
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        Set<ObjectName> objectNames = mBeanServer.queryNames(
+            new ObjectName(TransactionMetrics.class.getPackageName() + ":type=TransactionMetrics,*"), null
+        );
+        assertEquals(1, objectNames.size());
+        Long connectionCount = (Long) mBeanServer.invoke(
+            objectNames.iterator().next(),
+            "getCount",
+            new Object[]{TransactionStatistics.TRANSACTION_CONNECTIONS},
+            new String[]{String.class.getName()}
+        );
+        assertEquals(connectionHistogram.getTotalCount(), connectionCount.longValue());
+
+        new StatisticsReport(metrics).generate();
+    }
+
+    @Test
+    public void testTerminatedThreadRecorders() throws Exception {
+        try (TransactionMetrics metrics = new TransactionMetrics(Duration.ofHours(1))) {
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Thread thread = new Thread(() -> metrics.record(TransactionStatistics.TRANSACTION_CONNECTIONS, 1));
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(4, metrics.getThreadCount());
+
+            assertEquals(4, metrics.snapshot().get(TransactionStatistics.TRANSACTION_CONNECTIONS).getTotalCount());
+            assertEquals(0, metrics.getThreadCount());
+        }
+    }
+
     @Test
     public void testStatistics() {
         doInJPA(entityManager -> {
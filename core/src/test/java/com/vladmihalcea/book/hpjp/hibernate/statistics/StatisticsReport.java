@@ -1,43 +1,40 @@
 package com.vladmihalcea.book.hpjp.hibernate.statistics;
 
-import com.codahale.metrics.Histogram;
-import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.Slf4jReporter;
-import com.codahale.metrics.Timer;
+import org.HdrHistogram.Histogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
 
 /**
+ * Logs the {@link TransactionMetrics} percentiles on demand, outside of the transaction commit path.
+ *
  * @author Vlad Mihalcea
  */
 public class StatisticsReport {
 
     private final Logger LOGGER = LoggerFactory.getLogger(getClass());
 
-    private MetricRegistry metricRegistry = new MetricRegistry();
+    private final TransactionMetrics metrics;
 
-    private Histogram connectionCountHistogram = metricRegistry.
-        histogram("connectionCountHistogram");
-
-    private Timer transactionTimer = metricRegistry.
-        timer("transactionTimer");
-
-    private Slf4jReporter logReporter = Slf4jReporter
-            .forRegistry(metricRegistry)
-            .outputTo(LOGGER)
-            .build();
-
-    public void transactionTime(long nanos) {
-        transactionTimer.update(nanos, TimeUnit.NANOSECONDS);
-    }
-
-    public void connectionsCount(long count) {
-        connectionCountHistogram.update(count);
+    public StatisticsReport(TransactionMetrics metrics) {
+        this.metrics = metrics;
     }
 
     public void generate() {
-        logReporter.report();
+        for (Map.Entry<String, Histogram> entry : metrics.snapshot().entrySet()) {
+            Histogram histogram = entry.getValue();
+            LOGGER.info(
+                "{}: count={}, min={}, mean={}, p50={}, p95={}, p99={}, max={}",
+                entry.getKey(),
+                histogram.getTotalCount(),
+                histogram.getMinValue(),
+                String.format("%.2f", histogram.getMean()),
+                histogram.getValueAtPercentile(50),
+                histogram.getValueAtPercentile(95),
+                histogram.getValueAtPercentile(99),
+                histogram.getMaxValue()
+            );
+        }
     }
 }
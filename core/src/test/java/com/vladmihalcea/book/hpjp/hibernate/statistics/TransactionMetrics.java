@@ -0,0 +1,217 @@
+package com.vladmihalcea.book.hpjp.hibernate.statistics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+
+/**
+ * Lock-free HdrHistogram metrics.
+ * <p>
+ * Every recording thread owns a {@link SingleWriterRecorder} per metric, so the write path
+ * does not contend with other threads. A background thread merges the interval histograms
+ * of all threads into the aggregated ones, which are exposed via {@link #snapshot()} and JMX.
+ * Once a thread has terminated, its recorders are merged one last time and then dropped.
+ *
+ * @author Vlad Mihalcea
+ */
+public class TransactionMetrics implements TransactionMetricsMXBean, AutoCloseable {
+
+    public static final Duration DEFAULT_MERGE_INTERVAL = Duration.ofSeconds(1);
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransactionMetrics.class);
+
+    private final Queue<ThreadRecorders> threadRecorders = new ConcurrentLinkedQueue<>();
+
+    private final ThreadLocal<ThreadRecorders> currentThreadRecorders = ThreadLocal.withInitial(() -> {
+        ThreadRecorders recorders = new ThreadRecorders();
+        threadRecorders.add(recorders);
+        return recorders;
+    });
+
+    private final Map<String, Histogram> histograms = new TreeMap<>();
+
+    private final ScheduledExecutorService mergeExecutor;
+
+    private ObjectName objectName;
+
+    public TransactionMetrics() {
+        this(DEFAULT_MERGE_INTERVAL);
+    }
+
+    public TransactionMetrics(Duration mergeInterval) {
+        mergeExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "transaction-metrics-merger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = mergeInterval.toMillis();
+        mergeExecutor.scheduleAtFixedRate(this::merge, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Record a value from the current thread. This method is wait-free,
+     * unless it's the first time the current thread records the given metric.
+     */
+    public void record(String metric, long value) {
+        currentThreadRecorders.get().recorder(metric).recordValue(value);
+    }
+
+    /**
+     * Merge the interval histograms of all recording threads into the aggregated histograms.
+     */
+    public synchronized void merge() {
+        for (Iterator<ThreadRecorders> iterator = threadRecorders.iterator(); iterator.hasNext(); ) {
+            ThreadRecorders recorders = iterator.next();
+            //Checked before merging, so that a terminated thread has no values left to record
+            boolean terminated = !recorders.isOwnerAlive();
+            for (Map.Entry<String, IntervalRecorder> entry : recorders.entrySet()) {
+                IntervalRecorder intervalRecorder = entry.getValue();
+                intervalRecorder.interval = intervalRecorder.recorder.getIntervalHistogram(intervalRecorder.interval);
+                histograms
+                    .computeIfAbsent(entry.getKey(), metric -> new Histogram(SIGNIFICANT_DIGITS))
+                    .add(intervalRecorder.interval);
+            }
+            if (terminated) {
+                iterator.remove();
+            }
+        }
+    }
+
+    int getThreadCount() {
+        return threadRecorders.size();
+    }
+
+    /**
+     * @return a copy of the aggregated histograms, including the values recorded since the last merge
+     */
+    public synchronized Map<String, Histogram> snapshot() {
+        merge();
+        Map<String, Histogram> snapshot = new TreeMap<>();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().copy());
+        }
+        return snapshot;
+    }
+
+    public TransactionMetrics registerMBean(String name) {
+        try {
+            objectName = new ObjectName(
+                String.format("%s:type=TransactionMetrics,name=%s", getClass().getPackageName(), ObjectName.quote(name))
+            );
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception e) {
+            LOGGER.error("Could not register the TransactionMetrics MBean", e);
+            objectName = null;
+        }
+        return this;
+    }
+
+    @Override
+    public void close() {
+        mergeExecutor.shutdownNow();
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                LOGGER.error("Could not unregister the TransactionMetrics MBean", e);
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public synchronized String[] getMetricNames() {
+        return histograms.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public synchronized long getCount(String metric) {
+        Histogram histogram = histograms.get(metric);
+        return histogram != null ? histogram.getTotalCount() : 0;
+    }
+
+    @Override
+    public synchronized double getMean(String metric) {
+        Histogram histogram = histograms.get(metric);
+        return histogram != null ? histogram.getMean() : 0;
+    }
+
+    @Override
+    public synchronized long getMaxValue(String metric) {
+        Histogram histogram = histograms.get(metric);
+        return histogram != null ? histogram.getMaxValue() : 0;
+    }
+
+    @Override
+    public synchronized long getValueAtPercentile(String metric, double percentile) {
+        Histogram histogram = histograms.get(metric);
+        return histogram != null ? histogram.getValueAtPercentile(percentile) : 0;
+    }
+
+    @Override
+    public synchronized void reset() {
+        merge();
+        histograms.clear();
+    }
+
+    /**
+     * The recorders owned by a single thread. New metrics are added by the owning thread only,
+     * while the merging thread iterates them concurrently.
+     */
+    private static class ThreadRecorders extends ConcurrentHashMap<String, IntervalRecorder> {
+
+        /**
+         * Weakly referenced, so that a terminated thread can be garbage collected before the next merge.
+         */
+        final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+
+        IntervalRecorder lastRecorder;
+
+        boolean isOwnerAlive() {
+            Thread thread = owner.get();
+            return thread != null && thread.isAlive();
+        }
+
+        SingleWriterRecorder recorder(String metric) {
+            IntervalRecorder intervalRecorder = lastRecorder;
+            if (intervalRecorder == null || !intervalRecorder.metric.equals(metric)) {
+                intervalRecorder = get(metric);
+                if (intervalRecorder == null) {
+                    intervalRecorder = new IntervalRecorder(metric);
+                    put(metric, intervalRecorder);
+                }
+                lastRecorder = intervalRecorder;
+            }
+            return intervalRecorder.recorder;
+        }
+    }
+
+    private static class IntervalRecorder {
+
+        final String metric;
+
+        final SingleWriterRecorder recorder = new SingleWriterRecorder(SIGNIFICANT_DIGITS);
+
+        /**
+         * Recycled by the merging thread, so it's only accessed while holding the {@link TransactionMetrics} monitor.
+         */
+        Histogram interval;
+
+        IntervalRecorder(String metric) {
+            this.metric = metric;
+        }
+    }
+}
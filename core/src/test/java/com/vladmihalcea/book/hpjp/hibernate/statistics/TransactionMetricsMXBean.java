@@ -0,0 +1,21 @@
+package com.vladmihalcea.book.hpjp.hibernate.statistics;
+
+/**
+ * JMX view of the aggregated {@link TransactionMetrics} histograms.
+ *
+ * @author Vlad Mihalcea
+ */
+public interface TransactionMetricsMXBean {
+
+    String[] getMetricNames();
+
+    long getCount(String metric);
+
+    double getMean(String metric);
+
+    long getMaxValue(String metric);
+
+    long getValueAtPercentile(String metric, double percentile);
+
+    void reset();
+}
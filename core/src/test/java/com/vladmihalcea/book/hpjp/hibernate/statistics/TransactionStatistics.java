@@ -4,40 +4,132 @@ package com.vladmihalcea.book.hpjp.hibernate.statistics;
 import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.stat.internal.StatisticsImpl;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Records the transaction time, the number of connections, the entity loads and the query
+ * execution times in {@link TransactionMetrics}. The commit path only records histogram values,
+ * and the report is generated on demand via {@link StatisticsReport}.
+ *
  * @author Vlad Mihalcea
  */
 public class TransactionStatistics extends StatisticsImpl {
 
-    private static final ThreadLocal<AtomicLong> startNanos = ThreadLocal.withInitial(AtomicLong::new);
+    public static final String TRANSACTION_TIME = "transaction.time.micros";
 
-    private static final ThreadLocal<AtomicLong> connectionCounter = ThreadLocal.withInitial(AtomicLong::new);
+    public static final String TRANSACTION_CONNECTIONS = "transaction.connections";
 
-    private StatisticsReport report = new StatisticsReport();
+    public static final String ENTITY_LOADS_PREFIX = "entity.loads.";
+
+    public static final String QUERY_TIME_PREFIX = "query.time.millis.";
+
+    public static final String UNTAGGED_QUERY = "untagged";
+
+    private static final ThreadLocal<TransactionContext> transactionContext = ThreadLocal.withInitial(TransactionContext::new);
+
+    private final TransactionMetrics metrics;
 
     public TransactionStatistics(SessionFactoryImplementor sessionFactory) {
+        this(sessionFactory, new TransactionMetrics());
+    }
+
+    public TransactionStatistics(SessionFactoryImplementor sessionFactory, TransactionMetrics metrics) {
         super(sessionFactory);
+        this.metrics = metrics;
+    }
+
+    public TransactionMetrics getMetrics() {
+        return metrics;
     }
 
     @Override
     public void connect() {
-        connectionCounter.get().incrementAndGet();
-        startNanos.get().compareAndSet(0, System.nanoTime());
+        TransactionContext context = transactionContext.get();
+        if (context.connectionCount++ == 0) {
+            context.startNanos = System.nanoTime();
+        }
         super.connect();
     }
 
+    @Override
+    public void loadEntity(String entityName) {
+        transactionContext.get().entityLoad(entityName);
+        super.loadEntity(entityName);
+    }
+
+    @Override
+    public void fetchEntity(String entityName) {
+        transactionContext.get().entityLoad(entityName);
+        super.fetchEntity(entityName);
+    }
+
+    @Override
+    public void queryExecuted(String query, int rows, long time) {
+        metrics.record(QUERY_TIME_PREFIX + queryTag(query), time);
+        super.queryExecuted(query, rows, time);
+    }
+
     @Override
     public void endTransaction(boolean success) {
+        TransactionContext context = transactionContext.get();
         try {
-            report.transactionTime(System.nanoTime() - startNanos.get().get());
-            report.connectionsCount(connectionCounter.get().get());
-            report.generate();
+            if (context.connectionCount > 0) {
+                metrics.record(
+                    TRANSACTION_TIME,
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - context.startNanos)
+                );
+            }
+            metrics.record(TRANSACTION_CONNECTIONS, context.connectionCount);
+            for (Map.Entry<String, long[]> entry : context.entityLoads.entrySet()) {
+                long[] loadCount = entry.getValue();
+                if (loadCount[0] > 0) {
+                    metrics.record(entry.getKey(), loadCount[0]);
+                    loadCount[0] = 0;
+                }
+            }
         } finally {
-            startNanos.remove();
-            connectionCounter.remove();
+            context.connectionCount = 0;
+            context.startNanos = 0;
         }
         super.endTransaction(success);
     }
+
+    /**
+     * The query tag is the content of the leading SQL comment. The queries without such a comment
+     * share the {@link #UNTAGGED_QUERY} bucket, as using the SQL string would create a metric for
+     * every distinct query, like the ones with inlined literals.
+     */
+    protected String queryTag(String query) {
+        if (query != null && query.startsWith("/*")) {
+            int commentEnd = query.indexOf("*/");
+            if (commentEnd > 0) {
+                return query.substring(2, commentEnd).trim();
+            }
+        }
+        return UNTAGGED_QUERY;
+    }
+
+    /**
+     * Per-thread transaction state, which is reused from one transaction to the next.
+     */
+    private static class TransactionContext {
+
+        private long startNanos;
+
+        private long connectionCount;
+
+        /**
+         * Maps the metric name to a reusable counter, so that the entity name is concatenated only once.
+         */
+        private final Map<String, long[]> entityLoads = new HashMap<>();
+
+        private final Map<String, String> entityMetricNames = new HashMap<>();
+
+        void entityLoad(String entityName) {
+            String metric = entityMetricNames.computeIfAbsent(entityName, name -> ENTITY_LOADS_PREFIX + name);
+            entityLoads.computeIfAbsent(metric, name -> new long[1])[0]++;
+        }
+    }
 }
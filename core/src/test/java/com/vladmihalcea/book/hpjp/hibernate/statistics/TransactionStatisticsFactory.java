@@ -1,6 +1,9 @@
 package com.vladmihalcea.book.hpjp.hibernate.statistics;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.SessionFactoryObserver;
 import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.internal.SessionFactoryImpl;
 import org.hibernate.stat.spi.StatisticsFactory;
 import org.hibernate.stat.spi.StatisticsImplementor;
 
@@ -12,6 +15,16 @@ public class TransactionStatisticsFactory implements StatisticsFactory {
     @Override
     public StatisticsImplementor buildStatistics(
             SessionFactoryImplementor sessionFactory) {
-        return new TransactionStatistics(sessionFactory);
+        TransactionMetrics metrics = new TransactionMetrics()
+            .registerMBean(sessionFactory.getUuid());
+        if (sessionFactory instanceof SessionFactoryImpl) {
+            ((SessionFactoryImpl) sessionFactory).addObserver(new SessionFactoryObserver() {
+                @Override
+                public void sessionFactoryClosed(SessionFactory factory) {
+                    metrics.close();
+                }
+            });
+        }
+        return new TransactionStatistics(sessionFactory, metrics);
     }
 }
@@ -0,0 +1,99 @@
+package com.vladmihalcea.book.hpjp.hibernate.statistics.profiler;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Writes a {@link SessionTimeline} in the Chrome Trace Event format, which can be opened
+ * with {@code chrome://tracing}, Perfetto or Speedscope. Every event is a complete ({@code X}) event
+ * with microsecond timestamps relative to the session start, nested under a root session event.
+ *
+ * @author Vlad Mihalcea
+ */
+public class ChromeTraceWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final int PROCESS_ID = 1;
+
+    public static void write(SessionTimeline timeline, Path traceFile) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(traceFile.toFile(), JsonEncoding.UTF8)) {
+            long threadId = timeline.getThreadId();
+
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("traceEvents");
+
+            generator.writeStartObject();
+            generator.writeStringField("name", "thread_name");
+            generator.writeStringField("ph", "M");
+            generator.writeNumberField("pid", PROCESS_ID);
+            generator.writeNumberField("tid", threadId);
+            generator.writeObjectFieldStart("args");
+            generator.writeStringField("name", timeline.getThreadName());
+            generator.writeEndObject();
+            generator.writeEndObject();
+
+            writeEvent(generator, "session", "session", 0, timeline.getSessionDurationNanos(), threadId);
+            generator.writeObjectFieldStart("args");
+            generator.writeNumberField("events", timeline.getEventCount());
+            generator.writeNumberField("droppedEvents", timeline.getDroppedEventCount());
+            generator.writeEndObject();
+            generator.writeEndObject();
+
+            for (int i = 0; i < timeline.getEventCount(); i++) {
+                ProfilerEvent event = timeline.getEvent(i);
+                writeEvent(
+                    generator,
+                    event.getTraceName(),
+                    event.getCategory(),
+                    timeline.getStartNanos(i) - timeline.getSessionStartNanos(),
+                    timeline.getDurationNanos(i),
+                    threadId
+                );
+                generator.writeObjectFieldStart("args");
+                switch (event) {
+                    case PREPARE_STATEMENT, EXECUTE_STATEMENT, EXECUTE_BATCH -> {
+                        if (timeline.getStatement(i) != null) {
+                            generator.writeStringField("sql", timeline.getStatement(i));
+                        }
+                    }
+                    case CACHE_GET -> generator.writeBooleanField("hit", timeline.getFirstArgument(i) == 1);
+                    case DIRTY_CHECK -> generator.writeBooleanField("dirty", timeline.getFirstArgument(i) == 1);
+                    case TRANSACTION_COMPLETION -> generator.writeBooleanField("successful", timeline.getFirstArgument(i) == 1);
+                    case FLUSH, PARTIAL_FLUSH -> {
+                        generator.writeNumberField("entities", timeline.getFirstArgument(i));
+                        generator.writeNumberField("collections", timeline.getSecondArgument(i));
+                    }
+                    default -> {
+                    }
+                }
+                generator.writeNumberField("durationNanos", timeline.getDurationNanos(i));
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+
+            generator.writeEndArray();
+            generator.writeStringField("displayTimeUnit", "ns");
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Write the common fields of a complete event, leaving the event object open for its arguments.
+     */
+    private static void writeEvent(JsonGenerator generator, String name, String category,
+                                   long startNanos, long durationNanos, long threadId) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", name);
+        generator.writeStringField("cat", category);
+        generator.writeStringField("ph", "X");
+        generator.writeNumberField("ts", startNanos / 1000d);
+        generator.writeNumberField("dur", durationNanos / 1000d);
+        generator.writeNumberField("pid", PROCESS_ID);
+        generator.writeNumberField("tid", threadId);
+    }
+}
@@ -0,0 +1,59 @@
+package com.vladmihalcea.book.hpjp.hibernate.statistics.profiler;
+
+/**
+ * The {@link org.hibernate.SessionEventListener} callbacks recorded by the {@link SessionProfiler},
+ * with their trace event name, trace category and histogram metric name.
+ *
+ * @author Vlad Mihalcea
+ */
+public enum ProfilerEvent {
+
+    CONNECTION_ACQUISITION("connection.acquisition", "jdbc"),
+    CONNECTION_RELEASE("connection.release", "jdbc"),
+    PREPARE_STATEMENT("statement.prepare", "jdbc"),
+    EXECUTE_STATEMENT("statement.execute", "jdbc"),
+    EXECUTE_BATCH("statement.batch", "jdbc"),
+    CACHE_PUT("cache.put", "cache"),
+    CACHE_GET("cache.get", "cache"),
+    FLUSH("flush", "session"),
+    PARTIAL_FLUSH("flush.partial", "session"),
+    DIRTY_CHECK("dirty.check", "session"),
+    TRANSACTION_COMPLETION("transaction.completion", "transaction");
+
+    private static final ProfilerEvent[] VALUES = values();
+
+    private final String traceName;
+
+    private final String category;
+
+    private final String metricName;
+
+    ProfilerEvent(String traceName, String category) {
+        this.traceName = traceName;
+        this.category = category;
+        this.metricName = traceName + ".time.nanos";
+    }
+
+    public String getTraceName() {
+        return traceName;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+
+    /**
+     * @return {@code true} if the event carries the SQL statement it executes
+     */
+    public boolean isStatement() {
+        return this == EXECUTE_STATEMENT || this == EXECUTE_BATCH;
+    }
+
+    static ProfilerEvent valueOf(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
@@ -0,0 +1,156 @@
+package com.vladmihalcea.book.hpjp.hibernate.statistics.profiler;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * Records the session events in a {@link SessionTimeline}, which is handed back to the {@link SessionProfiler}
+ * when the session ends. It's registered via the {@code hibernate.session.events.auto} property,
+ * which creates a new listener for every session.
+ *
+ * @author Vlad Mihalcea
+ */
+public class ProfilingSessionEventListener extends BaseSessionEventListener {
+
+    private final SessionProfiler profiler;
+
+    private SessionTimeline timeline;
+
+    public ProfilingSessionEventListener() {
+        this(SessionProfiler.getInstalled());
+    }
+
+    public ProfilingSessionEventListener(SessionProfiler profiler) {
+        this.profiler = profiler;
+        if (profiler != null) {
+            timeline = profiler.startTimeline();
+        }
+    }
+
+    @Override
+    public void jdbcConnectionAcquisitionStart() {
+        begin(ProfilerEvent.CONNECTION_ACQUISITION, null);
+    }
+
+    @Override
+    public void jdbcConnectionAcquisitionEnd() {
+        end(ProfilerEvent.CONNECTION_ACQUISITION, 0, 0);
+    }
+
+    @Override
+    public void jdbcConnectionReleaseStart() {
+        begin(ProfilerEvent.CONNECTION_RELEASE, null);
+    }
+
+    @Override
+    public void jdbcConnectionReleaseEnd() {
+        end(ProfilerEvent.CONNECTION_RELEASE, 0, 0);
+    }
+
+    @Override
+    public void jdbcPrepareStatementStart() {
+        begin(ProfilerEvent.PREPARE_STATEMENT, profiler != null ? profiler.lastStatement() : null);
+    }
+
+    @Override
+    public void jdbcPrepareStatementEnd() {
+        end(ProfilerEvent.PREPARE_STATEMENT, 0, 0);
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        begin(ProfilerEvent.EXECUTE_STATEMENT, profiler != null ? profiler.lastStatement() : null);
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        end(ProfilerEvent.EXECUTE_STATEMENT, 0, 0);
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        begin(ProfilerEvent.EXECUTE_BATCH, profiler != null ? profiler.lastStatement() : null);
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        end(ProfilerEvent.EXECUTE_BATCH, 0, 0);
+    }
+
+    @Override
+    public void cachePutStart() {
+        begin(ProfilerEvent.CACHE_PUT, null);
+    }
+
+    @Override
+    public void cachePutEnd() {
+        end(ProfilerEvent.CACHE_PUT, 0, 0);
+    }
+
+    @Override
+    public void cacheGetStart() {
+        begin(ProfilerEvent.CACHE_GET, null);
+    }
+
+    @Override
+    public void cacheGetEnd(boolean hit) {
+        end(ProfilerEvent.CACHE_GET, hit ? 1 : 0, 0);
+    }
+
+    @Override
+    public void flushStart() {
+        begin(ProfilerEvent.FLUSH, null);
+    }
+
+    @Override
+    public void flushEnd(int numberOfEntities, int numberOfCollections) {
+        end(ProfilerEvent.FLUSH, numberOfEntities, numberOfCollections);
+    }
+
+    @Override
+    public void partialFlushStart() {
+        begin(ProfilerEvent.PARTIAL_FLUSH, null);
+    }
+
+    @Override
+    public void partialFlushEnd(int numberOfEntities, int numberOfCollections) {
+        end(ProfilerEvent.PARTIAL_FLUSH, numberOfEntities, numberOfCollections);
+    }
+
+    @Override
+    public void dirtyCalculationStart() {
+        begin(ProfilerEvent.DIRTY_CHECK, null);
+    }
+
+    @Override
+    public void dirtyCalculationEnd(boolean dirty) {
+        end(ProfilerEvent.DIRTY_CHECK, dirty ? 1 : 0, 0);
+    }
+
+    @Override
+    public void transactionCompletion(boolean successful) {
+        if (timeline != null) {
+            timeline.instant(ProfilerEvent.TRANSACTION_COMPLETION, successful ? 1 : 0);
+        }
+    }
+
+    @Override
+    public void end() {
+        if (timeline != null) {
+            SessionTimeline endedTimeline = timeline;
+            timeline = null;
+            profiler.endTimeline(endedTimeline);
+        }
+    }
+
+    private void begin(ProfilerEvent event, String statement) {
+        if (timeline != null) {
+            timeline.begin(event, statement);
+        }
+    }
+
+    private void end(ProfilerEvent event, long firstArgument, long secondArgument) {
+        if (timeline != null) {
+            timeline.end(event, firstArgument, secondArgument);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.vladmihalcea.book.hpjp.hibernate.statistics.profiler;
+
+import com.vladmihalcea.book.hpjp.hibernate.statistics.TransactionMetrics;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Profiles Hibernate sessions using the {@link ProfilingSessionEventListener} callbacks.
+ * <p>
+ * Every session records its events in a {@link SessionTimeline} borrowed from a bounded pool.
+ * When the session ends, the event durations are recorded in the {@link TransactionMetrics} histograms,
+ * the statement ones being grouped by statement shape, and the sessions slower than the threshold
+ * are written as Chrome trace files by a background thread, which then returns the timeline to the pool.
+ * <p>
+ * The profiler is also the {@link StatementInspector} of the session factory, since the session events
+ * don't provide the SQL statement. Hibernate instantiates the session listener by its class name,
+ * so the listener uses the {@link #install() installed} profiler.
+ *
+ * @author Vlad Mihalcea
+ */
+public class SessionProfiler implements StatementInspector, AutoCloseable {
+
+    public static final String SESSION_TIME = "session.time.nanos";
+
+    public static final String OTHER_STATEMENTS = "other";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionProfiler.class);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+
+    private static final Pattern NUMERIC_LITERAL = Pattern.compile("(?<![\\w.])\\d+(?:\\.\\d+)?\\b");
+
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+
+    private static volatile SessionProfiler installed;
+
+    private final ThreadLocal<String[]> lastStatement = ThreadLocal.withInitial(() -> new String[1]);
+
+    private final Set<String> statementMetricNames = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong traceSequence = new AtomicLong();
+
+    private final AtomicLong exportedTraceCount = new AtomicLong();
+
+    private final TransactionMetrics metrics;
+
+    private int timelineCapacity = 1024;
+
+    private int maxStatementShapes = 1000;
+
+    private long slowSessionThresholdNanos = TimeUnit.SECONDS.toNanos(1);
+
+    private Path traceDirectory;
+
+    private BlockingQueue<SessionTimeline> pool = new ArrayBlockingQueue<>(64);
+
+    private ThreadPoolExecutor traceExecutor;
+
+    public SessionProfiler() {
+        this(new TransactionMetrics());
+    }
+
+    public SessionProfiler(TransactionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public static SessionProfiler getInstalled() {
+        return installed;
+    }
+
+    /**
+     * Make this profiler the one used by the {@link ProfilingSessionEventListener}.
+     */
+    public SessionProfiler install() {
+        installed = this;
+        return this;
+    }
+
+    public SessionProfiler setTimelineCapacity(int timelineCapacity) {
+        this.timelineCapacity = timelineCapacity;
+        return this;
+    }
+
+    public SessionProfiler setPoolSize(int poolSize) {
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+        return this;
+    }
+
+    public SessionProfiler setMaxStatementShapes(int maxStatementShapes) {
+        this.maxStatementShapes = maxStatementShapes;
+        return this;
+    }
+
+    public SessionProfiler setSlowSessionThreshold(Duration slowSessionThreshold) {
+        this.slowSessionThresholdNanos = slowSessionThreshold.toNanos();
+        return this;
+    }
+
+    /**
+     * Write a Chrome trace file in the given directory for every session slower than the threshold.
+     */
+    public SessionProfiler setTraceDirectory(Path traceDirectory) {
+        this.traceDirectory = traceDirectory;
+        if (traceExecutor == null) {
+            traceExecutor = new ThreadPoolExecutor(
+                1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(64),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "session-trace-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, executor) -> LOGGER.warn("The session trace queue is full, so the trace is discarded")
+            );
+        }
+        return this;
+    }
+
+    public TransactionMetrics getMetrics() {
+        return metrics;
+    }
+
+    public long getExportedTraceCount() {
+        return exportedTraceCount.get();
+    }
+
+    public int getPooledTimelineCount() {
+        return pool.size();
+    }
+
+    /**
+     * Remember the statement for the next statement event of the current thread.
+     */
+    @Override
+    public String inspect(String sql) {
+        lastStatement.get()[0] = sql;
+        return sql;
+    }
+
+    String lastStatement() {
+        return lastStatement.get()[0];
+    }
+
+    SessionTimeline startTimeline() {
+        SessionTimeline timeline = pool.poll();
+        if (timeline == null) {
+            timeline = new SessionTimeline(timelineCapacity);
+        }
+        timeline.start();
+        return timeline;
+    }
+
+    void endTimeline(SessionTimeline timeline) {
+        timeline.finish();
+        metrics.record(SESSION_TIME, timeline.getSessionDurationNanos());
+        for (int i = 0; i < timeline.getEventCount(); i++) {
+            ProfilerEvent event = timeline.getEvent(i);
+            String statement = timeline.getStatement(i);
+            metrics.record(
+                event.isStatement() && statement != null ? statementMetricName(event, statement) : event.getMetricName(),
+                timeline.getDurationNanos(i)
+            );
+        }
+
+        if (traceDirectory != null && timeline.getSessionDurationNanos() >= slowSessionThresholdNanos) {
+            traceExecutor.execute(() -> {
+                writeTrace(timeline);
+                release(timeline);
+            });
+        } else {
+            release(timeline);
+        }
+    }
+
+    private void release(SessionTimeline timeline) {
+        timeline.clear();
+        pool.offer(timeline);
+    }
+
+    private void writeTrace(SessionTimeline timeline) {
+        Path traceFile = traceDirectory.resolve(
+            String.format("session-%d.trace.json", traceSequence.incrementAndGet())
+        );
+        try {
+            Files.createDirectories(traceDirectory);
+            ChromeTraceWriter.write(timeline, traceFile);
+            exportedTraceCount.incrementAndGet();
+            LOGGER.info(
+                "Session took {} ms, and its trace was written to {}",
+                TimeUnit.NANOSECONDS.toMillis(timeline.getSessionDurationNanos()),
+                traceFile
+            );
+        } catch (IOException e) {
+            LOGGER.error("Could not write the session trace to {}", traceFile, e);
+        }
+    }
+
+    /**
+     * The statements are grouped by shape, so the {@link #setMaxStatementShapes(int) max statement shapes}
+     * bound the number of distinct shapes, not the number of distinct SQL strings.
+     */
+    private String statementMetricName(ProfilerEvent event, String statement) {
+        String metricName = event.getMetricName() + "." + statementShape(statement);
+        if (!statementMetricNames.contains(metricName)) {
+            if (statementMetricNames.size() >= maxStatementShapes) {
+                return event.getMetricName() + "." + OTHER_STATEMENTS;
+            }
+            statementMetricNames.add(metricName);
+        }
+        return metricName;
+    }
+
+    /**
+     * The statement shape is the SQL statement with its whitespace normalized, its literals replaced by
+     * parameters, and its parameter lists collapsed, so that the IN queries with a different number of
+     * parameters, or the statements inlining different values, share the same histogram.
+     */
+    public static String statementShape(String statement) {
+        String shape = WHITESPACE.matcher(statement.trim()).replaceAll(" ");
+        shape = STRING_LITERAL.matcher(shape).replaceAll("?");
+        shape = NUMERIC_LITERAL.matcher(shape).replaceAll("?");
+        return PARAMETER_LIST.matcher(shape).replaceAll("?...");
+    }
+
+    @Override
+    public void close() {
+        if (traceExecutor != null) {
+            traceExecutor.shutdown();
+            try {
+                traceExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        metrics.close();
+        if (installed == this) {
+            installed = null;
+        }
+    }
+}
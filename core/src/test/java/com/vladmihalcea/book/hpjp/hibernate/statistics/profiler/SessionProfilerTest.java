@@ -0,0 +1,252 @@
+package com.vladmihalcea.book.hpjp.hibernate.statistics.profiler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vladmihalcea.book.hpjp.hibernate.statistics.StatisticsReport;
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import org.HdrHistogram.Histogram;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class SessionProfilerTest extends AbstractTest {
+
+    private Path traceDirectory;
+
+    private SessionProfiler profiler;
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            Post.class
+        };
+    }
+
+    @Override
+    protected void additionalProperties(Properties properties) {
+        try {
+            traceDirectory = Files.createTempDirectory("session-traces");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        profiler = new SessionProfiler()
+            .setSlowSessionThreshold(Duration.ZERO)
+            .setTraceDirectory(traceDirectory)
+            .install();
+
+        properties.put(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, ProfilingSessionEventListener.class.getName());
+        properties.put(AvailableSettings.STATEMENT_INSPECTOR, profiler);
+        properties.put(AvailableSettings.STATEMENT_BATCH_SIZE, "10");
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        profiler.close();
+        try (Stream<Path> traceFiles = Files.list(traceDirectory)) {
+            for (Path traceFile : traceFiles.collect(Collectors.toList())) {
+                Files.delete(traceFile);
+            }
+            Files.delete(traceDirectory);
+        } catch (IOException e) {
+            LOGGER.error("Could not delete the trace directory", e);
+        }
+    }
+
+    @Test
+    public void testMetricsAndTrace() throws IOException {
+        doInJPA(entityManager -> {
+            for (long id = 1; id <= 25; id++) {
+                entityManager.persist(
+                    new Post()
+                        .setId(id)
+                        .setTitle(String.format("High-Performance Java Persistence, part %d", id))
+                );
+            }
+        });
+
+        doInJPA(entityManager -> {
+            for (List<Long> ids : List.of(List.of(1L, 2L), List.of(3L, 4L, 5L))) {
+                assertEquals(
+                    ids.size(),
+                    entityManager.createQuery("select p from Post p where p.id in :ids", Post.class)
+                        .setParameter("ids", ids)
+                        .getResultList()
+                        .size()
+                );
+            }
+            entityManager.find(Post.class, 1L).setTitle("High-Performance Java Persistence");
+        });
+
+        profiler.close();
+        Map<String, Histogram> snapshot = profiler.getMetrics().snapshot();
+        new StatisticsReport(profiler.getMetrics()).generate();
+
+        assertTrue(snapshot.get(SessionProfiler.SESSION_TIME).getTotalCount() >= 2);
+        assertTrue(snapshot.get(ProfilerEvent.CONNECTION_ACQUISITION.getMetricName()).getTotalCount() >= 2);
+        assertTrue(snapshot.get(ProfilerEvent.FLUSH.getMetricName()).getTotalCount() >= 2);
+
+        List<String> insertMetrics = metricNames(snapshot, ProfilerEvent.EXECUTE_BATCH).stream()
+            .filter(metric -> metric.contains("insert into post"))
+            .collect(Collectors.toList());
+        assertEquals(1, insertMetrics.size());
+        assertEquals(3, snapshot.get(insertMetrics.get(0)).getTotalCount());
+
+        List<String> inQueryMetrics = metricNames(snapshot, ProfilerEvent.EXECUTE_STATEMENT).stream()
+            .filter(metric -> metric.contains("in(?...)") || metric.contains("in (?...)"))
+            .collect(Collectors.toList());
+        assertEquals(1, inQueryMetrics.size());
+        assertEquals(2, snapshot.get(inQueryMetrics.get(0)).getTotalCount());
+
+        assertEquals(2, profiler.getExportedTraceCount());
+        Path traceFile;
+        try (Stream<Path> traceFiles = Files.list(traceDirectory)) {
+            traceFile = traceFiles.sorted().reduce((first, second) -> second).orElseThrow();
+        }
+        JsonNode trace = new ObjectMapper().readTree(traceFile.toFile());
+        Set<String> eventNames = new HashSet<>();
+        for (JsonNode event : trace.get("traceEvents")) {
+            eventNames.add(event.get("name").asText());
+            if (event.get("name").asText().equals(ProfilerEvent.EXECUTE_STATEMENT.getTraceName())) {
+                assertTrue(event.get("args").get("sql").asText().startsWith("select"));
+                assertTrue(event.get("dur").asDouble() >= 0);
+            }
+        }
+        assertTrue(eventNames.containsAll(List.of(
+            "session",
+            ProfilerEvent.CONNECTION_ACQUISITION.getTraceName(),
+            ProfilerEvent.EXECUTE_STATEMENT.getTraceName(),
+            ProfilerEvent.FLUSH.getTraceName(),
+            ProfilerEvent.DIRTY_CHECK.getTraceName(),
+            ProfilerEvent.TRANSACTION_COMPLETION.getTraceName()
+        )));
+    }
+
+    @Test
+    public void testStatementShape() {
+        assertEquals(
+            "select p.id from post p where p.id in (?...) and p.title = ? and p1_0.score > ?",
+            SessionProfiler.statementShape("""
+                select p.id
+                from post p
+                where p.id in (1, 2,  3) and p.title = 'It''s' and p1_0.score > 1.5
+                """)
+        );
+        assertEquals(
+            SessionProfiler.statementShape("select p.id from post p where p.id in (?, ?)"),
+            SessionProfiler.statementShape("select p.id from post p where p.id in (?, ?, ?, ?)")
+        );
+    }
+
+    @Test
+    public void testMaxStatementShapes() {
+        profiler.setMaxStatementShapes(2);
+
+        doInJPA(entityManager -> {
+            for (int size = 2; size <= 10; size++) {
+                entityManager.createQuery("select p from Post p where p.id in :ids", Post.class)
+                    .setParameter("ids", LongStream.rangeClosed(1, size).boxed().toList())
+                    .getResultList();
+            }
+        });
+
+        profiler.close();
+        Map<String, Histogram> snapshot = profiler.getMetrics().snapshot();
+        List<String> statementMetrics = metricNames(snapshot, ProfilerEvent.EXECUTE_STATEMENT);
+        //The IN queries share a shape, so they take a single slot
+        assertEquals(1, statementMetrics.size());
+        assertFalse(statementMetrics.get(0).endsWith("." + SessionProfiler.OTHER_STATEMENTS));
+        assertEquals(9, snapshot.get(statementMetrics.get(0)).getTotalCount());
+    }
+
+    @Test
+    public void testFastSessionsReuseTimelines() {
+        profiler.setSlowSessionThreshold(Duration.ofHours(1));
+
+        for (int i = 0; i < 10; i++) {
+            doInJPA(entityManager -> {
+                entityManager.find(Post.class, 1L);
+            });
+        }
+
+        assertEquals(0, profiler.getExportedTraceCount());
+        assertEquals(1, profiler.getPooledTimelineCount());
+    }
+
+    @Test
+    public void testRecordingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        ProfilingSessionEventListener listener = new ProfilingSessionEventListener(profiler);
+        profiler.inspect("select p.id from post p");
+
+        recordStatements(listener, 1000);
+        long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+        recordStatements(listener, 1000);
+        allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBytes;
+        listener.end();
+
+        LOGGER.info("Recording 1000 statements allocated {} bytes", allocatedBytes);
+        assertTrue(allocatedBytes < 1024);
+    }
+
+    private void recordStatements(ProfilingSessionEventListener listener, int count) {
+        for (int i = 0; i < count; i++) {
+            listener.jdbcPrepareStatementStart();
+            listener.jdbcPrepareStatementEnd();
+            listener.jdbcExecuteStatementStart();
+            listener.jdbcExecuteStatementEnd();
+        }
+    }
+
+    private List<String> metricNames(Map<String, Histogram> snapshot, ProfilerEvent event) {
+        return snapshot.keySet().stream()
+            .filter(metric -> metric.startsWith(event.getMetricName() + "."))
+            .collect(Collectors.toList());
+    }
+
+    @Entity(name = "Post")
+    @Table(name = "post")
+    public static class Post {
+
+        @Id
+        private Long id;
+
+        private String title;
+
+        public Long getId() {
+            return id;
+        }
+
+        public Post setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public Post setTitle(String title) {
+            this.title = title;
+            return this;
+        }
+    }
+}
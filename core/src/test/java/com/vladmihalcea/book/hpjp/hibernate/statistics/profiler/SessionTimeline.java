@@ -0,0 +1,188 @@
+package com.vladmihalcea.book.hpjp.hibernate.statistics.profiler;
+
+import java.util.Arrays;
+
+/**
+ * The events recorded during a single Hibernate session, stored in preallocated parallel arrays,
+ * so recording an event allocates nothing. The timeline is reused by the {@link SessionProfiler}
+ * from one session to the next, and the events that don't fit its capacity are only counted.
+ * <p>
+ * A timeline is used by one thread at a time, just like the session it belongs to.
+ *
+ * @author Vlad Mihalcea
+ */
+public class SessionTimeline {
+
+    private static final int MAX_DEPTH = 32;
+
+    private final byte[] events;
+
+    private final byte[] depths;
+
+    private final long[] startNanos;
+
+    private final long[] durationNanos;
+
+    private final long[] firstArguments;
+
+    private final long[] secondArguments;
+
+    private final String[] statements;
+
+    private final int[] openEvents = new int[MAX_DEPTH];
+
+    private int depth;
+
+    private int eventCount;
+
+    private int droppedEventCount;
+
+    private long sessionStartNanos;
+
+    private long sessionEndNanos;
+
+    private long threadId;
+
+    private String threadName;
+
+    public SessionTimeline(int capacity) {
+        events = new byte[capacity];
+        depths = new byte[capacity];
+        startNanos = new long[capacity];
+        durationNanos = new long[capacity];
+        firstArguments = new long[capacity];
+        secondArguments = new long[capacity];
+        statements = new String[capacity];
+    }
+
+    void start() {
+        Thread thread = Thread.currentThread();
+        threadId = thread.getId();
+        threadName = thread.getName();
+        sessionStartNanos = System.nanoTime();
+        sessionEndNanos = 0;
+        depth = 0;
+        eventCount = 0;
+        droppedEventCount = 0;
+    }
+
+    void begin(ProfilerEvent event, String statement) {
+        long nowNanos = System.nanoTime();
+        int index = -1;
+        if (eventCount < events.length) {
+            index = eventCount++;
+            events[index] = (byte) event.ordinal();
+            depths[index] = (byte) Math.min(depth, Byte.MAX_VALUE);
+            startNanos[index] = nowNanos;
+            durationNanos[index] = -1;
+            firstArguments[index] = 0;
+            secondArguments[index] = 0;
+            statements[index] = statement;
+        } else {
+            droppedEventCount++;
+        }
+        if (depth < MAX_DEPTH) {
+            openEvents[depth] = index;
+        }
+        depth++;
+    }
+
+    /**
+     * End the innermost open event of the given type, and any event opened after it and never ended.
+     */
+    void end(ProfilerEvent event, long firstArgument, long secondArgument) {
+        long nowNanos = System.nanoTime();
+        int match = Math.min(depth, MAX_DEPTH) - 1;
+        while (match >= 0 && (openEvents[match] < 0 || events[openEvents[match]] != event.ordinal())) {
+            match--;
+        }
+        if (match < 0) {
+            return;
+        }
+        for (int i = Math.min(depth, MAX_DEPTH) - 1; i >= match; i--) {
+            int index = openEvents[i];
+            if (index >= 0) {
+                durationNanos[index] = nowNanos - startNanos[index];
+            }
+        }
+        int index = openEvents[match];
+        firstArguments[index] = firstArgument;
+        secondArguments[index] = secondArgument;
+        depth = match;
+    }
+
+    void instant(ProfilerEvent event, long argument) {
+        begin(event, null);
+        end(event, argument, 0);
+    }
+
+    void finish() {
+        sessionEndNanos = System.nanoTime();
+        for (int i = 0; i < eventCount; i++) {
+            if (durationNanos[i] < 0) {
+                durationNanos[i] = sessionEndNanos - startNanos[i];
+            }
+        }
+    }
+
+    /**
+     * Drop the statement references, so that a pooled timeline doesn't retain them.
+     */
+    void clear() {
+        Arrays.fill(statements, 0, eventCount, null);
+        eventCount = 0;
+        threadName = null;
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    public int getDroppedEventCount() {
+        return droppedEventCount;
+    }
+
+    public ProfilerEvent getEvent(int index) {
+        return ProfilerEvent.valueOf(events[index]);
+    }
+
+    public int getDepth(int index) {
+        return depths[index];
+    }
+
+    public long getStartNanos(int index) {
+        return startNanos[index];
+    }
+
+    public long getDurationNanos(int index) {
+        return durationNanos[index];
+    }
+
+    public long getFirstArgument(int index) {
+        return firstArguments[index];
+    }
+
+    public long getSecondArgument(int index) {
+        return secondArguments[index];
+    }
+
+    public String getStatement(int index) {
+        return statements[index];
+    }
+
+    public long getSessionStartNanos() {
+        return sessionStartNanos;
+    }
+
+    public long getSessionDurationNanos() {
+        return sessionEndNanos - sessionStartNanos;
+    }
+
+    public long getThreadId() {
+        return threadId;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+}
@@ -0,0 +1,77 @@
+package com.vladmihalcea.book.hpjp.hibernate.type.json.patch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the structural difference between two JSON trees.
+ * <p>
+ * Objects are compared field by field, so changing a nested field yields a single operation
+ * for that field. Arrays are compared index by index, the trailing elements of a longer array
+ * being appended and the ones of a shorter array being removed, starting from the last one,
+ * so that the indexes of the remaining removals stay valid. Any other change, like replacing
+ * an object with an array, sets the new value.
+ *
+ * @author Vlad Mihalcea
+ */
+public final class JsonDiff {
+
+    private JsonDiff() {
+    }
+
+    public static List<JsonPatchOperation> diff(JsonNode source, JsonNode target) {
+        List<JsonPatchOperation> operations = new ArrayList<>();
+        diff(new ArrayList<>(), source, target, operations);
+        return operations;
+    }
+
+    private static void diff(List<Object> path, JsonNode source, JsonNode target, List<JsonPatchOperation> operations) {
+        if (source.equals(target)) {
+            return;
+        }
+        if (source.isObject() && target.isObject()) {
+            for (Iterator<String> fieldNames = source.fieldNames(); fieldNames.hasNext(); ) {
+                String fieldName = fieldNames.next();
+                if (!target.has(fieldName)) {
+                    path.add(fieldName);
+                    operations.add(JsonPatchOperation.remove(path));
+                    path.remove(path.size() - 1);
+                }
+            }
+            for (Iterator<Map.Entry<String, JsonNode>> fields = target.fields(); fields.hasNext(); ) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode sourceValue = source.get(field.getKey());
+                path.add(field.getKey());
+                if (sourceValue == null) {
+                    operations.add(JsonPatchOperation.set(path, field.getValue()));
+                } else {
+                    diff(path, sourceValue, field.getValue(), operations);
+                }
+                path.remove(path.size() - 1);
+            }
+        } else if (source.isArray() && target.isArray()) {
+            int commonSize = Math.min(source.size(), target.size());
+            for (int i = 0; i < commonSize; i++) {
+                path.add(i);
+                diff(path, source.get(i), target.get(i), operations);
+                path.remove(path.size() - 1);
+            }
+            for (int i = source.size() - 1; i >= commonSize; i--) {
+                path.add(i);
+                operations.add(JsonPatchOperation.remove(path));
+                path.remove(path.size() - 1);
+            }
+            for (int i = commonSize; i < target.size(); i++) {
+                path.add(i);
+                operations.add(JsonPatchOperation.set(path, target.get(i)));
+                path.remove(path.size() - 1);
+            }
+        } else {
+            operations.add(JsonPatchOperation.set(path, target));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.vladmihalcea.book.hpjp.hibernate.type.json.patch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class JsonDiffTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testDiff() throws Exception {
+        JsonNode source = objectMapper.readTree("""
+            {
+               "publisher": "Amazon",
+               "price": 44.99,
+               "format": "Paperback",
+               "reviews": [
+                   {"reviewer": "Cristiano", "rating": 5},
+                   {"reviewer": "T.W", "rating": 5}
+               ]
+            }
+            """);
+        JsonNode target = objectMapper.readTree("""
+            {
+               "publisher": "Amazon",
+               "price": 39.99,
+               "reviews": [
+                   {"reviewer": "Cristiano", "rating": 4},
+                   {"reviewer": "T.W", "rating": 5},
+                   {"reviewer": "Shaikh", "rating": 4}
+               ]
+            }
+            """);
+
+        List<JsonPatchOperation> operations = JsonDiff.diff(source, target);
+        assertEquals(4, operations.size());
+        assertEquals(JsonPatchOperation.remove(List.of("format")), operations.get(0));
+        assertEquals(List.of("price"), operations.get(1).path());
+        assertEquals("39.99", operations.get(1).value().toString());
+        assertEquals(List.of("reviews", 0, "rating"), operations.get(2).path());
+        assertEquals(List.of("reviews", 2), operations.get(3).path());
+
+        assertTrue(JsonDiff.diff(source, source.deepCopy()).isEmpty());
+    }
+
+    @Test
+    public void testPatchExpression() throws Exception {
+        List<JsonPatchOperation> operations = List.of(
+            JsonPatchOperation.set(List.of("reviews", 0, "rating"), objectMapper.readTree("4")),
+            JsonPatchOperation.remove(List.of("say \"hi\""))
+        );
+
+        JsonPatch postgreSQLPatch = JsonPatchDialect.POSTGRESQL.createPatch("properties", operations);
+        assertEquals(
+            "(jsonb_set(properties, CAST(? AS text[]), CAST(? AS jsonb)) #- CAST(? AS text[]))",
+            postgreSQLPatch.expression()
+        );
+        assertEquals(
+            List.of("{\"reviews\",\"0\",\"rating\"}", "4", "{\"say \\\"hi\\\"\"}"),
+            postgreSQLPatch.parameters()
+        );
+
+        JsonPatch mySQLPatch = JsonPatchDialect.MYSQL.createPatch("properties", operations);
+        assertEquals(
+            "JSON_REMOVE(JSON_SET(properties, ?, CAST(? AS JSON)), ?)",
+            mySQLPatch.expression()
+        );
+        assertEquals(
+            List.of("$.\"reviews\"[0].\"rating\"", "4", "$.\"say \\\"hi\\\"\""),
+            mySQLPatch.parameters()
+        );
+    }
+
+    @Test
+    public void testFullWriteWhenPatchIsNotSmaller() {
+        JsonPatchType type = new JsonPatchType();
+        String description = "High-Performance Java Persistence. ".repeat(10);
+
+        assertNotNull(
+            type.createPatch(
+                JsonPatchDialect.POSTGRESQL,
+                "properties",
+                "{\"description\": \"" + description + "\", \"price\": 44.99}",
+                "{\"description\": \"" + description + "\", \"price\": 39.99}"
+            )
+        );
+        assertNull(
+            type.createPatch(
+                JsonPatchDialect.POSTGRESQL,
+                "properties",
+                "{\"price\": 44.99}",
+                "{\"price\": 39.99}"
+            )
+        );
+        assertNull(
+            "Replacing the root value requires a full write",
+            type.createPatch(JsonPatchDialect.POSTGRESQL, "properties", "[1, 2]", "{\"price\": 39.99}")
+        );
+    }
+}
@@ -0,0 +1,24 @@
+package com.vladmihalcea.book.hpjp.hibernate.type.json.patch;
+
+import java.util.List;
+
+/**
+ * The SQL expression that applies a list of {@link JsonPatchOperation} objects to a JSON column,
+ * and the JDBC parameters it binds.
+ *
+ * @author Vlad Mihalcea
+ */
+public record JsonPatch(String expression, List<String> parameters) {
+
+    /**
+     * @return the number of characters of the expression and of its parameters, which is
+     * compared with the size of the whole document
+     */
+    public int size() {
+        int size = expression.length();
+        for (String parameter : parameters) {
+            size += parameter.length();
+        }
+        return size;
+    }
+}
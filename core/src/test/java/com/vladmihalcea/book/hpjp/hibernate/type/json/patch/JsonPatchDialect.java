@@ -0,0 +1,124 @@
+package com.vladmihalcea.book.hpjp.hibernate.type.json.patch;
+
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Translates the {@link JsonPatchOperation} objects to the JSON functions of the database,
+ * the paths and the values being bound as parameters.
+ *
+ * @author Vlad Mihalcea
+ */
+public enum JsonPatchDialect {
+
+    /**
+     * Nests a {@code jsonb_set} call for every set operation and applies the {@code #-} operator
+     * for every removal. The column must use the {@code jsonb} type.
+     */
+    POSTGRESQL {
+        @Override
+        public JsonPatch createPatch(String column, List<JsonPatchOperation> operations) {
+            StringBuilder expression = new StringBuilder(column);
+            List<String> parameters = new ArrayList<>();
+            for (JsonPatchOperation operation : operations) {
+                if (operation.isRemove()) {
+                    expression.insert(0, "(").append(" #- CAST(? AS text[]))");
+                    parameters.add(path(operation));
+                } else {
+                    expression.insert(0, "jsonb_set(").append(", CAST(? AS text[]), CAST(? AS jsonb))");
+                    parameters.add(path(operation));
+                    parameters.add(operation.value().toString());
+                }
+            }
+            return new JsonPatch(expression.toString(), parameters);
+        }
+
+        /**
+         * @return the path as a {@code text[]} literal, e.g., {@code {"reviews","0","rating"}}
+         */
+        private String path(JsonPatchOperation operation) {
+            StringBuilder path = new StringBuilder("{");
+            for (Object element : operation.path()) {
+                if (path.length() > 1) {
+                    path.append(',');
+                }
+                path.append('"').append(escape(element.toString())).append('"');
+            }
+            return path.append('}').toString();
+        }
+    },
+
+    /**
+     * Calls {@code JSON_SET} with all set operations, and then {@code JSON_REMOVE} with all removals.
+     */
+    MYSQL {
+        @Override
+        public JsonPatch createPatch(String column, List<JsonPatchOperation> operations) {
+            StringBuilder sets = new StringBuilder();
+            StringBuilder removals = new StringBuilder();
+            List<String> setParameters = new ArrayList<>();
+            List<String> removalParameters = new ArrayList<>();
+            for (JsonPatchOperation operation : operations) {
+                if (operation.isRemove()) {
+                    removals.append(", ?");
+                    removalParameters.add(path(operation));
+                } else {
+                    sets.append(", ?, CAST(? AS JSON)");
+                    setParameters.add(path(operation));
+                    setParameters.add(operation.value().toString());
+                }
+            }
+            String expression = column;
+            if (!setParameters.isEmpty()) {
+                expression = "JSON_SET(" + expression + sets + ")";
+            }
+            if (!removalParameters.isEmpty()) {
+                expression = "JSON_REMOVE(" + expression + removals + ")";
+            }
+            List<String> parameters = new ArrayList<>(setParameters);
+            parameters.addAll(removalParameters);
+            return new JsonPatch(expression, parameters);
+        }
+
+        /**
+         * @return the path as a JSON path expression, e.g., {@code $."reviews"[0]."rating"}
+         */
+        private String path(JsonPatchOperation operation) {
+            StringBuilder path = new StringBuilder("$");
+            for (Object element : operation.path()) {
+                if (element instanceof Integer index) {
+                    path.append('[').append(index).append(']');
+                } else {
+                    path.append(".\"").append(escape(element.toString())).append('"');
+                }
+            }
+            return path.toString();
+        }
+    };
+
+    /**
+     * @return the patch expression, which references the column value being updated
+     */
+    public abstract JsonPatch createPatch(String column, List<JsonPatchOperation> operations);
+
+    /**
+     * @return the dialect matching the given Hibernate dialect, or {@code null} if the database is not supported
+     */
+    public static JsonPatchDialect of(Dialect dialect) {
+        if (dialect instanceof PostgreSQLDialect) {
+            return POSTGRESQL;
+        }
+        if (dialect instanceof MySQLDialect) {
+            return MYSQL;
+        }
+        return null;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
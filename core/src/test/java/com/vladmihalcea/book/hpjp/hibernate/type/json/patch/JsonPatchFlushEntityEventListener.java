@@ -0,0 +1,113 @@
+package com.vladmihalcea.book.hpjp.hibernate.type.json.patch;
+
+import org.hibernate.engine.internal.Versioning;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.event.internal.DefaultFlushEntityEventListener;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.FlushEntityEvent;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.CustomType;
+import org.hibernate.type.Type;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schedules a {@link JsonPatchUpdateAction} instead of the default entity update whenever
+ * the dirty {@link JsonPatchType} attributes can be written with a patch statement.
+ * <p>
+ * If other attributes are dirty too, the entity must use {@code @DynamicUpdate}, as the default
+ * update statement would write all columns anyway. Versioned entities with collections
+ * always use the default entity update, since a dirty collection also increments the version.
+ *
+ * @author Vlad Mihalcea
+ */
+public class JsonPatchFlushEntityEventListener extends DefaultFlushEntityEventListener {
+
+    @Override
+    protected void dirtyCheck(FlushEntityEvent event) {
+        super.dirtyCheck(event);
+
+        int[] dirtyProperties = event.getDirtyProperties();
+        EntityEntry entry = event.getEntityEntry();
+        if (dirtyProperties == null ||
+            entry.getStatus() != Status.MANAGED ||
+            entry.getLoadedState() == null ||
+            !(entry.getPersister() instanceof AbstractEntityPersister persister) ||
+            persister.getIdentifierColumnNames().length != 1 ||
+            (persister.isVersioned() && persister.hasCollections())) {
+            return;
+        }
+        EventSource session = event.getSession();
+        JsonPatchDialect patchDialect = JsonPatchDialect.of(session.getJdbcServices().getDialect());
+        if (patchDialect == null) {
+            return;
+        }
+
+        Object[] values = event.getPropertyValues();
+        Object[] loadedState = entry.getLoadedState();
+        Type[] types = persister.getPropertyTypes();
+        String[] propertyNames = persister.getPropertyNames();
+
+        Map<Integer, JsonPatch> patches = new LinkedHashMap<>();
+        List<Integer> remainingDirtyProperties = new ArrayList<>();
+        for (int property : dirtyProperties) {
+            JsonPatch patch = null;
+            if (types[property] instanceof CustomType<?> customType &&
+                customType.getUserType() instanceof JsonPatchType jsonPatchType &&
+                persister.getTableName().equals(persister.getPropertyTableName(propertyNames[property]))) {
+                patch = jsonPatchType.createPatch(
+                    patchDialect,
+                    persister.getPropertyColumnNames(property)[0],
+                    loadedState[property],
+                    values[property]
+                );
+            }
+            if (patch != null) {
+                patches.put(property, patch);
+            } else {
+                remainingDirtyProperties.add(property);
+            }
+        }
+        if (patches.isEmpty() ||
+            (!remainingDirtyProperties.isEmpty() && !persister.getEntityMetamodel().isDynamicUpdate())) {
+            return;
+        }
+
+        int[] remaining = remainingDirtyProperties.stream().mapToInt(Integer::intValue).toArray();
+        Object nextVersion = entry.getVersion();
+        boolean incrementVersion = false;
+        if (persister.isVersioned() &&
+            Versioning.isVersionIncrementRequired(dirtyProperties, false, persister.getPropertyVersionability())) {
+            nextVersion = Versioning.increment(entry.getVersion(), persister.getVersionMapping(), session);
+            values[persister.getVersionProperty()] = nextVersion;
+            persister.setValue(event.getEntity(), persister.getVersionProperty(), nextVersion);
+            incrementVersion = !Versioning.isVersionIncrementRequired(
+                remaining, false, persister.getPropertyVersionability()
+            );
+        }
+
+        session.getActionQueue().addAction(
+            new JsonPatchUpdateAction(
+                patches,
+                dirtyProperties,
+                remaining,
+                incrementVersion,
+                entry.getId(),
+                values,
+                loadedState,
+                entry.getVersion(),
+                nextVersion,
+                event.getEntity(),
+                entry.getRowId(),
+                persister,
+                session
+            )
+        );
+        //The update action is already scheduled, so the default one must be skipped
+        event.setDirtyProperties(null);
+    }
+}
@@ -0,0 +1,40 @@
+package com.vladmihalcea.book.hpjp.hibernate.type.json.patch;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * Replaces the default flush entity listener with the {@link JsonPatchFlushEntityEventListener}.
+ *
+ * @author Vlad Mihalcea
+ */
+public class JsonPatchIntegrator implements Integrator {
+
+    public static final JsonPatchIntegrator INSTANCE = new JsonPatchIntegrator();
+
+    @Override
+    public void integrate(
+        Metadata metadata,
+        SessionFactoryImplementor sessionFactory,
+        SessionFactoryServiceRegistry serviceRegistry) {
+
+        final EventListenerRegistry eventListenerRegistry =
+            serviceRegistry.getService(EventListenerRegistry.class);
+
+        eventListenerRegistry.setListeners(
+            EventType.FLUSH_ENTITY,
+            new JsonPatchFlushEntityEventListener()
+        );
+    }
+
+    @Override
+    public void disintegrate(
+        SessionFactoryImplementor sessionFactory,
+        SessionFactoryServiceRegistry serviceRegistry) {
+
+    }
+}
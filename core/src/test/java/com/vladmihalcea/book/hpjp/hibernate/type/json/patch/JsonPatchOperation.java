@@ -0,0 +1,27 @@
+package com.vladmihalcea.book.hpjp.hibernate.type.json.patch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+/**
+ * Sets the JSON value at the given path, or removes it if the value is {@code null}.
+ * <p>
+ * The path elements are either {@link String} object field names or {@link Integer} array indexes.
+ *
+ * @author Vlad Mihalcea
+ */
+public record JsonPatchOperation(List<Object> path, JsonNode value) {
+
+    public static JsonPatchOperation set(List<Object> path, JsonNode value) {
+        return new JsonPatchOperation(List.copyOf(path), value);
+    }
+
+    public static JsonPatchOperation remove(List<Object> path) {
+        return new JsonPatchOperation(List.copyOf(path), null);
+    }
+
+    public boolean isRemove() {
+        return value == null;
+    }
+}
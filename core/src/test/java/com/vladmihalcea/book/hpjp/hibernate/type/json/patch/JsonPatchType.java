@@ -0,0 +1,71 @@
+package com.vladmihalcea.book.hpjp.hibernate.type.json.patch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.hypersistence.utils.hibernate.type.json.JsonType;
+import io.hypersistence.utils.hibernate.type.util.Configuration;
+import org.hibernate.HibernateException;
+import org.hibernate.bytecode.enhance.spi.LazyPropertyInitializer;
+
+import java.util.List;
+
+/**
+ * A {@link JsonType} whose changes are written as a patch of the loaded document.
+ * <p>
+ * At flush time, the {@link JsonPatchFlushEntityEventListener} compares the JSON tree of the loaded state
+ * with the one of the current value, and, if the patch is smaller than the whole document, updates the column
+ * with the patch expression, e.g., {@code jsonb_set(properties, '{price}', '39.99')}, instead of
+ * sending the new document. Otherwise, the attribute is written just like a {@link JsonType} would.
+ * <p>
+ * The attribute can be a {@link JsonNode}, a {@link String} holding the JSON document, or any POJO
+ * that Jackson can serialize.
+ *
+ * @author Vlad Mihalcea
+ */
+public class JsonPatchType extends JsonType {
+
+    public JsonPatchType() {
+        super();
+    }
+
+    @Override
+    public String getName() {
+        return "json-patch";
+    }
+
+    /**
+     * @return the patch turning the loaded value into the current one, or {@code null} if
+     * the whole document should be written
+     */
+    public JsonPatch createPatch(JsonPatchDialect dialect, String column, Object loadedValue, Object currentValue) {
+        if (loadedValue == null || currentValue == null ||
+            loadedValue == LazyPropertyInitializer.UNFETCHED_PROPERTY ||
+            currentValue == LazyPropertyInitializer.UNFETCHED_PROPERTY) {
+            return null;
+        }
+        JsonNode loadedTree = toTree(loadedValue);
+        JsonNode currentTree = toTree(currentValue);
+        List<JsonPatchOperation> operations = JsonDiff.diff(loadedTree, currentTree);
+        if (operations.isEmpty() || operations.get(0).path().isEmpty()) {
+            return null;
+        }
+        JsonPatch patch = dialect.createPatch(column, operations);
+        return patch.size() < currentTree.toString().length() ? patch : null;
+    }
+
+    private JsonNode toTree(Object value) {
+        ObjectMapper objectMapper = Configuration.INSTANCE.getObjectMapperWrapper().getObjectMapper();
+        if (value instanceof JsonNode tree) {
+            return tree;
+        }
+        if (value instanceof String json) {
+            try {
+                return objectMapper.readTree(json);
+            } catch (JsonProcessingException e) {
+                throw new HibernateException("The value is not a valid JSON document", e);
+            }
+        }
+        return objectMapper.valueToTree(value);
+    }
+}
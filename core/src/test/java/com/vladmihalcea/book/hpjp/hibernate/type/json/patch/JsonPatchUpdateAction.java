@@ -0,0 +1,185 @@
+package com.vladmihalcea.book.hpjp.hibernate.type.json.patch;
+
+import org.hibernate.action.internal.EntityUpdateAction;
+import org.hibernate.engine.jdbc.batch.internal.BasicBatchKey;
+import org.hibernate.engine.jdbc.batch.spi.Batch;
+import org.hibernate.engine.jdbc.batch.spi.BatchKey;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.jdbc.Expectations;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the dirty {@link JsonPatchType} attributes with a batched patch statement, while the
+ * {@link EntityUpdateAction} writes the remaining dirty attributes, and takes care of the
+ * second-level cache, the post-update listeners, and the statistics.
+ * <p>
+ * If the remaining dirty attributes don't require a version increment, the patch statement
+ * checks and increments the entity version instead.
+ *
+ * @author Vlad Mihalcea
+ */
+public class JsonPatchUpdateAction extends EntityUpdateAction {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JsonPatchUpdateAction.class);
+
+    private final Map<Integer, JsonPatch> patches;
+
+    private final int[] dirtyProperties;
+
+    private final boolean incrementVersion;
+
+    private final Object previousVersion;
+
+    private final Object nextVersion;
+
+    /**
+     * @param patches the patch of every dirty {@link JsonPatchType} attribute
+     * @param dirtyProperties all dirty attributes, which are reported to the post-update listeners
+     * @param remainingDirtyProperties the dirty attributes that are written by the entity update statement
+     * @param incrementVersion whether the patch statement checks and increments the entity version
+     */
+    public JsonPatchUpdateAction(
+            Map<Integer, JsonPatch> patches,
+            int[] dirtyProperties,
+            int[] remainingDirtyProperties,
+            boolean incrementVersion,
+            Object id,
+            Object[] state,
+            Object[] previousState,
+            Object previousVersion,
+            Object nextVersion,
+            Object instance,
+            Object rowId,
+            AbstractEntityPersister persister,
+            EventSource session) {
+        super(
+            id,
+            state,
+            remainingDirtyProperties,
+            false,
+            previousState,
+            previousVersion,
+            nextVersion,
+            instance,
+            rowId,
+            persister,
+            session
+        );
+        this.patches = patches;
+        this.dirtyProperties = dirtyProperties;
+        this.incrementVersion = incrementVersion;
+        this.previousVersion = previousVersion;
+        this.nextVersion = nextVersion;
+    }
+
+    /**
+     * The patch runs after the pre-update listeners, right before the entity update statement.
+     */
+    @Override
+    protected boolean preUpdate() {
+        boolean veto = super.preUpdate();
+        if (!veto) {
+            applyPatches();
+        }
+        return veto;
+    }
+
+    @Override
+    protected void postUpdate() {
+        getFastSessionServices().eventListenerGroup_POST_UPDATE.fireLazyEventOnEachListener(
+            this::newPostUpdateEvent,
+            PostUpdateEventListener::onPostUpdate
+        );
+    }
+
+    @Override
+    protected void postCommitUpdate(boolean success) {
+        getFastSessionServices().eventListenerGroup_POST_COMMIT_UPDATE.fireLazyEventOnEachListener(
+            this::newPostUpdateEvent,
+            success ?
+                PostUpdateEventListener::onPostUpdate :
+                (listener, event) -> {
+                    if (listener instanceof PostCommitUpdateEventListener postCommitListener) {
+                        postCommitListener.onPostUpdateCommitFailed(event);
+                    } else {
+                        listener.onPostUpdate(event);
+                    }
+                }
+        );
+    }
+
+    private PostUpdateEvent newPostUpdateEvent() {
+        return new PostUpdateEvent(
+            getInstance(),
+            getId(),
+            getState(),
+            getPreviousState(),
+            dirtyProperties,
+            getPersister(),
+            eventSource()
+        );
+    }
+
+    private void applyPatches() {
+        AbstractEntityPersister persister = (AbstractEntityPersister) getPersister();
+
+        StringBuilder sql = new StringBuilder("update ")
+            .append(persister.getTableName())
+            .append(" set ");
+        List<Object> parameters = new ArrayList<>();
+        for (Map.Entry<Integer, JsonPatch> patchEntry : patches.entrySet()) {
+            if (!parameters.isEmpty()) {
+                sql.append(", ");
+            }
+            JsonPatch patch = patchEntry.getValue();
+            sql.append(persister.getPropertyColumnNames(patchEntry.getKey())[0])
+                .append(" = ")
+                .append(patch.expression());
+            parameters.addAll(patch.parameters());
+        }
+        if (incrementVersion) {
+            sql.append(", ").append(persister.getVersionColumnName()).append(" = ?");
+            parameters.add(nextVersion);
+        }
+        sql.append(" where ").append(persister.getIdentifierColumnNames()[0]).append(" = ?");
+        parameters.add(getId());
+        if (incrementVersion) {
+            sql.append(" and ").append(persister.getVersionColumnName()).append(" = ?");
+            parameters.add(previousVersion);
+        }
+
+        //The patches of the same entity type share a batch, even if their statements differ
+        BatchKey batchKey = new BasicBatchKey(
+            persister.getEntityName() + "#JSON_PATCH",
+            Expectations.BASIC
+        );
+        Batch batch = getSession().getJdbcCoordinator().getBatch(batchKey);
+        PreparedStatement statement = batch.getBatchStatement(sql.toString(), false);
+        try {
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setObject(i + 1, parameters.get(i));
+            }
+        } catch (SQLException e) {
+            throw getSession().getJdbcServices().getSqlExceptionHelper().convert(
+                e, "Could not apply the JSON patch", sql.toString()
+            );
+        }
+        batch.addToBatch();
+        LOGGER.debug(
+            "Patched the JSON attributes of the [{}] entity with id [{}]",
+            persister.getEntityName(),
+            getId()
+        );
+    }
+}
@@ -0,0 +1,227 @@
+package com.vladmihalcea.book.hpjp.hibernate.type.json.patch;
+
+import com.vladmihalcea.book.hpjp.util.AbstractPostgreSQLIntegrationTest;
+import jakarta.persistence.*;
+import org.hibernate.Session;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.Type;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.stat.Statistics;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class PostgreSQLJsonPatchUpdateTest extends AbstractPostgreSQLIntegrationTest {
+
+    public static final String ISBN = "978-9730228236";
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            Book.class
+        };
+    }
+
+    @Override
+    protected Integrator integrator() {
+        return JsonPatchIntegrator.INSTANCE;
+    }
+
+    @Override
+    protected void afterInit() {
+        doInJPA(entityManager -> {
+            entityManager.persist(
+                new Book()
+                    .setIsbn(ISBN)
+                    .setTitle("High-Performance Java Persistence")
+                    .setAuthor("Vlad Mihalcea")
+                    .setProperties("""
+                        {
+                           "publisher": "Amazon",
+                           "price": 44.99,
+                           "reviews": [
+                               {
+                                   "reviewer": "Cristiano",
+                                   "review": "Excellent book to understand Java Persistence",
+                                   "date": "2017-11-14",
+                                   "rating": 5
+                               },
+                               {
+                                   "reviewer": "T.W",
+                                   "review": "The best JPA ORM book out there",
+                                   "date": "2019-01-27",
+                                   "rating": 5
+                               }
+                           ]
+                        }
+                        """)
+            );
+        });
+    }
+
+    @Test
+    public void testPatchNestedField() {
+        Statistics statistics = sessionFactory().getStatistics();
+        statistics.clear();
+
+        doInJPA(entityManager -> {
+            Book book = findBook(entityManager);
+            book.setProperties(
+                book.getProperties()
+                    .replace("44.99", "39.99")
+                    .replace("\"2019-01-27\"", "\"2019-01-28\"")
+            );
+        });
+
+        doInJPA(entityManager -> {
+            Object[] result = (Object[]) entityManager.createNativeQuery("""
+                SELECT
+                    properties ->> 'price',
+                    properties -> 'reviews' -> 1 ->> 'date',
+                    version
+                FROM book
+                WHERE isbn = :isbn
+                """)
+            .setParameter("isbn", ISBN)
+            .getSingleResult();
+
+            assertEquals("39.99", result[0]);
+            assertEquals("2019-01-28", result[1]);
+            assertEquals(1, ((Number) result[2]).intValue());
+        });
+        //The patch goes through the entity update action, so it's counted like any other update
+        assertEquals(1, statistics.getEntityUpdateCount());
+    }
+
+    @Test
+    public void testPatchAndUpdateOtherAttribute() {
+        doInJPA(entityManager -> {
+            Book book = findBook(entityManager);
+            book
+                .setTitle("High-Performance Java Persistence, 2nd edition")
+                .setProperties(book.getProperties().replace("Amazon", "Leanpub"));
+        });
+
+        doInJPA(entityManager -> {
+            Book book = findBook(entityManager);
+            assertEquals("High-Performance Java Persistence, 2nd edition", book.getTitle());
+            assertEquals(1, book.getVersion());
+            assertEquals(
+                "Leanpub",
+                entityManager.createNativeQuery("""
+                    SELECT properties ->> 'publisher'
+                    FROM book
+                    WHERE isbn = :isbn
+                    """)
+                .setParameter("isbn", ISBN)
+                .getSingleResult()
+            );
+        });
+    }
+
+    @Test
+    public void testFullWrite() {
+        doInJPA(entityManager -> {
+            findBook(entityManager).setProperties("""
+                {"publisher": "Leanpub"}
+                """);
+        });
+
+        doInJPA(entityManager -> {
+            assertEquals(
+                "{\"publisher\": \"Leanpub\"}",
+                entityManager.createNativeQuery("""
+                    SELECT CAST(properties AS text)
+                    FROM book
+                    WHERE isbn = :isbn
+                    """)
+                .setParameter("isbn", ISBN)
+                .getSingleResult()
+            );
+        });
+    }
+
+    private Book findBook(EntityManager entityManager) {
+        return entityManager
+            .unwrap(Session.class)
+            .bySimpleNaturalId(Book.class)
+            .load(ISBN);
+    }
+
+    @Entity(name = "Book")
+    @Table(name = "book")
+    @DynamicUpdate
+    public static class Book {
+
+        @Id
+        @GeneratedValue
+        private Long id;
+
+        @NaturalId
+        private String isbn;
+
+        private String title;
+
+        private String author;
+
+        @Column(columnDefinition = "jsonb")
+        @Type(JsonPatchType.class)
+        private String properties;
+
+        @Version
+        private short version;
+
+        public Long getId() {
+            return id;
+        }
+
+        public Book setId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public String getIsbn() {
+            return isbn;
+        }
+
+        public Book setIsbn(String isbn) {
+            this.isbn = isbn;
+            return this;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public Book setTitle(String title) {
+            this.title = title;
+            return this;
+        }
+
+        public String getAuthor() {
+            return author;
+        }
+
+        public Book setAuthor(String author) {
+            this.author = author;
+            return this;
+        }
+
+        public String getProperties() {
+            return properties;
+        }
+
+        public Book setProperties(String properties) {
+            this.properties = properties;
+            return this;
+        }
+
+        public short getVersion() {
+            return version;
+        }
+    }
+}
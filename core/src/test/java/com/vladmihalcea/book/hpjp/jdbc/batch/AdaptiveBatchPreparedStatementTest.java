@@ -0,0 +1,134 @@
+package com.vladmihalcea.book.hpjp.jdbc.batch;
+
+import com.vladmihalcea.book.hpjp.util.DataSourceProxyType;
+import com.vladmihalcea.book.hpjp.util.batch.AdaptiveBatchDataSource;
+import com.vladmihalcea.book.hpjp.util.batch.AdaptiveBatchSizeTuner;
+import com.vladmihalcea.book.hpjp.util.providers.Database;
+import org.assertj.core.util.Arrays;
+import org.junit.Test;
+import org.junit.runners.Parameterized;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * AdaptiveBatchPreparedStatementTest - Test batching with the batch size chosen at runtime
+ *
+ * @author Vlad Mihalcea
+ */
+public class AdaptiveBatchPreparedStatementTest extends AbstractBatchPreparedStatementTest {
+
+    private int addedRows;
+
+    public AdaptiveBatchPreparedStatementTest(Database database) {
+        super(database);
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Database[]> databases() {
+        List<Database[]> databases = new ArrayList<>();
+        databases.add(Arrays.array(Database.HSQLDB));
+        return databases;
+    }
+
+    @Override
+    protected DataSourceProxyType dataSourceProxyType() {
+        return DataSourceProxyType.ADAPTIVE_BATCH;
+    }
+
+    @Override
+    protected void onStatement(PreparedStatement statement) throws SQLException {
+        statement.addBatch();
+        addedRows++;
+    }
+
+    @Override
+    protected void onEnd(PreparedStatement statement) throws SQLException {
+        onFlush(statement);
+    }
+
+    @Override
+    protected void onFlush(PreparedStatement statement) throws SQLException {
+        int[] updateCounts = statement.executeBatch();
+        assertEquals(addedRows, updateCounts.length);
+        for (int updateCount : updateCounts) {
+            assertEquals(1, updateCount);
+        }
+        addedRows = 0;
+    }
+
+    /**
+     * The {@code hibernate.jdbc.batch_size} equivalent, which is only an upper bound.
+     */
+    @Override
+    protected int getBatchSize() {
+        return 1000;
+    }
+
+    @Override
+    public void testBatch() {
+        super.testBatch();
+
+        Map<String, Integer> batchSizes = adaptiveBatchDataSource().getTuner().batchSizes();
+        LOGGER.info("Tuned batch sizes: {}", batchSizes);
+        assertEquals(6, batchSizes.size());
+        for (int batchSize : batchSizes.values()) {
+            assertTrue(batchSize >= 1 && batchSize <= getBatchSize());
+        }
+    }
+
+    /**
+     * The {@link AdaptiveBatchDataSource} is wrapped by the logging proxy.
+     */
+    private AdaptiveBatchDataSource adaptiveBatchDataSource() {
+        try {
+            return dataSource().unwrap(AdaptiveBatchDataSource.class);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void testConvergence() {
+        AdaptiveBatchSizeTuner tuner = new AdaptiveBatchSizeTuner(1, 1000, 16);
+        String sql = "insert into post (title, version, id) values (?, ?, ?)";
+
+        for (int i = 0; i < 1000; i++) {
+            int rows = tuner.batchSize(sql);
+            tuner.record(sql, rows, roundTripCost(rows));
+        }
+
+        int batchSize = tuner.batchSize(sql);
+        LOGGER.info("Converged batch size: {}", batchSize);
+        assertTrue(batchSize >= 64 && batchSize <= 400);
+    }
+
+    @Test
+    public void testApplicationBatchSizeUpperBound() {
+        AdaptiveBatchSizeTuner tuner = new AdaptiveBatchSizeTuner(1, 1000, 64);
+        String sql = "update post set version = ? where id = ?";
+
+        for (int i = 0; i < 10; i++) {
+            tuner.record(sql, 25, roundTripCost(25));
+        }
+
+        assertEquals(25, tuner.batchSize(sql));
+    }
+
+    /**
+     * A fixed network roundtrip cost, plus a per-row cost that grows once the batch
+     * no longer fits in a single network packet.
+     */
+    private long roundTripCost(int rows) {
+        long roundTripNanos = 500_000;
+        long rowNanos = rows <= 200 ? 2_000 : 2_000 + (rows - 200) * 100L;
+        return roundTripNanos + rows * rowNanos;
+    }
+}
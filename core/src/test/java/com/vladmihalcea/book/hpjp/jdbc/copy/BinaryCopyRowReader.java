@@ -0,0 +1,142 @@
+package com.vladmihalcea.book.hpjp.jdbc.copy;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+
+/**
+ * Reads the {@link CopyFormat#BINARY} format.
+ *
+ * @author Vlad Mihalcea
+ */
+public class BinaryCopyRowReader extends CopyRowReader {
+
+    private static final int HEADER_LENGTH = BinaryCopyRowWriter.SIGNATURE.length + 2 * Integer.BYTES;
+
+    private boolean headerRead;
+
+    private boolean trailerRead;
+
+    private ByteBuffer rowView = ByteBuffer.wrap(row);
+
+    public BinaryCopyRowReader(ReadableByteChannel channel, int bufferSize) {
+        super(channel, bufferSize);
+    }
+
+    @Override
+    protected boolean readRow() {
+        if (trailerRead) {
+            return false;
+        }
+        if (!headerRead) {
+            if (!readHeader()) {
+                return false;
+            }
+            headerRead = true;
+        }
+        readFully(0, Short.BYTES);
+        short fieldCount = view().getShort(0);
+        if (fieldCount == -1) {
+            trailerRead = true;
+            return false;
+        }
+        int length = 0;
+        for (int i = 0; i < fieldCount; i++) {
+            readFully(length, Integer.BYTES);
+            int fieldLength = view().getInt(length);
+            if (fieldLength < 0) {
+                addColumn(-1, -1);
+            } else {
+                readFully(length, fieldLength);
+                addColumn(length, length + fieldLength);
+                length += fieldLength;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isNull() {
+        return columnStarts[peekColumn()] < 0;
+    }
+
+    @Override
+    public long readLong() {
+        int column = nonNullColumn();
+        return switch (columnEnds[column] - columnStarts[column]) {
+            case Long.BYTES -> view().getLong(columnStarts[column]);
+            case Integer.BYTES -> view().getInt(columnStarts[column]);
+            case Short.BYTES -> view().getShort(columnStarts[column]);
+            default -> throw new IllegalStateException("Column " + column + " is not an integer");
+        };
+    }
+
+    @Override
+    public int readInt() {
+        return Math.toIntExact(readLong());
+    }
+
+    @Override
+    public boolean readBoolean() {
+        int column = nonNullColumn();
+        return row[columnStarts[column]] != 0;
+    }
+
+    @Override
+    public String readString() {
+        int column = nextColumn();
+        int start = columnStarts[column];
+        if (start < 0) {
+            return null;
+        }
+        return new String(row, start, columnEnds[column] - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public LocalDateTime readTimestamp() {
+        int column = nextColumn();
+        int start = columnStarts[column];
+        if (start < 0) {
+            return null;
+        }
+        return BinaryCopyRowWriter.POSTGRESQL_EPOCH.plus(view().getLong(start), ChronoUnit.MICROS);
+    }
+
+    private boolean readHeader() {
+        int b = readByte();
+        if (b < 0) {
+            return false;
+        }
+        row[0] = (byte) b;
+        readFully(1, HEADER_LENGTH - 1);
+        if (!Arrays.equals(row, 0, BinaryCopyRowWriter.SIGNATURE.length, BinaryCopyRowWriter.SIGNATURE, 0, BinaryCopyRowWriter.SIGNATURE.length)) {
+            throw new IllegalStateException("The stream does not start with the binary COPY signature");
+        }
+        int extensionLength = view().getInt(HEADER_LENGTH - Integer.BYTES);
+        if (extensionLength > 0) {
+            readFully(0, extensionLength);
+        }
+        return true;
+    }
+
+    private int nonNullColumn() {
+        int column = nextColumn();
+        if (columnStarts[column] < 0) {
+            throw new IllegalStateException("Column " + column + " is NULL");
+        }
+        return column;
+    }
+
+    /**
+     * @return a big-endian view of the row buffer, which is recreated when the row buffer grows
+     */
+    private ByteBuffer view() {
+        if (rowView.array() != row) {
+            rowView = ByteBuffer.wrap(row);
+        }
+        return rowView;
+    }
+}
@@ -0,0 +1,106 @@
+package com.vladmihalcea.book.hpjp.jdbc.copy;
+
+import java.nio.channels.WritableByteChannel;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Writes the {@link CopyFormat#BINARY} format, in which every value is prefixed by its length
+ * and is sent in the PostgreSQL binary representation of its column type.
+ *
+ * @author Vlad Mihalcea
+ */
+public class BinaryCopyRowWriter extends CopyRowWriter {
+
+    static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    /**
+     * The PostgreSQL epoch, which the binary {@code timestamp} values are relative to.
+     */
+    static final LocalDateTime POSTGRESQL_EPOCH = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    public BinaryCopyRowWriter(WritableByteChannel channel, int bufferSize, int columnCount) {
+        super(channel, bufferSize, columnCount);
+        buffer.put(SIGNATURE);
+        buffer.putInt(0);
+        buffer.putInt(0);
+    }
+
+    @Override
+    public CopyRowWriter writeNull() {
+        beginBinaryColumn();
+        ensure(4);
+        buffer.putInt(-1);
+        return this;
+    }
+
+    @Override
+    public CopyRowWriter writeLong(long value) {
+        beginBinaryColumn();
+        ensure(12);
+        buffer.putInt(Long.BYTES).putLong(value);
+        return this;
+    }
+
+    @Override
+    public CopyRowWriter writeInt(int value) {
+        beginBinaryColumn();
+        ensure(8);
+        buffer.putInt(Integer.BYTES).putInt(value);
+        return this;
+    }
+
+    @Override
+    public CopyRowWriter writeShort(short value) {
+        beginBinaryColumn();
+        ensure(6);
+        buffer.putInt(Short.BYTES).putShort(value);
+        return this;
+    }
+
+    @Override
+    public CopyRowWriter writeBoolean(boolean value) {
+        beginBinaryColumn();
+        ensure(5);
+        buffer.putInt(1).put((byte) (value ? 1 : 0));
+        return this;
+    }
+
+    @Override
+    public CopyRowWriter writeString(CharSequence value) {
+        if (value == null) {
+            return writeNull();
+        }
+        beginBinaryColumn();
+        ensure(4);
+        buffer.putInt(utf8Length(value));
+        for (int i = 0; i < value.length(); ) {
+            i = putCodePoint(value, i);
+        }
+        return this;
+    }
+
+    @Override
+    public CopyRowWriter writeTimestamp(LocalDateTime value) {
+        if (value == null) {
+            return writeNull();
+        }
+        beginBinaryColumn();
+        ensure(12);
+        buffer.putInt(Long.BYTES).putLong(ChronoUnit.MICROS.between(POSTGRESQL_EPOCH, value));
+        return this;
+    }
+
+    @Override
+    protected void onFinish() {
+        ensure(2);
+        buffer.putShort((short) -1);
+    }
+
+    private void beginBinaryColumn() {
+        if (beginColumn() == 0) {
+            ensure(2);
+            buffer.putShort((short) getColumnCount());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.vladmihalcea.book.hpjp.jdbc.copy;
+
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The PostgreSQL {@code COPY} data formats.
+ *
+ * @author Vlad Mihalcea
+ */
+public enum CopyFormat {
+    /**
+     * Tab-separated values, with backslash escapes and {@code \N} for {@code NULL}.
+     */
+    TEXT("text") {
+        @Override
+        public CopyRowWriter newWriter(WritableByteChannel channel, int bufferSize, int columnCount) {
+            return new TextCopyRowWriter(channel, bufferSize, columnCount);
+        }
+
+        @Override
+        public CopyRowReader newReader(ReadableByteChannel channel, int bufferSize) {
+            return new TextCopyRowReader(channel, bufferSize);
+        }
+    },
+    /**
+     * Length-prefixed binary values, which must match the column types exactly,
+     * e.g., a {@code bigint} column must be written with {@link CopyRowWriter#writeLong(long)}.
+     */
+    BINARY("binary") {
+        @Override
+        public CopyRowWriter newWriter(WritableByteChannel channel, int bufferSize, int columnCount) {
+            return new BinaryCopyRowWriter(channel, bufferSize, columnCount);
+        }
+
+        @Override
+        public CopyRowReader newReader(ReadableByteChannel channel, int bufferSize) {
+            return new BinaryCopyRowReader(channel, bufferSize);
+        }
+    };
+
+    private final String option;
+
+    CopyFormat(String option) {
+        this.option = option;
+    }
+
+    /**
+     * @return the {@code COPY} options clause, e.g., {@code (FORMAT binary)}
+     */
+    public String options() {
+        return "(FORMAT " + option + ")";
+    }
+
+    public abstract CopyRowWriter newWriter(WritableByteChannel channel, int bufferSize, int columnCount);
+
+    public abstract CopyRowReader newReader(ReadableByteChannel channel, int bufferSize);
+}
@@ -0,0 +1,54 @@
+package com.vladmihalcea.book.hpjp.jdbc.copy;
+
+import org.postgresql.copy.CopyIn;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.sql.SQLException;
+
+/**
+ * Exposes a PgJDBC {@link CopyIn} operation as a {@link WritableByteChannel}.
+ * Closing the channel does not end the {@code COPY} operation, which is done by {@link CopyIn#endCopy()}.
+ *
+ * @author Vlad Mihalcea
+ */
+public class CopyInChannel implements WritableByteChannel {
+
+    private final CopyIn copyIn;
+
+    private byte[] chunk;
+
+    public CopyInChannel(CopyIn copyIn) {
+        this.copyIn = copyIn;
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        int length = source.remaining();
+        try {
+            if (source.hasArray()) {
+                copyIn.writeToCopy(source.array(), source.arrayOffset() + source.position(), length);
+            } else {
+                if (chunk == null || chunk.length < length) {
+                    chunk = new byte[length];
+                }
+                source.duplicate().get(chunk, 0, length);
+                copyIn.writeToCopy(chunk, 0, length);
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        source.position(source.position() + length);
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return copyIn.isActive();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,70 @@
+package com.vladmihalcea.book.hpjp.jdbc.copy;
+
+import org.postgresql.copy.CopyOut;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.sql.SQLException;
+
+/**
+ * Exposes a PgJDBC {@link CopyOut} operation as a {@link ReadableByteChannel}.
+ * PgJDBC returns one {@code CopyData} message at a time, so the remainder of a message
+ * that does not fit into the target buffer is returned by the next read.
+ * Closing the channel before the end of the stream cancels the {@code COPY} operation.
+ *
+ * @author Vlad Mihalcea
+ */
+public class CopyOutChannel implements ReadableByteChannel {
+
+    private final CopyOut copyOut;
+
+    private byte[] message;
+
+    private int messageOffset;
+
+    private boolean endOfStream;
+
+    public CopyOutChannel(CopyOut copyOut) {
+        this.copyOut = copyOut;
+    }
+
+    @Override
+    public int read(ByteBuffer target) throws IOException {
+        if (message == null || messageOffset == message.length) {
+            if (endOfStream) {
+                return -1;
+            }
+            try {
+                message = copyOut.readFromCopy();
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+            messageOffset = 0;
+            if (message == null) {
+                endOfStream = true;
+                return -1;
+            }
+        }
+        int length = Math.min(target.remaining(), message.length - messageOffset);
+        target.put(message, messageOffset, length);
+        messageOffset += length;
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !endOfStream;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (copyOut.isActive()) {
+            try {
+                copyOut.cancelCopy();
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
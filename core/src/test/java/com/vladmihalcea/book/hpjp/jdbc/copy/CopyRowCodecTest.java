@@ -0,0 +1,139 @@
+package com.vladmihalcea.book.hpjp.jdbc.copy;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class CopyRowCodecTest {
+
+    public static final CopyRowEncoder<PostRow> POST_ROW_ENCODER = (post, writer) -> writer
+        .writeLong(post.id())
+        .writeString(post.title())
+        .writeTimestamp(post.createdOn())
+        .writeBoolean(post.published())
+        .writeInt(post.score())
+        .writeShort(post.version());
+
+    public static final CopyRowDecoder<PostRow> POST_ROW_DECODER = reader -> new PostRow(
+        reader.readLong(),
+        reader.readString(),
+        reader.readTimestamp(),
+        reader.readBoolean(),
+        reader.readInt(),
+        reader.readShort()
+    );
+
+    @Test
+    public void testTextEncoding() {
+        byte[] bytes = write(
+            CopyFormat.TEXT,
+            64,
+            List.of(
+                new PostRow(1L, "Tab\tNew line\nBackslash\\", LocalDateTime.of(2026, 1, 2, 3, 4, 5, 6000), true, -7, (short) 0),
+                new PostRow(-2L, null, null, false, 0, (short) 1)
+            )
+        );
+
+        assertEquals(
+            "1\tTab\\tNew line\\nBackslash\\\\\t2026-01-02 03:04:05.000006\tt\t-7\t0\n" +
+            "-2\t\\N\t\\N\tf\t0\t1\n",
+            new String(bytes, StandardCharsets.UTF_8)
+        );
+    }
+
+    @Test
+    public void testBinaryEncoding() {
+        byte[] bytes = write(
+            CopyFormat.BINARY,
+            64,
+            List.of(new PostRow(1L, null, null, true, 2, (short) 3))
+        );
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.writeBytes(BinaryCopyRowWriter.SIGNATURE);
+        expected.writeBytes(new byte[] {0, 0, 0, 0, 0, 0, 0, 0});
+        expected.writeBytes(new byte[] {0, 6});
+        expected.writeBytes(new byte[] {0, 0, 0, 8, 0, 0, 0, 0, 0, 0, 0, 1});
+        expected.writeBytes(new byte[] {-1, -1, -1, -1});
+        expected.writeBytes(new byte[] {-1, -1, -1, -1});
+        expected.writeBytes(new byte[] {0, 0, 0, 1, 1});
+        expected.writeBytes(new byte[] {0, 0, 0, 4, 0, 0, 0, 2});
+        expected.writeBytes(new byte[] {0, 0, 0, 2, 0, 3});
+        expected.writeBytes(new byte[] {-1, -1});
+        assertArrayEquals(expected.toByteArray(), bytes);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        List<PostRow> posts = IntStream.range(0, 1000)
+            .mapToObj(i -> new PostRow(
+                i * 1_000_000_007L - 500,
+                i % 7 == 0 ? null : title(i),
+                i % 5 == 0 ? null : LocalDateTime.of(2026, 1, 1, 0, 0).plusSeconds(i * 3_600L).plusNanos(i * 1_000L),
+                i % 2 == 0,
+                i % 3 == 0 ? Integer.MIN_VALUE : -i,
+                (short) i
+            ))
+            .collect(Collectors.toList());
+
+        for (CopyFormat format : CopyFormat.values()) {
+            for (int bufferSize : new int[] {16, 64, CopyRowWriter.DEFAULT_BUFFER_SIZE}) {
+                byte[] bytes = write(format, bufferSize, posts);
+
+                List<PostRow> readPosts = new ArrayList<>();
+                try (CopyRowReader reader = format.newReader(Channels.newChannel(new ByteArrayInputStream(bytes)), bufferSize)) {
+                    assertEquals(posts.size(), reader.readRows(POST_ROW_DECODER, readPosts::add));
+                }
+                assertEquals(posts, readPosts);
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMissingColumn() {
+        CopyRowWriter writer = CopyFormat.TEXT.newWriter(Channels.newChannel(new ByteArrayOutputStream()), 64, 2);
+        writer.writeLong(1);
+        writer.endRow();
+    }
+
+    private byte[] write(CopyFormat format, int bufferSize, List<PostRow> posts) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (CopyRowWriter writer = format.newWriter(Channels.newChannel(outputStream), bufferSize, 6)) {
+            writer.writeRows(posts, POST_ROW_ENCODER);
+            assertEquals(posts.size(), writer.getRowCount());
+        }
+        return outputStream.toByteArray();
+    }
+
+    private String title(int i) {
+        return switch (i % 4) {
+            case 0 -> "High-Performance Java Persistence, part " + i;
+            case 1 -> "Tabs\tand\nnew lines\r\\N";
+            case 2 -> "Ünïcödé ✓ 😀 ".repeat(i % 20);
+            default -> "";
+        };
+    }
+
+    public record PostRow(
+        long id,
+        String title,
+        LocalDateTime createdOn,
+        boolean published,
+        int score,
+        short version) {
+    }
+}
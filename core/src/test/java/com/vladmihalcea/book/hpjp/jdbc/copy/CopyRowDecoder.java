@@ -0,0 +1,12 @@
+package com.vladmihalcea.book.hpjp.jdbc.copy;
+
+/**
+ * Reads the column values of the current row, in the {@code COPY} column order.
+ *
+ * @author Vlad Mihalcea
+ */
+@FunctionalInterface
+public interface CopyRowDecoder<T> {
+
+    T decode(CopyRowReader reader);
+}
@@ -0,0 +1,12 @@
+package com.vladmihalcea.book.hpjp.jdbc.copy;
+
+/**
+ * Writes the column values of a row, in the {@code COPY} column order.
+ *
+ * @author Vlad Mihalcea
+ */
+@FunctionalInterface
+public interface CopyRowEncoder<T> {
+
+    void encode(T row, CopyRowWriter writer);
+}
@@ -0,0 +1,223 @@
+package com.vladmihalcea.book.hpjp.jdbc.copy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Decodes the rows of a {@code COPY ... TO STDOUT} stream from a fixed-size {@link ByteBuffer},
+ * which is refilled from the source channel as the rows are consumed.
+ * <p>
+ * The raw bytes of the current row are copied into a row buffer, which only grows up to the size of the largest row,
+ * and the column values are read sequentially, decoding them straight from the row buffer.
+ *
+ * @author Vlad Mihalcea
+ */
+public abstract class CopyRowReader implements AutoCloseable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel;
+
+    private final ByteBuffer buffer;
+
+    private boolean endOfStream;
+
+    protected byte[] row = new byte[256];
+
+    protected int[] columnStarts = new int[16];
+
+    protected int[] columnEnds = new int[16];
+
+    protected int columnCount;
+
+    private int column;
+
+    private long rowCount;
+
+    protected CopyRowReader(ReadableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(Math.max(16, bufferSize));
+        this.buffer.flip();
+    }
+
+    /**
+     * Move to the next row.
+     *
+     * @return {@code false} if there are no more rows
+     */
+    public boolean next() {
+        column = 0;
+        columnCount = 0;
+        if (!readRow()) {
+            return false;
+        }
+        rowCount++;
+        return true;
+    }
+
+    /**
+     * @return the number of rows read so far
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the number of columns of the current row
+     */
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * @return {@code true} if the next column value is {@code NULL}
+     */
+    public abstract boolean isNull();
+
+    public abstract long readLong();
+
+    public abstract int readInt();
+
+    public short readShort() {
+        long value = readLong();
+        if (value != (short) value) {
+            throw new ArithmeticException("The column value does not fit into a short");
+        }
+        return (short) value;
+    }
+
+    public abstract boolean readBoolean();
+
+    public abstract String readString();
+
+    public abstract LocalDateTime readTimestamp();
+
+    /**
+     * Skip the next column value.
+     */
+    public void skip() {
+        nextColumn();
+    }
+
+    /**
+     * Read all the remaining rows with the given decoder.
+     *
+     * @return the number of rows
+     */
+    public <T> long readRows(CopyRowDecoder<T> decoder, Consumer<? super T> consumer) {
+        long count = 0;
+        while (next()) {
+            consumer.accept(decoder.decode(this));
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Read the raw bytes of the next row into the row buffer, and record the column boundaries.
+     *
+     * @return {@code false} if the stream ended
+     */
+    protected abstract boolean readRow();
+
+    /**
+     * @return the index of the next column value, whose bytes are in the {@code [columnStarts, columnEnds)} range
+     */
+    protected int nextColumn() {
+        if (column == columnCount) {
+            throw new IllegalStateException(
+                String.format("The row has only %d columns", columnCount)
+            );
+        }
+        return column++;
+    }
+
+    /**
+     * @return the index of the next column value, without moving past it
+     */
+    protected int peekColumn() {
+        if (column == columnCount) {
+            throw new IllegalStateException(
+                String.format("The row has only %d columns", columnCount)
+            );
+        }
+        return column;
+    }
+
+    protected void addColumn(int start, int end) {
+        if (columnCount == columnStarts.length) {
+            columnStarts = Arrays.copyOf(columnStarts, columnCount << 1);
+            columnEnds = Arrays.copyOf(columnEnds, columnCount << 1);
+        }
+        columnStarts[columnCount] = start;
+        columnEnds[columnCount] = end;
+        columnCount++;
+    }
+
+    protected void ensureRowCapacity(int length) {
+        if (row.length < length) {
+            row = Arrays.copyOf(row, Math.max(length, row.length << 1));
+        }
+    }
+
+    /**
+     * @return the next byte, or {@code -1} at the end of the stream
+     */
+    protected final int readByte() {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    /**
+     * Copy the next bytes into the row buffer.
+     */
+    protected final void readFully(int offset, int length) {
+        ensureRowCapacity(offset + length);
+        while (length > 0) {
+            if (!buffer.hasRemaining() && !fill()) {
+                throw new IllegalStateException("Unexpected end of the COPY stream");
+            }
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.get(row, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    private boolean fill() {
+        if (endOfStream) {
+            return false;
+        }
+        buffer.compact();
+        try {
+            int read;
+            do {
+                read = channel.read(buffer);
+            } while (read == 0);
+            if (read < 0) {
+                endOfStream = true;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffer.flip();
+        }
+        return buffer.hasRemaining();
+    }
+}
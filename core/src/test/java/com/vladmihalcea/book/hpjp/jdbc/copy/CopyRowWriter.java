@@ -0,0 +1,211 @@
+package com.vladmihalcea.book.hpjp.jdbc.copy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.time.LocalDateTime;
+
+/**
+ * Encodes the rows of a {@code COPY ... FROM STDIN} stream directly into a fixed-size {@link ByteBuffer},
+ * which is written to the target channel whenever it fills up, so the memory footprint does not depend
+ * on the number of rows, and the column values are never converted to intermediate {@link String} objects.
+ * <p>
+ * Every row must provide exactly the number of columns the writer was created with.
+ *
+ * @author Vlad Mihalcea
+ */
+public abstract class CopyRowWriter implements AutoCloseable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private static final int MIN_BUFFER_SIZE = 64;
+
+    protected final ByteBuffer buffer;
+
+    private final WritableByteChannel channel;
+
+    private final int columnCount;
+
+    private int column;
+
+    private long rowCount;
+
+    private boolean finished;
+
+    protected CopyRowWriter(WritableByteChannel channel, int bufferSize, int columnCount) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(Math.max(MIN_BUFFER_SIZE, bufferSize));
+        this.columnCount = columnCount;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * @return the number of completed rows
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Write all the given rows with the given encoder.
+     */
+    public <T> CopyRowWriter writeRows(Iterable<T> rows, CopyRowEncoder<? super T> encoder) {
+        for (T row : rows) {
+            encoder.encode(row, this);
+            endRow();
+        }
+        return this;
+    }
+
+    public abstract CopyRowWriter writeNull();
+
+    public abstract CopyRowWriter writeLong(long value);
+
+    public abstract CopyRowWriter writeInt(int value);
+
+    public abstract CopyRowWriter writeShort(short value);
+
+    public abstract CopyRowWriter writeBoolean(boolean value);
+
+    /**
+     * Write a {@code text} or {@code varchar} column value, or {@code NULL} if the value is {@code null}.
+     */
+    public abstract CopyRowWriter writeString(CharSequence value);
+
+    /**
+     * Write a {@code timestamp} column value with microsecond precision, or {@code NULL} if the value is {@code null}.
+     */
+    public abstract CopyRowWriter writeTimestamp(LocalDateTime value);
+
+    public void endRow() {
+        if (column != columnCount) {
+            throw new IllegalStateException(
+                String.format("The row has %d columns instead of %d", column, columnCount)
+            );
+        }
+        onEndRow();
+        column = 0;
+        rowCount++;
+    }
+
+    /**
+     * Write the end of the stream, and flush the buffer. The channel is not closed.
+     */
+    public void finish() {
+        if (!finished) {
+            finished = true;
+            if (column != 0) {
+                throw new IllegalStateException("The last row is not complete");
+            }
+            onFinish();
+            flush();
+        }
+    }
+
+    @Override
+    public void close() {
+        finish();
+    }
+
+    /**
+     * Start a new column value.
+     *
+     * @return the zero-based column index
+     */
+    protected int beginColumn() {
+        if (column == columnCount) {
+            throw new IllegalStateException(
+                String.format("The row already has %d columns", columnCount)
+            );
+        }
+        return column++;
+    }
+
+    protected void onEndRow() {
+    }
+
+    protected void onFinish() {
+    }
+
+    /**
+     * Make sure the buffer has room for the given number of bytes, which must not exceed {@link #MIN_BUFFER_SIZE}.
+     */
+    protected final void ensure(int length) {
+        if (buffer.remaining() < length) {
+            flush();
+        }
+    }
+
+    protected final void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Encode the character or surrogate pair at the given index as UTF-8.
+     * An unpaired surrogate is encoded as {@code ?}, just like {@link String#getBytes(java.nio.charset.Charset)} does.
+     *
+     * @return the index of the next character
+     */
+    protected final int putCodePoint(CharSequence value, int index) {
+        char c = value.charAt(index);
+        ensure(4);
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isSurrogate(c)) {
+            if (Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                return index + 2;
+            }
+            buffer.put((byte) '?');
+        } else {
+            buffer.put((byte) (0xE0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        }
+        return index + 1;
+    }
+
+    /**
+     * @return the number of bytes {@link #putCodePoint(CharSequence, int)} writes for the given value
+     */
+    protected static int utf8Length(CharSequence value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    length++;
+                }
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
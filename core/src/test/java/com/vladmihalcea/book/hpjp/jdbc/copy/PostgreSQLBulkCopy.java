@@ -0,0 +1,213 @@
+package com.vladmihalcea.book.hpjp.jdbc.copy;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.CopyOut;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Moves bulk data in and out of PostgreSQL with the client-side {@code COPY ... FROM STDIN}
+ * and {@code COPY ... TO STDOUT} commands, using the PgJDBC {@link CopyManager}.
+ * <p>
+ * Unlike a server-side {@code COPY ... TO 'file'}, the data is streamed through the JDBC connection,
+ * so it does not require access to the database server file system, and the application can consume
+ * the rows as they arrive. The rows are encoded and decoded through bounded buffers,
+ * so the memory footprint does not depend on the number of rows.
+ * <p>
+ * The {@code COPY} operations run in the transaction of the given connection.
+ *
+ * @author Vlad Mihalcea
+ */
+public class PostgreSQLBulkCopy {
+
+    private CopyFormat format = CopyFormat.BINARY;
+
+    private int bufferSize = CopyRowWriter.DEFAULT_BUFFER_SIZE;
+
+    public PostgreSQLBulkCopy setFormat(CopyFormat format) {
+        this.format = format;
+        return this;
+    }
+
+    public PostgreSQLBulkCopy setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * Insert the given rows with a {@code COPY ... FROM STDIN} command.
+     *
+     * @return the number of inserted rows
+     */
+    public <T> long copyIn(
+            Connection connection,
+            String table,
+            List<String> columns,
+            Iterable<T> rows,
+            CopyRowEncoder<? super T> encoder) throws SQLException {
+        CopyIn copyIn = copyManager(connection).copyIn(copyInSql(table, columns));
+        try {
+            CopyRowWriter writer = format.newWriter(new CopyInChannel(copyIn), bufferSize, columns.size());
+            writer.writeRows(rows, encoder);
+            writer.finish();
+            return copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * Insert the rows of a stream in the configured format, e.g., a file exported by {@link #copyOut(Connection, String, WritableByteChannel)}.
+     *
+     * @return the number of inserted rows
+     */
+    public long copyIn(
+            Connection connection,
+            String table,
+            List<String> columns,
+            ReadableByteChannel source) throws SQLException {
+        CopyIn copyIn = copyManager(connection).copyIn(copyInSql(table, columns));
+        try {
+            CopyInChannel target = new CopyInChannel(copyIn);
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                target.write(buffer);
+                buffer.clear();
+            }
+            return copyIn.endCopy();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * Stream the rows of the given query with a {@code COPY (...) TO STDOUT} command.
+     *
+     * @return the number of rows
+     */
+    public <T> long copyOut(
+            Connection connection,
+            String query,
+            CopyRowDecoder<T> decoder,
+            Consumer<? super T> consumer) throws SQLException {
+        CopyOut copyOut = copyManager(connection).copyOut(copyOutSql(query));
+        try (CopyRowReader reader = format.newReader(new CopyOutChannel(copyOut), bufferSize)) {
+            return reader.readRows(decoder, consumer);
+        }
+    }
+
+    /**
+     * Stream the raw {@code COPY} output of the given query to the given channel, e.g., a client-side file.
+     *
+     * @return the number of bytes
+     */
+    public long copyOut(
+            Connection connection,
+            String query,
+            WritableByteChannel target) throws SQLException {
+        CopyOut copyOut = copyManager(connection).copyOut(copyOutSql(query));
+        try (CopyOutChannel source = new CopyOutChannel(copyOut)) {
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            long byteCount = 0;
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byteCount += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return byteCount;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Load the given partitions concurrently, every partition using its own connection and transaction.
+     * <p>
+     * Since the partitions are committed independently, a failed load leaves the other partitions committed,
+     * so the partitions should be idempotent, e.g., by loading into a staging table or by identifier ranges.
+     *
+     * @return the number of inserted rows
+     */
+    public <T> long parallelCopyIn(
+            DataSource dataSource,
+            String table,
+            List<String> columns,
+            List<? extends Iterable<T>> partitions,
+            CopyRowEncoder<? super T> encoder,
+            int workerCount) throws SQLException {
+        ExecutorService executorService = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(workerCount, partitions.size()))
+        );
+        try {
+            List<Future<Long>> futures = new ArrayList<>(partitions.size());
+            for (Iterable<T> partition : partitions) {
+                futures.add(executorService.submit(() -> {
+                    try (Connection connection = dataSource.getConnection()) {
+                        connection.setAutoCommit(false);
+                        try {
+                            long rowCount = copyIn(connection, table, columns, partition, encoder);
+                            connection.commit();
+                            return rowCount;
+                        } catch (SQLException | RuntimeException e) {
+                            connection.rollback();
+                            throw e;
+                        }
+                    }
+                }));
+            }
+            long rowCount = 0;
+            for (Future<Long> future : futures) {
+                rowCount += future.get();
+            }
+            return rowCount;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private String copyInSql(String table, List<String> columns) {
+        return String.format("COPY %s (%s) FROM STDIN %s", table, String.join(", ", columns), format.options());
+    }
+
+    private String copyOutSql(String query) {
+        return String.format("COPY (%s) TO STDOUT %s", query, format.options());
+    }
+
+    private static CopyManager copyManager(Connection connection) throws SQLException {
+        return connection.unwrap(PGConnection.class).getCopyAPI();
+    }
+}
@@ -0,0 +1,163 @@
+package com.vladmihalcea.book.hpjp.jdbc.copy;
+
+import com.vladmihalcea.book.hpjp.jdbc.copy.CopyRowCodecTest.PostRow;
+import com.vladmihalcea.book.hpjp.util.AbstractPostgreSQLIntegrationTest;
+import jakarta.persistence.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static com.vladmihalcea.book.hpjp.jdbc.copy.CopyRowCodecTest.POST_ROW_DECODER;
+import static com.vladmihalcea.book.hpjp.jdbc.copy.CopyRowCodecTest.POST_ROW_ENCODER;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class PostgreSQLBulkCopyTest extends AbstractPostgreSQLIntegrationTest {
+
+    public static final List<String> COLUMNS = List.of("id", "title", "created_on", "published", "score", "version");
+
+    public static final String SELECT_POSTS = """
+        SELECT id, title, created_on, published, score, version
+        FROM post
+        ORDER BY id
+        """;
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[] {
+            Post.class,
+        };
+    }
+
+    @Test
+    public void testCopyInAndCopyOut() {
+        List<PostRow> posts = posts(1, 1000);
+
+        for (CopyFormat format : CopyFormat.values()) {
+            PostgreSQLBulkCopy bulkCopy = new PostgreSQLBulkCopy().setFormat(format);
+
+            doInJDBC(connection -> {
+                try (var statement = connection.createStatement()) {
+                    statement.executeUpdate("DELETE FROM post");
+                }
+                assertEquals(posts.size(), bulkCopy.copyIn(connection, "post", COLUMNS, posts, POST_ROW_ENCODER));
+            });
+
+            doInJDBC(connection -> {
+                List<PostRow> copiedPosts = new ArrayList<>();
+                assertEquals(posts.size(), bulkCopy.copyOut(connection, SELECT_POSTS, POST_ROW_DECODER, copiedPosts::add));
+                assertEquals(posts, copiedPosts);
+            });
+        }
+    }
+
+    @Test
+    public void testClientSideFile() throws IOException {
+        Path file = Files.createTempFile("post", ".copy");
+        try {
+            PostgreSQLBulkCopy bulkCopy = new PostgreSQLBulkCopy();
+            List<PostRow> posts = posts(1, 100);
+
+            doInJDBC(connection -> {
+                bulkCopy.copyIn(connection, "post", COLUMNS, posts, POST_ROW_ENCODER);
+
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    long byteCount = bulkCopy.copyOut(connection, SELECT_POSTS, channel);
+                    LOGGER.info("Exported {} bytes to {}", byteCount, file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+
+                try (var statement = connection.createStatement()) {
+                    statement.executeUpdate("DELETE FROM post");
+                }
+
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    assertEquals(posts.size(), bulkCopy.copyIn(connection, "post", COLUMNS, channel));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+
+                List<PostRow> copiedPosts = new ArrayList<>();
+                bulkCopy.copyOut(connection, SELECT_POSTS, POST_ROW_DECODER, copiedPosts::add);
+                assertEquals(posts, copiedPosts);
+            });
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testParallelCopyIn() throws SQLException {
+        int partitionCount = 4;
+        int partitionSize = 2500;
+        List<List<PostRow>> partitions = new ArrayList<>();
+        for (int i = 0; i < partitionCount; i++) {
+            partitions.add(posts(i * partitionSize + 1, partitionSize));
+        }
+
+        long rowCount = new PostgreSQLBulkCopy().parallelCopyIn(
+            dataSource(),
+            "post",
+            COLUMNS,
+            partitions,
+            POST_ROW_ENCODER,
+            partitionCount
+        );
+        assertEquals(partitionCount * partitionSize, rowCount);
+
+        doInJPA(entityManager -> {
+            assertEquals(
+                (long) partitionCount * partitionSize,
+                (long) entityManager.createQuery("select count(p) from Post p", Long.class).getSingleResult()
+            );
+        });
+    }
+
+    public static List<PostRow> posts(long firstId, int count) {
+        LocalDateTime timestamp = LocalDateTime.of(2026, 1, 1, 12, 0);
+        return LongStream.range(firstId, firstId + count)
+            .mapToObj(id -> new PostRow(
+                id,
+                id % 10 == 0 ? null : String.format("High-Performance Java Persistence\tpart %d", id),
+                timestamp.plusSeconds(id).plusNanos(id % 1000 * 1000),
+                id % 2 == 0,
+                (int) (id % 100),
+                (short) 0
+            ))
+            .collect(Collectors.toList());
+    }
+
+    @Entity(name = "Post")
+    @Table(name = "post")
+    public static class Post {
+
+        @Id
+        private Long id;
+
+        private String title;
+
+        @Column(name = "created_on")
+        private LocalDateTime createdOn;
+
+        private boolean published;
+
+        private int score;
+
+        @Version
+        private short version;
+    }
+}
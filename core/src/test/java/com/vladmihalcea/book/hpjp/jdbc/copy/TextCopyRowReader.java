@@ -0,0 +1,173 @@
+package com.vladmihalcea.book.hpjp.jdbc.copy;
+
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * Reads the {@link CopyFormat#TEXT} format, in which the columns are separated by tabs,
+ * and the rows by new lines. Since the tabs and new lines of the values are escaped,
+ * the column boundaries are found without unescaping the values.
+ *
+ * @author Vlad Mihalcea
+ */
+public class TextCopyRowReader extends CopyRowReader {
+
+    private byte[] unescaped = new byte[256];
+
+    public TextCopyRowReader(ReadableByteChannel channel, int bufferSize) {
+        super(channel, bufferSize);
+    }
+
+    @Override
+    protected boolean readRow() {
+        int length = 0;
+        int columnStart = 0;
+        int b = readByte();
+        if (b < 0) {
+            return false;
+        }
+        while (b >= 0 && b != '\n') {
+            if (b == '\t') {
+                addColumn(columnStart, length);
+                columnStart = length;
+            } else {
+                ensureRowCapacity(length + 1);
+                row[length++] = (byte) b;
+                if (b == '\\') {
+                    b = readByte();
+                    if (b < 0) {
+                        break;
+                    }
+                    ensureRowCapacity(length + 1);
+                    row[length++] = (byte) b;
+                }
+            }
+            b = readByte();
+        }
+        if (length == 2 && columnCount == 0 && row[0] == '\\' && row[1] == '.') {
+            return false;
+        }
+        addColumn(columnStart, length);
+        return true;
+    }
+
+    @Override
+    public boolean isNull() {
+        int column = peekColumn();
+        return isNull(column);
+    }
+
+    @Override
+    public long readLong() {
+        int column = nonNullColumn();
+        int index = columnStarts[column];
+        int end = columnEnds[column];
+        boolean negative = row[index] == '-';
+        if (negative) {
+            index++;
+        }
+        long value = 0;
+        for (; index < end; index++) {
+            int digit = row[index] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid integer column value at column " + column);
+            }
+            value = value * 10 - digit;
+        }
+        return negative ? value : -value;
+    }
+
+    @Override
+    public int readInt() {
+        return Math.toIntExact(readLong());
+    }
+
+    @Override
+    public boolean readBoolean() {
+        int column = nonNullColumn();
+        return row[columnStarts[column]] == 't';
+    }
+
+    @Override
+    public String readString() {
+        int column = nextColumn();
+        if (isNull(column)) {
+            return null;
+        }
+        int start = columnStarts[column];
+        int end = columnEnds[column];
+        if (unescaped.length < end - start) {
+            unescaped = new byte[Math.max(end - start, unescaped.length << 1)];
+        }
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            byte b = row[i];
+            if (b == '\\' && i + 1 < end) {
+                b = switch (row[++i]) {
+                    case 'b' -> '\b';
+                    case 'f' -> '\f';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    case 't' -> '\t';
+                    case 'v' -> 0x0B;
+                    default -> row[i];
+                };
+            }
+            unescaped[length++] = b;
+        }
+        return new String(unescaped, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public LocalDateTime readTimestamp() {
+        int column = nextColumn();
+        if (isNull(column)) {
+            return null;
+        }
+        int index = columnStarts[column];
+        int end = columnEnds[column];
+        int nanos = 0;
+        if (end - index > 20 && row[index + 19] == '.') {
+            int fractionEnd = index + 20;
+            while (fractionEnd < end && Character.isDigit(row[fractionEnd])) {
+                fractionEnd++;
+            }
+            int fraction = digits(index + 20, fractionEnd - index - 20);
+            for (int i = fractionEnd - index - 20; i < 9; i++) {
+                fraction *= 10;
+            }
+            nanos = fraction;
+        }
+        return LocalDateTime.of(
+            digits(index, 4),
+            digits(index + 5, 2),
+            digits(index + 8, 2),
+            digits(index + 11, 2),
+            digits(index + 14, 2),
+            digits(index + 17, 2),
+            nanos
+        );
+    }
+
+    private boolean isNull(int column) {
+        int start = columnStarts[column];
+        return columnEnds[column] - start == 2 && row[start] == '\\' && row[start + 1] == 'N';
+    }
+
+    private int nonNullColumn() {
+        int column = nextColumn();
+        if (isNull(column)) {
+            throw new IllegalStateException("Column " + column + " is NULL");
+        }
+        return column;
+    }
+
+    private int digits(int index, int count) {
+        int value = 0;
+        for (int i = index; i < index + count; i++) {
+            value = value * 10 + (row[i] - '0');
+        }
+        return value;
+    }
+}
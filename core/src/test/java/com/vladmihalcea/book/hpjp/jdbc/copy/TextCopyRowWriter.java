@@ -0,0 +1,148 @@
+package com.vladmihalcea.book.hpjp.jdbc.copy;
+
+import java.nio.channels.WritableByteChannel;
+import java.time.LocalDateTime;
+
+/**
+ * Writes the {@link CopyFormat#TEXT} format.
+ *
+ * @author Vlad Mihalcea
+ */
+public class TextCopyRowWriter extends CopyRowWriter {
+
+    private final byte[] digits = new byte[20];
+
+    public TextCopyRowWriter(WritableByteChannel channel, int bufferSize, int columnCount) {
+        super(channel, bufferSize, columnCount);
+    }
+
+    @Override
+    public CopyRowWriter writeNull() {
+        beginTextColumn();
+        ensure(2);
+        buffer.put((byte) '\\').put((byte) 'N');
+        return this;
+    }
+
+    @Override
+    public CopyRowWriter writeLong(long value) {
+        beginTextColumn();
+        putLong(value);
+        return this;
+    }
+
+    @Override
+    public CopyRowWriter writeInt(int value) {
+        return writeLong(value);
+    }
+
+    @Override
+    public CopyRowWriter writeShort(short value) {
+        return writeLong(value);
+    }
+
+    @Override
+    public CopyRowWriter writeBoolean(boolean value) {
+        beginTextColumn();
+        ensure(1);
+        buffer.put((byte) (value ? 't' : 'f'));
+        return this;
+    }
+
+    @Override
+    public CopyRowWriter writeString(CharSequence value) {
+        if (value == null) {
+            return writeNull();
+        }
+        beginTextColumn();
+        int length = value.length();
+        for (int i = 0; i < length; ) {
+            char c = value.charAt(i);
+            byte escaped = switch (c) {
+                case '\\' -> '\\';
+                case '\t' -> 't';
+                case '\n' -> 'n';
+                case '\r' -> 'r';
+                default -> 0;
+            };
+            if (escaped != 0) {
+                ensure(2);
+                buffer.put((byte) '\\').put(escaped);
+                i++;
+            } else {
+                i = putCodePoint(value, i);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public CopyRowWriter writeTimestamp(LocalDateTime value) {
+        if (value == null) {
+            return writeNull();
+        }
+        beginTextColumn();
+        ensure(26);
+        putDigits(value.getYear(), 4);
+        buffer.put((byte) '-');
+        putDigits(value.getMonthValue(), 2);
+        buffer.put((byte) '-');
+        putDigits(value.getDayOfMonth(), 2);
+        buffer.put((byte) ' ');
+        putDigits(value.getHour(), 2);
+        buffer.put((byte) ':');
+        putDigits(value.getMinute(), 2);
+        buffer.put((byte) ':');
+        putDigits(value.getSecond(), 2);
+        buffer.put((byte) '.');
+        putDigits(value.getNano() / 1000, 6);
+        return this;
+    }
+
+    @Override
+    protected void onEndRow() {
+        ensure(1);
+        buffer.put((byte) '\n');
+    }
+
+    private void beginTextColumn() {
+        if (beginColumn() > 0) {
+            ensure(1);
+            buffer.put((byte) '\t');
+        }
+    }
+
+    private void putLong(long value) {
+        ensure(digits.length);
+        if (value == Long.MIN_VALUE) {
+            for (byte b : Long.toString(value).getBytes()) {
+                buffer.put(b);
+            }
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        buffer.put(digits, position, digits.length - position);
+    }
+
+    private void putDigits(int value, int width) {
+        for (int divisor = pow10(width - 1); divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    private static int pow10(int exponent) {
+        int value = 1;
+        for (int i = 0; i < exponent; i++) {
+            value *= 10;
+        }
+        return value;
+    }
+}
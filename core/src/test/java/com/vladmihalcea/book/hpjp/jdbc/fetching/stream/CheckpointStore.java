@@ -0,0 +1,17 @@
+package com.vladmihalcea.book.hpjp.jdbc.fetching.stream;
+
+/**
+ * Stores the identifier of the last processed row, so that a restarted stream resumes
+ * from where it left off instead of rescanning the whole table.
+ *
+ * @author Vlad Mihalcea
+ */
+public interface CheckpointStore {
+
+    /**
+     * @return the last processed identifier, or {@code 0} if the stream never ran before
+     */
+    long load(String streamName);
+
+    void save(String streamName, long lastProcessedId);
+}
@@ -0,0 +1,369 @@
+package com.vladmihalcea.book.hpjp.jdbc.fetching.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Scans the {@code post_comment_details} table and reports the {@code (post_id, ip, fingerprint)}
+ * combinations used by more than one user account.
+ * <p>
+ * The rows are read by a single thread through a server-side cursor, in chunks of
+ * {@link #setFetchSize(int) fetch size} rows, and are partitioned by {@code post_id} across the worker
+ * threads, each one owning a {@link MultiAccountWindow}. The rows are handed over in reusable
+ * {@link RowBatch} arrays, and, since the reader waits for a free batch, a slow worker applies
+ * backpressure instead of letting the queues grow unbounded. On MySQL, the fetch size is only honored
+ * when the {@code useCursorFetch} driver property is enabled.
+ * <p>
+ * At the end of every chunk, all workers get a batch carrying the identifier of the last row read so far.
+ * Once every worker has processed its batch, all rows up to that identifier were processed, and
+ * the identifier is saved in the {@link CheckpointStore}. A restarted engine resumes from the
+ * last checkpoint, so at most one chunk is processed twice, and the windows start empty.
+ *
+ * @author Vlad Mihalcea
+ */
+public class FraudDetectionEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FraudDetectionEngine.class);
+
+    public static final String SELECT_POST_COMMENT_DETAILS = """
+        SELECT id, post_id, user_id, ip, fingerprint
+        FROM post_comment_details
+        WHERE id > ?
+        ORDER BY id
+        """;
+
+    /**
+     * The rows of a partition, stored in parallel arrays so that batches can be reused.
+     */
+    static class RowBatch {
+
+        private final long[] ids;
+
+        private final long[] postIds;
+
+        private final long[] userIds;
+
+        private final String[] ips;
+
+        private final String[] fingerprints;
+
+        private int size;
+
+        /**
+         * The identifier up to which all rows were read when the batch was sent, or {@code -1} if the
+         * batch was sent because it was full, in the middle of a chunk.
+         */
+        private long watermark = -1;
+
+        private boolean last;
+
+        RowBatch(int capacity) {
+            ids = new long[capacity];
+            postIds = new long[capacity];
+            userIds = new long[capacity];
+            ips = new String[capacity];
+            fingerprints = new String[capacity];
+        }
+
+        boolean isFull() {
+            return size == ids.length;
+        }
+
+        void add(long id, long postId, long userId, String ip, String fingerprint) {
+            ids[size] = id;
+            postIds[size] = postId;
+            userIds[size] = userId;
+            ips[size] = ip;
+            fingerprints[size] = fingerprint;
+            size++;
+        }
+
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                ips[i] = null;
+                fingerprints[i] = null;
+            }
+            size = 0;
+            watermark = -1;
+            last = false;
+        }
+    }
+
+    private final DataSource dataSource;
+
+    private final CheckpointStore checkpointStore;
+
+    private final String streamName;
+
+    private final FraudListener listener;
+
+    private int fetchSize = 10_000;
+
+    private int workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    private int batchSize = 1_000;
+
+    private int batchesPerWorker = 4;
+
+    private Duration window = Duration.ofHours(1);
+
+    private int maxFingerprintsPerWorker = 100_000;
+
+    private int maxUsersPerFingerprint = 8;
+
+    private volatile boolean stopped;
+
+    private volatile Throwable failure;
+
+    public FraudDetectionEngine(DataSource dataSource, CheckpointStore checkpointStore, String streamName, FraudListener listener) {
+        this.dataSource = dataSource;
+        this.checkpointStore = checkpointStore;
+        this.streamName = streamName;
+        this.listener = listener;
+    }
+
+    public FraudDetectionEngine setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    public FraudDetectionEngine setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+        return this;
+    }
+
+    public FraudDetectionEngine setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public FraudDetectionEngine setWindow(Duration window) {
+        this.window = window;
+        return this;
+    }
+
+    public FraudDetectionEngine setMaxFingerprintsPerWorker(int maxFingerprintsPerWorker) {
+        this.maxFingerprintsPerWorker = maxFingerprintsPerWorker;
+        return this;
+    }
+
+    public FraudDetectionEngine setMaxUsersPerFingerprint(int maxUsersPerFingerprint) {
+        this.maxUsersPerFingerprint = maxUsersPerFingerprint;
+        return this;
+    }
+
+    /**
+     * Stop reading after the current row. The rows read so far are still processed and checkpointed.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Process all rows following the last checkpoint.
+     *
+     * @return the number of processed rows
+     */
+    public long run() {
+        stopped = false;
+        failure = null;
+
+        Worker[] workers = new Worker[workerCount];
+        AtomicLongArray processedIds = new AtomicLongArray(workerCount);
+        long lastCheckpointId = checkpointStore.load(streamName);
+        for (int i = 0; i < workerCount; i++) {
+            processedIds.set(i, lastCheckpointId);
+            workers[i] = new Worker(i, processedIds);
+            workers[i].start();
+        }
+        LOGGER.info("Stream [{}] resumes after id {}", streamName, lastCheckpointId);
+
+        RowBatch[] batches = new RowBatch[workerCount];
+        long rowCount = 0;
+        long lastId = lastCheckpointId;
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                batches[i] = workers[i].takeFreeBatch();
+            }
+            try (Connection connection = dataSource.getConnection()) {
+                //Most drivers only use a server-side cursor inside a transaction
+                connection.setAutoCommit(false);
+                try (PreparedStatement statement = connection.prepareStatement(
+                        SELECT_POST_COMMENT_DETAILS,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+                    statement.setFetchSize(fetchSize);
+                    statement.setLong(1, lastCheckpointId);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        int chunkRowCount = 0;
+                        while (!stopped && resultSet.next()) {
+                            lastId = resultSet.getLong(1);
+                            long postId = resultSet.getLong(2);
+                            int partition = (int) Math.floorMod(postId, (long) workerCount);
+                            RowBatch batch = batches[partition];
+                            batch.add(lastId, postId, resultSet.getLong(3), resultSet.getString(4), resultSet.getString(5));
+                            if (batch.isFull()) {
+                                workers[partition].send(batch);
+                                batches[partition] = workers[partition].takeFreeBatch();
+                            }
+                            rowCount++;
+                            if (++chunkRowCount == fetchSize) {
+                                chunkRowCount = 0;
+                                sendAll(workers, batches, lastId, false);
+                                lastCheckpointId = checkpoint(processedIds, lastCheckpointId);
+                            }
+                        }
+                    }
+                }
+                connection.commit();
+            }
+            sendAll(workers, batches, lastId, true);
+            for (Worker worker : workers) {
+                worker.join();
+            }
+            checkFailure();
+            checkpoint(processedIds, lastCheckpointId);
+            return rowCount;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            for (Worker worker : workers) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    private void sendAll(Worker[] workers, RowBatch[] batches, long watermark, boolean last) throws InterruptedException {
+        for (int i = 0; i < workers.length; i++) {
+            RowBatch batch = batches[i];
+            batch.watermark = watermark;
+            batch.last = last;
+            workers[i].send(batch);
+            batches[i] = last ? null : workers[i].takeFreeBatch();
+        }
+    }
+
+    private long checkpoint(AtomicLongArray processedIds, long lastCheckpointId) {
+        long processedId = Long.MAX_VALUE;
+        for (int i = 0; i < processedIds.length(); i++) {
+            processedId = Math.min(processedId, processedIds.get(i));
+        }
+        if (processedId > lastCheckpointId) {
+            checkpointStore.save(streamName, processedId);
+            return processedId;
+        }
+        return lastCheckpointId;
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("The fraud detection stream failed", failure);
+        }
+    }
+
+    private class Worker extends Thread {
+
+        private final int partition;
+
+        private final AtomicLongArray processedIds;
+
+        private final BlockingQueue<RowBatch> pendingBatches;
+
+        private final BlockingQueue<RowBatch> freeBatches;
+
+        private final MultiAccountWindow window;
+
+        private final long sweepIntervalNanos;
+
+        private long lastSweepNanos = System.nanoTime();
+
+        Worker(int partition, AtomicLongArray processedIds) {
+            super("fraud-detection-" + partition);
+            setDaemon(true);
+            this.partition = partition;
+            this.processedIds = processedIds;
+            this.pendingBatches = new ArrayBlockingQueue<>(batchesPerWorker);
+            this.freeBatches = new ArrayBlockingQueue<>(batchesPerWorker);
+            for (int i = 0; i < batchesPerWorker; i++) {
+                freeBatches.add(new RowBatch(batchSize));
+            }
+            this.window = new MultiAccountWindow(
+                maxFingerprintsPerWorker,
+                maxUsersPerFingerprint,
+                FraudDetectionEngine.this.window
+            );
+            this.sweepIntervalNanos = FraudDetectionEngine.this.window.toNanos() / 4;
+        }
+
+        RowBatch takeFreeBatch() throws InterruptedException {
+            RowBatch batch;
+            while ((batch = freeBatches.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                checkFailure();
+            }
+            return batch;
+        }
+
+        void send(RowBatch batch) throws InterruptedException {
+            while (!pendingBatches.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    RowBatch batch = pendingBatches.take();
+                    process(batch);
+                    boolean last = batch.last;
+                    if (batch.watermark >= 0) {
+                        processedIds.set(partition, batch.watermark);
+                    }
+                    batch.clear();
+                    freeBatches.add(batch);
+                    if (last) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                LOGGER.error("Worker {} failed", partition, e);
+                failure = e;
+            }
+        }
+
+        private void process(RowBatch batch) {
+            long nowNanos = System.nanoTime();
+            for (int i = 0; i < batch.size; i++) {
+                int entry = window.add(batch.postIds[i], batch.ips[i], batch.fingerprints[i], batch.userIds[i], nowNanos);
+                if (entry != MultiAccountWindow.NONE) {
+                    listener.onPossibleMultipleAccountFraud(
+                        window.getPostId(entry),
+                        window.getIp(entry),
+                        window.getFingerprint(entry),
+                        window.getUserIds(entry)
+                    );
+                }
+            }
+            if (nowNanos - lastSweepNanos > sweepIntervalNanos) {
+                window.evictExpired(nowNanos);
+                lastSweepNanos = nowNanos;
+            }
+        }
+    }
+}
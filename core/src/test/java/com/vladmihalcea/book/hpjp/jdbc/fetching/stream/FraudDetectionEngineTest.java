@@ -0,0 +1,172 @@
+package com.vladmihalcea.book.hpjp.jdbc.fetching.stream;
+
+import com.vladmihalcea.book.hpjp.util.AbstractTest;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class FraudDetectionEngineTest extends AbstractTest {
+
+    @Override
+    protected Class<?>[] entities() {
+        return new Class<?>[]{
+            PostCommentDetails.class,
+            StreamCheckpoint.class,
+        };
+    }
+
+    @Override
+    protected void afterInit() {
+        doInJPA(entityManager -> {
+            long id = 0L;
+
+            entityManager.persist(new PostCommentDetails(++id, 1L, 1L, "192.168.0.2", "ABC123"));
+            entityManager.persist(new PostCommentDetails(++id, 1L, 2L, "192.168.0.3", "ABC456"));
+            entityManager.persist(new PostCommentDetails(++id, 1L, 3L, "192.168.0.4", "ABC789"));
+            entityManager.persist(new PostCommentDetails(++id, 2L, 1L, "192.168.0.2", "ABC123"));
+            entityManager.persist(new PostCommentDetails(++id, 2L, 2L, "192.168.0.3", "ABC456"));
+            entityManager.persist(new PostCommentDetails(++id, 2L, 4L, "192.168.0.3", "ABC456"));
+            entityManager.persist(new PostCommentDetails(++id, 2L, 5L, "192.168.0.3", "ABC456"));
+        });
+    }
+
+    @Test
+    public void testDetectAndResume() {
+        List<String> alerts = Collections.synchronizedList(new ArrayList<>());
+        JdbcCheckpointStore checkpointStore = new JdbcCheckpointStore(dataSource());
+
+        FraudDetectionEngine engine = new FraudDetectionEngine(
+            dataSource(),
+            checkpointStore,
+            "multi-account",
+            (postId, ip, fingerprint, userIds) -> {
+                LOGGER.info("Post id {} possible fraud with user ids {}", postId, userIds);
+                alerts.add(postId + ":" + Arrays.toString(userIds));
+            }
+        )
+        .setWorkerCount(2)
+        .setFetchSize(3)
+        .setBatchSize(2);
+
+        assertEquals(7, engine.run());
+        assertEquals(List.of("2:[2, 4]", "2:[2, 4, 5]"), alerts);
+        assertEquals(7, checkpointStore.load("multi-account"));
+
+        doInJPA(entityManager -> {
+            entityManager.persist(new PostCommentDetails(8L, 3L, 6L, "192.168.0.5", "DEF123"));
+            entityManager.persist(new PostCommentDetails(9L, 3L, 7L, "192.168.0.5", "DEF123"));
+        });
+
+        alerts.clear();
+        assertEquals(2, engine.run());
+        assertEquals(List.of("3:[6, 7]"), alerts);
+        assertEquals(9, checkpointStore.load("multi-account"));
+
+        assertEquals(0, engine.run());
+    }
+
+    @Test
+    public void testWindowEviction() {
+        MultiAccountWindow window = new MultiAccountWindow(4, 2, Duration.ofNanos(100));
+
+        for (int postId = 1; postId <= 5; postId++) {
+            assertEquals(MultiAccountWindow.NONE, window.add(postId, "192.168.0.2", "ABC123", 1, postId));
+        }
+        assertEquals(4, window.size());
+        assertEquals(1, window.getEvictionCount());
+
+        int entry = window.add(5, "192.168.0.2", "ABC123", 2, 50);
+        assertEquals(5, window.getPostId(entry));
+        assertEquals(MultiAccountWindow.NONE, window.add(5, "192.168.0.2", "ABC123", 2, 50));
+        assertEquals("Only the first user that does not fit is reported", entry, window.add(5, "192.168.0.2", "ABC123", 3, 50));
+        assertEquals(MultiAccountWindow.NONE, window.add(5, "192.168.0.2", "ABC123", 4, 50));
+
+        assertEquals(3, window.evictExpired(120));
+        assertEquals(1, window.size());
+        assertEquals(MultiAccountWindow.NONE, window.add(5, "192.168.0.2", "ABC123", 2, 120));
+    }
+
+    @Test
+    public void testWindowLookupAfterRemovals() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        MultiAccountWindow window = new MultiAccountWindow(1024, 4, Duration.ofNanos(100));
+
+        for (int round = 0; round < 100; round++) {
+            long now = round * 100L;
+            for (int postId = 0; postId < 500; postId++) {
+                //Half of the posts are seen in every round, the other half only once in a while
+                if (postId % 2 == 0 || random.nextInt(10) == 0) {
+                    window.add(postId, "192.168.0." + postId % 7, null, 1, now);
+                }
+            }
+            for (int postId = 0; postId < 500; postId += 2) {
+                int entry = window.add(postId, "192.168.0." + postId % 7, null, 2, now);
+                assertEquals(round == 0, entry != MultiAccountWindow.NONE);
+                assertEquals(MultiAccountWindow.NONE, window.add(postId, "192.168.0." + postId % 7, null, 2, now));
+            }
+            //The entries that were not seen in this round expire
+            window.evictExpired(now + 50);
+            assertTrue(window.size() >= 250);
+        }
+        window.evictExpired(Long.MAX_VALUE);
+        assertEquals(0, window.size());
+    }
+
+    @Entity(name = "PostCommentDetails")
+    @Table(name = "post_comment_details")
+    public static class PostCommentDetails {
+
+        @Id
+        private Long id;
+
+        @Column(name = "post_id", nullable = false)
+        private Long postId;
+
+        @Column(name = "user_id", nullable = false)
+        private Long userId;
+
+        @Column(length = 18, nullable = false)
+        private String ip;
+
+        @Column(length = 256)
+        private String fingerprint;
+
+        public PostCommentDetails() {
+        }
+
+        public PostCommentDetails(Long id, Long postId, Long userId, String ip, String fingerprint) {
+            this.id = id;
+            this.postId = postId;
+            this.userId = userId;
+            this.ip = ip;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    @Entity(name = "StreamCheckpoint")
+    @Table(name = "stream_checkpoint")
+    public static class StreamCheckpoint {
+
+        @Id
+        @Column(length = 64)
+        private String name;
+
+        @Column(name = "last_processed_id", nullable = false)
+        private long lastProcessedId;
+    }
+}
@@ -0,0 +1,18 @@
+package com.vladmihalcea.book.hpjp.jdbc.fetching.stream;
+
+/**
+ * Notified by the {@link FraudDetectionEngine} when several user accounts comment on the same post
+ * from the same IP address and browser fingerprint.
+ * <p>
+ * It's called from the worker threads, so it must be thread-safe.
+ *
+ * @author Vlad Mihalcea
+ */
+@FunctionalInterface
+public interface FraudListener {
+
+    /**
+     * @param userIds the distinct user ids seen within the window, the last one being the user that triggered the alert
+     */
+    void onPossibleMultipleAccountFraud(long postId, String ip, String fingerprint, long[] userIds);
+}
@@ -0,0 +1,87 @@
+package com.vladmihalcea.book.hpjp.jdbc.fetching.stream;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Keeps the checkpoints in the {@code stream_checkpoint} table:
+ *
+ * <pre>
+ * create table stream_checkpoint (name varchar(64) not null, last_processed_id bigint not null, primary key (name))
+ * </pre>
+ *
+ * Every checkpoint is committed in its own transaction, as the stream is read
+ * from a long-running server-side cursor.
+ *
+ * @author Vlad Mihalcea
+ */
+public class JdbcCheckpointStore implements CheckpointStore {
+
+    private final DataSource dataSource;
+
+    public JdbcCheckpointStore(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public long load(String streamName) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("""
+                 SELECT last_processed_id
+                 FROM stream_checkpoint
+                 WHERE name = ?
+                 """)) {
+            statement.setString(1, streamName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                long lastProcessedId = resultSet.next() ? resultSet.getLong(1) : 0;
+                if (!connection.getAutoCommit()) {
+                    connection.commit();
+                }
+                return lastProcessedId;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void save(String streamName, long lastProcessedId) {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                int updateCount;
+                try (PreparedStatement statement = connection.prepareStatement("""
+                    UPDATE stream_checkpoint
+                    SET last_processed_id = ?
+                    WHERE name = ?
+                    """)) {
+                    statement.setLong(1, lastProcessedId);
+                    statement.setString(2, streamName);
+                    updateCount = statement.executeUpdate();
+                }
+                if (updateCount == 0) {
+                    try (PreparedStatement statement = connection.prepareStatement("""
+                        INSERT INTO stream_checkpoint (name, last_processed_id)
+                        VALUES (?, ?)
+                        """)) {
+                        statement.setString(1, streamName);
+                        statement.setLong(2, lastProcessedId);
+                        statement.executeUpdate();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
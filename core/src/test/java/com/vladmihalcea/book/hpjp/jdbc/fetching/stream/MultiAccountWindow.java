@@ -0,0 +1,254 @@
+package com.vladmihalcea.book.hpjp.jdbc.fetching.stream;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * The sliding window of the user ids seen for every {@code (post_id, ip, fingerprint)} combination.
+ * <p>
+ * Instead of a {@code Map<IpFingerprint, List<Long>>} per post, all entries live in preallocated
+ * parallel arrays, indexed by an open-addressing hash table, and the user ids of an entry occupy a
+ * fixed slice of a single {@code long[]}. So, tracking a row allocates nothing, and checking whether
+ * the user was already seen scans a few adjacent longs instead of boxing a {@code Long} for
+ * {@code List.contains}.
+ * <p>
+ * Entries that were not seen for the window duration are removed by {@link #evictExpired(long)}.
+ * When the window is full, the CLOCK algorithm evicts an entry that was not referenced since the
+ * clock hand last passed over it, which approximates evicting the least recently used entry.
+ * <p>
+ * The window is confined to a single worker thread, so it is not thread-safe.
+ *
+ * @author Vlad Mihalcea
+ */
+public class MultiAccountWindow {
+
+    public static final int NONE = -1;
+
+    private final int capacity;
+
+    private final int maxUsers;
+
+    private final long windowNanos;
+
+    /**
+     * The entry index plus one, so that zero marks an empty slot.
+     */
+    private final int[] table;
+
+    private final int mask;
+
+    private final int[] hashes;
+
+    private final long[] postIds;
+
+    private final String[] ips;
+
+    private final String[] fingerprints;
+
+    private final long[] userIds;
+
+    private final int[] userCounts;
+
+    private final long[] lastSeenNanos;
+
+    private final BitSet used;
+
+    private final BitSet referenced;
+
+    private final BitSet saturated;
+
+    private final int[] freeEntries;
+
+    private int freeCount;
+
+    private int clockHand;
+
+    private long evictionCount;
+
+    public MultiAccountWindow(int capacity, int maxUsers, Duration window) {
+        this.capacity = capacity;
+        this.maxUsers = maxUsers;
+        this.windowNanos = window.toNanos();
+        int tableSize = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) << 1;
+        this.table = new int[tableSize];
+        this.mask = tableSize - 1;
+        this.hashes = new int[capacity];
+        this.postIds = new long[capacity];
+        this.ips = new String[capacity];
+        this.fingerprints = new String[capacity];
+        this.userIds = new long[capacity * maxUsers];
+        this.userCounts = new int[capacity];
+        this.lastSeenNanos = new long[capacity];
+        this.used = new BitSet(capacity);
+        this.referenced = new BitSet(capacity);
+        this.saturated = new BitSet(capacity);
+        this.freeEntries = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            freeEntries[i] = capacity - 1 - i;
+        }
+        this.freeCount = capacity;
+    }
+
+    /**
+     * Record that the user commented on the post from the given IP address and fingerprint.
+     *
+     * @return the entry index if another user was already seen for the same post, IP address and fingerprint,
+     * and this user is new, or {@link #NONE} otherwise
+     */
+    public int add(long postId, String ip, String fingerprint, long userId, long nowNanos) {
+        int hash = hash(postId, ip, fingerprint);
+        int entry = find(hash, postId, ip, fingerprint);
+        if (entry == NONE) {
+            entry = insert(hash, postId, ip, fingerprint);
+        }
+        lastSeenNanos[entry] = nowNanos;
+        referenced.set(entry);
+
+        int offset = entry * maxUsers;
+        int userCount = userCounts[entry];
+        for (int i = offset; i < offset + userCount; i++) {
+            if (userIds[i] == userId) {
+                return NONE;
+            }
+        }
+        if (userCount == maxUsers) {
+            //Only the first user that does not fit is reported
+            if (saturated.get(entry)) {
+                return NONE;
+            }
+            saturated.set(entry);
+            return entry;
+        }
+        userIds[offset + userCount] = userId;
+        userCounts[entry] = ++userCount;
+        return userCount > 1 ? entry : NONE;
+    }
+
+    public long getPostId(int entry) {
+        return postIds[entry];
+    }
+
+    public String getIp(int entry) {
+        return ips[entry];
+    }
+
+    public String getFingerprint(int entry) {
+        return fingerprints[entry];
+    }
+
+    public long[] getUserIds(int entry) {
+        int offset = entry * maxUsers;
+        return Arrays.copyOfRange(userIds, offset, offset + userCounts[entry]);
+    }
+
+    /**
+     * Remove the entries that were not seen for longer than the window duration.
+     *
+     * @return the number of removed entries
+     */
+    public int evictExpired(long nowNanos) {
+        int removed = 0;
+        for (int entry = used.nextSetBit(0); entry >= 0; entry = used.nextSetBit(entry + 1)) {
+            if (nowNanos - lastSeenNanos[entry] > windowNanos) {
+                remove(entry);
+                removed++;
+            }
+        }
+        evictionCount += removed;
+        return removed;
+    }
+
+    public int size() {
+        return capacity - freeCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    private int find(int hash, long postId, String ip, String fingerprint) {
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (entry == NONE) {
+                return NONE;
+            }
+            if (hashes[entry] == hash &&
+                postIds[entry] == postId &&
+                ips[entry].equals(ip) &&
+                Objects.equals(fingerprints[entry], fingerprint)) {
+                return entry;
+            }
+        }
+    }
+
+    private int insert(int hash, long postId, String ip, String fingerprint) {
+        if (freeCount == 0) {
+            evictLeastRecentlyUsed();
+        }
+        int entry = freeEntries[--freeCount];
+        hashes[entry] = hash;
+        postIds[entry] = postId;
+        ips[entry] = ip;
+        fingerprints[entry] = fingerprint;
+        userCounts[entry] = 0;
+        saturated.clear(entry);
+        used.set(entry);
+
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+        return entry;
+    }
+
+    private void evictLeastRecentlyUsed() {
+        while (true) {
+            int entry = clockHand;
+            clockHand = (clockHand + 1) % capacity;
+            if (!referenced.get(entry)) {
+                remove(entry);
+                evictionCount++;
+                return;
+            }
+            referenced.clear(entry);
+        }
+    }
+
+    private void remove(int entry) {
+        int slot = hashes[entry] & mask;
+        while (table[slot] != entry + 1) {
+            slot = (slot + 1) & mask;
+        }
+        //Backward shift deletion, so that the lookups don't need tombstones
+        table[slot] = 0;
+        for (int next = (slot + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int home = hashes[table[next] - 1] & mask;
+            boolean reachable = slot <= next ?
+                slot < home && home <= next :
+                slot < home || home <= next;
+            if (!reachable) {
+                table[slot] = table[next];
+                table[next] = 0;
+                slot = next;
+            }
+        }
+
+        ips[entry] = null;
+        fingerprints[entry] = null;
+        used.clear(entry);
+        referenced.clear(entry);
+        freeEntries[freeCount++] = entry;
+    }
+
+    private int hash(long postId, String ip, String fingerprint) {
+        long hash = postId * 0x9E3779B97F4A7C15L;
+        hash = 31 * (hash ^ ip.hashCode()) + Objects.hashCode(fingerprint);
+        int h = (int) (hash ^ (hash >>> 32));
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+}
@@ -0,0 +1,106 @@
+package com.vladmihalcea.book.hpjp.jdbc.transaction.locking.advisory;
+
+/**
+ * A lease on a logical lock granted by the {@link AdvisoryLockManager}.
+ * <p>
+ * The lease must be renewed before the lease time elapses. Otherwise, the manager releases the lock,
+ * and {@link #isValid()} returns {@code false}, just like it does when the connection holding
+ * the advisory lock is lost.
+ *
+ * @author Vlad Mihalcea
+ */
+public class AdvisoryLock implements AutoCloseable {
+
+	enum State {
+		HELD,
+		LOST,
+		EXPIRED,
+		RELEASED
+	}
+
+	private final AdvisoryLockManager manager;
+
+	private final String key;
+
+	private final long lockId;
+
+	private final boolean shared;
+
+	private final long leaseNanos;
+
+	private long expiresAtNanos;
+
+	private State state = State.HELD;
+
+	AdvisoryLock(AdvisoryLockManager manager, String key, long lockId, boolean shared, long leaseNanos) {
+		this.manager = manager;
+		this.key = key;
+		this.lockId = lockId;
+		this.shared = shared;
+		this.leaseNanos = leaseNanos;
+		this.expiresAtNanos = System.nanoTime() + leaseNanos;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public long getLockId() {
+		return lockId;
+	}
+
+	public boolean isShared() {
+		return shared;
+	}
+
+	/**
+	 * @return {@code true} if the lock is still held, both locally and in the database
+	 */
+	public synchronized boolean isValid() {
+		return state == State.HELD;
+	}
+
+	/**
+	 * Extend the lease by another lease time.
+	 *
+	 * @return {@code false} if the lock was already released, expired or lost
+	 */
+	public synchronized boolean renew() {
+		if ( state != State.HELD ) {
+			return false;
+		}
+		expiresAtNanos = System.nanoTime() + leaseNanos;
+		return true;
+	}
+
+	/**
+	 * Release the lock. Calling it more than once, or after the lease expired, has no effect.
+	 */
+	@Override
+	public synchronized void close() {
+		if ( state == State.HELD || state == State.LOST ) {
+			state = State.RELEASED;
+			manager.release( this );
+		}
+	}
+
+	synchronized boolean expireIfDue(long nowNanos) {
+		if ( state == State.HELD && nowNanos - expiresAtNanos >= 0 ) {
+			state = State.EXPIRED;
+			manager.release( this );
+			return true;
+		}
+		return false;
+	}
+
+	synchronized void lose() {
+		if ( state == State.HELD ) {
+			state = State.LOST;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format( "%s lock on [%s]", shared ? "Shared" : "Exclusive", key );
+	}
+}
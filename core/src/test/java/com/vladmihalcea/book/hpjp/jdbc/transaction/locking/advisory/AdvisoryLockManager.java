@@ -0,0 +1,567 @@
+package com.vladmihalcea.book.hpjp.jdbc.transaction.locking.advisory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Grants logical read/write locks backed by PostgreSQL session-level advisory locks.
+ * <p>
+ * Unlike calling {@code pg_advisory_lock} on a pooled connection, which pins that connection
+ * for as long as the lock is held, all advisory locks are taken on a small set of dedicated connections,
+ * and every lock key is always mapped to the same connection, so it's released on the same session that acquired it.
+ * Because a dedicated connection is shared by many keys, it never blocks in the database.
+ * The database lock is requested with {@code pg_try_advisory_lock}, and retried with an exponential backoff.
+ * <p>
+ * The threads of this JVM waiting for the same key are coalesced, so only one of them polls the database,
+ * while the others wait locally. An exclusive lock is handed over to the next local writer
+ * without being released in the database, at most {@link #MAX_LOCAL_HANDOFFS} times in a row.
+ * <p>
+ * Every lock is a lease that must be renewed before the lease time elapses, or the manager releases it.
+ * The connections are checked periodically, and all the locks of a broken connection are marked as lost.
+ *
+ * @author Vlad Mihalcea
+ */
+public class AdvisoryLockManager implements AutoCloseable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( AdvisoryLockManager.class );
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * How many times in a row an exclusive lock is handed over to a local waiter before being released
+	 * in the database, so that other processes get a chance to acquire it too.
+	 */
+	static final int MAX_LOCAL_HANDOFFS = 16;
+
+	private static final long HEARTBEAT_NANOS = TimeUnit.SECONDS.toNanos( 1 );
+
+	private enum DatabaseLock {
+		NONE,
+		SHARED,
+		EXCLUSIVE
+	}
+
+	private final DataSource dataSource;
+
+	private final ConcurrentMap<Long, LockEntry> entries = new ConcurrentHashMap<>();
+
+	private final Set<AdvisoryLock> leases = ConcurrentHashMap.newKeySet();
+
+	private final LongAdder databaseAttemptCount = new LongAdder();
+
+	private final LongAdder localGrantCount = new LongAdder();
+
+	private int connectionCount = 2;
+
+	private long leaseNanos = TimeUnit.SECONDS.toNanos( 30 );
+
+	private long minBackoffNanos = TimeUnit.MICROSECONDS.toNanos( 100 );
+
+	private long maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos( 20 );
+
+	private LockConnection[] connections;
+
+	private ScheduledExecutorService watchdog;
+
+	private long lastHeartbeatNanos;
+
+	public AdvisoryLockManager(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	public AdvisoryLockManager setConnectionCount(int connectionCount) {
+		if ( connectionCount < 1 ) {
+			throw new IllegalArgumentException( "The connection count must be positive" );
+		}
+		this.connectionCount = connectionCount;
+		return this;
+	}
+
+	public AdvisoryLockManager setLeaseTime(Duration leaseTime) {
+		if ( leaseTime.isNegative() || leaseTime.isZero() ) {
+			throw new IllegalArgumentException( "The lease time must be positive" );
+		}
+		this.leaseNanos = leaseTime.toNanos();
+		return this;
+	}
+
+	public AdvisoryLockManager setBackoff(Duration minBackoff, Duration maxBackoff) {
+		this.minBackoffNanos = Math.max( 1, minBackoff.toNanos() );
+		this.maxBackoffNanos = Math.max( minBackoffNanos, maxBackoff.toNanos() );
+		return this;
+	}
+
+	/**
+	 * Open the dedicated connections, and start checking the leases and the connections.
+	 */
+	public AdvisoryLockManager start() {
+		connections = new LockConnection[connectionCount];
+		for ( int i = 0; i < connectionCount; i++ ) {
+			connections[i] = new LockConnection();
+			connections[i].open();
+		}
+		lastHeartbeatNanos = System.nanoTime();
+		long periodNanos = Math.min(
+			HEARTBEAT_NANOS,
+			Math.max( TimeUnit.MILLISECONDS.toNanos( 10 ), leaseNanos / 4 )
+		);
+		watchdog = Executors.newSingleThreadScheduledExecutor( runnable -> {
+			Thread thread = new Thread( runnable, "advisory-lock-watchdog" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+		watchdog.scheduleWithFixedDelay( this::checkLeases, periodNanos, periodNanos, TimeUnit.NANOSECONDS );
+		return this;
+	}
+
+	/**
+	 * Map the key onto the 64-bit advisory lock space using the FNV-1a hash of its UTF-8 bytes,
+	 * so every process computes the same lock identifier for the same key.
+	 */
+	public static long lockId(String key) {
+		long hash = FNV_OFFSET_BASIS;
+		for ( byte b : key.getBytes( StandardCharsets.UTF_8 ) ) {
+			hash ^= b & 0xFF;
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	public AdvisoryLock lock(String key) {
+		return acquire( key, false, Long.MAX_VALUE );
+	}
+
+	public AdvisoryLock lockShared(String key) {
+		return acquire( key, true, Long.MAX_VALUE );
+	}
+
+	/**
+	 * @return the exclusive lock, or {@code null} if it could not be acquired within the given timeout
+	 */
+	public AdvisoryLock tryLock(String key, Duration timeout) {
+		return acquire( key, false, timeout.toNanos() );
+	}
+
+	/**
+	 * @return the shared lock, or {@code null} if it could not be acquired within the given timeout
+	 */
+	public AdvisoryLock tryLockShared(String key, Duration timeout) {
+		return acquire( key, true, timeout.toNanos() );
+	}
+
+	/**
+	 * @return how many times the database was asked for an advisory lock
+	 */
+	public long getDatabaseAttemptCount() {
+		return databaseAttemptCount.sum();
+	}
+
+	/**
+	 * @return how many locks were granted without asking the database
+	 */
+	public long getLocalGrantCount() {
+		return localGrantCount.sum();
+	}
+
+	@Override
+	public void close() {
+		if ( watchdog != null ) {
+			watchdog.shutdownNow();
+		}
+		for ( AdvisoryLock lease : leases ) {
+			lease.lose();
+		}
+		if ( connections != null ) {
+			for ( LockConnection connection : connections ) {
+				connection.close();
+			}
+		}
+	}
+
+	private AdvisoryLock acquire(String key, boolean shared, long timeoutNanos) {
+		if ( connections == null ) {
+			throw new IllegalStateException( "The lock manager was not started" );
+		}
+		long lockId = lockId( key );
+		LockEntry entry = entries.compute(
+			lockId,
+			(id, current) -> ( current != null ? current : new LockEntry( id ) ).retain()
+		);
+		boolean acquired = false;
+		try {
+			acquired = entry.acquire( shared, timeoutNanos );
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException( "Interrupted while waiting for the lock on [" + key + "]", e );
+		}
+		finally {
+			if ( !acquired ) {
+				releaseEntry( entry );
+			}
+		}
+		if ( !acquired ) {
+			return null;
+		}
+		AdvisoryLock lease = new AdvisoryLock( this, key, lockId, shared, leaseNanos );
+		leases.add( lease );
+		return lease;
+	}
+
+	void release(AdvisoryLock lease) {
+		leases.remove( lease );
+		LockEntry entry = entries.get( lease.getLockId() );
+		try {
+			entry.release( lease.isShared() );
+		}
+		finally {
+			releaseEntry( entry );
+		}
+	}
+
+	private void releaseEntry(LockEntry entry) {
+		entries.computeIfPresent( entry.lockId, (id, current) -> current.unretain() ? null : current );
+	}
+
+	private void checkLeases() {
+		long nowNanos = System.nanoTime();
+		for ( AdvisoryLock lease : leases ) {
+			try {
+				if ( lease.expireIfDue( nowNanos ) ) {
+					LOGGER.warn( "The {} lease expired and the lock was released", lease );
+				}
+			}
+			catch (RuntimeException e) {
+				LOGGER.error( "Could not release the expired {}", lease, e );
+			}
+		}
+		if ( nowNanos - lastHeartbeatNanos >= HEARTBEAT_NANOS ) {
+			lastHeartbeatNanos = nowNanos;
+			for ( LockConnection connection : connections ) {
+				if ( !connection.isValid() ) {
+					reconnect( connection );
+				}
+			}
+		}
+	}
+
+	private void reconnect(LockConnection connection) {
+		LOGGER.warn( "The advisory lock connection is broken, so all its locks are lost" );
+		for ( LockEntry entry : entries.values() ) {
+			if ( entry.connection == connection ) {
+				entry.lose();
+			}
+		}
+		for ( AdvisoryLock lease : leases ) {
+			if ( connectionFor( lease.getLockId() ) == connection ) {
+				lease.lose();
+			}
+		}
+		try {
+			connection.close();
+			connection.open();
+		}
+		catch (RuntimeException e) {
+			LOGGER.error( "Could not reopen the advisory lock connection", e );
+		}
+	}
+
+	private LockConnection connectionFor(long lockId) {
+		return connections[(int) Long.remainderUnsigned( lockId, connections.length )];
+	}
+
+	/**
+	 * The local state of a single lock identifier, shared by all the threads of this JVM locking it.
+	 */
+	private final class LockEntry {
+
+		private final long lockId;
+
+		private final LockConnection connection;
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private final Condition changed = lock.newCondition();
+
+		/**
+		 * How many threads either hold or wait for this entry, only changed while the map bin is locked.
+		 */
+		private int references;
+
+		private DatabaseLock held = DatabaseLock.NONE;
+
+		private int readers;
+
+		private boolean writer;
+
+		private int waitingReaders;
+
+		private int waitingWriters;
+
+		private boolean acquiring;
+
+		private int handoffs;
+
+		private LockEntry(long lockId) {
+			this.lockId = lockId;
+			this.connection = connectionFor( lockId );
+		}
+
+		private LockEntry retain() {
+			references++;
+			return this;
+		}
+
+		/**
+		 * @return {@code true} if no thread holds or waits for this entry anymore
+		 */
+		private boolean unretain() {
+			return --references == 0;
+		}
+
+		private boolean acquire(boolean shared, long timeoutNanos) throws InterruptedException {
+			boolean timed = timeoutNanos != Long.MAX_VALUE;
+			long deadline = System.nanoTime() + ( timed ? timeoutNanos : 0 );
+			long backoffNanos = minBackoffNanos;
+			DatabaseLock mode = shared ? DatabaseLock.SHARED : DatabaseLock.EXCLUSIVE;
+
+			lock.lock();
+			if ( shared ) {
+				waitingReaders++;
+			}
+			else {
+				waitingWriters++;
+			}
+			try {
+				while ( true ) {
+					boolean grantable = shared ? !writer && waitingWriters == 0 : !writer && readers == 0;
+					long waitNanos = timed ? deadline - System.nanoTime() : Long.MAX_VALUE;
+
+					if ( grantable && held == mode ) {
+						grant( shared );
+						localGrantCount.increment();
+						return true;
+					}
+					if ( grantable && !acquiring ) {
+						if ( held != DatabaseLock.NONE ) {
+							connection.unlock( lockId, held == DatabaseLock.SHARED );
+							held = DatabaseLock.NONE;
+						}
+						acquiring = true;
+						boolean acquired = false;
+						lock.unlock();
+						try {
+							databaseAttemptCount.increment();
+							acquired = connection.tryLock( lockId, shared );
+						}
+						finally {
+							lock.lock();
+							acquiring = false;
+							changed.signalAll();
+						}
+						if ( acquired ) {
+							held = mode;
+							handoffs = 0;
+							grant( shared );
+							return true;
+						}
+						waitNanos = timed ? deadline - System.nanoTime() : Long.MAX_VALUE;
+						if ( waitNanos <= 0 ) {
+							return false;
+						}
+						long jitteredBackoffNanos = ThreadLocalRandom.current().nextLong( backoffNanos / 2, backoffNanos + 1 );
+						backoffNanos = Math.min( maxBackoffNanos, backoffNanos * 2 );
+						changed.awaitNanos( Math.min( waitNanos, jitteredBackoffNanos ) );
+						continue;
+					}
+					if ( waitNanos <= 0 ) {
+						return false;
+					}
+					if ( timed ) {
+						changed.awaitNanos( waitNanos );
+					}
+					else {
+						changed.await();
+					}
+				}
+			}
+			finally {
+				if ( shared ) {
+					waitingReaders--;
+				}
+				else {
+					waitingWriters--;
+				}
+				if ( held == DatabaseLock.EXCLUSIVE && !writer && readers == 0 && waitingWriters == 0 ) {
+					unlockInDatabase();
+				}
+				changed.signalAll();
+				lock.unlock();
+			}
+		}
+
+		private void grant(boolean shared) {
+			if ( shared ) {
+				readers++;
+			}
+			else {
+				writer = true;
+			}
+		}
+
+		private void release(boolean shared) {
+			lock.lock();
+			try {
+				if ( shared ) {
+					readers--;
+				}
+				else {
+					writer = false;
+				}
+				if ( readers == 0 && !writer && held != DatabaseLock.NONE ) {
+					if ( held == DatabaseLock.EXCLUSIVE && waitingWriters > 0 && handoffs < MAX_LOCAL_HANDOFFS ) {
+						handoffs++;
+					}
+					else {
+						unlockInDatabase();
+					}
+				}
+				changed.signalAll();
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+
+		private void unlockInDatabase() {
+			try {
+				connection.unlock( lockId, held == DatabaseLock.SHARED );
+			}
+			finally {
+				held = DatabaseLock.NONE;
+			}
+		}
+
+		private void lose() {
+			lock.lock();
+			try {
+				held = DatabaseLock.NONE;
+				handoffs = 0;
+				changed.signalAll();
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * A dedicated connection shared by all the lock identifiers mapped onto it,
+	 * so every statement executes while holding the connection monitor.
+	 */
+	private final class LockConnection {
+
+		private Connection connection;
+
+		private PreparedStatement tryLockStatement;
+
+		private PreparedStatement tryLockSharedStatement;
+
+		private PreparedStatement unlockStatement;
+
+		private PreparedStatement unlockSharedStatement;
+
+		private synchronized void open() {
+			try {
+				connection = dataSource.getConnection();
+				connection.setAutoCommit( true );
+				tryLockStatement = connection.prepareStatement( "select pg_try_advisory_lock(?)" );
+				tryLockSharedStatement = connection.prepareStatement( "select pg_try_advisory_lock_shared(?)" );
+				unlockStatement = connection.prepareStatement( "select pg_advisory_unlock(?)" );
+				unlockSharedStatement = connection.prepareStatement( "select pg_advisory_unlock_shared(?)" );
+			}
+			catch (SQLException e) {
+				throw new IllegalStateException( e );
+			}
+		}
+
+		private synchronized boolean tryLock(long lockId, boolean shared) {
+			return execute( shared ? tryLockSharedStatement : tryLockStatement, lockId );
+		}
+
+		private synchronized void unlock(long lockId, boolean shared) {
+			if ( !execute( shared ? unlockSharedStatement : unlockStatement, lockId ) ) {
+				LOGGER.warn( "The advisory lock {} was not held by the session", lockId );
+			}
+		}
+
+		private synchronized boolean isValid() {
+			try {
+				return connection.isValid( 1 );
+			}
+			catch (SQLException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Release all the session advisory locks, so that they don't outlive the manager
+		 * when the connection goes back to the pool.
+		 */
+		private synchronized void close() {
+			if ( connection == null ) {
+				return;
+			}
+			try ( Statement statement = connection.createStatement() ) {
+				statement.execute( "select pg_advisory_unlock_all()" );
+			}
+			catch (SQLException e) {
+				LOGGER.warn( "Could not release the session advisory locks", e );
+			}
+			try {
+				connection.close();
+			}
+			catch (SQLException e) {
+				LOGGER.warn( "Could not close the advisory lock connection", e );
+			}
+			connection = null;
+		}
+
+		private boolean execute(PreparedStatement statement, long lockId) {
+			if ( connection == null ) {
+				throw new IllegalStateException( "The advisory lock connection is closed" );
+			}
+			try {
+				statement.setLong( 1, lockId );
+				try ( ResultSet resultSet = statement.executeQuery() ) {
+					resultSet.next();
+					return resultSet.getBoolean( 1 );
+				}
+			}
+			catch (SQLException e) {
+				throw new IllegalStateException( e );
+			}
+		}
+	}
+}
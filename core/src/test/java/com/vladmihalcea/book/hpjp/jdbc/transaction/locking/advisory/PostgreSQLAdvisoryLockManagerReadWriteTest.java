@@ -0,0 +1,101 @@
+package com.vladmihalcea.book.hpjp.jdbc.transaction.locking.advisory;
+
+import com.vladmihalcea.book.hpjp.util.AbstractPostgreSQLIntegrationTest;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+/**
+ * Every {@link AdvisoryLockManager} uses its own connections, so two managers behave just like two JVMs.
+ *
+ * @author Vlad Mihalcea
+ */
+public class PostgreSQLAdvisoryLockManagerReadWriteTest extends AbstractPostgreSQLIntegrationTest {
+
+	private static final String DOCUMENT = "document-123";
+
+	@Override
+	protected Class<?>[] entities() {
+		return new Class<?>[] {
+		};
+	}
+
+	@Test
+	public void testSharedBlocksWrite() {
+		try (AdvisoryLockManager aliceManager = new AdvisoryLockManager( dataSource() ).start();
+			 AdvisoryLockManager bobManager = new AdvisoryLockManager( dataSource() ).start()) {
+
+			AdvisoryLock aliceLock = aliceManager.lockShared( DOCUMENT );
+			AdvisoryLock carolLock = aliceManager.tryLockShared( DOCUMENT, Duration.ZERO );
+			assertNotNull( carolLock );
+			assertEquals( 1, aliceManager.getDatabaseAttemptCount() );
+
+			AdvisoryLock bobLock = bobManager.tryLockShared( DOCUMENT, Duration.ofMillis( 100 ) );
+			assertNotNull( bobLock );
+
+			assertNull( bobManager.tryLock( DOCUMENT, Duration.ofMillis( 100 ) ) );
+			assertNull( aliceManager.tryLock( DOCUMENT, Duration.ofMillis( 100 ) ) );
+
+			aliceLock.close();
+			carolLock.close();
+			bobLock.close();
+
+			AdvisoryLock writeLock = bobManager.tryLock( DOCUMENT, Duration.ofMillis( 100 ) );
+			assertNotNull( writeLock );
+			writeLock.close();
+		}
+	}
+
+	@Test
+	public void testExclusiveBlocksShared() {
+		try (AdvisoryLockManager aliceManager = new AdvisoryLockManager( dataSource() ).start();
+			 AdvisoryLockManager bobManager = new AdvisoryLockManager( dataSource() ).start()) {
+
+			AdvisoryLock aliceLock = aliceManager.lock( DOCUMENT );
+
+			assertNull( aliceManager.tryLockShared( DOCUMENT, Duration.ofMillis( 100 ) ) );
+			assertNull( bobManager.tryLockShared( DOCUMENT, Duration.ofMillis( 100 ) ) );
+
+			aliceLock.close();
+			aliceLock.close();
+
+			AdvisoryLock bobLock = bobManager.tryLockShared( DOCUMENT, Duration.ofMillis( 100 ) );
+			assertNotNull( bobLock );
+			bobLock.close();
+		}
+	}
+
+	@Test
+	public void testLeaseExpiration() {
+		try (AdvisoryLockManager aliceManager = new AdvisoryLockManager( dataSource() )
+				.setLeaseTime( Duration.ofMillis( 200 ) )
+				.start();
+			 AdvisoryLockManager bobManager = new AdvisoryLockManager( dataSource() ).start()) {
+
+			AdvisoryLock aliceLock = aliceManager.lock( DOCUMENT );
+			for ( int i = 0; i < 5; i++ ) {
+				sleep( 100 );
+				assertTrue( aliceLock.renew() );
+			}
+			assertNull( bobManager.tryLock( DOCUMENT, Duration.ofMillis( 10 ) ) );
+
+			sleep( 500 );
+			assertFalse( aliceLock.isValid() );
+			assertFalse( aliceLock.renew() );
+
+			AdvisoryLock bobLock = bobManager.tryLock( DOCUMENT, Duration.ofMillis( 100 ) );
+			assertNotNull( bobLock );
+			aliceLock.close();
+			assertTrue( bobLock.isValid() );
+			bobLock.close();
+		}
+	}
+
+	@Test
+	public void testLockId() {
+		assertEquals( AdvisoryLockManager.lockId( DOCUMENT ), AdvisoryLockManager.lockId( "document-" + 123 ) );
+		assertNotEquals( AdvisoryLockManager.lockId( DOCUMENT ), AdvisoryLockManager.lockId( "document-124" ) );
+	}
+}
@@ -0,0 +1,47 @@
+package com.vladmihalcea.book.hpjp.jdbc.transaction.locking.advisory;
+
+import java.sql.Connection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs the same workers as {@link PostgreSQLSessionAdvisoryLocksTest}, but the log locks are taken
+ * by the {@link AdvisoryLockManager} on its own connections instead of on the worker connections.
+ *
+ * @author Vlad Mihalcea
+ */
+public class PostgreSQLAdvisoryLockManagerTest extends AbstractPostgreSQLAdvisoryLocksTest {
+
+	private final Map<Integer, AdvisoryLock> workerLocks = new ConcurrentHashMap<>();
+
+	private AdvisoryLockManager lockManager;
+
+	@Override
+	public void init() {
+		super.init();
+		lockManager = new AdvisoryLockManager( dataSource() ).start();
+	}
+
+	@Override
+	public void destroy() {
+		LOGGER.info(
+			"The lock manager asked the database {} times, and granted {} locks locally",
+			lockManager.getDatabaseAttemptCount(),
+			lockManager.getLocalGrantCount()
+		);
+		lockManager.close();
+		super.destroy();
+	}
+
+	@Override
+	protected int acquireLock(Connection connection, int logIndex, int workerId) {
+		LOGGER.info( "Worker {} writes to log {}", workerId, logIndex );
+		workerLocks.put( workerId, lockManager.lock( "log-" + logIndex ) );
+		return logIndex;
+	}
+
+	@Override
+	protected void releaseLock(Connection connection, int logIndex, int workerId) {
+		workerLocks.remove( workerId ).close();
+	}
+}
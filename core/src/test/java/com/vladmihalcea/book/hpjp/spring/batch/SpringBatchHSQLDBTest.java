@@ -0,0 +1,129 @@
+package com.vladmihalcea.book.hpjp.spring.batch;
+
+import com.vladmihalcea.book.hpjp.spring.batch.config.SpringBatchHSQLDBConfiguration;
+import com.vladmihalcea.book.hpjp.spring.batch.domain.Post;
+import com.vladmihalcea.book.hpjp.spring.batch.domain.PostStatus;
+import com.vladmihalcea.book.hpjp.spring.batch.service.BulkLoadPipeline;
+import com.vladmihalcea.book.hpjp.spring.batch.service.ForumService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Vlad Mihalcea
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = SpringBatchHSQLDBConfiguration.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class SpringBatchHSQLDBTest {
+
+    protected final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    public static final int POST_COUNT = 10 * 1000;
+
+    @Autowired
+    private ForumService forumService;
+
+    @Test
+    public void testBulkLoad() {
+        int writerCount = 4;
+
+        BulkLoadPipeline.Metrics metrics = forumService.bulkLoadPosts(
+            (minId, maxId) -> () -> LongStream.rangeClosed(minId, maxId)
+                .mapToObj(postId -> new Post()
+                    .setId(postId)
+                    .setTitle(
+                        String.format("High-Performance Java Persistence - Page %d",
+                            postId
+                        )
+                    )
+                    .setStatus(PostStatus.PENDING)
+                )
+                .iterator(),
+            1,
+            POST_COUNT,
+            writerCount
+        );
+
+        assertEquals(POST_COUNT, metrics.rowCount());
+        assertEquals(writerCount, metrics.workers().size());
+        for (BulkLoadPipeline.WorkerMetrics workerMetrics : metrics.workers()) {
+            //Every writer owns one contiguous identifier range
+            assertEquals(1 + workerMetrics.index() * POST_COUNT / writerCount, workerMetrics.minId());
+            assertEquals((workerMetrics.index() + 1) * POST_COUNT / writerCount, workerMetrics.maxId());
+            assertEquals(POST_COUNT / writerCount, workerMetrics.rowCount());
+            assertEquals(POST_COUNT / writerCount / 100, workerMetrics.chunkCount());
+            LOGGER.info(
+                "Writer [{}] loaded {} posts at {} posts/second",
+                workerMetrics.index(),
+                workerMetrics.rowCount(),
+                Math.round(workerMetrics.rowsPerSecond())
+            );
+        }
+        LOGGER.info(
+            "Loaded {} posts at {} posts/second, with {} ms of back-pressure",
+            metrics.rowCount(),
+            Math.round(metrics.rowsPerSecond()),
+            metrics.backPressureMillis()
+        );
+
+        List<Post> matchedPosts = forumService.findByIds(
+            LongStream.rangeClosed(1, 1000).boxed().toList()
+        );
+        assertEquals(1000, matchedPosts.size());
+    }
+
+    @Test
+    public void testBulkLoadWritersRunConcurrently() {
+        int writerCount = 4;
+
+        BulkLoadPipeline.Metrics metrics = forumService.bulkLoadPosts(
+            (minId, maxId) -> () -> LongStream.rangeClosed(minId, maxId)
+                .mapToObj(postId -> new Post()
+                    .setId(postId)
+                    .setTitle("High-Performance Java Persistence")
+                    .setStatus(PostStatus.PENDING)
+                )
+                .iterator(),
+            1,
+            POST_COUNT,
+            writerCount
+        );
+
+        LOGGER.info("Up to {} writers were writing at the same time", metrics.maxConcurrentWriters());
+        //Every writer has its own reader, so the partitions must not be written one after the other
+        assertTrue(metrics.maxConcurrentWriters() > 1);
+        for (BulkLoadPipeline.WorkerMetrics workerMetrics : metrics.workers()) {
+            assertEquals(POST_COUNT / writerCount, workerMetrics.rowCount());
+        }
+    }
+
+    @Test
+    public void testBulkLoadFailure() {
+        List<Post> posts = LongStream.of(1, 2, 3, 2)
+            .mapToObj(postId -> new Post()
+                .setId(postId)
+                .setTitle("High-Performance Java Persistence")
+                .setStatus(PostStatus.PENDING)
+            )
+            .toList();
+
+        try {
+            forumService.bulkLoadPosts((minId, maxId) -> posts, 1, 3, 1);
+            fail("Should have thrown a duplicate key failure");
+        } catch (IllegalStateException expected) {
+            LOGGER.info("The bulk load failed as expected", expected);
+        }
+        assertTrue(forumService.findByIds(List.of(1L, 2L, 3L)).isEmpty());
+    }
+}
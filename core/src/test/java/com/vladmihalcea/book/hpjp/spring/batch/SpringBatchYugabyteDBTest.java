@@ -3,6 +3,7 @@ package com.vladmihalcea.book.hpjp.spring.batch;
 import com.vladmihalcea.book.hpjp.spring.batch.config.SpringBatchYugabyteDBConfiguration;
 import com.vladmihalcea.book.hpjp.spring.batch.domain.Post;
 import com.vladmihalcea.book.hpjp.spring.batch.domain.PostStatus;
+import com.vladmihalcea.book.hpjp.spring.batch.service.BulkLoadPipeline;
 import com.vladmihalcea.book.hpjp.spring.batch.service.ForumService;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -60,6 +61,34 @@ public class SpringBatchYugabyteDBTest {
         assertEquals(1000, matchedPosts.size());
     }
 
+    @Test
+    public void testBulkLoad() {
+        BulkLoadPipeline.Metrics metrics = forumService.bulkLoadPosts(
+            (minId, maxId) -> () -> LongStream.rangeClosed(minId, maxId)
+                .mapToObj(postId -> new Post()
+                    .setId(postId)
+                    .setTitle(
+                        String.format("High-Performance Java Persistence - Page %d",
+                            postId
+                        )
+                    )
+                    .setStatus(PostStatus.PENDING)
+                )
+                .iterator(),
+            1,
+            POST_COUNT,
+            threadCount
+        );
+
+        assertEquals(POST_COUNT, metrics.rowCount());
+        LOGGER.info(
+            "Loaded {} posts at {} posts/second, with {} ms of back-pressure",
+            metrics.rowCount(),
+            Math.round(metrics.rowsPerSecond()),
+            metrics.backPressureMillis()
+        );
+    }
+
     private int threadCount = 6;
 
     private long threadExecutionSeconds = TimeUnit.MINUTES.toSeconds(3);
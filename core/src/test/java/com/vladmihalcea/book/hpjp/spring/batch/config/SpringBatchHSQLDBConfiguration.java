@@ -0,0 +1,20 @@
+package com.vladmihalcea.book.hpjp.spring.batch.config;
+
+import com.vladmihalcea.book.hpjp.util.providers.Database;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Runs the Spring batch services against HSQLDB for local testing.
+ *
+ * @author Vlad Mihalcea
+ */
+@Configuration
+public class SpringBatchHSQLDBConfiguration extends SpringBatchYugabyteDBConfiguration {
+
+    @Override
+    @Bean
+    public Database database() {
+        return Database.HSQLDB;
+    }
+}
@@ -0,0 +1,399 @@
+package com.vladmihalcea.book.hpjp.spring.batch.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bulk-loads entities using bounded producer/consumer pipelines.
+ * <p>
+ * The {@code [minId, maxId]} identifier range is split into one contiguous partition per writer, so concurrent
+ * writers never insert into the same index pages or range-sharded tablets. The input is split up front too,
+ * as every partition is read from its own {@link PartitionSource} by a dedicated reader, which hands the entities
+ * to its writer through a bounded queue. This way, all writers are busy even if every partition is read in
+ * identifier order.
+ * <p>
+ * Every writer owns a {@link Session} that holds its JDBC connection for the whole load.
+ * The entities are persisted in chunks, and every chunk is written in its own transaction,
+ * as a single JDBC batch, after which the persistence context is cleared.
+ * <p>
+ * The writer queues are bounded, so a reader blocks when its writer cannot keep up.
+ * The time the readers spent blocked is reported as the back-pressure time.
+ *
+ * @author Vlad Mihalcea
+ */
+public class BulkLoadPipeline<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkLoadPipeline.class);
+
+    private static final Object END_OF_STREAM = new Object();
+
+    /**
+     * Reads the entities of a partition of the identifier range.
+     */
+    @FunctionalInterface
+    public interface PartitionSource<T> {
+
+        /**
+         * @return the entities whose identifiers are in the {@code [minId, maxId]} range
+         */
+        Iterable<T> entities(long minId, long maxId);
+    }
+
+    private final SessionFactory sessionFactory;
+
+    private final ToLongFunction<T> idFunction;
+
+    private int workerCount = Runtime.getRuntime().availableProcessors();
+
+    private int chunkSize = 100;
+
+    private int queueCapacity = 1000;
+
+    public BulkLoadPipeline(EntityManagerFactory entityManagerFactory, ToLongFunction<T> idFunction) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        this.idFunction = idFunction;
+    }
+
+    public BulkLoadPipeline<T> setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+        return this;
+    }
+
+    public BulkLoadPipeline<T> setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public BulkLoadPipeline<T> setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Load the entities whose identifiers are in the {@code [minId, maxId]} range.
+     *
+     * @return the load metrics
+     * @throws IllegalStateException if any reader or writer fails, in which case the remaining entities are not loaded
+     */
+    public Metrics load(PartitionSource<T> source, long minId, long maxId) {
+        return load(source, minId, maxId, workerCount);
+    }
+
+    /**
+     * Load the entities whose identifiers are in the {@code [minId, maxId]} range using the given number of writers.
+     *
+     * @return the load metrics
+     * @throws IllegalStateException if any reader or writer fails, in which case the remaining entities are not loaded
+     */
+    public Metrics load(PartitionSource<T> source, long minId, long maxId, int workerCount) {
+        if (maxId < minId) {
+            throw new IllegalArgumentException(
+                String.format("The identifier range [%d, %d] is empty", minId, maxId)
+            );
+        }
+        long idCount = maxId - minId + 1;
+        long partitionSize = idCount / workerCount;
+        long remainder = idCount % workerCount;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(2 * workerCount, r -> {
+            Thread thread = new Thread(r, "bulk-load-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicInteger activeWriters = new AtomicInteger();
+        AtomicInteger maxActiveWriters = new AtomicInteger();
+        List<Future<Long>> readerFutures = new ArrayList<>(workerCount);
+        List<Future<WorkerMetrics>> writerFutures = new ArrayList<>(workerCount);
+
+        long startNanos = System.nanoTime();
+        try {
+            long partitionMinId = minId;
+            for (int i = 0; i < workerCount; i++) {
+                long partitionMaxId = partitionMinId + partitionSize + (i < remainder ? 1 : 0) - 1;
+                BlockingQueue<Object> queue = new ArrayBlockingQueue<>(queueCapacity);
+                writerFutures.add(executorService.submit(
+                    new Writer(i, partitionMinId, partitionMaxId, queue, failure, activeWriters, maxActiveWriters)
+                ));
+                readerFutures.add(executorService.submit(
+                    new Reader(source, partitionMinId, partitionMaxId, queue, failure)
+                ));
+                partitionMinId = partitionMaxId + 1;
+            }
+
+            long backPressureNanos = 0;
+            for (Future<Long> future : readerFutures) {
+                backPressureNanos += future.get();
+            }
+            List<WorkerMetrics> workerMetrics = new ArrayList<>(workerCount);
+            for (Future<WorkerMetrics> future : writerFutures) {
+                workerMetrics.add(future.get());
+            }
+            if (failure.get() != null) {
+                throw new IllegalStateException("The bulk load failed", failure.get());
+            }
+
+            Metrics metrics = new Metrics(
+                workerMetrics,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                TimeUnit.NANOSECONDS.toMillis(backPressureNanos),
+                maxActiveWriters.get()
+            );
+            LOGGER.info("Bulk load finished: {}", metrics);
+            return metrics;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The bulk load was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("The bulk load failed", e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads a partition and hands its entities over to the writer queue.
+     *
+     * @return the time spent waiting for the writer, in nanoseconds
+     */
+    private class Reader implements Callable<Long> {
+
+        private final PartitionSource<T> source;
+
+        private final long minId;
+
+        private final long maxId;
+
+        private final BlockingQueue<Object> queue;
+
+        private final AtomicReference<Throwable> failure;
+
+        Reader(PartitionSource<T> source, long minId, long maxId,
+                BlockingQueue<Object> queue, AtomicReference<Throwable> failure) {
+            this.source = source;
+            this.minId = minId;
+            this.maxId = maxId;
+            this.queue = queue;
+            this.failure = failure;
+        }
+
+        @Override
+        public Long call() throws InterruptedException {
+            long backPressureNanos = 0;
+            try {
+                if (minId <= maxId) {
+                    for (T entity : source.entities(minId, maxId)) {
+                        long id = idFunction.applyAsLong(entity);
+                        if (id < minId || id > maxId) {
+                            throw new IllegalArgumentException(
+                                String.format("The identifier [%d] is outside the [%d, %d] partition", id, minId, maxId)
+                            );
+                        }
+                        if (!queue.offer(entity)) {
+                            long blockedStartNanos = System.nanoTime();
+                            while (!queue.offer(entity, 100, TimeUnit.MILLISECONDS)) {
+                                if (failure.get() != null) {
+                                    break;
+                                }
+                            }
+                            backPressureNanos += System.nanoTime() - blockedStartNanos;
+                        }
+                        if (failure.get() != null) {
+                            break;
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+                LOGGER.error("Reader of the [{}, {}] partition failed", minId, maxId, e);
+            } catch (Throwable e) {
+                //The writer must stop too, so the failure is recorded before it's propagated
+                failure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                while (!queue.offer(END_OF_STREAM, 100, TimeUnit.MILLISECONDS)) {
+                    if (failure.get() != null) {
+                        queue.clear();
+                    }
+                }
+            }
+            return backPressureNanos;
+        }
+    }
+
+    /**
+     * Drains its queue and writes the entities in chunks using a single {@link Session}.
+     */
+    private class Writer implements Callable<WorkerMetrics> {
+
+        private final int index;
+
+        private final long minId;
+
+        private final long maxId;
+
+        private final BlockingQueue<Object> queue;
+
+        private final AtomicReference<Throwable> failure;
+
+        private final AtomicInteger activeWriters;
+
+        private final AtomicInteger maxActiveWriters;
+
+        private final List<T> chunk = new ArrayList<>(chunkSize);
+
+        private long rowCount;
+
+        private long chunkCount;
+
+        private long writeNanos;
+
+        private int maxQueueSize;
+
+        Writer(int index, long minId, long maxId, BlockingQueue<Object> queue, AtomicReference<Throwable> failure,
+                AtomicInteger activeWriters, AtomicInteger maxActiveWriters) {
+            this.index = index;
+            this.minId = minId;
+            this.maxId = maxId;
+            this.queue = queue;
+            this.failure = failure;
+            this.activeWriters = activeWriters;
+            this.maxActiveWriters = maxActiveWriters;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public WorkerMetrics call() throws InterruptedException {
+            long startNanos = System.nanoTime();
+            try (Session session = sessionFactory.withOptions()
+                    .connectionHandlingMode(PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_HOLD)
+                    .openSession()) {
+                session.setJdbcBatchSize(chunkSize);
+                while (true) {
+                    maxQueueSize = Math.max(maxQueueSize, queue.size());
+                    Object element = queue.take();
+                    if (element == END_OF_STREAM) {
+                        break;
+                    }
+                    if (failure.get() != null) {
+                        continue;
+                    }
+                    chunk.add((T) element);
+                    if (chunk.size() == chunkSize) {
+                        write(session);
+                    }
+                }
+                if (!chunk.isEmpty() && failure.get() == null) {
+                    write(session);
+                }
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+                LOGGER.error("Writer [{}] failed", index, e);
+            } catch (Throwable e) {
+                //The reader must stop waiting for the queue, so the failure is recorded before it's propagated
+                failure.compareAndSet(null, e);
+                throw e;
+            }
+            return new WorkerMetrics(
+                index,
+                minId,
+                maxId,
+                rowCount,
+                chunkCount,
+                TimeUnit.NANOSECONDS.toMillis(writeNanos),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                maxQueueSize
+            );
+        }
+
+        private void write(Session session) {
+            long startNanos = System.nanoTime();
+            maxActiveWriters.accumulateAndGet(activeWriters.incrementAndGet(), Math::max);
+            Transaction transaction = session.beginTransaction();
+            try {
+                for (T entity : chunk) {
+                    session.persist(entity);
+                }
+                session.flush();
+                transaction.commit();
+            } catch (RuntimeException | Error e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            } finally {
+                session.clear();
+                activeWriters.decrementAndGet();
+            }
+            writeNanos += System.nanoTime() - startNanos;
+            rowCount += chunk.size();
+            chunkCount++;
+            chunk.clear();
+        }
+    }
+
+    /**
+     * @param index the writer index
+     * @param minId the first identifier of the writer partition
+     * @param maxId the last identifier of the writer partition
+     * @param rowCount the number of rows written
+     * @param chunkCount the number of chunks, each one written in its own transaction
+     * @param writeMillis the time spent writing the chunks
+     * @param elapsedMillis the writer lifetime
+     * @param maxQueueSize the queue high-water mark
+     */
+    public record WorkerMetrics(
+        int index,
+        long minId,
+        long maxId,
+        long rowCount,
+        long chunkCount,
+        long writeMillis,
+        long elapsedMillis,
+        int maxQueueSize) {
+
+        /**
+         * @return the rows written per second of write time
+         */
+        public double rowsPerSecond() {
+            return writeMillis > 0 ? rowCount * 1000d / writeMillis : rowCount * 1000d;
+        }
+    }
+
+    /**
+     * @param workers the metrics of every writer
+     * @param elapsedMillis the total load time
+     * @param backPressureMillis the time the readers spent waiting for the writers
+     * @param maxConcurrentWriters the maximum number of writers that were writing a chunk at the same time
+     */
+    public record Metrics(
+        List<WorkerMetrics> workers,
+        long elapsedMillis,
+        long backPressureMillis,
+        int maxConcurrentWriters) {
+
+        public long rowCount() {
+            return workers.stream().mapToLong(WorkerMetrics::rowCount).sum();
+        }
+
+        /**
+         * @return the rows written per second of total load time
+         */
+        public double rowsPerSecond() {
+            return elapsedMillis > 0 ? rowCount() * 1000d / elapsedMillis : rowCount() * 1000d;
+        }
+    }
+}
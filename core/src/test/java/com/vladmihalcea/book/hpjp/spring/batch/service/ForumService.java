@@ -4,6 +4,7 @@ import com.vladmihalcea.book.hpjp.spring.batch.domain.Post;
 import com.vladmihalcea.book.hpjp.spring.batch.repository.PostRepository;
 import com.vladmihalcea.book.hpjp.util.CollectionUtils;
 import io.hypersistence.utils.spring.annotation.Retry;
+import jakarta.persistence.EntityManagerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -38,13 +39,18 @@ public class ForumService {
 
     private final int batchProcessingSize;
 
+    private final BulkLoadPipeline<Post> bulkLoadPipeline;
+
     public ForumService(
         @Autowired PostRepository postRepository,
         @Autowired TransactionTemplate transactionTemplate,
-        @Autowired int batchProcessingSize) {
+        @Autowired int batchProcessingSize,
+        @Autowired EntityManagerFactory entityManagerFactory) {
         this.postRepository = postRepository;
         this.transactionTemplate = transactionTemplate;
         this.batchProcessingSize = batchProcessingSize;
+        this.bulkLoadPipeline = new BulkLoadPipeline<Post>(entityManagerFactory, Post::getId)
+            .setChunkSize(batchProcessingSize);
     }
 
     @Transactional(propagation = Propagation.NEVER)
@@ -68,6 +74,15 @@ public class ForumService {
             });
     }
 
+    /**
+     * Load the posts using one writer per partition of the {@code [minPostId, maxPostId]} range.
+     */
+    @Transactional(propagation = Propagation.NEVER)
+    public BulkLoadPipeline.Metrics bulkLoadPosts(
+            BulkLoadPipeline.PartitionSource<Post> posts, long minPostId, long maxPostId, int writerCount) {
+        return bulkLoadPipeline.load(posts, minPostId, maxPostId, writerCount);
+    }
+
     @Transactional(readOnly = true)
     public List<Post> findByIds(List<Long> ids) {
         return postRepository.findAllById(ids);
@@ -0,0 +1,101 @@
+package com.vladmihalcea.book.hpjp.spring.data.keyset;
+
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.Post;
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.KeysetPage;
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.KeysetPaginator;
+import com.vladmihalcea.book.hpjp.spring.data.keyset.config.SpringDataJPAKeysetPaginationConfiguration;
+import com.vladmihalcea.book.hpjp.spring.data.keyset.repository.PostRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Vlad Mihalcea
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = SpringDataJPAKeysetPaginationConfiguration.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class SpringDataJPAKeysetPaginationTest {
+
+    protected final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    public static final int POST_COUNT = 100;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private KeysetPaginator keysetPaginator;
+
+    @Before
+    public void init() {
+        transactionTemplate.execute((TransactionCallback<Void>) transactionStatus -> {
+            LocalDateTime timestamp = LocalDateTime.of(
+                2023, 3, 22, 12, 0, 0, 0
+            );
+
+            LongStream.rangeClosed(1, POST_COUNT).forEach(postId -> {
+                entityManager.persist(
+                    new Post()
+                        .setId(postId)
+                        .setTitle(
+                            String.format("High-Performance Java Persistence - Chapter %d",
+                                postId)
+                        )
+                        .setCreatedOn(Timestamp.valueOf(timestamp.plusMinutes(postId / 10)))
+                );
+            });
+
+            return null;
+        });
+    }
+
+    @Test
+    public void testKeysetPagination() {
+        String titlePattern = "High-Performance Java Persistence%";
+        int pageSize = 15;
+
+        List<Long> postIds = new ArrayList<>();
+        KeysetPage<Post> page = postRepository.findAllByTitleLike(titlePattern, null, pageSize);
+        page.getContent().forEach(post -> postIds.add(post.getId()));
+
+        while (page.hasNext()) {
+            LOGGER.info("Next page cursor: {}", page.getNextCursor());
+            page = postRepository.findAllByTitleLike(titlePattern, page.getNextCursor(), pageSize);
+            assertTrue(page.isPrefetched());
+            page.getContent().forEach(post -> postIds.add(post.getId()));
+        }
+
+        List<Long> offsetPostIds = postRepository.findAll(
+            Sort.by(Sort.Order.desc("createdOn"), Sort.Order.desc("id"))
+        ).stream().map(Post::getId).toList();
+
+        assertEquals(offsetPostIds, postIds);
+        assertEquals(6, keysetPaginator.getPrefetchHitCount());
+    }
+}
@@ -0,0 +1,36 @@
+package com.vladmihalcea.book.hpjp.spring.data.keyset.config;
+
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.Post;
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.KeysetPaginator;
+import com.vladmihalcea.book.hpjp.spring.data.base.config.SpringDataJPABaseConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ *
+ * @author Vlad Mihalcea
+ */
+@EnableJpaRepositories(
+    basePackages = "com.vladmihalcea.book.hpjp.spring.data.keyset.repository"
+)
+public class SpringDataJPAKeysetPaginationConfiguration extends SpringDataJPABaseConfiguration {
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService keysetPrefetchExecutor() {
+        return Executors.newFixedThreadPool(2);
+    }
+
+    @Bean
+    public KeysetPaginator keysetPaginator() {
+        return new KeysetPaginator(keysetPrefetchExecutor(), 256, Duration.ofSeconds(30));
+    }
+
+    @Override
+    protected String packageToScan() {
+        return Post.class.getPackageName();
+    }
+}
@@ -0,0 +1,17 @@
+package com.vladmihalcea.book.hpjp.spring.data.keyset.repository;
+
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.Post;
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.KeysetPage;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public interface CustomPostRepository {
+
+    /**
+     * Find the newest posts matching the title pattern, following the given cursor.
+     *
+     * @param cursor the {@link KeysetPage#getNextCursor()} of the previous page, or {@code null} for the first page
+     */
+    KeysetPage<Post> findAllByTitleLike(String titlePattern, String cursor, int pageSize);
+}
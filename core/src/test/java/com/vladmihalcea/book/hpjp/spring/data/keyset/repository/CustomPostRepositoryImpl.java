@@ -0,0 +1,48 @@
+package com.vladmihalcea.book.hpjp.spring.data.keyset.repository;
+
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.Post;
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.JpaKeysetQuery;
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.KeysetPage;
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.KeysetPaginator;
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.KeysetSort;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.KeysetSort.desc;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class CustomPostRepositoryImpl implements CustomPostRepository {
+
+    public static final KeysetSort POST_SORT = KeysetSort.of(desc("p.createdOn"), desc("p.id"));
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final KeysetPaginator keysetPaginator;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public CustomPostRepositoryImpl(KeysetPaginator keysetPaginator, PlatformTransactionManager transactionManager) {
+        this.keysetPaginator = keysetPaginator;
+        //Joins the current transaction, if any, while prefetching threads get their own
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    @Override
+    public KeysetPage<Post> findAllByTitleLike(String titlePattern, String cursor, int pageSize) {
+        return keysetPaginator.getPage(
+            new JpaKeysetQuery<>(Post.class, "select p from Post p", POST_SORT)
+                .where("p.title like :titlePattern")
+                .setParameter("titlePattern", titlePattern)
+                .setKeyExtractor(post -> new Object[] {post.getCreatedOn(), post.getId()})
+                .setTransactionRunner(work -> transactionTemplate.execute(status -> work.apply(entityManager))),
+            cursor,
+            pageSize
+        );
+    }
+}
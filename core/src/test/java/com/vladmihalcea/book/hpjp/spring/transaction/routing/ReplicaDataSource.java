@@ -0,0 +1,134 @@
+package com.vladmihalcea.book.hpjp.spring.transaction.routing;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read replica {@link DataSource} that tracks the number of outstanding connections,
+ * the latency EWMA (Exponentially Weighted Moving Average) and the last known replication lag,
+ * which are used by the {@link ReplicaSelectionPolicy} and the {@link ReplicaRoutingDataSource} lag monitor.
+ *
+ * @author Vlad Mihalcea
+ */
+public class ReplicaDataSource extends DelegatingDataSource {
+
+    /**
+     * The weight of the latest sample in the latency EWMA.
+     */
+    public static final double EWMA_ALPHA = 0.2;
+
+    private final String name;
+
+    private final AtomicInteger outstandingConnections = new AtomicInteger();
+
+    private final AtomicLong latencyEwmaBits = new AtomicLong(Double.doubleToLongBits(0));
+
+    private volatile boolean healthy = true;
+
+    private volatile long lagMillis;
+
+    public ReplicaDataSource(String name, DataSource targetDataSource) {
+        super(targetDataSource);
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getOutstandingConnections() {
+        return outstandingConnections.get();
+    }
+
+    /**
+     * @return the latency EWMA, in nanoseconds
+     */
+    public double getLatencyEwma() {
+        return Double.longBitsToDouble(latencyEwmaBits.get());
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    void setHealthy(boolean healthy) {
+        this.healthy = healthy;
+    }
+
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    void setLagMillis(long lagMillis) {
+        this.lagMillis = lagMillis;
+    }
+
+    /**
+     * Add a latency sample, like the connection acquisition time or the lag probe round-trip time.
+     */
+    public void recordLatency(long nanos) {
+        long currentBits, nextBits;
+        do {
+            currentBits = latencyEwmaBits.get();
+            double current = Double.longBitsToDouble(currentBits);
+            double next = current == 0 ? nanos : current + EWMA_ALPHA * (nanos - current);
+            nextBits = Double.doubleToLongBits(next);
+        } while (!latencyEwmaBits.compareAndSet(currentBits, nextBits));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long startNanos = System.nanoTime();
+        Connection connection = super.getConnection();
+        recordLatency(System.nanoTime() - startNanos);
+        return trackedConnection(connection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long startNanos = System.nanoTime();
+        Connection connection = super.getConnection(username, password);
+        recordLatency(System.nanoTime() - startNanos);
+        return trackedConnection(connection);
+    }
+
+    /**
+     * Wrap the connection so that closing it decrements the outstanding connection count only once.
+     */
+    private Connection trackedConnection(Connection connection) {
+        outstandingConnections.incrementAndGet();
+        AtomicBoolean closed = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class[]{Connection.class},
+            (proxy, method, args) -> {
+                if ("close".equals(method.getName()) && closed.compareAndSet(false, true)) {
+                    outstandingConnections.decrementAndGet();
+                }
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        );
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicaDataSource{" +
+            "name='" + name + '\'' +
+            ", healthy=" + healthy +
+            ", lagMillis=" + lagMillis +
+            ", outstandingConnections=" + outstandingConnections +
+            '}';
+    }
+}
@@ -0,0 +1,47 @@
+package com.vladmihalcea.book.hpjp.spring.transaction.routing;
+
+import com.vladmihalcea.book.hpjp.util.providers.queries.Queries;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Measures how far behind the primary node a read replica is.
+ *
+ * @author Vlad Mihalcea
+ */
+@FunctionalInterface
+public interface ReplicaLagProbe {
+
+    /**
+     * @param connection a connection to the replica
+     * @return the replication lag, in milliseconds
+     */
+    long lagMillis(Connection connection) throws SQLException;
+
+    /**
+     * Probe using the database-specific {@link Queries#replicationLag()} query.
+     */
+    static ReplicaLagProbe of(Queries queries) {
+        return of(queries.replicationLag());
+    }
+
+    /**
+     * Probe using a query that returns the lag in milliseconds as its first column.
+     */
+    static ReplicaLagProbe of(String sql) {
+        return connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout(1);
+                try (ResultSet resultSet = statement.executeQuery(sql)) {
+                    if (!resultSet.next()) {
+                        throw new SQLException("The replication lag query returned no row!");
+                    }
+                    return resultSet.getLong(1);
+                }
+            }
+        };
+    }
+}
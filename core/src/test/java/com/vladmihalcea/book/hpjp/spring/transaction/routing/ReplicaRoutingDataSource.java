@@ -0,0 +1,254 @@
+package com.vladmihalcea.book.hpjp.spring.transaction.routing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Routes the read-write transactions to the primary node and spreads the read-only ones
+ * across multiple replicas.
+ * <p>
+ * A background probe measures the replication lag of every replica, ejecting the ones
+ * that fall behind more than {@link #setMaxLagMillis(long) maxLagMillis} or cannot be reached,
+ * and re-admitting them once they catch up. If no replica is healthy, the read-only
+ * transactions fail over to the primary node.
+ * <p>
+ * After a read-write transaction commits, the read-only transactions of the same session are pinned
+ * to the primary node for the {@link #setReadYourWritesWindow(Duration) read-your-writes window},
+ * so that they don't miss the changes that were not yet replicated.
+ * <p>
+ * Route the {@link DataSource} via a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy},
+ * so that the connection is acquired after the transaction read-only flag is set.
+ *
+ * @author Vlad Mihalcea
+ */
+public class ReplicaRoutingDataSource extends TransactionRoutingDataSource implements AutoCloseable {
+
+    public static final Duration DEFAULT_PROBE_INTERVAL = Duration.ofSeconds(1);
+
+    public static final long DEFAULT_MAX_LAG_MILLIS = 1000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private final List<ReplicaDataSource> replicas;
+
+    /**
+     * Copy-on-write snapshot of the healthy replicas, rebuilt by the probe.
+     */
+    private volatile List<ReplicaDataSource> healthyReplicas;
+
+    /**
+     * The commit timestamp of the last read-write transaction of every session,
+     * pruned as soon as it falls out of the read-your-writes window.
+     */
+    private final Map<Object, Long> lastWriteNanos = new ConcurrentHashMap<>();
+
+    private final AtomicLong lastPruneNanos = new AtomicLong(System.nanoTime());
+
+    private ReplicaSelectionPolicy policy = new ReplicaSelectionPolicy.RoundRobin();
+
+    private ReplicaLagProbe lagProbe;
+
+    private long maxLagMillis = DEFAULT_MAX_LAG_MILLIS;
+
+    private Duration probeInterval = DEFAULT_PROBE_INTERVAL;
+
+    private Duration readYourWritesWindow = Duration.ZERO;
+
+    private Supplier<Object> sessionKeySupplier = Thread::currentThread;
+
+    private ScheduledExecutorService probeExecutor;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<ReplicaDataSource> replicas) {
+        this.replicas = List.copyOf(replicas);
+        this.healthyReplicas = this.replicas;
+
+        Map<Object, Object> dataSourceMap = new HashMap<>();
+        dataSourceMap.put(DataSourceType.READ_WRITE, primary);
+        for (ReplicaDataSource replica : this.replicas) {
+            if (dataSourceMap.put(replica.getName(), replica) != null) {
+                throw new IllegalArgumentException("Duplicate replica name: " + replica.getName());
+            }
+        }
+        setTargetDataSources(dataSourceMap);
+        setDefaultTargetDataSource(primary);
+    }
+
+    public void setPolicy(ReplicaSelectionPolicy policy) {
+        this.policy = Objects.requireNonNull(policy);
+    }
+
+    /**
+     * Without a lag probe, the replicas are always considered healthy.
+     */
+    public void setLagProbe(ReplicaLagProbe lagProbe) {
+        this.lagProbe = lagProbe;
+    }
+
+    public void setMaxLagMillis(long maxLagMillis) {
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    public void setProbeInterval(Duration probeInterval) {
+        this.probeInterval = probeInterval;
+    }
+
+    public void setReadYourWritesWindow(Duration readYourWritesWindow) {
+        this.readYourWritesWindow = readYourWritesWindow;
+    }
+
+    /**
+     * The key that identifies a session for the read-your-writes guarantee,
+     * like the current user or the HTTP session id. By default, it's the current thread.
+     */
+    public void setSessionKeySupplier(Supplier<Object> sessionKeySupplier) {
+        this.sessionKeySupplier = Objects.requireNonNull(sessionKeySupplier);
+    }
+
+    public List<ReplicaDataSource> getReplicas() {
+        return replicas;
+    }
+
+    public List<ReplicaDataSource> getHealthyReplicas() {
+        return healthyReplicas;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        if (lagProbe != null && probeExecutor == null) {
+            probeExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "replica-lag-probe");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = probeInterval.toMillis();
+            probeExecutor.scheduleWithFixedDelay(this::probe, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Nullable
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Object sessionKey = sessionKeySupplier.get();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (!readYourWritesWindow.isZero() && sessionKey != null) {
+                recordWriteOnCommit(sessionKey);
+            }
+            return DataSourceType.READ_WRITE;
+        }
+        if (sessionKey != null && isPinnedToPrimary(sessionKey)) {
+            return DataSourceType.READ_WRITE;
+        }
+        List<ReplicaDataSource> candidates = healthyReplicas;
+        if (candidates.isEmpty()) {
+            return DataSourceType.READ_WRITE;
+        }
+        return policy.select(candidates).getName();
+    }
+
+    /**
+     * Measure the lag of every replica and rebuild the healthy replica list.
+     */
+    public void probe() {
+        if (lagProbe == null) {
+            return;
+        }
+        List<ReplicaDataSource> healthy = new ArrayList<>(replicas.size());
+        for (ReplicaDataSource replica : replicas) {
+            boolean wasHealthy = replica.isHealthy();
+            long startNanos = System.nanoTime();
+            try (Connection connection = replica.getTargetDataSource().getConnection()) {
+                long lagMillis = lagProbe.lagMillis(connection);
+                replica.recordLatency(System.nanoTime() - startNanos);
+                replica.setLagMillis(lagMillis);
+                replica.setHealthy(lagMillis <= maxLagMillis);
+            } catch (Exception e) {
+                replica.setHealthy(false);
+                if (wasHealthy) {
+                    LOGGER.warn("Replica [{}] lag probe failed", replica.getName(), e);
+                }
+            }
+            if (replica.isHealthy()) {
+                healthy.add(replica);
+            }
+            if (wasHealthy != replica.isHealthy()) {
+                LOGGER.info(
+                    "Replica [{}] was {} with a lag of {} ms",
+                    replica.getName(),
+                    replica.isHealthy() ? "re-admitted" : "ejected",
+                    replica.getLagMillis()
+                );
+            }
+        }
+        healthyReplicas = Collections.unmodifiableList(healthy);
+    }
+
+    @Override
+    public void close() {
+        if (probeExecutor != null) {
+            probeExecutor.shutdownNow();
+            probeExecutor = null;
+        }
+    }
+
+    /**
+     * The changes become visible to the other transactions only after commit, so that's
+     * when the read-your-writes window starts. A rolled-back transaction doesn't pin the session.
+     */
+    private void recordWriteOnCommit(Object sessionKey) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recordWrite(sessionKey);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recordWrite(sessionKey);
+            }
+        });
+    }
+
+    private void recordWrite(Object sessionKey) {
+        long nowNanos = System.nanoTime();
+        lastWriteNanos.put(sessionKey, nowNanos);
+        long pruneNanos = lastPruneNanos.get();
+        if (nowNanos - pruneNanos >= readYourWritesWindow.toNanos() &&
+            lastPruneNanos.compareAndSet(pruneNanos, nowNanos)) {
+            lastWriteNanos.values().removeIf(writeNanos -> !isWithinReadYourWritesWindow(writeNanos));
+        }
+    }
+
+    private boolean isPinnedToPrimary(Object sessionKey) {
+        Long writeNanos = lastWriteNanos.get(sessionKey);
+        if (writeNanos == null) {
+            return false;
+        }
+        if (isWithinReadYourWritesWindow(writeNanos)) {
+            return true;
+        }
+        lastWriteNanos.remove(sessionKey, writeNanos);
+        return false;
+    }
+
+    int getPinnedSessionCount() {
+        return lastWriteNanos.size();
+    }
+
+    private boolean isWithinReadYourWritesWindow(Long writeNanos) {
+        return writeNanos != null && System.nanoTime() - writeNanos < readYourWritesWindow.toNanos();
+    }
+}
@@ -0,0 +1,207 @@
+package com.vladmihalcea.book.hpjp.spring.transaction.routing;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Vlad Mihalcea
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private final Map<String, JdbcTemplate> nodes = new LinkedHashMap<>();
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate readWriteTransactionTemplate;
+
+    private TransactionTemplate readOnlyTransactionTemplate;
+
+    @Before
+    public void init() {
+        List<ReplicaDataSource> replicas = new ArrayList<>();
+        DataSource primary = node("primary");
+        for (String replicaName : List.of("replica1", "replica2", "replica3")) {
+            replicas.add(new ReplicaDataSource(replicaName, node(replicaName)));
+        }
+
+        routingDataSource = new ReplicaRoutingDataSource(primary, replicas);
+        routingDataSource.setLagProbe(ReplicaLagProbe.of("SELECT lag_millis FROM replication_lag"));
+        routingDataSource.setMaxLagMillis(500);
+        routingDataSource.setProbeInterval(Duration.ofHours(1));
+        routingDataSource.afterPropertiesSet();
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readWriteTransactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    @After
+    public void destroy() {
+        routingDataSource.close();
+        for (JdbcTemplate node : nodes.values()) {
+            node.execute("SHUTDOWN");
+        }
+    }
+
+    @Test
+    public void testRoundRobin() {
+        Map<String, Integer> distribution = readOnlyDistribution(30);
+
+        assertEquals(Map.of("replica1", 10, "replica2", 10, "replica3", 10), distribution);
+        assertEquals("primary", readWriteTransactionTemplate.execute(status -> currentNode()));
+    }
+
+    @Test
+    public void testLaggingReplicaEjection() {
+        setLag("replica2", 5000);
+        routingDataSource.probe();
+
+        Map<String, Integer> distribution = readOnlyDistribution(10);
+        assertEquals(Set.of("replica1", "replica3"), distribution.keySet());
+        assertEquals(5000, routingDataSource.getReplicas().get(1).getLagMillis());
+
+        setLag("replica2", 100);
+        routingDataSource.probe();
+
+        distribution = readOnlyDistribution(30);
+        assertEquals(Set.of("replica1", "replica2", "replica3"), distribution.keySet());
+    }
+
+    @Test
+    public void testPrimaryFailover() {
+        setLag("replica1", 5000);
+        nodes.get("replica2").execute("DROP TABLE replication_lag");
+        setLag("replica3", 5000);
+        routingDataSource.probe();
+
+        assertTrue(routingDataSource.getHealthyReplicas().isEmpty());
+        assertEquals(Map.of("primary", 5), readOnlyDistribution(5));
+    }
+
+    @Test
+    public void testReadYourWrites() {
+        routingDataSource.setReadYourWritesWindow(Duration.ofHours(1));
+
+        assertEquals("replica1", readOnlyTransactionTemplate.execute(status -> currentNode()));
+        assertEquals("primary", readWriteTransactionTemplate.execute(status -> currentNode()));
+        assertEquals(Map.of("primary", 5), readOnlyDistribution(5));
+
+        routingDataSource.setReadYourWritesWindow(Duration.ZERO);
+        assertFalse(readOnlyDistribution(5).containsKey("primary"));
+    }
+
+    @Test
+    public void testReadYourWritesAfterRollback() {
+        routingDataSource.setReadYourWritesWindow(Duration.ofHours(1));
+
+        assertEquals("primary", readWriteTransactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            return currentNode();
+        }));
+        assertEquals(0, routingDataSource.getPinnedSessionCount());
+        assertFalse(readOnlyDistribution(5).containsKey("primary"));
+    }
+
+    @Test
+    public void testReadYourWritesPruning() throws InterruptedException {
+        routingDataSource.setReadYourWritesWindow(Duration.ofMillis(50));
+
+        for (int i = 0; i < 10; i++) {
+            String sessionKey = "user-" + i;
+            routingDataSource.setSessionKeySupplier(() -> sessionKey);
+            readWriteTransactionTemplate.execute(status -> currentNode());
+        }
+        assertEquals(10, routingDataSource.getPinnedSessionCount());
+
+        Thread.sleep(100);
+        routingDataSource.setSessionKeySupplier(() -> "user-10");
+        readWriteTransactionTemplate.execute(status -> currentNode());
+        assertEquals(1, routingDataSource.getPinnedSessionCount());
+    }
+
+    @Test
+    public void testLeastOutstandingConnections() {
+        routingDataSource.setPolicy(new ReplicaSelectionPolicy.LeastOutstandingConnections());
+
+        Set<String> nestedNodes = new HashSet<>();
+        readOnlyTransactionTemplate.execute(outerStatus -> {
+            nestedNodes.add(currentNode());
+            nestedNodes.add(readOnlyNode());
+            nestedNodes.add(readOnlyNode());
+            return null;
+        });
+        assertEquals(3, nestedNodes.size());
+        for (ReplicaDataSource replica : routingDataSource.getReplicas()) {
+            assertEquals(0, replica.getOutstandingConnections());
+        }
+    }
+
+    @Test
+    public void testLatencyWeighted() {
+        routingDataSource.setPolicy(new ReplicaSelectionPolicy.LatencyWeighted());
+
+        Map<String, Integer> distribution = readOnlyDistribution(30);
+        assertFalse(distribution.containsKey("primary"));
+        assertEquals(30, distribution.values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    private DataSource node(String name) {
+        JDBCDataSource dataSource = new JDBCDataSource();
+        dataSource.setUrl("jdbc:hsqldb:mem:" + name);
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+
+        JdbcTemplate node = new JdbcTemplate(dataSource);
+        node.execute("CREATE TABLE node (name VARCHAR(32))");
+        node.update("INSERT INTO node (name) VALUES (?)", name);
+        node.execute("CREATE TABLE replication_lag (lag_millis BIGINT)");
+        node.update("INSERT INTO replication_lag (lag_millis) VALUES (0)");
+        nodes.put(name, node);
+        return dataSource;
+    }
+
+    private void setLag(String replicaName, long lagMillis) {
+        nodes.get(replicaName).update("UPDATE replication_lag SET lag_millis = ?", lagMillis);
+    }
+
+    private String currentNode() {
+        return jdbcTemplate.queryForObject("SELECT name FROM node", String.class);
+    }
+
+    /**
+     * Run the query in a new read-only transaction while the current one is still holding its connection.
+     */
+    private String readOnlyNode() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(
+            readOnlyTransactionTemplate.getTransactionManager()
+        );
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.setPropagationBehavior(TransactionTemplate.PROPAGATION_REQUIRES_NEW);
+        return transactionTemplate.execute(status -> currentNode());
+    }
+
+    private Map<String, Integer> readOnlyDistribution(int transactionCount) {
+        Map<String, Integer> distribution = new TreeMap<>();
+        for (int i = 0; i < transactionCount; i++) {
+            distribution.merge(readOnlyTransactionTemplate.execute(status -> currentNode()), 1, Integer::sum);
+        }
+        return distribution;
+    }
+}
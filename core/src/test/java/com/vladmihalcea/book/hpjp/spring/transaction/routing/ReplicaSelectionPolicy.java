@@ -0,0 +1,84 @@
+package com.vladmihalcea.book.hpjp.spring.transaction.routing;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the read replica that serves the current read-only transaction.
+ *
+ * @author Vlad Mihalcea
+ */
+public interface ReplicaSelectionPolicy {
+
+    /**
+     * @param replicas the healthy replicas, never empty
+     * @return the chosen replica
+     */
+    ReplicaDataSource select(List<ReplicaDataSource> replicas);
+
+    /**
+     * Cycles through the replicas in order.
+     */
+    class RoundRobin implements ReplicaSelectionPolicy {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public ReplicaDataSource select(List<ReplicaDataSource> replicas) {
+            return replicas.get(Math.floorMod(counter.getAndIncrement(), replicas.size()));
+        }
+    }
+
+    /**
+     * Chooses the replica with the fewest connections in use.
+     * The scan starts from a rotating offset, so that ties are spread across the replicas.
+     */
+    class LeastOutstandingConnections implements ReplicaSelectionPolicy {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public ReplicaDataSource select(List<ReplicaDataSource> replicas) {
+            int size = replicas.size();
+            int offset = Math.floorMod(counter.getAndIncrement(), size);
+            ReplicaDataSource selected = null;
+            for (int i = 0; i < size; i++) {
+                ReplicaDataSource replica = replicas.get((offset + i) % size);
+                if (selected == null || replica.getOutstandingConnections() < selected.getOutstandingConnections()) {
+                    selected = replica;
+                }
+            }
+            return selected;
+        }
+    }
+
+    /**
+     * Picks two random replicas and chooses the one with the lower latency EWMA,
+     * weighted by its outstanding connections. Comparing two random choices avoids
+     * sending all the traffic to the fastest replica until its EWMA catches up.
+     */
+    class LatencyWeighted implements ReplicaSelectionPolicy {
+
+        @Override
+        public ReplicaDataSource select(List<ReplicaDataSource> replicas) {
+            int size = replicas.size();
+            if (size == 1) {
+                return replicas.get(0);
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                second++;
+            }
+            ReplicaDataSource firstReplica = replicas.get(first);
+            ReplicaDataSource secondReplica = replicas.get(second);
+            return cost(firstReplica) <= cost(secondReplica) ? firstReplica : secondReplica;
+        }
+
+        private double cost(ReplicaDataSource replica) {
+            return replica.getLatencyEwma() * (replica.getOutstandingConnections() + 1);
+        }
+    }
+}
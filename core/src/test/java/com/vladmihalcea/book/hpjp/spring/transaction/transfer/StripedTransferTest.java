@@ -0,0 +1,145 @@
+package com.vladmihalcea.book.hpjp.spring.transaction.transfer;
+
+import com.vladmihalcea.book.hpjp.spring.transaction.transfer.config.ACIDRaceConditionTransferConfiguration;
+import com.vladmihalcea.book.hpjp.spring.transaction.transfer.domain.Account;
+import com.vladmihalcea.book.hpjp.spring.transaction.transfer.service.StripeConsolidationJob;
+import com.vladmihalcea.book.hpjp.spring.transaction.transfer.service.StripedTransferService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Vlad Mihalcea
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = ACIDRaceConditionTransferConfiguration.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class StripedTransferTest {
+
+    protected final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StripedTransferService transferService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private int threadCount = 16;
+
+    @Test
+    public void testSerialExecution() {
+        createAccounts(10, 4);
+
+        assertEquals(10L, transferService.getBalance("Alice-123"));
+        assertEquals(0L, transferService.getBalance("Bob-456"));
+
+        assertEquals(true, transferService.transfer("Alice-123", "Bob-456", 5L));
+
+        assertEquals(5L, transferService.getBalance("Alice-123"));
+        assertEquals(5L, transferService.getBalance("Bob-456"));
+
+        assertEquals(true, transferService.transfer("Alice-123", "Bob-456", 5L));
+
+        assertEquals(0L, transferService.getBalance("Alice-123"));
+        assertEquals(10L, transferService.getBalance("Bob-456"));
+
+        assertEquals(false, transferService.transfer("Alice-123", "Bob-456", 5L));
+
+        assertEquals(0L, transferService.getBalance("Alice-123"));
+        assertEquals(10L, transferService.getBalance("Bob-456"));
+
+        assertEquals(10L, transferService.consolidate("Bob-456"));
+        assertEquals(10L, transferService.getBalance("Bob-456"));
+    }
+
+    @Test
+    public void testParallelExecution() throws Exception {
+        createAccounts(10, 4);
+
+        assertEquals(2, transferConcurrently(threadCount, 1, 5L));
+
+        assertEquals(0L, transferService.getBalance("Alice-123"));
+        assertEquals(10L, transferService.getBalance("Bob-456"));
+    }
+
+    @Test
+    public void testParallelExecutionWithConsolidation() throws Exception {
+        createAccounts(1000, 8);
+
+        StripeConsolidationJob job = new StripeConsolidationJob(transferService).start(Duration.ofMillis(5));
+        try {
+            assertEquals(100, transferConcurrently(threadCount, 10, 10L));
+        } finally {
+            job.close();
+        }
+
+        assertEquals(0L, transferService.getBalance("Alice-123"));
+        assertEquals(1000L, transferService.getBalance("Bob-456"));
+    }
+
+    private void createAccounts(long aliceBalance, int aliceStripeCount) {
+        transactionTemplate.execute((TransactionCallback<Void>) transactionStatus -> {
+            entityManager.persist(
+                new Account()
+                    .setIban("Alice-123")
+                    .setOwner("Alice")
+                    .setBalance(aliceBalance)
+            );
+
+            entityManager.persist(
+                new Account()
+                    .setIban("Bob-456")
+                    .setOwner("Bob")
+                    .setBalance(0)
+            );
+
+            return null;
+        });
+        transferService.stripe("Alice-123", aliceStripeCount);
+    }
+
+    private int transferConcurrently(int threadCount, int transferCount, long cents) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        AtomicInteger successCount = new AtomicInteger();
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                tasks.add(() -> {
+                    for (int j = 0; j < transferCount; j++) {
+                        if (transferService.transfer("Alice-123", "Bob-456", cents)) {
+                            successCount.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> future : executorService.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        LOGGER.info("{} transfers succeeded", successCount.get());
+        return successCount.get();
+    }
+}
@@ -1,5 +1,6 @@
 package com.vladmihalcea.book.hpjp.spring.transaction.transfer.domain;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
@@ -19,6 +20,12 @@ public class Account {
 
     private long balance;
 
+    /**
+     * The number of {@link AccountStripe} rows the balance is spread across, or zero if the account is not striped.
+     */
+    @Column(name = "stripe_count")
+    private int stripeCount;
+
     @Version
     private short version;
 
@@ -48,4 +55,13 @@ public class Account {
         this.balance = balance;
         return this;
     }
+
+    public int getStripeCount() {
+        return stripeCount;
+    }
+
+    public Account setStripeCount(int stripeCount) {
+        this.stripeCount = stripeCount;
+        return this;
+    }
 }
@@ -0,0 +1,39 @@
+package com.vladmihalcea.book.hpjp.spring.transaction.transfer.domain;
+
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+
+/**
+ * A slice of the balance of a hot {@link Account}. Concurrent transfers debit and credit different stripes,
+ * so they no longer serialize on the single {@code account} row lock.
+ *
+ * @author Vlad Mihalcea
+ */
+@Entity(name = "AccountStripe")
+@Table(name = "account_stripe")
+public class AccountStripe {
+
+    @EmbeddedId
+    private AccountStripeId id;
+
+    private long balance;
+
+    public AccountStripeId getId() {
+        return id;
+    }
+
+    public AccountStripe setId(AccountStripeId id) {
+        this.id = id;
+        return this;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    public AccountStripe setBalance(long balance) {
+        this.balance = balance;
+        return this;
+    }
+}
@@ -0,0 +1,47 @@
+package com.vladmihalcea.book.hpjp.spring.transaction.transfer.domain;
+
+import jakarta.persistence.Embeddable;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * @author Vlad Mihalcea
+ */
+@Embeddable
+public class AccountStripeId implements Serializable {
+
+    private String iban;
+
+    private int stripe;
+
+    public AccountStripeId() {
+    }
+
+    public AccountStripeId(String iban, int stripe) {
+        this.iban = iban;
+        this.stripe = stripe;
+    }
+
+    public String getIban() {
+        return iban;
+    }
+
+    public int getStripe() {
+        return stripe;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AccountStripeId)) return false;
+        AccountStripeId that = (AccountStripeId) o;
+        return stripe == that.stripe &&
+               Objects.equals(iban, that.iban);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(iban, stripe);
+    }
+}
@@ -1,13 +1,17 @@
 package com.vladmihalcea.book.hpjp.spring.transaction.transfer.repository;
 
 import com.vladmihalcea.book.hpjp.spring.transaction.transfer.domain.Account;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+
 /**
  * @author Vlad Mihalcea
  */
@@ -32,4 +36,38 @@ public interface AccountRepository extends JpaRepository<Account, String> {
     @Modifying
     @Transactional
     int addBalance(@Param("iban") String iban, @Param("cents") long cents);
+
+    @Query(value = """
+        UPDATE account
+        SET balance = balance - :cents
+        WHERE iban = :iban AND balance >= :cents
+        """,
+        nativeQuery = true)
+    @Modifying
+    @Transactional
+    int debitBalance(@Param("iban") String iban, @Param("cents") long cents);
+
+    @Query(value = """
+        SELECT stripe_count
+        FROM account
+        WHERE iban = :iban
+        """,
+        nativeQuery = true)
+    int getStripeCount(@Param("iban") String iban);
+
+    @Query(value = """
+        SELECT iban
+        FROM account
+        WHERE stripe_count > 0
+        """,
+        nativeQuery = true)
+    List<String> findAllStripedIbans();
+
+    @Query("""
+        select a
+        from Account a
+        where a.iban = :iban
+        """)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Account lockByIban(@Param("iban") String iban);
 }
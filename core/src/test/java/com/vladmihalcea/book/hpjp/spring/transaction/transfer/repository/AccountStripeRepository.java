@@ -0,0 +1,72 @@
+package com.vladmihalcea.book.hpjp.spring.transaction.transfer.repository;
+
+import com.vladmihalcea.book.hpjp.spring.transaction.transfer.domain.AccountStripe;
+import com.vladmihalcea.book.hpjp.spring.transaction.transfer.domain.AccountStripeId;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * @author Vlad Mihalcea
+ */
+@Repository
+@Transactional(readOnly = true)
+public interface AccountStripeRepository extends JpaRepository<AccountStripe, AccountStripeId> {
+
+    /**
+     * The balance of the account row plus the balance of all its stripes.
+     */
+    @Query(value = """
+        SELECT CAST(a.balance + COALESCE(SUM(s.balance), 0) AS bigint)
+        FROM account a
+        LEFT JOIN account_stripe s ON s.iban = a.iban
+        WHERE a.iban = :iban
+        GROUP BY a.balance
+        """,
+        nativeQuery = true)
+    long getTotalBalance(@Param("iban") String iban);
+
+    /**
+     * Debit a single stripe, only if the stripe balance covers the amount,
+     * so the check and the update lock just this stripe row.
+     */
+    @Query(value = """
+        UPDATE account_stripe
+        SET balance = balance - :cents
+        WHERE iban = :iban AND stripe = :stripe AND balance >= :cents
+        """,
+        nativeQuery = true)
+    @Modifying
+    @Transactional
+    int debitStripe(@Param("iban") String iban, @Param("stripe") int stripe, @Param("cents") long cents);
+
+    @Query(value = """
+        UPDATE account_stripe
+        SET balance = balance + :cents
+        WHERE iban = :iban AND stripe = :stripe
+        """,
+        nativeQuery = true)
+    @Modifying
+    @Transactional
+    int creditStripe(@Param("iban") String iban, @Param("stripe") int stripe, @Param("cents") long cents);
+
+    /**
+     * Lock all the stripes of an account, always in the same order, so that two transactions
+     * locking all the stripes of the same account cannot deadlock.
+     */
+    @Query("""
+        select s
+        from AccountStripe s
+        where s.id.iban = :iban
+        order by s.id.stripe
+        """)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<AccountStripe> lockAllByIban(@Param("iban") String iban);
+}
@@ -0,0 +1,60 @@
+package com.vladmihalcea.book.hpjp.spring.transaction.transfer.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically consolidates all striped accounts, so that the stripe balances stay even
+ * and most debits can be covered by a single stripe.
+ *
+ * @author Vlad Mihalcea
+ */
+public class StripeConsolidationJob implements Runnable, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StripeConsolidationJob.class);
+
+    private final StripedTransferService transferService;
+
+    private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(
+        runnable -> {
+            Thread thread = new Thread(runnable, "stripe-consolidation");
+            thread.setDaemon(true);
+            return thread;
+        }
+    );
+
+    public StripeConsolidationJob(StripedTransferService transferService) {
+        this.transferService = transferService;
+    }
+
+    public StripeConsolidationJob start(Duration period) {
+        executorService.scheduleWithFixedDelay(this, period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (String iban : transferService.getStripedIbans()) {
+                transferService.consolidate(iban);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not consolidate the account stripes", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+        try {
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.vladmihalcea.book.hpjp.spring.transaction.transfer.service;
+
+import java.util.List;
+
+/**
+ * A {@link TransferService} that can split the balance of a hot account into several stripe rows,
+ * so that concurrent transfers involving that account do not serialize on the same row lock.
+ *
+ * @author Vlad Mihalcea
+ */
+public interface StripedTransferService extends TransferService {
+
+    /**
+     * Move the balance of the given account into the given number of stripes.
+     */
+    void stripe(String iban, int stripeCount);
+
+    /**
+     * @return the account balance, including all its stripes
+     */
+    long getBalance(String iban);
+
+    /**
+     * Merge the account balance and all its stripes, and spread the total evenly across the stripes again.
+     *
+     * @return the account balance
+     */
+    long consolidate(String iban);
+
+    List<String> getStripedIbans();
+}
@@ -0,0 +1,172 @@
+package com.vladmihalcea.book.hpjp.spring.transaction.transfer.service;
+
+import com.vladmihalcea.book.hpjp.spring.transaction.transfer.domain.Account;
+import com.vladmihalcea.book.hpjp.spring.transaction.transfer.domain.AccountStripe;
+import com.vladmihalcea.book.hpjp.spring.transaction.transfer.domain.AccountStripeId;
+import com.vladmihalcea.book.hpjp.spring.transaction.transfer.repository.AccountRepository;
+import com.vladmihalcea.book.hpjp.spring.transaction.transfer.repository.AccountStripeRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transfers money using a single stripe of a hot account whenever possible.
+ * <p>
+ * A debit first tries the stripe picked by the current thread, with a conditional update that locks only that
+ * stripe row. Only if that stripe cannot cover the amount are all the stripes locked, in the same order,
+ * so the check runs against the whole balance, which is then spread evenly across the stripes again.
+ * Credits never need a check, so they always go to a single stripe.
+ * <p>
+ * The stripe count of every account is cached, which assumes accounts are striped through this service only.
+ *
+ * @author Vlad Mihalcea
+ */
+@Service
+public class StripedTransferServiceImpl implements StripedTransferService {
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private AccountStripeRepository accountStripeRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final Map<String, Integer> stripeCounts = new ConcurrentHashMap<>();
+
+    @Override
+    @Transactional
+    public boolean transfer(String fromIban, String toIban, long cents) {
+        long stripeHint = stripeHint();
+
+        if (!debit(fromIban, stripeHint, cents)) {
+            return false;
+        }
+        return credit(toIban, stripeHint, cents);
+    }
+
+    @Override
+    @Transactional
+    public void stripe(String iban, int stripeCount) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("The stripe count must be positive");
+        }
+        Account account = accountRepository.lockByIban(iban);
+        if (account.getStripeCount() > 0) {
+            throw new IllegalStateException(
+                String.format("The [%s] account is already striped", iban)
+            );
+        }
+
+        List<AccountStripe> stripes = new ArrayList<>(stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripes.add(new AccountStripe().setId(new AccountStripeId(iban, i)));
+        }
+        spread(stripes, account.getBalance());
+        stripes.forEach(entityManager::persist);
+        account.setBalance(0).setStripeCount(stripeCount);
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                stripeCounts.put(iban, stripeCount);
+            }
+        });
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long getBalance(String iban) {
+        return accountStripeRepository.getTotalBalance(iban);
+    }
+
+    @Override
+    @Transactional
+    public long consolidate(String iban) {
+        Account account = accountRepository.lockByIban(iban);
+        List<AccountStripe> stripes = accountStripeRepository.lockAllByIban(iban);
+        if (stripes.isEmpty()) {
+            return account.getBalance();
+        }
+
+        long balance = account.getBalance() + balance(stripes);
+        account.setBalance(0);
+        spread(stripes, balance);
+        return balance;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<String> getStripedIbans() {
+        return accountRepository.findAllStripedIbans();
+    }
+
+    private boolean debit(String iban, long stripeHint, long cents) {
+        int stripeCount = stripeCount(iban);
+        if (stripeCount == 0) {
+            return accountRepository.debitBalance(iban, cents) > 0;
+        }
+        if (accountStripeRepository.debitStripe(iban, stripe(stripeHint, stripeCount), cents) > 0) {
+            return true;
+        }
+
+        List<AccountStripe> stripes = accountStripeRepository.lockAllByIban(iban);
+        long balance = balance(stripes);
+        if (balance < cents) {
+            return false;
+        }
+        spread(stripes, balance - cents);
+        return true;
+    }
+
+    private boolean credit(String iban, long stripeHint, long cents) {
+        int stripeCount = stripeCount(iban);
+        if (stripeCount == 0) {
+            return accountRepository.addBalance(iban, cents) > 0;
+        }
+        return accountStripeRepository.creditStripe(iban, stripe(stripeHint, stripeCount), cents) > 0;
+    }
+
+    private int stripeCount(String iban) {
+        return stripeCounts.computeIfAbsent(iban, accountRepository::getStripeCount);
+    }
+
+    /**
+     * Spread the current transactions across the stripes by the thread they run on,
+     * so the same thread keeps hitting the same stripe while other threads hit other stripes.
+     */
+    private long stripeHint() {
+        return Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+    }
+
+    private int stripe(long stripeHint, int stripeCount) {
+        return (int) Long.remainderUnsigned(stripeHint, stripeCount);
+    }
+
+    private long balance(List<AccountStripe> stripes) {
+        long balance = 0;
+        for (AccountStripe stripe : stripes) {
+            balance += stripe.getBalance();
+        }
+        return balance;
+    }
+
+    private void spread(List<AccountStripe> stripes, long balance) {
+        int stripeCount = stripes.size();
+        long share = balance / stripeCount;
+        long remainder = balance % stripeCount;
+        for (int i = 0; i < stripeCount; i++) {
+            stripes.get(i).setBalance(share + (i < remainder ? 1 : 0));
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.vladmihalcea.book.hpjp.spring.transaction.transfer.service;
 
 import com.vladmihalcea.book.hpjp.spring.transaction.transfer.repository.AccountRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -9,6 +10,7 @@ import org.springframework.transaction.annotation.Transactional;
  * @author Vlad Mihalcea
  */
 @Service
+@Primary
 public class TransferServiceImpl implements TransferService {
 
     @Autowired
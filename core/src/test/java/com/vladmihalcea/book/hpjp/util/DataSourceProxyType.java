@@ -1,6 +1,8 @@
 package com.vladmihalcea.book.hpjp.util;
 
 import com.p6spy.engine.spy.P6DataSource;
+import com.vladmihalcea.book.hpjp.util.batch.AdaptiveBatchDataSource;
+import com.vladmihalcea.book.hpjp.util.logging.AsyncQueryLoggingListener;
 import com.vladmihalcea.book.hpjp.util.logging.InlineQueryLogEntryCreator;
 import net.ttddyy.dsproxy.listener.ChainListener;
 import net.ttddyy.dsproxy.listener.DataSourceQueryCountListener;
@@ -28,12 +30,47 @@ public enum DataSourceProxyType {
                     .build();
         }
     },
+    /**
+     * Formats and logs the statements on a background thread, which is shared by all data sources.
+     */
+    ASYNC_DATA_SOURCE_PROXY {
+        @Override
+        public DataSource dataSource(DataSource dataSource) {
+            ChainListener listener = new ChainListener();
+            listener.addListener(AsyncQueryLoggingListenerHolder.INSTANCE);
+            listener.addListener(new DataSourceQueryCountListener());
+            return ProxyDataSourceBuilder
+                    .create(dataSource)
+                    .name(name())
+                    .listener(listener)
+                    .build();
+        }
+    },
     P6SPY {
         @Override
         public DataSource dataSource(DataSource dataSource) {
             return new P6DataSource(dataSource);
         }
+    },
+    /**
+     * Executes the JDBC batches in chunks sized at runtime by an
+     * {@link com.vladmihalcea.book.hpjp.util.batch.AdaptiveBatchSizeTuner}.
+     * The tuner wraps the actual driver, so the chunk timings it measures don't include the
+     * datasource-proxy logging, which sees the whole batch instead.
+     */
+    ADAPTIVE_BATCH {
+        @Override
+        public DataSource dataSource(DataSource dataSource) {
+            return DATA_SOURCE_PROXY.dataSource(new AdaptiveBatchDataSource(dataSource));
+        }
     };
 
     public abstract DataSource dataSource(DataSource dataSource);
+
+    /**
+     * Starts the background logging thread only when the {@link #ASYNC_DATA_SOURCE_PROXY} type is used.
+     */
+    private static class AsyncQueryLoggingListenerHolder {
+        static final AsyncQueryLoggingListener INSTANCE = new AsyncQueryLoggingListener();
+    }
 }
@@ -1,7 +1,10 @@
 package com.vladmihalcea.book.hpjp.util;
 
+import com.vladmihalcea.book.hpjp.hibernate.identifier.tsid.TsidBlockAllocator;
 import io.hypersistence.tsid.TSID;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * <code>TsidUtils</code> - Tsid utilities holder.
  *
@@ -10,24 +13,28 @@ import io.hypersistence.tsid.TSID;
 public class TsidUtils {
     public static final String TSID_NODE_COUNT_PROPERTY = "tsid.node.count";
     public static final String TSID_NODE_COUNT_ENV = "TSID_NODE_COUNT";
+    public static final String TSID_NODE_PROPERTY = "tsid.node";
+    public static final String TSID_NODE_ENV = "TSID_NODE";
+
+    public static final int NODE_COUNT;
+
+    public static final int NODE;
 
     public static TSID.Factory TSID_FACTORY;
 
+    public static TsidBlockAllocator TSID_BLOCK_ALLOCATOR;
+
     static {
-        String nodeCountSetting = System.getProperty(
-            TSID_NODE_COUNT_PROPERTY
-        );
-        if (nodeCountSetting == null) {
-            nodeCountSetting = System.getenv(
-                TSID_NODE_COUNT_ENV
-            );
-        }
-
-        int nodeCount = nodeCountSetting != null ?
+        String nodeCountSetting = getSetting(TSID_NODE_COUNT_PROPERTY, TSID_NODE_COUNT_ENV);
+
+        NODE_COUNT = nodeCountSetting != null ?
             Integer.parseInt(nodeCountSetting) :
             256;
 
-        TSID_FACTORY = getTsidFactory(nodeCount);
+        NODE = getNode(NODE_COUNT);
+
+        TSID_FACTORY = getTsidFactory(NODE_COUNT);
+        TSID_BLOCK_ALLOCATOR = getTsidBlockAllocator(NODE_COUNT, NODE);
     }
 
     private TsidUtils() {
@@ -38,6 +45,15 @@ public class TsidUtils {
         return TSID_FACTORY.generate();
     }
 
+    /**
+     * Generate a batch of TSID values with a single reservation, which is useful for JDBC batch inserts.
+     * The block allocator counter is not coordinated with the {@link #TSID_FACTORY} random counter,
+     * so don't mix the two for the same table.
+     */
+    public static long[] tsidBatch(int size) {
+        return TSID_BLOCK_ALLOCATOR.nextBatch(size);
+    }
+
     public static TSID.Factory getTsidFactory(int nodeCount) {
         int nodeBits = (int) (Math.log(nodeCount) / Math.log(2));
 
@@ -56,4 +72,27 @@ public class TsidUtils {
             .withNode(nodeId)
             .build();
     }
+
+    public static TsidBlockAllocator getTsidBlockAllocator(int nodeCount, int nodeId) {
+        return new TsidBlockAllocator(getNodeBits(nodeCount), nodeId);
+    }
+
+    public static int getNodeBits(int nodeCount) {
+        return (int) (Math.log(nodeCount) / Math.log(2));
+    }
+
+    /**
+     * @return the node given by the {@code tsid.node} setting or a random node if the setting is missing
+     */
+    public static int getNode(int nodeCount) {
+        String nodeSetting = getSetting(TSID_NODE_PROPERTY, TSID_NODE_ENV);
+        return nodeSetting != null ?
+            Integer.parseInt(nodeSetting) :
+            ThreadLocalRandom.current().nextInt(1 << getNodeBits(nodeCount));
+    }
+
+    private static String getSetting(String property, String env) {
+        String setting = System.getProperty(property);
+        return setting != null ? setting : System.getenv(env);
+    }
 }
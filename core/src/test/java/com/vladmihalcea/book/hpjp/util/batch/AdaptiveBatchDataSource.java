@@ -0,0 +1,79 @@
+package com.vladmihalcea.book.hpjp.util.batch;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * {@link DataSource} whose {@link PreparedStatement} batches are executed in chunks
+ * sized by an {@link AdaptiveBatchSizeTuner}.
+ * <p>
+ * The application still calls {@code addBatch} and {@code executeBatch} as usual, so the
+ * Hibernate {@code hibernate.jdbc.batch_size} setting becomes the upper bound of the batch size.
+ * When the number of added rows reaches the tuned size, the pending rows are sent to the database,
+ * and {@code executeBatch} returns the update counts of all the chunks.
+ * If a chunk fails, the {@link java.sql.BatchUpdateException} is thrown by
+ * the {@code addBatch} call that triggered the chunk execution.
+ *
+ * @author Vlad Mihalcea
+ */
+public class AdaptiveBatchDataSource extends DelegatingDataSource {
+
+    private final AdaptiveBatchSizeTuner tuner;
+
+    public AdaptiveBatchDataSource(DataSource targetDataSource) {
+        this(targetDataSource, new AdaptiveBatchSizeTuner());
+    }
+
+    public AdaptiveBatchDataSource(DataSource targetDataSource, AdaptiveBatchSizeTuner tuner) {
+        super(targetDataSource);
+        this.tuner = tuner;
+    }
+
+    public AdaptiveBatchSizeTuner getTuner() {
+        return tuner;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return proxy(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return proxy(super.getConnection(username, password));
+    }
+
+    private Connection proxy(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class[]{Connection.class},
+            (proxy, method, args) -> {
+                Object result = invoke(connection, method, args);
+                if (method.getName().equals("prepareStatement") && method.getReturnType() == PreparedStatement.class) {
+                    PreparedStatement statement = (PreparedStatement) result;
+                    return Proxy.newProxyInstance(
+                        getClass().getClassLoader(),
+                        new Class[]{PreparedStatement.class},
+                        new AdaptiveBatchPreparedStatement(statement, (String) args[0], tuner)
+                    );
+                }
+                return result;
+            }
+        );
+    }
+
+    static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.vladmihalcea.book.hpjp.util.batch;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Sends the batched rows of a {@link PreparedStatement} in chunks sized by the {@link AdaptiveBatchSizeTuner}
+ * and reports the {@code executeBatch} duration of every chunk back to the tuner.
+ *
+ * @author Vlad Mihalcea
+ */
+class AdaptiveBatchPreparedStatement implements InvocationHandler {
+
+    private final PreparedStatement statement;
+
+    private final String sql;
+
+    private final AdaptiveBatchSizeTuner tuner;
+
+    private int pendingRows;
+
+    private long[] updateCounts = new long[16];
+
+    private int updateCountSize;
+
+    AdaptiveBatchPreparedStatement(PreparedStatement statement, String sql, AdaptiveBatchSizeTuner tuner) {
+        this.statement = statement;
+        this.sql = sql;
+        this.tuner = tuner;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "addBatch":
+                if (args == null) {
+                    statement.addBatch();
+                    if (++pendingRows >= tuner.batchSize(sql)) {
+                        executeChunk();
+                    }
+                    return null;
+                }
+                break;
+            case "executeBatch":
+                executeChunk();
+                return Arrays.stream(drainUpdateCounts()).mapToInt(Math::toIntExact).toArray();
+            case "executeLargeBatch":
+                executeChunk();
+                return drainUpdateCounts();
+            case "clearBatch":
+                statement.clearBatch();
+                pendingRows = 0;
+                updateCountSize = 0;
+                return null;
+        }
+        return AdaptiveBatchDataSource.invoke(statement, method, args);
+    }
+
+    private void executeChunk() throws SQLException {
+        if (pendingRows == 0) {
+            return;
+        }
+        int rows = pendingRows;
+        pendingRows = 0;
+        long startNanos = System.nanoTime();
+        int[] chunkUpdateCounts = statement.executeBatch();
+        tuner.record(sql, rows, System.nanoTime() - startNanos);
+
+        if (updateCountSize + chunkUpdateCounts.length > updateCounts.length) {
+            updateCounts = Arrays.copyOf(
+                updateCounts,
+                Math.max(updateCounts.length << 1, updateCountSize + chunkUpdateCounts.length)
+            );
+        }
+        for (int updateCount : chunkUpdateCounts) {
+            updateCounts[updateCountSize++] = updateCount;
+        }
+    }
+
+    private long[] drainUpdateCounts() {
+        long[] result = Arrays.copyOf(updateCounts, updateCountSize);
+        updateCountSize = 0;
+        return result;
+    }
+}
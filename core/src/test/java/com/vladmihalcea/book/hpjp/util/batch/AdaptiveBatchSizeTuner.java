@@ -0,0 +1,160 @@
+package com.vladmihalcea.book.hpjp.util.batch;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the JDBC batch size that minimizes the per-row {@code executeBatch} cost of every SQL statement.
+ * <p>
+ * The tuner uses AIMD (Additive Increase, Multiplicative Decrease). Starting from the initial batch size,
+ * the size is doubled as long as the per-row cost does not get worse (slow start), and then it's
+ * increased by a fixed step. When the per-row cost gets worse than the best recent cost by more than
+ * the tolerance, the size is cut by the decrease factor, so it keeps hovering around the point
+ * where larger batches stop paying off.
+ * <p>
+ * The decisions are taken on the average of several full batches, and the batches that are smaller
+ * than the current size (e.g., the last batch of a flush) are not used since their per-row cost
+ * is not comparable. If the application never fills a batch, the size shrinks to the largest
+ * batch the application executes.
+ *
+ * @author Vlad Mihalcea
+ */
+public class AdaptiveBatchSizeTuner {
+
+    private final int minBatchSize;
+
+    private final int maxBatchSize;
+
+    private final int initialBatchSize;
+
+    private int additiveIncrease = 8;
+
+    private double decreaseFactor = 0.5;
+
+    private double tolerance = 0.1;
+
+    private int samplesPerDecision = 3;
+
+    private final Map<String, Shape> shapes = new ConcurrentHashMap<>();
+
+    public AdaptiveBatchSizeTuner() {
+        this(1, 1000, 16);
+    }
+
+    public AdaptiveBatchSizeTuner(int minBatchSize, int maxBatchSize, int initialBatchSize) {
+        if (minBatchSize < 1 || maxBatchSize < minBatchSize) {
+            throw new IllegalArgumentException(
+                String.format("Invalid batch size range: [%d, %d]", minBatchSize, maxBatchSize)
+            );
+        }
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.initialBatchSize = Math.max(minBatchSize, Math.min(maxBatchSize, initialBatchSize));
+    }
+
+    public AdaptiveBatchSizeTuner setAdditiveIncrease(int additiveIncrease) {
+        this.additiveIncrease = additiveIncrease;
+        return this;
+    }
+
+    public AdaptiveBatchSizeTuner setDecreaseFactor(double decreaseFactor) {
+        this.decreaseFactor = decreaseFactor;
+        return this;
+    }
+
+    public AdaptiveBatchSizeTuner setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    public AdaptiveBatchSizeTuner setSamplesPerDecision(int samplesPerDecision) {
+        this.samplesPerDecision = samplesPerDecision;
+        return this;
+    }
+
+    /**
+     * @return the number of rows that should be sent in a single {@code executeBatch} call
+     */
+    public int batchSize(String sql) {
+        return shape(sql).size;
+    }
+
+    /**
+     * Record the execution of a batch.
+     *
+     * @param sql the statement SQL
+     * @param rows the number of rows in the batch
+     * @param nanos the {@code executeBatch} duration
+     */
+    public void record(String sql, int rows, long nanos) {
+        if (rows > 0) {
+            shape(sql).record(rows, nanos);
+        }
+    }
+
+    /**
+     * @return the current batch size of every statement
+     */
+    public Map<String, Integer> batchSizes() {
+        Map<String, Integer> batchSizes = new TreeMap<>();
+        shapes.forEach((sql, shape) -> batchSizes.put(sql, shape.size));
+        return batchSizes;
+    }
+
+    private Shape shape(String sql) {
+        return shapes.computeIfAbsent(sql, key -> new Shape(initialBatchSize));
+    }
+
+    private class Shape {
+
+        private volatile int size;
+
+        private boolean slowStart = true;
+
+        private double bestCost = Double.NaN;
+
+        private double costSum;
+
+        private int sampleCount;
+
+        private int partialSampleCount;
+
+        private int maxPartialRows;
+
+        Shape(int size) {
+            this.size = size;
+        }
+
+        synchronized void record(int rows, long nanos) {
+            if (rows < size) {
+                maxPartialRows = Math.max(maxPartialRows, rows);
+                if (++partialSampleCount >= samplesPerDecision && sampleCount == 0) {
+                    resize(Math.max(minBatchSize, maxPartialRows));
+                }
+                return;
+            }
+            costSum += (double) nanos / rows;
+            if (++sampleCount < samplesPerDecision) {
+                return;
+            }
+            double cost = costSum / sampleCount;
+            if (Double.isNaN(bestCost) || cost <= bestCost * (1 + tolerance)) {
+                bestCost = Double.isNaN(bestCost) ? cost : Math.min(bestCost, cost);
+                resize(Math.min(maxBatchSize, slowStart ? size * 2 : size + additiveIncrease));
+            } else {
+                slowStart = false;
+                bestCost = Double.NaN;
+                resize(Math.max(minBatchSize, (int) (size * decreaseFactor)));
+            }
+        }
+
+        private void resize(int newSize) {
+            size = newSize;
+            costSum = 0;
+            sampleCount = 0;
+            partialSampleCount = 0;
+            maxPartialRows = 0;
+        }
+    }
+}
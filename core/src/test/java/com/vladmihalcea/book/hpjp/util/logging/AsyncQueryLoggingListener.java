@@ -0,0 +1,377 @@
+package com.vladmihalcea.book.hpjp.util.logging;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.StatementType;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * datasource-proxy listener that logs the executed statements on a background thread.
+ * <p>
+ * Unlike the {@link net.ttddyy.dsproxy.listener.logging.SLF4JQueryLoggingListener} and
+ * {@link InlineQueryLogEntryCreator} combination, the JDBC thread does not build any log entry.
+ * It only copies the query and the parameter references into a preallocated ring buffer slot,
+ * while the background thread sorts the parameters, formats the entry and writes it to the log.
+ * If the ring buffer is full, the entry is dropped instead of blocking the JDBC thread,
+ * and {@link #getDroppedCount()} is incremented.
+ * <p>
+ * The parameters are referenced, not copied, so mutable parameter values (e.g., arrays) that
+ * the application changes right after the statement is executed could be logged with the new values.
+ * <p>
+ * The {@link #setSampleRate(double) sample rate} limits the share of logged statements, and the
+ * {@link #setSlowQueryThreshold(Duration) slow query threshold} logs only the statements that
+ * took longer than the threshold. Failed statements are always logged.
+ *
+ * @author Vlad Mihalcea
+ */
+public class AsyncQueryLoggingListener implements QueryExecutionListener, AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 13;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Logger logger;
+
+    private final Slot[] ring;
+
+    private final int mask;
+
+    /**
+     * The next sequence to be claimed by a JDBC thread.
+     */
+    private final AtomicLong claimSequence = new AtomicLong();
+
+    /**
+     * The next sequence to be formatted by the background thread.
+     */
+    private final AtomicLong consumeSequence = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final Thread consumer;
+
+    private final StringBuilder entry = new StringBuilder(256);
+
+    private volatile boolean running = true;
+
+    private volatile double sampleRate = 1;
+
+    private volatile long slowQueryThresholdMillis = -1;
+
+    public AsyncQueryLoggingListener() {
+        this(AsyncQueryLoggingListener.class.getName(), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param loggerName the logger the entries are written to, at the {@code DEBUG} level
+     * @param capacity the ring buffer size, rounded up to a power of two
+     */
+    public AsyncQueryLoggingListener(String loggerName, int capacity) {
+        this.logger = LoggerFactory.getLogger(loggerName);
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.ring = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.consumer = new Thread(this::consume, "async-query-logger");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * @param sampleRate the share of the successful statements that are logged, between 0 and 1
+     */
+    public AsyncQueryLoggingListener setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    /**
+     * Log only the statements that took at least the given duration.
+     */
+    public AsyncQueryLoggingListener setSlowQueryThreshold(Duration slowQueryThreshold) {
+        this.slowQueryThresholdMillis = slowQueryThreshold != null ? slowQueryThreshold.toMillis() : -1;
+        return this;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
+        if (execInfo.isSuccess()) {
+            if (execInfo.getElapsedTime() < slowQueryThresholdMillis) {
+                return;
+            }
+            double rate = sampleRate;
+            if (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate) {
+                return;
+            }
+        }
+        long sequence;
+        do {
+            sequence = claimSequence.get();
+            if (sequence - consumeSequence.get() >= ring.length) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+        } while (!claimSequence.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = ring[(int) (sequence & mask)];
+        slot.copy(execInfo, queryInfoList);
+        slot.publishedSequence = sequence + 1;
+    }
+
+    /**
+     * Wait until all the claimed entries are written to the log.
+     */
+    public void flush() {
+        long sequence = claimSequence.get();
+        while (consumeSequence.get() < sequence && consumer.isAlive()) {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Write the pending entries, and stop the background thread.
+     */
+    @Override
+    public void close() {
+        flush();
+        running = false;
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Write the formatted entry. It's called by the background thread only,
+     * and the entry builder is reused for the next statement.
+     */
+    protected void write(CharSequence entry) {
+        logger.debug(entry.toString());
+    }
+
+    private void consume() {
+        while (running) {
+            long sequence = consumeSequence.get();
+            Slot slot = ring[(int) (sequence & mask)];
+            if (slot.publishedSequence != sequence + 1) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            try {
+                entry.setLength(0);
+                slot.format(entry);
+                write(entry);
+            } catch (RuntimeException e) {
+                logger.warn("Could not log the query", e);
+            } finally {
+                slot.clear();
+                consumeSequence.lazySet(sequence + 1);
+            }
+        }
+    }
+
+    /**
+     * A ring buffer entry. The arrays are reused, and they only grow if a statement
+     * has more queries or parameters than any previous statement logged in this slot.
+     */
+    private static class Slot {
+
+        volatile long publishedSequence;
+
+        String dataSourceName;
+
+        String connectionId;
+
+        long elapsedMillis;
+
+        boolean success;
+
+        boolean batch;
+
+        int batchSize;
+
+        StatementType statementType;
+
+        int queryCount;
+
+        String[] queries = new String[1];
+
+        /**
+         * For every query, the number of parameter sets, followed by the parameter count of every set.
+         */
+        int[] layout = new int[4];
+
+        int layoutSize;
+
+        Object[] keys = new Object[8];
+
+        Object[] values = new Object[8];
+
+        int parameterCount;
+
+        void copy(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+            dataSourceName = execInfo.getDataSourceName();
+            connectionId = execInfo.getConnectionId();
+            elapsedMillis = execInfo.getElapsedTime();
+            success = execInfo.isSuccess();
+            batch = execInfo.isBatch();
+            batchSize = execInfo.getBatchSize();
+            statementType = execInfo.getStatementType();
+
+            int size = queryInfoList.size();
+            if (queries.length < size) {
+                queries = new String[size];
+            }
+            queryCount = size;
+            layoutSize = 0;
+            parameterCount = 0;
+            for (int q = 0; q < size; q++) {
+                QueryInfo queryInfo = queryInfoList.get(q);
+                queries[q] = queryInfo.getQuery();
+                List<List<ParameterSetOperation>> parametersList = queryInfo.getParametersList();
+                int setCount = parametersList.size();
+                addLayout(setCount);
+                for (int s = 0; s < setCount; s++) {
+                    List<ParameterSetOperation> parameters = parametersList.get(s);
+                    int count = parameters.size();
+                    addLayout(count);
+                    for (int p = 0; p < count; p++) {
+                        ParameterSetOperation operation = parameters.get(p);
+                        Object[] args = operation.getArgs();
+                        addParameter(
+                            args[0],
+                            ParameterSetOperation.isSetNullParameterOperation(operation) ||
+                                ParameterSetOperation.isRegisterOutParameterOperation(operation) ? null : args[1]
+                        );
+                    }
+                }
+            }
+        }
+
+        void format(StringBuilder sb) {
+            sb.append("Name:").append(dataSourceName)
+                .append(", Connection:").append(connectionId)
+                .append(", Time:").append(elapsedMillis)
+                .append(", Success:").append(success ? "True" : "False")
+                .append(", Type:").append(statementType == StatementType.PREPARED ? "Prepared" :
+                    statementType == StatementType.CALLABLE ? "Callable" : "Statement")
+                .append(", Batch:").append(batch ? "True" : "False")
+                .append(", QuerySize:").append(queryCount)
+                .append(", BatchSize:").append(batchSize)
+                .append(", Query:[");
+            for (int q = 0; q < queryCount; q++) {
+                if (q > 0) {
+                    sb.append(",");
+                }
+                sb.append("\"").append(queries[q]).append("\"");
+            }
+            sb.append("], Params:[");
+            int layoutIndex = 0;
+            int parameterIndex = 0;
+            boolean firstSet = true;
+            for (int q = 0; q < queryCount; q++) {
+                int setCount = layout[layoutIndex++];
+                for (int s = 0; s < setCount; s++) {
+                    int count = layout[layoutIndex++];
+                    sortByKey(parameterIndex, parameterIndex + count);
+                    if (!firstSet) {
+                        sb.append(", ");
+                    }
+                    firstSet = false;
+                    sb.append("(");
+                    for (int p = 0; p < count; p++) {
+                        if (p > 0) {
+                            sb.append(", ");
+                        }
+                        Object value = values[parameterIndex + p];
+                        if (value != null && value.getClass().isArray()) {
+                            sb.append(InlineQueryLogEntryCreator.arrayToString(value));
+                        } else {
+                            sb.append(value);
+                        }
+                    }
+                    sb.append(")");
+                    parameterIndex += count;
+                }
+            }
+            sb.append("]");
+        }
+
+        void clear() {
+            Arrays.fill(values, 0, parameterCount, null);
+            Arrays.fill(keys, 0, parameterCount, null);
+            Arrays.fill(queries, 0, queryCount, null);
+            connectionId = null;
+            dataSourceName = null;
+        }
+
+        private void addLayout(int value) {
+            if (layoutSize == layout.length) {
+                layout = Arrays.copyOf(layout, layoutSize << 1);
+            }
+            layout[layoutSize++] = value;
+        }
+
+        private void addParameter(Object key, Object value) {
+            if (parameterCount == values.length) {
+                keys = Arrays.copyOf(keys, parameterCount << 1);
+                values = Arrays.copyOf(values, parameterCount << 1);
+            }
+            keys[parameterCount] = key;
+            values[parameterCount++] = value;
+        }
+
+        /**
+         * Insertion sort, since the parameters are usually set in order.
+         * The numeric indexes come first, followed by the named parameters.
+         */
+        private void sortByKey(int from, int to) {
+            for (int i = from + 1; i < to; i++) {
+                Object key = keys[i];
+                Object value = values[i];
+                int j = i - 1;
+                while (j >= from && compare(keys[j], key) > 0) {
+                    keys[j + 1] = keys[j];
+                    values[j + 1] = values[j];
+                    j--;
+                }
+                keys[j + 1] = key;
+                values[j + 1] = value;
+            }
+        }
+
+        private static int compare(Object left, Object right) {
+            if (left instanceof Integer leftIndex && right instanceof Integer rightIndex) {
+                return Integer.compare(leftIndex, rightIndex);
+            }
+            if (left instanceof Integer) {
+                return -1;
+            }
+            if (right instanceof Integer) {
+                return 1;
+            }
+            return String.valueOf(left).compareTo(String.valueOf(right));
+        }
+    }
+}
@@ -48,7 +48,7 @@ public class InlineQueryLogEntryCreator extends DefaultQueryLogEntryCreator {
         sb.append("]");
     }
 
-    private String arrayToString(Object object) {
+    static String arrayToString(Object object) {
         if (object.getClass().isArray()) {
             if (object instanceof byte[]) {
                 return Arrays.toString((byte[]) object);
@@ -11,4 +11,12 @@ public class HSQLDBServerQueries implements Queries {
     public String transactionId() {
         return "VALUES (TRANSACTION_ID())";
     }
+
+    /**
+     * HSQLDB has no replication, so a standalone instance is never behind.
+     */
+    @Override
+    public String replicationLag() {
+        return "VALUES (CAST(0 AS BIGINT))";
+    }
 }
@@ -11,4 +11,27 @@ public class MySQLQueries implements Queries {
     public String transactionId() {
         return "SELECT tx.trx_id FROM information_schema.innodb_trx tx WHERE tx.trx_mysql_thread_id = connection_id()";
     }
+
+    /**
+     * The replica is behind by the primary commit time between the last transaction it received
+     * and the last transaction it applied, so the lag keeps growing while the applier is stalled
+     * behind a backlog, and it drops to zero once the replica has applied everything it received.
+     */
+    @Override
+    public String replicationLag() {
+        return """
+            SELECT COALESCE(MAX(
+                CASE
+                    WHEN c.LAST_QUEUED_TRANSACTION_ORIGINAL_COMMIT_TIMESTAMP <= w.last_applied THEN 0
+                    ELSE TIMESTAMPDIFF(MICROSECOND, w.last_applied, c.LAST_QUEUED_TRANSACTION_ORIGINAL_COMMIT_TIMESTAMP) DIV 1000
+                END
+            ), 0)
+            FROM performance_schema.replication_connection_status c
+            JOIN (
+                SELECT CHANNEL_NAME, MAX(LAST_APPLIED_TRANSACTION_ORIGINAL_COMMIT_TIMESTAMP) AS last_applied
+                FROM performance_schema.replication_applier_status_by_worker
+                GROUP BY CHANNEL_NAME
+            ) w ON w.CHANNEL_NAME = c.CHANNEL_NAME
+            """;
+    }
 }
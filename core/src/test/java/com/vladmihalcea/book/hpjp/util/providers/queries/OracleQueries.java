@@ -15,4 +15,21 @@ public class OracleQueries implements Queries {
             JOIN v$session s ON tx.addr=s.taddr
             """ ;
     }
+
+    /**
+     * On an Active Data Guard standby, the apply lag is reported as a day-to-second interval.
+     */
+    @Override
+    public String replicationLag() {
+        return """
+            SELECT COALESCE(MAX(
+                EXTRACT(DAY FROM TO_DSINTERVAL(ds.value)) * 86400000 +
+                EXTRACT(HOUR FROM TO_DSINTERVAL(ds.value)) * 3600000 +
+                EXTRACT(MINUTE FROM TO_DSINTERVAL(ds.value)) * 60000 +
+                ROUND(EXTRACT(SECOND FROM TO_DSINTERVAL(ds.value)) * 1000)
+            ), 0)
+            FROM v$dataguard_stats ds
+            WHERE ds.name = 'apply lag'
+            """;
+    }
 }
@@ -11,4 +11,15 @@ public class PostgreSQLQueries implements Queries {
     public String transactionId() {
         return "SELECT CAST(pg_current_xact_id_if_assigned() AS text)";
     }
+
+    @Override
+    public String replicationLag() {
+        return """
+            SELECT CASE
+                WHEN NOT pg_is_in_recovery() THEN 0
+                WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                ELSE CAST(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000 AS bigint)
+            END
+            """;
+    }
 }
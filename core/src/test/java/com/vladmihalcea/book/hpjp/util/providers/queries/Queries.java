@@ -6,4 +6,9 @@ package com.vladmihalcea.book.hpjp.util.providers.queries;
 public interface Queries {
 
     String transactionId();
+
+    /**
+     * @return the query returning the number of milliseconds the current node is behind the primary node
+     */
+    String replicationLag();
 }
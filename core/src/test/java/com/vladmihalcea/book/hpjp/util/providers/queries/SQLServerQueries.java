@@ -11,4 +11,23 @@ public class SQLServerQueries implements Queries {
     public String transactionId() {
         return "SELECT CONVERT(VARCHAR, CURRENT_TRANSACTION_ID())";
     }
+
+    /**
+     * A readable secondary only sees its own database replica states, so the lag is the time between
+     * the last log block it hardened and the last commit it redone, which drops to zero once the redo
+     * queue is empty, even if the primary is idle.
+     */
+    @Override
+    public String replicationLag() {
+        return """
+            SELECT COALESCE(MAX(
+                CASE
+                    WHEN redo_queue_size = 0 OR last_hardened_time <= last_commit_time THEN 0
+                    ELSE DATEDIFF(millisecond, last_commit_time, last_hardened_time)
+                END
+            ), 0)
+            FROM sys.dm_hadr_database_replica_states
+            WHERE is_local = 1 AND is_primary_replica = 0
+            """;
+    }
 }
@@ -0,0 +1,85 @@
+package com.vladmihalcea.book.hpjp.util.transaction;
+
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.spi.EventSource;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Holds one buffer per Hibernate session for the duration of the current transaction.
+ * <p>
+ * The first {@link #get(EventSource)} call of a transaction creates the buffer and registers the transaction
+ * completion processes with the session {@link org.hibernate.engine.spi.ActionQueue}. The buffer is handed
+ * to the before completion handler right before the transaction commits, after the session was flushed,
+ * and to the after completion handler once the transaction has ended. Either way, the buffer is discarded
+ * when the transaction ends, even if it was rolled back.
+ *
+ * @author Vlad Mihalcea
+ */
+public class TransactionBuffer<B> {
+
+    /**
+     * Handles the buffer after the transaction has ended.
+     */
+    @FunctionalInterface
+    public interface AfterCompletion<B> {
+        void accept(boolean success, B buffer);
+    }
+
+    private final Map<SharedSessionContractImplementor, B> buffers = new ConcurrentHashMap<>();
+
+    private final Function<EventSource, B> bufferFactory;
+
+    private final BiConsumer<SessionImplementor, B> beforeCompletion;
+
+    private final AfterCompletion<B> afterCompletion;
+
+    /**
+     * @param bufferFactory creates the buffer of the current transaction
+     * @param beforeCompletion handles the buffer before the transaction commits, or {@code null}
+     * @param afterCompletion handles the buffer after the transaction has ended, or {@code null}
+     */
+    public TransactionBuffer(
+            Function<EventSource, B> bufferFactory,
+            BiConsumer<SessionImplementor, B> beforeCompletion,
+            AfterCompletion<B> afterCompletion) {
+        this.bufferFactory = bufferFactory;
+        this.beforeCompletion = beforeCompletion;
+        this.afterCompletion = afterCompletion;
+    }
+
+    /**
+     * @return the buffer of the current transaction, which is created on the first call
+     */
+    public B get(EventSource session) {
+        return buffers.computeIfAbsent(session, s -> newBuffer(session));
+    }
+
+    private B newBuffer(EventSource session) {
+        if (beforeCompletion != null) {
+            session.getActionQueue().registerProcess(
+                (BeforeTransactionCompletionProcess) s -> {
+                    B buffer = buffers.get(s);
+                    if (buffer != null) {
+                        beforeCompletion.accept(s, buffer);
+                    }
+                }
+            );
+        }
+        session.getActionQueue().registerProcess(
+            (AfterTransactionCompletionProcess) (success, s) -> {
+                B buffer = buffers.remove(s);
+                if (buffer != null && afterCompletion != null) {
+                    afterCompletion.accept(success, buffer);
+                }
+            }
+        );
+        return bufferFactory.apply(session);
+    }
+}
@@ -0,0 +1,94 @@
+package com.vladmihalcea.book.hpjp.jooq.pagination;
+
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.KeysetQuery;
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.KeysetSort;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.RecordMapper;
+import org.jooq.ResultQuery;
+import org.jooq.SelectOrderByStep;
+import org.jooq.SelectSeekStepN;
+import org.jooq.SortField;
+import org.jooq.SortOrder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A {@link KeysetQuery} backed by the jOOQ {@code seek} clause, so that jOOQ queries
+ * can be paged with the same opaque cursors and prefetching as the JPA ones.
+ * <p>
+ * Unlike {@code JpaKeysetQuery}, the query is built by a function, so two instances are
+ * never equal. Reuse the same instance for the same filter to benefit from prefetching.
+ *
+ * @author Vlad Mihalcea
+ */
+public class JooqKeysetQuery<R extends Record, T> implements KeysetQuery<T> {
+
+    private final Function<DSLContext, SelectOrderByStep<R>> select;
+
+    private final SortField<?>[] sortFields;
+
+    private final KeysetSort sort;
+
+    private final RecordMapper<? super R, T> mapper;
+
+    private final Function<T, Object[]> keyExtractor;
+
+    private Function<Function<DSLContext, List<T>>, List<T>> transactionRunner;
+
+    public JooqKeysetQuery(
+            Function<DSLContext, SelectOrderByStep<R>> select,
+            SortField<?>[] sortFields,
+            RecordMapper<? super R, T> mapper,
+            Function<T, Object[]> keyExtractor) {
+        this.select = select;
+        this.sortFields = sortFields;
+        this.sort = KeysetSort.of(
+            Arrays.stream(sortFields)
+                .map(sortField -> new KeysetSort.Key(sortField.getName(), sortField.getOrder() == SortOrder.DESC))
+                .toArray(KeysetSort.Key[]::new)
+        );
+        this.mapper = mapper;
+        this.keyExtractor = keyExtractor;
+    }
+
+    /**
+     * Set how {@link #fetch(Object[], int)} obtains its {@link DSLContext},
+     * typically by running the given function in a new transaction.
+     */
+    public JooqKeysetQuery<R, T> setTransactionRunner(Function<Function<DSLContext, List<T>>, List<T>> transactionRunner) {
+        this.transactionRunner = transactionRunner;
+        return this;
+    }
+
+    @Override
+    public KeysetSort getSort() {
+        return sort;
+    }
+
+    @Override
+    public Object[] getKeyValues(T row) {
+        return keyExtractor.apply(row);
+    }
+
+    @Override
+    public List<T> fetch(Object[] keyValues, int limit) {
+        if (transactionRunner == null) {
+            throw new IllegalStateException("No transaction runner was set, so use fetch(DSLContext, Object[], int)");
+        }
+        return transactionRunner.apply(sql -> fetch(sql, keyValues, limit));
+    }
+
+    /**
+     * Fetch the rows following the given sort key values using the given {@link DSLContext}.
+     */
+    public List<T> fetch(DSLContext sql, Object[] keyValues, int limit) {
+        SelectSeekStepN<R> orderBy = select.apply(sql).orderBy(sortFields);
+        ResultQuery<R> query = keyValues != null ?
+            orderBy.seek(keyValues).limit(limit) :
+            orderBy.limit(limit);
+        return query.fetch(mapper);
+    }
+}
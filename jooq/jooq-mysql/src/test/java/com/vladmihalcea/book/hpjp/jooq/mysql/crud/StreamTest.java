@@ -1,10 +1,15 @@
 package com.vladmihalcea.book.hpjp.jooq.mysql.crud;
 
+import com.vladmihalcea.book.hpjp.jdbc.fetching.stream.FraudDetectionEngine;
+import com.vladmihalcea.book.hpjp.jdbc.fetching.stream.JdbcCheckpointStore;
+import com.vladmihalcea.book.hpjp.util.providers.DataSourceProvider;
+import com.vladmihalcea.book.hpjp.util.providers.MySQLDataSourceProvider;
 import org.junit.Before;
 import org.junit.Test;
 
 import static com.vladmihalcea.book.hpjp.jooq.mysql.schema.crud.Tables.POST;
 import static com.vladmihalcea.book.hpjp.jooq.mysql.schema.crud.Tables.POST_COMMENT_DETAILS;
+import static org.junit.Assert.assertEquals;
 
 /**
  * @author Vlad Mihalcea
@@ -16,6 +21,16 @@ public class StreamTest extends AbstractJOOQMySQLIntegrationTest {
         return "initial_schema.sql";
     }
 
+    /**
+     * Without {@code useCursorFetch}, MySQL Connector/J only streams the result set
+     * when the fetch size is {@link Integer#MIN_VALUE}.
+     */
+    @Override
+    protected DataSourceProvider dataSourceProvider() {
+        return new MySQLDataSourceProvider()
+            .setUseCursorFetch(true);
+    }
+
     @Before
     public void init() {
         super.init();
@@ -54,4 +69,21 @@ public class StreamTest extends AbstractJOOQMySQLIntegrationTest {
 
         });
     }
+
+    @Test
+    public void testFraudDetectionEngine() {
+        FraudDetectionEngine engine = new FraudDetectionEngine(
+            dataSource(),
+            new JdbcCheckpointStore(dataSource()),
+            "multi-account",
+            (postId, ip, fingerprint, userIds) -> LOGGER.info(
+                "Post id {} possible fraud with user ids {}", postId, userIds
+            )
+        )
+        .setWorkerCount(2)
+        .setFetchSize(2);
+
+        assertEquals(7, engine.run());
+        assertEquals(0, engine.run());
+    }
 }
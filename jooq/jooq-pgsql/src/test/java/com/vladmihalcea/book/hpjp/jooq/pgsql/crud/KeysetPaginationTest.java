@@ -1,7 +1,11 @@
 package com.vladmihalcea.book.hpjp.jooq.pgsql.crud;
 
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.KeysetPage;
+import com.vladmihalcea.book.hpjp.hibernate.fetching.pagination.keyset.KeysetPaginator;
+import com.vladmihalcea.book.hpjp.jooq.pagination.JooqKeysetQuery;
 import org.jooq.Record3;
 import org.jooq.SelectSeekStep2;
+import org.jooq.SortField;
 import org.junit.Test;
 
 import java.sql.Timestamp;
@@ -11,6 +15,7 @@ import java.util.List;
 import static com.vladmihalcea.book.hpjp.jooq.pgsql.schema.crud.Tables.POST;
 import static com.vladmihalcea.book.hpjp.jooq.pgsql.schema.crud.Tables.POST_DETAILS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * @author Vlad Mihalcea
@@ -24,31 +29,7 @@ public class KeysetPaginationTest extends AbstractJOOQPostgreSQLIntegrationTest
 
     @Test
     public void testPagination() {
-        String user = "Vlad Mihalcea";
-
-        doInJOOQ(sql -> {
-            sql
-            .deleteFrom(POST_DETAILS)
-            .execute();
-
-            sql
-            .deleteFrom(POST)
-            .execute();
-
-            LocalDateTime now = LocalDateTime.now();
-
-            for (long i = 1; i < 100; i++) {
-                sql
-                .insertInto(POST).columns(POST.ID, POST.TITLE)
-                .values(i, String.format("High-Performance Java Persistence - Chapter %d", i))
-                .execute();
-
-                sql
-                .insertInto(POST_DETAILS).columns(POST_DETAILS.ID, POST_DETAILS.CREATED_ON, POST_DETAILS.CREATED_BY)
-                .values(i, now.plusHours(i / 10), user)
-                .execute();
-            }
-        });
+        insertPosts();
 
         doInJOOQ(sql -> {
 
@@ -86,6 +67,66 @@ public class KeysetPaginationTest extends AbstractJOOQPostgreSQLIntegrationTest
         });
     }
 
+    @Test
+    public void testKeysetPaginator() {
+        insertPosts();
+
+        var query = new JooqKeysetQuery<Record3<Long, String, LocalDateTime>, PostSummary>(
+            sql -> sql
+                .select(POST.ID, POST.TITLE, POST_DETAILS.CREATED_ON)
+                .from(POST)
+                .join(POST_DETAILS).on(POST.ID.eq(POST_DETAILS.ID)),
+            new SortField<?>[] {POST_DETAILS.CREATED_ON.desc(), POST.ID.desc()},
+            record -> new PostSummary(record.value1(), record.value2(), record.value3()),
+            postSummary -> new Object[] {postSummary.getCreatedOn(), postSummary.getId()}
+        )
+        .setTransactionRunner(work -> doInJOOQ(sql -> {
+            return work.apply(sql);
+        }));
+
+        KeysetPaginator paginator = new KeysetPaginator();
+
+        KeysetPage<PostSummary> page = paginator.firstPage(query, 5);
+        int pageCount = 1;
+
+        while (page.hasNext()) {
+            page = paginator.getPage(query, page.getNextCursor(), 5);
+            pageCount++;
+        }
+
+        assertEquals(Long.valueOf(1), page.getContent().get(page.getContent().size() - 1).getId());
+        assertNull(page.getNextCursor());
+        assertEquals(20, pageCount);
+    }
+
+    private void insertPosts() {
+        String user = "Vlad Mihalcea";
+
+        doInJOOQ(sql -> {
+            sql
+            .deleteFrom(POST_DETAILS)
+            .execute();
+
+            sql
+            .deleteFrom(POST)
+            .execute();
+
+            LocalDateTime now = LocalDateTime.now();
+
+            for (long i = 1; i < 100; i++) {
+                sql
+                .insertInto(POST).columns(POST.ID, POST.TITLE)
+                .values(i, String.format("High-Performance Java Persistence - Chapter %d", i))
+                .execute();
+
+                sql
+                .insertInto(POST_DETAILS).columns(POST_DETAILS.ID, POST_DETAILS.CREATED_ON, POST_DETAILS.CREATED_BY)
+                .values(i, now.plusHours(i / 10), user)
+                .execute();
+            }
+        });
+    }
+
     public List<PostSummary> nextPage(int pageSize, PostSummary offsetPostSummary) {
         return doInJOOQ(sql -> {
             SelectSeekStep2<Record3<Long, String, LocalDateTime>, LocalDateTime, Long> selectStep = sql
@@ -1,5 +1,7 @@
 package com.vladmihalcea.book.hpjp.jooq.pgsql.crud;
 
+import com.vladmihalcea.book.hpjp.jdbc.fetching.stream.FraudDetectionEngine;
+import com.vladmihalcea.book.hpjp.jdbc.fetching.stream.JdbcCheckpointStore;
 import com.vladmihalcea.book.hpjp.jooq.pgsql.schema.crud.tables.records.PostCommentDetailsRecord;
 import org.hibernate.Session;
 import org.junit.Before;
@@ -10,6 +12,7 @@ import java.util.stream.Stream;
 
 import static com.vladmihalcea.book.hpjp.jooq.pgsql.schema.crud.Tables.POST;
 import static com.vladmihalcea.book.hpjp.jooq.pgsql.schema.crud.Tables.POST_COMMENT_DETAILS;
+import static org.junit.Assert.assertEquals;
 
 /**
  * @author Vlad Mihalcea
@@ -134,6 +137,28 @@ public class StreamTest extends AbstractJOOQPostgreSQLIntegrationTest {
         });
     }
 
+    @Test
+    public void testFraudDetectionEngine() {
+        JdbcCheckpointStore checkpointStore = new JdbcCheckpointStore(dataSource());
+        checkpointStore.save("multi-account", 1L);
+
+        FraudDetectionEngine engine = new FraudDetectionEngine(
+            dataSource(),
+            checkpointStore,
+            "multi-account",
+            (postId, ip, fingerprint, userIds) -> LOGGER.info(
+                "Post id {} possible fraud with user ids {}", postId, userIds
+            )
+        )
+        .setWorkerCount(2)
+        .setFetchSize(2);
+
+        assertEquals(6, engine.run());
+        assertEquals(7, checkpointStore.load("multi-account"));
+
+        assertEquals(0, engine.run());
+    }
+
     private void notifyPossibleMultipleAccountFraud(Long postId, List<Long> userIds) {
         LOGGER.info("Post id {} possible fraud with user ids {}", postId, userIds);
     }
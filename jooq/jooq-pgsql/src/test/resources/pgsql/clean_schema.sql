@@ -2,6 +2,7 @@ DELETE FROM post_tag;
 DELETE FROM tag;
 DELETE FROM post_details;
 DELETE FROM post_comment_details;
+DELETE FROM stream_checkpoint;
 DELETE FROM post_comment;
 DELETE FROM post;
 DELETE FROM answer;
@@ -6,6 +6,7 @@ drop table if exists post;
 drop table if exists tag;
 drop table if exists answer;
 drop table if exists question;
+drop table if exists stream_checkpoint;
 
 drop sequence if exists hibernate_sequence;
 
@@ -15,6 +16,7 @@ create table post_details (id int8 not null, created_by varchar(255), created_on
 create table post_tag (post_id int8 not null, tag_id int8 not null);
 create table tag (id int8 not null, name varchar(255), primary key (id));
 create table post_comment_details (id int8 not null, post_id int8 not null, user_id int8 not null, ip varchar(18) not null, fingerprint varchar(256), primary key (id));
+create table stream_checkpoint (name varchar(64) not null, last_processed_id int8 not null, primary key (name));
 
 create table question (id bigint not null, body varchar(255), created_on timestamp(6) default now(), score integer not null default 0, title varchar(255), updated_on timestamp(6) default now(), primary key (id));
 create table answer (id bigint not null, accepted boolean not null default false, body varchar(255), created_on timestamp(6) default now(), score integer not null default 0, updated_on timestamp(6) default now(), question_id bigint, primary key (id));